@@ -0,0 +1,157 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputed all-pairs shortest paths for a small subnetwork of towns, e.g.
+ * a depot network answering millions of queries. One Dijkstra per source runs
+ * in parallel and fills an n-by-n distance matrix and a table of the road
+ * each town was last reached by, both held in direct buffers outside the Java
+ * heap. Distances are then a single load and routes are walked back from the
+ * destination along the source's own row, a shortest path tree, so zero-weight
+ * roads and ties cannot send the walk round in circles.
+ *
+ * Routes only use roads between towns of the subnetwork, and follow one-way
+ * roads only their own way.
+ *
+ * @author Liam Ghershony
+ */
+public class AllPairsIndex {
+
+    /** Largest subnetwork whose matrices still fit in one direct buffer. */
+    public static final int MAX_TOWNS = 16384;
+
+    private final CompactGraph network;
+    private final int size;
+    private final int version;
+    private final IntBuffer distances;
+    private final IntBuffer lastEdges;
+
+    private AllPairsIndex(CompactGraph network, int version) {
+        this.network = network;
+        this.size = network.vertexCount();
+        this.version = version;
+        this.distances = allocate(size);
+        this.lastEdges = allocate(size);
+        IntStream.range(0, size).parallel().forEach(this::fillRow);
+    }
+
+    /**
+     * Precomputes all pairs for the subnetwork induced by some towns.
+     *
+     * @param graph the graph
+     * @param towns the towns of the subnetwork
+     * @return the index
+     * @throws IllegalArgumentException if there are more than MAX_TOWNS towns
+     */
+    public static AllPairsIndex build(Graph graph, Collection<Town> towns) {
+        if (towns.size() > MAX_TOWNS) {
+            throw new IllegalArgumentException("All-pairs index is limited to " + MAX_TOWNS + " towns.");
+        }
+        return new AllPairsIndex(CompactGraph.of(graph, towns), graph.getVersion());
+    }
+
+    /**
+     * Gets the graph version the index was built from.
+     *
+     * @return the graph version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Checks if a town is part of the subnetwork.
+     *
+     * @param town the town
+     * @return true if the index covers the town
+     */
+    public boolean covers(Town town) {
+        return network.indexOf(town) >= 0;
+    }
+
+    /**
+     * Gets the shortest distance between two towns of the subnetwork.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the distance, or -1 if either town is not covered or no route exists
+     */
+    public int distance(Town source, Town destination) {
+        int s = network.indexOf(source);
+        int t = network.indexOf(destination);
+        if (s < 0 || t < 0) {
+            return -1;
+        }
+        int d = distances.get(s * size + t);
+        return d == Integer.MAX_VALUE ? -1 : d;
+    }
+
+    /**
+     * Gets the shortest route between two towns of the subnetwork.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the route in the format of {@link Graph#shortestPath(Town, Town)},
+     * or an empty list if either town is not covered or no route exists
+     */
+    public ArrayList<String> path(Town source, Town destination) {
+        ArrayList<String> path = new ArrayList<>();
+        int s = network.indexOf(source);
+        int t = network.indexOf(destination);
+        if (s < 0 || t < 0) {
+            return path;
+        }
+        int row = s * size;
+        for (int v = t; v != s; ) {
+            int e = lastEdges.get(row + v);
+            if (e < 0) {
+                path.clear();
+                return path;
+            }
+            int u = network.otherEnd(e, v);
+            path.add(String.format("%s via %s to %s %d mi", network.town(u), network.roadName(e),
+                    network.town(v), network.edgeWeight(e)));
+            v = u;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private void fillRow(int source) {
+        int[] dist = new int[size];
+        int[] lastEdge = new int[size];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        Arrays.fill(lastEdge, -1);
+        IndexedMinHeap heap = new IndexedMinHeap(size);
+        dist[source] = 0;
+        heap.offer(source, 0);
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            for (int arc = network.firstOutArc(v), end = network.firstOutArc(v + 1); arc < end; arc++) {
+                int w = network.outArcTarget(arc);
+                int alt = dist[v] + network.outArcWeight(arc);
+                if (alt < dist[w]) {
+                    dist[w] = alt;
+                    lastEdge[w] = network.outArcEdge(arc);
+                    heap.offer(w, alt);
+                }
+            }
+        }
+
+        int row = source * size;
+        for (int t = 0; t < size; t++) {
+            distances.put(row + t, dist[t]);
+            lastEdges.put(row + t, lastEdge[t]);
+        }
+    }
+
+    private static IntBuffer allocate(int size) {
+        return ByteBuffer.allocateDirect(size * size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+}
@@ -0,0 +1,498 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable compressed-sparse-row snapshot of a graph. Towns are numbered
+ * 0..n-1 and every road appears as two half-edges, one in each endpoint's
+ * adjacency range, so analytics and preprocessing can walk the graph with
+ * array loads instead of hash lookups.
+ *
+ * One-way roads can be travelled only from their source, so searches walk
+ * the out-arcs, which hold a one-way road at its source alone, and backward
+ * searches the in-arcs, which hold it at its destination alone. Both are
+ * compact arrays of their own; in a graph without one-way roads they are the
+ * half-edge arrays themselves.
+ *
+ * @author Liam Ghershony
+ */
+public class CompactGraph {
+
+    private final Town[] towns;
+    private final Map<Town, Integer> index;
+    private final String[] roadNames;
+    private final int[] roadIds;
+    private final int[] edgeSource;
+    private final int[] edgeTarget;
+    private final int[] edgeWeight;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    private final int[] edgeOf;
+    private final boolean[] oneWay;
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final int[] outWeights;
+    private final int[] outEdgeOf;
+    private final int[] inOffsets;
+    private final int[] inTargets;
+    private final int[] inWeights;
+    private final int[] inEdgeOf;
+
+    /**
+     * Builds a snapshot from raw edge arrays. Edge i joins edgeSource[i] and
+     * edgeTarget[i] with weight edgeWeight[i]; the arrays are kept, not copied.
+     *
+     * @param vertexCount the number of vertices
+     * @param edgeSource the first endpoint of every edge
+     * @param edgeTarget the second endpoint of every edge
+     * @param edgeWeight the weight of every edge
+     */
+    public CompactGraph(int vertexCount, int[] edgeSource, int[] edgeTarget, int[] edgeWeight) {
+        this(null, null, null, null, vertexCount, edgeSource, edgeTarget, edgeWeight, null);
+    }
+
+    /**
+     * Builds a snapshot from raw edge arrays, where edge i runs only from
+     * edgeSource[i] to edgeTarget[i] if oneWay[i] is set; the arrays are
+     * kept, not copied.
+     *
+     * @param vertexCount the number of vertices
+     * @param edgeSource the first endpoint of every edge
+     * @param edgeTarget the second endpoint of every edge
+     * @param edgeWeight the weight of every edge
+     * @param oneWay which edges are one-way, or null if none is
+     */
+    public CompactGraph(int vertexCount, int[] edgeSource, int[] edgeTarget, int[] edgeWeight, boolean[] oneWay) {
+        this(null, null, null, null, vertexCount, edgeSource, edgeTarget, edgeWeight, oneWay);
+    }
+
+    private CompactGraph(Town[] towns, Map<Town, Integer> index, String[] roadNames, int[] roadIds,
+            int vertexCount, int[] edgeSource, int[] edgeTarget, int[] edgeWeight, boolean[] oneWay) {
+        if (edgeSource.length != edgeTarget.length || edgeSource.length != edgeWeight.length
+                || (oneWay != null && oneWay.length != edgeSource.length)) {
+            throw new IllegalArgumentException("Edge arrays must have the same length.");
+        }
+        this.towns = towns;
+        this.index = index;
+        this.roadNames = roadNames;
+        this.roadIds = roadIds;
+        this.edgeSource = edgeSource;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+
+        int edgeCount = edgeSource.length;
+        offsets = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[edgeSource[e] + 1]++;
+            offsets[edgeTarget[e] + 1]++;
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        targets = new int[2 * edgeCount];
+        weights = new int[2 * edgeCount];
+        edgeOf = new int[2 * edgeCount];
+        int[] fill = new int[vertexCount];
+        System.arraycopy(offsets, 0, fill, 0, vertexCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edgeSource[e];
+            int b = edgeTarget[e];
+            int slot = fill[a]++;
+            targets[slot] = b;
+            weights[slot] = edgeWeight[e];
+            edgeOf[slot] = e;
+            slot = fill[b]++;
+            targets[slot] = a;
+            weights[slot] = edgeWeight[e];
+            edgeOf[slot] = e;
+        }
+
+        boolean directed = false;
+        for (int e = 0; oneWay != null && e < edgeCount && !directed; e++) {
+            directed = oneWay[e];
+        }
+        this.oneWay = directed ? oneWay : null;
+        if (!directed) {
+            outOffsets = inOffsets = offsets;
+            outTargets = inTargets = targets;
+            outWeights = inWeights = weights;
+            outEdgeOf = inEdgeOf = edgeOf;
+            return;
+        }
+        //the out-arcs skip each one-way road's half at its destination, the in-arcs its half at its source
+        outOffsets = new int[vertexCount + 1];
+        inOffsets = new int[vertexCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            outOffsets[edgeSource[e] + 1]++;
+            inOffsets[edgeTarget[e] + 1]++;
+            if (!oneWay[e]) {
+                outOffsets[edgeTarget[e] + 1]++;
+                inOffsets[edgeSource[e] + 1]++;
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            outOffsets[v + 1] += outOffsets[v];
+            inOffsets[v + 1] += inOffsets[v];
+        }
+        outTargets = new int[outOffsets[vertexCount]];
+        outWeights = new int[outTargets.length];
+        outEdgeOf = new int[outTargets.length];
+        inTargets = new int[inOffsets[vertexCount]];
+        inWeights = new int[inTargets.length];
+        inEdgeOf = new int[inTargets.length];
+        int[] outFill = Arrays.copyOf(outOffsets, vertexCount);
+        int[] inFill = Arrays.copyOf(inOffsets, vertexCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edgeSource[e];
+            int b = edgeTarget[e];
+            int slot = outFill[a]++;
+            outTargets[slot] = b;
+            outWeights[slot] = edgeWeight[e];
+            outEdgeOf[slot] = e;
+            slot = inFill[b]++;
+            inTargets[slot] = a;
+            inWeights[slot] = edgeWeight[e];
+            inEdgeOf[slot] = e;
+            if (!oneWay[e]) {
+                slot = outFill[b]++;
+                outTargets[slot] = a;
+                outWeights[slot] = edgeWeight[e];
+                outEdgeOf[slot] = e;
+                slot = inFill[a]++;
+                inTargets[slot] = b;
+                inWeights[slot] = edgeWeight[e];
+                inEdgeOf[slot] = e;
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of a graph.
+     *
+     * @param graph the graph to copy
+     * @return the compact snapshot
+     */
+    public static CompactGraph of(Graph graph) {
+        return of(graph, graph.vertexSet());
+    }
+
+    /**
+     * Takes a snapshot of the subnetwork induced by some of a graph's towns:
+     * the given towns and every road whose endpoints are both among them.
+     *
+     * @param graph the graph to copy
+     * @param subset the towns to keep; towns not in the graph are ignored
+     * @return the compact snapshot
+     */
+    public static CompactGraph of(Graph graph, Collection<Town> subset) {
+        Map<Town, Integer> index = new HashMap<>(subset.size() * 2);
+        List<Town> towns = new ArrayList<>(subset.size());
+        for (Town town : subset) {
+            if (graph.containsVertex(town) && !index.containsKey(town)) {
+                index.put(town, towns.size());
+                towns.add(town);
+            }
+        }
+        //read the road arrays by id, as Road objects would be built only to be taken apart again
+        int[] byId = new int[graph.townIdBound()];
+        Arrays.fill(byId, -1);
+        for (int v = 0; v < towns.size(); v++) {
+            byId[graph.idOf(towns.get(v))] = v;
+        }
+        int roadBound = graph.roadIdBound();
+        int count = 0;
+        for (int road = 0; road < roadBound; road++) {
+            if (graph.roadSource(road) >= 0 && byId[graph.roadSource(road)] >= 0
+                    && byId[graph.roadDestination(road)] >= 0) {
+                count++;
+            }
+        }
+        int[] source = new int[count];
+        int[] target = new int[count];
+        int[] weight = new int[count];
+        boolean[] oneWay = new boolean[count];
+        String[] roadNames = new String[count];
+        int[] roadIds = new int[count];
+        int e = 0;
+        for (int road = 0; road < roadBound; road++) {
+            if (graph.roadSource(road) >= 0 && byId[graph.roadSource(road)] >= 0
+                    && byId[graph.roadDestination(road)] >= 0) {
+                source[e] = byId[graph.roadSource(road)];
+                target[e] = byId[graph.roadDestination(road)];
+                weight[e] = graph.roadWeight(road);
+                oneWay[e] = graph.isOneWay(road);
+                roadNames[e] = graph.roadName(road);
+                roadIds[e++] = road;
+            }
+        }
+        return new CompactGraph(towns.toArray(new Town[0]), index, roadNames, roadIds,
+                towns.size(), source, target, weight, oneWay);
+    }
+
+    /**
+     * Gets the vertex at the other end of an edge.
+     *
+     * @param e the edge index
+     * @param v one endpoint of the edge
+     * @return the other endpoint
+     */
+    public int otherEnd(int e, int v) {
+        return edgeSource[e] == v ? edgeTarget[e] : edgeSource[e];
+    }
+
+    /**
+     * Gets the number of vertices.
+     *
+     * @return the number of vertices
+     */
+    public int vertexCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Gets the number of edges.
+     *
+     * @return the number of edges
+     */
+    public int edgeCount() {
+        return edgeSource.length;
+    }
+
+    /**
+     * Gets the index of a town in this snapshot.
+     *
+     * @param town the town
+     * @return the town's index, or -1 if it is not in the snapshot
+     */
+    public int indexOf(Town town) {
+        if (index == null) {
+            return -1;
+        }
+        Integer v = index.get(town);
+        return v == null ? -1 : v;
+    }
+
+    /**
+     * Gets the town at an index.
+     *
+     * @param v the vertex index
+     * @return the town, or null if the snapshot was built from raw arrays
+     */
+    public Town town(int v) {
+        return towns == null ? null : towns[v];
+    }
+
+    /**
+     * Gets the road for an edge index. The road is a new copy of the graph's
+     * road on every call.
+     *
+     * @param e the edge index
+     * @return the road, or null if the snapshot was built from raw arrays
+     */
+    public Road road(int e) {
+        if (roadNames == null) {
+            return null;
+        }
+        Road road = new Road(towns[edgeSource[e]], towns[edgeTarget[e]], edgeWeight[e], roadNames[e], isOneWay(e));
+        road.id = roadIds[e];
+        return road;
+    }
+
+    /**
+     * Gets the name of the road for an edge index.
+     *
+     * @param e the edge index
+     * @return the road's name, or null if the snapshot was built from raw arrays
+     */
+    public String roadName(int e) {
+        return roadNames == null ? null : roadNames[e];
+    }
+
+    /**
+     * Gets the graph's id of the road for an edge index.
+     *
+     * @param e the edge index
+     * @return the road id, or -1 if the snapshot was built from raw arrays
+     */
+    public int roadId(int e) {
+        return roadIds == null ? -1 : roadIds[e];
+    }
+
+    /**
+     * Gets the first endpoint of an edge.
+     *
+     * @param e the edge index
+     * @return the first endpoint
+     */
+    public int edgeSource(int e) {
+        return edgeSource[e];
+    }
+
+    /**
+     * Gets the second endpoint of an edge.
+     *
+     * @param e the edge index
+     * @return the second endpoint
+     */
+    public int edgeTarget(int e) {
+        return edgeTarget[e];
+    }
+
+    /**
+     * Gets the weight of an edge.
+     *
+     * @param e the edge index
+     * @return the weight
+     */
+    public int edgeWeight(int e) {
+        return edgeWeight[e];
+    }
+
+    /**
+     * Checks if any edge is one-way, so the out-arcs and in-arcs differ from
+     * the half-edges.
+     *
+     * @return true if the graph has a one-way edge
+     */
+    public boolean isDirected() {
+        return oneWay != null;
+    }
+
+    /**
+     * Checks if an edge is one-way.
+     *
+     * @param e the edge index
+     * @return true if the edge runs only from its first endpoint to its second
+     */
+    public boolean isOneWay(int e) {
+        return oneWay != null && oneWay[e];
+    }
+
+    /**
+     * Gets the start of a vertex's half-edge range; the range ends at
+     * {@code firstArc(v + 1)}. Every edge at the vertex is in the range,
+     * whichever way it runs.
+     *
+     * @param v the vertex index
+     * @return the first half-edge of the vertex
+     */
+    public int firstArc(int v) {
+        return offsets[v];
+    }
+
+    /**
+     * Gets the vertex a half-edge leads to.
+     *
+     * @param arc the half-edge
+     * @return the head vertex
+     */
+    public int arcTarget(int arc) {
+        return targets[arc];
+    }
+
+    /**
+     * Gets the weight of a half-edge.
+     *
+     * @param arc the half-edge
+     * @return the weight
+     */
+    public int arcWeight(int arc) {
+        return weights[arc];
+    }
+
+    /**
+     * Gets the edge a half-edge belongs to.
+     *
+     * @param arc the half-edge
+     * @return the edge index
+     */
+    public int arcEdge(int arc) {
+        return edgeOf[arc];
+    }
+
+    /**
+     * Gets the start of a vertex's out-arc range, the edges that can be
+     * travelled away from it; the range ends at {@code firstOutArc(v + 1)}.
+     *
+     * @param v the vertex index
+     * @return the first out-arc of the vertex
+     */
+    public int firstOutArc(int v) {
+        return outOffsets[v];
+    }
+
+    /**
+     * Gets the vertex an out-arc leads to.
+     *
+     * @param arc the out-arc
+     * @return the head vertex
+     */
+    public int outArcTarget(int arc) {
+        return outTargets[arc];
+    }
+
+    /**
+     * Gets the weight of an out-arc.
+     *
+     * @param arc the out-arc
+     * @return the weight
+     */
+    public int outArcWeight(int arc) {
+        return outWeights[arc];
+    }
+
+    /**
+     * Gets the edge an out-arc belongs to.
+     *
+     * @param arc the out-arc
+     * @return the edge index
+     */
+    public int outArcEdge(int arc) {
+        return outEdgeOf[arc];
+    }
+
+    /**
+     * Gets the start of a vertex's in-arc range, the edges that can be
+     * travelled into it; the range ends at {@code firstInArc(v + 1)}.
+     *
+     * @param v the vertex index
+     * @return the first in-arc of the vertex
+     */
+    public int firstInArc(int v) {
+        return inOffsets[v];
+    }
+
+    /**
+     * Gets the vertex an in-arc comes from.
+     *
+     * @param arc the in-arc
+     * @return the tail vertex
+     */
+    public int inArcSource(int arc) {
+        return inTargets[arc];
+    }
+
+    /**
+     * Gets the weight of an in-arc.
+     *
+     * @param arc the in-arc
+     * @return the weight
+     */
+    public int inArcWeight(int arc) {
+        return inWeights[arc];
+    }
+
+    /**
+     * Gets the edge an in-arc belongs to.
+     *
+     * @param arc the in-arc
+     * @return the edge index
+     */
+    public int inArcEdge(int arc) {
+        return inEdgeOf[arc];
+    }
+}
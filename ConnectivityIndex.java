@@ -0,0 +1,114 @@
+/**
+ * Maintains the connected components of a graph so reachability can be
+ * answered in nearly constant time before a search is started. Added towns and
+ * roads are merged in incrementally; removals only mark the index stale and it
+ * is rebuilt from the graph on the next query. Towns are identified by the ids
+ * their graph gave them. Methods are synchronized because a query may rebuild
+ * the index while other threads are only reading the graph.
+ *
+ * @author Liam Ghershony
+ */
+public class ConnectivityIndex {
+
+    private UnionFind components = new UnionFind();
+    private int towns;
+    private boolean stale;
+
+    /**
+     * Records a town added to the graph.
+     *
+     * @param id the new town's id
+     */
+    public synchronized void townAdded(int id) {
+        if (stale) {
+            return;
+        }
+        while (components.elements() <= id) {
+            components.makeSet();
+        }
+        towns++;
+    }
+
+    /**
+     * Records a road added to the graph.
+     *
+     * @param source the id of one end of the road
+     * @param destination the id of the other end of the road
+     */
+    public synchronized void roadAdded(int source, int destination) {
+        if (!stale) {
+            components.union(source, destination);
+        }
+    }
+
+    /**
+     * Records that a town or road was removed. Union-find cannot split a set,
+     * so the index is rebuilt the next time it is queried.
+     */
+    public synchronized void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Checks if two towns lie in the same connected component.
+     *
+     * @param graph the graph the index belongs to
+     * @param a the id of the first town, or -1 if it is not in the graph
+     * @param b the id of the second town, or -1 if it is not in the graph
+     * @return true if a path may exist between the towns, false if none can
+     */
+    public synchronized boolean connected(Graph graph, int a, int b) {
+        if (a < 0 || b < 0) {
+            return false;
+        }
+        rebuildIfStale(graph);
+        return components.connected(a, b);
+    }
+
+    /**
+     * Gets the number of connected components.
+     *
+     * @param graph the graph the index belongs to
+     * @return the number of components
+     */
+    public synchronized int componentCount(Graph graph) {
+        rebuildIfStale(graph);
+        return components.sets() - (components.elements() - towns);
+    }
+
+    /**
+     * Gets the number of towns in a town's component.
+     *
+     * @param graph the graph the index belongs to
+     * @param id the town's id, or -1 if it is not in the graph
+     * @return the size of the town's component, or 0 if it is not in the graph
+     */
+    public synchronized int componentSize(Graph graph, int id) {
+        if (id < 0) {
+            return 0;
+        }
+        rebuildIfStale(graph);
+        return components.sizeOf(id);
+    }
+
+    private void rebuildIfStale(Graph graph) {
+        if (!stale) {
+            return;
+        }
+        int bound = graph.townIdBound();
+        components = new UnionFind(bound);
+        towns = 0;
+        stale = false;
+        for (int id = 0; id < bound; id++) {
+            if (graph.hasTown(id)) {
+                towns++;
+            }
+        }
+        for (int road = 0, roads = graph.roadIdBound(); road < roads; road++) {
+            int source = graph.roadSource(road);
+            if (source >= 0) {
+                components.union(source, graph.roadDestination(road));
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream that counts the bytes read through it, so a reader on top
+ * can report how far into a file it is.
+ *
+ * @author Liam Ghershony
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    /**
+     * Wraps a stream.
+     *
+     * @param in the stream to count
+     */
+    public CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Gets the number of bytes read so far.
+     *
+     * @return the byte count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count += n;
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        count += skipped;
+        return skipped;
+    }
+}
@@ -3,30 +3,42 @@
 
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
+import javafx.scene.Node;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.scene.Scene;
 import javafx.stage.FileChooser;
+import javafx.stage.Stage;
 
 public class FXMainPane extends VBox {
 	Label addTownLabel, townNameLabel, addRoadLabel, roadNameLabel, selectTownsForRoadLabel, findConnectionLabel, findConnectionFromLabel, toLabel, distLabel;
 	VBox addTownVBox, addRoadVBox, findConnectionVBox, bottomVBox;
 	HBox addTownHBox, addRoadNameHBox, addRoadHBox, addRoadTownsHBox, findConnectionHBox, bottomHBox;
-	Button addTownButton, addRoadButton, findConnectionButton, readFileButton, exitButton;
-	Button displayTownsButton, displayRoadsButton;
+	Button addTownButton, addRoadButton, findConnectionButton, readFileButton, exitButton, cancelLoadButton;
+	ProgressBar loadProgressBar;
+	Label loadStatusLabel;
+	Button displayTownsButton, displayRoadsButton, showMapButton;
+	MapCanvasPane mapPane;
 	TextField addTownTextField, addRoadTextField, specifyDistanceTextField;
 	TextArea findConnectionTextArea, displayTowns, displayRoads;
 	ComboBox<String> addSourceTownComboBox, addDestTownComboBox, sourceConnectionComboBox, destConnectionComboBox; 
@@ -34,6 +46,18 @@ public class FXMainPane extends VBox {
 
 	TownGraphManager graph;
 	private Alert alert = new Alert(AlertType.INFORMATION);
+	//above this many towns the ComboBoxes are typed into and filled as the user types
+	private static final int LAZY_COMBO_THRESHOLD = 2000;
+	private static final int SUGGESTION_LIMIT = 50;
+	private boolean lazyComboBoxes;
+	//route queries run here so a long search never blocks the FX thread
+	private final ExecutorService routeExecutor = Executors.newFixedThreadPool(2, runnable -> {
+		Thread worker = new Thread(runnable, "route-worker");
+		worker.setDaemon(true);
+		return worker;
+	});
+	private Future<?> pendingRoute;
+	private int routeRequest;
 	
 	
 	FXMainPane() {
@@ -195,39 +219,51 @@ public class FXMainPane extends VBox {
 	    bottomHBox = new HBox();
 		readFileButton = new Button("Read File");
 		exitButton =new Button("Exit");
+		showMapButton = new Button("Show Map");
+		//progress of a file being loaded, only shown while loading
+		loadProgressBar = new ProgressBar(0);
+		loadStatusLabel = new Label();
+		cancelLoadButton = new Button("Cancel");
+		loadProgressBar.setVisible(false);
+		loadStatusLabel.setVisible(false);
+		cancelLoadButton.setVisible(false);
 
 		bottomVBox = new VBox();
 		bottomVBox.getChildren().addAll(bottomHBox);
 		bottomVBox.setStyle("-fx-border-color: gray;");
 
-		bottomHBox.getChildren().addAll(readFileButton, exitButton);
+		bottomHBox.getChildren().addAll(readFileButton, showMapButton, exitButton, loadProgressBar, loadStatusLabel, cancelLoadButton);
 		
 		bottomHBox.setAlignment(Pos.CENTER);
 
 		VBox.setMargin(bottomHBox,inset);
 	    HBox.setMargin(readFileButton, inset);
 	    HBox.setMargin(exitButton, inset);
+	    HBox.setMargin(showMapButton, inset);
+	    HBox.setMargin(loadProgressBar, inset);
+	    HBox.setMargin(loadStatusLabel, inset);
+	    HBox.setMargin(cancelLoadButton, inset);
 
 		getChildren().addAll(addTown, addRoad, findConnectionVBox, bottomHBox);
 		
 		//event handling for buttons
 		displayTownsButton.setOnAction(event -> {
 			ArrayList<String> towns = graph.allTowns();
-			String result = "";
+			StringBuilder result = new StringBuilder();
 			for(String element : towns)
 			{
-				result += element+"\n";
+				result.append(element).append('\n');
 			}
-			displayTowns.setText(result);
+			displayTowns.setText(result.toString());
 		});
 		displayRoadsButton.setOnAction(event -> {
 			ArrayList<String> roads = graph.allRoads();
-			String result = "";
+			StringBuilder result = new StringBuilder();
 			for(String element : roads)
 			{
-				result += element+"\n";
+				result.append(element).append('\n');
 			}
-			displayRoads.setText(result);
+			displayRoads.setText(result.toString());
 		});
 		addRoadButton.setOnAction(event -> {
 			Town town1;
@@ -290,29 +326,34 @@ public class FXMainPane extends VBox {
 		findConnectionButton.setOnAction(event -> {
 			Town town1;
 			Town town2;
-			String result = "";
 			try {
 				town1 = graph.getTown(sourceConnectionComboBox.getValue().toString());
 				town2 = graph.getTown(destConnectionComboBox.getValue().toString());
 			} catch (NullPointerException e) {
 				town1 = town2 = null;
 			}
-			findConnectionTextArea.setText("");
-			ArrayList<String> path = graph.getPath(town1.getName(), town2.getName());
-			if (town1.equals(town2)){
-				findConnectionTextArea.appendText("Select two different towns");
+			cancelRoute();
+			if (town1 == null || town2 == null) {
+				findConnectionTextArea.setText("Select two towns");
 			}
-			else if (path.isEmpty()){
-				findConnectionTextArea.appendText("You can't get there from here");
+			else if (town1.equals(town2)){
+				findConnectionTextArea.setText("Select two different towns");
 			}
 			else {
-				for (String s : path){
-					result+=s+"\n";
-					//findConnectionTextArea.appendText(s);
-					findConnectionTextArea.setText(result);
-				}
+				findConnectionTextArea.setText("Finding a route...");
+				findRoute(town1.getName(), town2.getName());
 			}
 		});
+		//a route for towns that are no longer selected is not worth finishing
+		sourceConnectionComboBox.valueProperty().addListener((observable, oldTown, town) -> cancelRoute());
+		destConnectionComboBox.valueProperty().addListener((observable, oldTown, town) -> cancelRoute());
+		for (ComboBox<String> comboBox : townComboBoxes()) {
+			comboBox.getEditor().textProperty().addListener((observable, oldText, text) -> {
+				if (lazyComboBoxes && comboBox.getEditor().isFocused()) {
+					suggestTowns(comboBox, text);
+				}
+			});
+		}
 		readFileButton.setOnAction(event -> {
 			try {
 				readFile();
@@ -320,6 +361,7 @@ public class FXMainPane extends VBox {
 				e.printStackTrace();
 			}
 		});
+		showMapButton.setOnAction(event -> showMap());
 		exitButton.setOnAction(event -> {
        	 	Platform.exit();
        	 	System.exit(0);
@@ -328,40 +370,170 @@ public class FXMainPane extends VBox {
 	}
 	//update the ComboBoxes that contain the town names
 	public void updateComboBoxes() {
+		if (graph.getTownCount() > LAZY_COMBO_THRESHOLD) {
+			//too many towns to list; switch to typing with suggestions instead
+			if (!lazyComboBoxes) {
+				lazyComboBoxes = true;
+				for (ComboBox<String> comboBox : townComboBoxes()) {
+					comboBox.getItems().clear();
+					comboBox.setEditable(true);
+					comboBox.setPromptText("Type a town");
+				}
+			}
+			return;
+		}
 		ArrayList<String> townList = graph.allTowns();
-		for (String town : townList){
-			addDestTownComboBox.getItems().clear();
-			sourceConnectionComboBox.getItems().clear();
-			destConnectionComboBox.getItems().clear();
-			addSourceTownComboBox.getItems().clear();
+		//one change per box, so each list is replaced and redrawn once
+		for (ComboBox<String> comboBox : townComboBoxes()) {
+			comboBox.getItems().setAll(townList);
 		}
-		for (String town : townList){
-			addDestTownComboBox.getItems().addAll(town);
-			sourceConnectionComboBox.getItems().addAll(town);
-			destConnectionComboBox.getItems().addAll(town);
-			addSourceTownComboBox.getItems().addAll(town); 
-		}	
 	}
 	
-	//Select the file to read the Towns and Roads from
+	//fill a ComboBox with the towns matching what has been typed into it
+	private void suggestTowns(ComboBox<String> comboBox, String text) {
+		ArrayList<String> suggestions = graph.suggestTowns(text == null ? "" : text, SUGGESTION_LIMIT);
+		comboBox.getItems().setAll(suggestions);
+		if (suggestions.isEmpty()) {
+			comboBox.hide();
+		}
+		else {
+			comboBox.show();
+		}
+	}
+
+	//find the route on a worker thread and show it with a single update of the text area
+	private void findRoute(String source, String destination) {
+		int request = ++routeRequest;
+		MapCanvasPane map = mapPane;
+		pendingRoute = routeExecutor.submit(() -> {
+			String text;
+			ArrayList<String> routeTowns = null;
+			try {
+				//one search gives both the steps and the towns to highlight
+				LandmarkIndex.Route route = graph.getRoute(source, destination);
+				StringBuilder result = new StringBuilder();
+				if (route.getSteps().isEmpty()) {
+					result.append("You can't get there from here");
+				}
+				for (String step : route.getSteps()) {
+					result.append(step).append('\n');
+				}
+				text = result.toString();
+				if (map != null) {
+					routeTowns = route.getTowns();
+				}
+			} catch (CancellationException e) {
+				//cancelRoute interrupted the search; a newer request owns the text area
+				return;
+			} catch (RuntimeException e) {
+				text = "Problem finding a route: " + e.getMessage();
+			}
+			String shown = text;
+			ArrayList<String> highlighted = routeTowns;
+			Platform.runLater(() -> {
+				//a newer request or a change of towns supersedes this one
+				if (request == routeRequest) {
+					findConnectionTextArea.setText(shown);
+					if (highlighted != null) {
+						map.highlightRoute(highlighted);
+					}
+					pendingRoute = null;
+				}
+			});
+		});
+	}
+
+	//open the map in its own window, or bring the open one to the front
+	private void showMap() {
+		if (mapPane != null) {
+			mapPane.getScene().getWindow().requestFocus();
+			return;
+		}
+		mapPane = new MapCanvasPane(graph);
+		Stage mapStage = new Stage();
+		mapStage.setTitle("Map");
+		mapStage.setScene(new Scene(mapPane, 800, 600));
+		mapStage.setOnHidden(event -> {
+			mapPane.stop();
+			mapPane = null;
+		});
+		mapStage.show();
+		mapPane.refresh();
+	}
+
+	//interrupting the worker stops its search, freeing the thread and the read lock
+	private void cancelRoute() {
+		routeRequest++;
+		if (pendingRoute != null) {
+			pendingRoute.cancel(true);
+			pendingRoute = null;
+		}
+	}
+
+	private ArrayList<ComboBox<String>> townComboBoxes() {
+		ArrayList<ComboBox<String>> comboBoxes = new ArrayList<>();
+		comboBoxes.add(addSourceTownComboBox);
+		comboBoxes.add(addDestTownComboBox);
+		comboBoxes.add(sourceConnectionComboBox);
+		comboBoxes.add(destConnectionComboBox);
+		return comboBoxes;
+	}
+
+	//Select the files to read the Towns and Roads from, plain or gzipped shards of one export, and load them in the background
 	public void readFile() {
 		FileChooser chooser = new FileChooser();
-		File selectedFile = null;
-		try {
-			selectedFile = chooser.showOpenDialog(null);
-			if(selectedFile != null) {
-				graph.populateTownGraph(selectedFile);
-				}
-			updateComboBoxes();
-		} catch (FileNotFoundException e) {
-			alert.setTitle("File Error");
-			alert.setHeaderText("File not found");
-			alert.showAndWait();
+		List<File> selectedFiles = chooser.showOpenMultipleDialog(null);
+		if (selectedFiles == null) {
+			return;
 		}
-		catch (IOException e) {
+		Task<Boolean> load = new Task<Boolean>() {
+			@Override
+			protected Boolean call() throws Exception {
+				return graph.populateTownGraph(selectedFiles, (bytes, total, lines, towns, roads) -> {
+					updateProgress(bytes, Math.max(total, 1));
+					updateMessage(String.format("%,d lines, %,d towns, %,d roads", lines, towns, roads));
+					return !isCancelled();
+				});
+			}
+		};
+		loadProgressBar.progressProperty().bind(load.progressProperty());
+		loadStatusLabel.textProperty().bind(load.messageProperty());
+		cancelLoadButton.setOnAction(event -> load.cancel());
+		//the graph is not safe to use while it is being loaded, so lock the rest of the window
+		setLoading(true);
+		load.setOnSucceeded(event -> finishLoading());
+		load.setOnCancelled(event -> finishLoading());
+		load.setOnFailed(event -> {
+			finishLoading();
 			alert.setTitle("File Error");
-			alert.setHeaderText("Input error");
+			alert.setHeaderText(load.getException() instanceof FileNotFoundException ? "File not found" : "Input error");
 			alert.showAndWait();
+		});
+		Thread loader = new Thread(load, "town-file-loader");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
+	//update the ComboBoxes once for everything that was loaded
+	private void finishLoading() {
+		loadProgressBar.progressProperty().unbind();
+		loadStatusLabel.textProperty().unbind();
+		setLoading(false);
+		updateComboBoxes();
+		if (mapPane != null) {
+			mapPane.refresh();
+		}
+	}
+
+	private void setLoading(boolean loading) {
+		for (Node child : getChildren()) {
+			if (child != bottomHBox) {
+				child.setDisable(loading);
+			}
 		}
+		readFileButton.setDisable(loading);
+		loadProgressBar.setVisible(loading);
+		loadStatusLabel.setVisible(loading);
+		cancelLoadButton.setVisible(loading);
 	}
 }
@@ -2,20 +2,40 @@ import java.util.*;
 
 /**
  * Implements graph with towns as vertices and roads as edges.
+ * Roads are stored by id in parallel arrays and each town's roads are threaded
+ * through a linked list of half-edges, so a road costs a few ints rather than
+ * an object, two list slots and a hash set entry. Road objects are created
+ * only when handed out through the public interface.
+ * A one-way road keeps both half-edges, so it is still among the roads of
+ * both its towns, but searches only follow it out of its source's list.
  * @author Liam Ghershony
  */
 public class Graph implements GraphInterface<Town, Road> {
-    private Map<Town, List<Road>> adjacencyList;
-    private Set<Town> vertices;
-    private Set<Road> edges;
+    private TownRegistry towns;
+    private int[] firstHalf = new int[16];
+    private int[] lastHalf = new int[16];
+    private int[] roadSource = new int[16];
+    private int[] roadDestination = new int[16];
+    private int[] roadWeight = new int[16];
+    private int[] roadName = new int[16];
+    private final BitSet oneWay = new BitSet();
+    private int oneWayCount;
+    private final NameDictionary roadNames = new NameDictionary();
+    private int[] nextHalf = new int[32];
+    private int roadCount;
+    private int[] freeRoadIds = new int[16];
+    private int freeRoadCount;
+    private int roadIdBound;
+    private ConnectivityIndex components = new ConnectivityIndex();
+    private int version;
+    private final SearchState state = new SearchState();
+    private final ThreadLocal<SearchState> localState = ThreadLocal.withInitial(SearchState::new);
 
     /**
      * Constructs a new graph.
      */
     public Graph() {
-        adjacencyList = new HashMap<>();
-        vertices = new HashSet<>();
-        edges = new HashSet<>();
+        towns = new TownRegistry();
     }
 
     /**
@@ -25,22 +45,19 @@ public class Graph implements GraphInterface<Town, Road> {
      * @param destination the destination town
      * @return the road between the two towns, or null if no road exists
      */
-    
+
     @Override
     public Road getEdge(Town source, Town destination) {
-        List<Road> roads = adjacencyList.get(source);
-        if (roads != null) {
-            for (Road road : roads) {
-                if ((road.getDestination().equals(destination) && road.getSource().equals(source)) ||
-                    (road.getSource().equals(destination) && road.getDestination().equals(source))) {
-                    return road;
-                }
-            }
+        int sourceId = towns.idOf(source);
+        int destinationId = towns.idOf(destination);
+        if (sourceId < 0 || destinationId < 0) {
+            return null;
         }
-        return null;
+        int road = findRoad(sourceId, destinationId);
+        return road < 0 ? null : road(road);
     }
 
-    
+
     /**
      * Adds a new road between two towns with a weight and description.
      *
@@ -50,20 +67,134 @@ public class Graph implements GraphInterface<Town, Road> {
      * @param description the description of the road
      * @return the newly added road
      */
-    
+
     @Override
     public Road addEdge(Town source, Town destination, int weight, String description) {
+        return addEdge(source, destination, weight, description, false);
+    }
+
+    /**
+     * Adds a new road between two towns, one-way from the source to the
+     * destination if asked.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @param weight the weight of the road
+     * @param description the description of the road
+     * @param oneWay true if the road runs only from source to destination
+     * @return the newly added road
+     */
+    public Road addEdge(Town source, Town destination, int weight, String description, boolean oneWay) {
         if (source == null || destination == null) {
             throw new NullPointerException("Source or destination cannot be null.");
         }
-        if (!vertices.contains(source) || !vertices.contains(destination)) {
+        int sourceId = towns.idOf(source);
+        int destinationId = towns.idOf(destination);
+        if (sourceId < 0 || destinationId < 0) {
             throw new IllegalArgumentException("Both vertices must be added before adding an edge.");
         }
-        Road newRoad = new Road(source, destination, weight, description);
-        adjacencyList.get(source).add(newRoad);
-        adjacencyList.get(destination).add(newRoad);
-        edges.add(newRoad);
-        return newRoad;
+        int road = insertRoad(sourceId, destinationId, weight, description, oneWay);
+        version++;
+        return road(road);
+    }
+
+    /**
+     * Adds many roads in one pass. Every record is checked before anything
+     * changes, the road arrays are grown once, records that repeat a road
+     * already in the graph or earlier in the batch are skipped, and the
+     * version is bumped once for the batch.
+     *
+     * @param roads the roads to add
+     * @return the roads that were added, in order
+     * @throws IllegalArgumentException if a record names a town not in the graph
+     */
+    public ArrayList<RoadRecord> addEdges(Collection<RoadRecord> roads) {
+        int[] ends = new int[2 * roads.size()];
+        int r = 0;
+        for (RoadRecord record : roads) {
+            int source = towns.idOf(record.getTown1());
+            int destination = towns.idOf(record.getTown2());
+            if (source < 0 || destination < 0) {
+                throw new IllegalArgumentException("Town " + (source < 0 ? record.getTown1() : record.getTown2())
+                        + " must be added before adding a road to it.");
+            }
+            ends[r++] = source;
+            ends[r++] = destination;
+        }
+        reserveRoadIds(roads.size());
+        ArrayList<RoadRecord> added = new ArrayList<>(roads.size());
+        r = 0;
+        for (RoadRecord record : roads) {
+            int source = ends[r++];
+            int destination = ends[r++];
+            //a repeat, from before or within the batch, is already on the source's list
+            if (!hasRoad(source, destination, record.getWeight(), record.getName(), record.isOneWay())) {
+                insertRoad(source, destination, record.getWeight(), record.getName(), record.isOneWay());
+                added.add(record);
+            }
+        }
+        if (!added.isEmpty()) {
+            version++;
+        }
+        return added;
+    }
+
+    /**
+     * Removes many roads in one pass, each matched by its towns and name,
+     * bumping the version once for the batch. Records matching no road are
+     * skipped.
+     *
+     * @param roads the roads to remove; their weights are not compared
+     * @return the roads that were removed, in order
+     */
+    public ArrayList<RoadRecord> removeEdges(Collection<RoadRecord> roads) {
+        ArrayList<RoadRecord> removed = new ArrayList<>();
+        for (RoadRecord record : roads) {
+            int source = towns.idOf(record.getTown1());
+            int destination = towns.idOf(record.getTown2());
+            int road = source < 0 || destination < 0 ? -1 : findRoad(source, destination, record.getName());
+            if (road >= 0) {
+                unlinkRoad(road);
+                removed.add(record);
+            }
+        }
+        if (!removed.isEmpty()) {
+            components.invalidate();
+            version++;
+        }
+        return removed;
+    }
+
+    /**
+     * Changes the weights of many roads in one pass, each matched by its
+     * towns and name, bumping the version once for the batch. Records
+     * matching no road, or giving a road the weight it already has, are
+     * skipped. Every weight is checked before anything changes.
+     *
+     * @param roads the roads with their new weights
+     * @return the roads whose weights changed, with their new weights, in order
+     * @throws IllegalArgumentException if a weight is negative
+     */
+    public ArrayList<Road> setEdgeWeights(Collection<RoadRecord> roads) {
+        for (RoadRecord record : roads) {
+            if (record.getWeight() < 0) {
+                throw new IllegalArgumentException("Weights cannot be negative.");
+            }
+        }
+        ArrayList<Road> changed = new ArrayList<>();
+        for (RoadRecord record : roads) {
+            int source = towns.idOf(record.getTown1());
+            int destination = towns.idOf(record.getTown2());
+            int road = source < 0 || destination < 0 ? -1 : findRoad(source, destination, record.getName());
+            if (road >= 0 && roadWeight[road] != record.getWeight()) {
+                roadWeight[road] = record.getWeight();
+                changed.add(road(road));
+            }
+        }
+        if (!changed.isEmpty()) {
+            version++;
+        }
+        return changed;
     }
 
     /**
@@ -72,18 +203,42 @@ public class Graph implements GraphInterface<Town, Road> {
      * @param vertex the town to add
      * @return true if the town was added successfully, false otherwise
      */
-    
+
     @Override
     public boolean addVertex(Town vertex) {
         if (vertex == null) {
             throw new NullPointerException("Vertex cannot be null.");
         }
-        if (!vertices.contains(vertex)) {
-            vertices.add(vertex);
-            adjacencyList.put(vertex, new ArrayList<>());
-            return true;
+        if (!insertTown(vertex)) {
+            return false;
         }
-        return false;
+        version++;
+        return true;
+    }
+
+    /**
+     * Adds many towns in one pass, bumping the version once for the batch.
+     * Towns already in the graph are skipped.
+     *
+     * @param vertices the towns to add
+     * @return the towns that were added, in order
+     */
+    public ArrayList<Town> addVertices(Collection<Town> vertices) {
+        for (Town vertex : vertices) {
+            if (vertex == null) {
+                throw new NullPointerException("Vertex cannot be null.");
+            }
+        }
+        ArrayList<Town> added = new ArrayList<>(vertices.size());
+        for (Town vertex : vertices) {
+            if (insertTown(vertex)) {
+                added.add(vertex);
+            }
+        }
+        if (!added.isEmpty()) {
+            version++;
+        }
+        return added;
     }
 
     /**
@@ -92,10 +247,10 @@ public class Graph implements GraphInterface<Town, Road> {
      * @param vertex the town to check
      * @return true if the town is in the graph, false otherwise
      */
-    
+
     @Override
     public boolean containsVertex(Town vertex) {
-        return vertices.contains(vertex);
+        return towns.idOf(vertex) >= 0;
     }
 
     /**
@@ -105,7 +260,7 @@ public class Graph implements GraphInterface<Town, Road> {
      * @param destination the destination town
      * @return true if there is an edge between the towns, false otherwise
      */
-    
+
     @Override
     public boolean containsEdge(Town source, Town destination) {
         return getEdge(source, destination) != null;
@@ -116,10 +271,16 @@ public class Graph implements GraphInterface<Town, Road> {
      *
      * @return the set of edges
      */
-    
+
     @Override
     public Set<Road> edgeSet() {
-        return new HashSet<>(edges);
+        Set<Road> roads = new HashSet<>(roadCount * 2);
+        for (int road = 0; road < roadIdBound; road++) {
+            if (roadSource[road] >= 0) {
+                roads.add(road(road));
+            }
+        }
+        return roads;
     }
 
     /**
@@ -128,27 +289,31 @@ public class Graph implements GraphInterface<Town, Road> {
      * @param vertex the town
      * @return the set of edges incident to the town
      */
-    
+
     @Override
     public Set<Road> edgesOf(Town vertex) {
-        List<Road> roads = adjacencyList.get(vertex);
-        if (roads == null) {
+        int id = towns.idOf(vertex);
+        if (id < 0) {
             return Collections.emptySet();
         }
-        return new HashSet<>(roads);
+        Set<Road> roads = new HashSet<>();
+        for (int half = firstHalf[id]; half != -1; half = nextHalf[half]) {
+            roads.add(road(half >> 1));
+        }
+        return roads;
     }
 
     @Override
     public Road removeEdge(Town source, Town destination, int weight, String description) {
         Road road = getEdge(source, destination);
         if (road != null && road.getWeight() == weight && road.getName().equals(description)) {
-            adjacencyList.get(source).remove(road);
-            adjacencyList.get(destination).remove(road);
-            edges.remove(road);
+            unlinkRoad(road.id);
+            components.invalidate();
+            version++;
         }
         return road;
     }
-    
+
     /**
      * Removes an edge between two towns.
      *
@@ -161,31 +326,93 @@ public class Graph implements GraphInterface<Town, Road> {
 
     @Override
     public boolean removeVertex(Town vertex) {
-        if (vertices.remove(vertex)) {
-            List<Road> adjacentRoads = new ArrayList<>(adjacencyList.get(vertex));
-            for (Road road : adjacentRoads) {
-                adjacencyList.get(road.getSource()).remove(road);
-                adjacencyList.get(road.getDestination()).remove(road);
-                edges.remove(road);
+        int id = towns.idOf(vertex);
+        if (id >= 0) {
+            while (firstHalf[id] != -1) {
+                unlinkRoad(firstHalf[id] >> 1);
             }
-            adjacencyList.remove(vertex);
+            towns.remove(id);
+            components.invalidate();
+            version++;
             return true;
         }
         return false;
     }
 
+    /**
+     * Gets the town in the graph with a given name.
+     *
+     * @param name the name of the town
+     * @return the town, or null if the graph has no town with that name
+     */
+    public Town getTown(String name) {
+        int id = towns.idOf(name);
+        return id < 0 ? null : towns.town(id);
+    }
+
+    /**
+     * Checks if two towns lie in the same connected component, i.e. whether a
+     * path between them can exist. Answered from a maintained union-find index
+     * without running a search. Roads count both ways here, so with one-way
+     * roads two connected towns may still have no path from one to the other.
+     *
+     * @param source the first town
+     * @param destination the second town
+     * @return true if both towns are in the graph and connected, false otherwise
+     */
+    public boolean isConnected(Town source, Town destination) {
+        return components.connected(this, towns.idOf(source), towns.idOf(destination));
+    }
+
+    /**
+     * Gets the number of connected components in the graph.
+     *
+     * @return the number of components
+     */
+    public int componentCount() {
+        return components.componentCount(this);
+    }
+
+    /**
+     * Checks if any road in the graph is one-way. Indexes that assume every
+     * road runs both ways can only be built while there are none.
+     *
+     * @return true if the graph has a one-way road
+     */
+    public boolean hasOneWayRoads() {
+        return oneWayCount > 0;
+    }
+
+    /**
+     * Gets the modification version of the graph. The version changes every
+     * time a town or road is added or removed, so derived indices can tell
+     * whether they are still current.
+     *
+     * @return the current version
+     */
+    public int getVersion() {
+        return version;
+    }
+
     /**
      * Gets the set of vertices (towns) in the graph.
      *
      * @return the set of vertices
      */
-    
+
     @Override
     public Set<Town> vertexSet() {
-        return new HashSet<>(vertices);
+        Set<Town> vertices = new HashSet<>(towns.size() * 2);
+        for (int id = 0; id < towns.bound(); id++) {
+            Town town = towns.town(id);
+            if (town != null) {
+                vertices.add(town);
+            }
+        }
+        return vertices;
     }
 
-    
+
     /**
      * Finds the shortest path between two towns using Dijkstra's algorithm.
      *
@@ -193,69 +420,559 @@ public class Graph implements GraphInterface<Town, Road> {
      * @param destination the destination town
      * @return the shortest path as a list of road descriptions, or an empty list if no path exists
      */
-    
+
     @Override
     public ArrayList<String> shortestPath(Town source, Town destination) {
+        if (!isConnected(source, destination)) {
+            return new ArrayList<>();
+        }
         dijkstraShortestPath(source);
-        List<String> path = new ArrayList<>();
-        Town step = destination;
+        int step = towns.idOf(destination);
+        if (state.via(step) < 0) {
+            return new ArrayList<>();
+        }
+        return describePath(towns.idOf(source), step, state, null);
+    }
+
+    /**
+     * Finds the shortest path between two towns as seen through an overlay.
+     * Closed roads and banned towns are skipped and scaled roads use their
+     * overlay weight. The search keeps its state local to the call, so it does
+     * not disturb the results of {@link #dijkstraShortestPath(Town)} and can
+     * run alongside other overlay queries.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @param overlay the overlay to apply, or null for none
+     * @return the shortest path as a list of road descriptions, or an empty list if no path exists
+     * @throws IllegalStateException if the overlay is stale
+     */
+    public ArrayList<String> shortestPath(Town source, Town destination, RouteOverlay overlay) {
+        int sourceId = towns.idOf(source);
+        int destinationId = towns.idOf(destination);
+        SearchState local = localState.get();
+        if (search(sourceId, destinationId, overlay, local) < 0 || sourceId == destinationId) {
+            return new ArrayList<>();
+        }
+        return describePath(sourceId, destinationId, local, overlay);
+    }
+
+    /**
+     * Finds the towns along the shortest path between two towns, e.g. to
+     * highlight the route on a map. Like the overlay search it keeps its
+     * state local to the call.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the towns from source to destination, or an empty list if no path exists
+     */
+    public ArrayList<Town> shortestPathTowns(Town source, Town destination) {
+        int sourceId = towns.idOf(source);
+        int destinationId = towns.idOf(destination);
+        SearchState local = localState.get();
+        ArrayList<Town> route = new ArrayList<>();
+        if (search(sourceId, destinationId, null, local) < 0) {
+            return route;
+        }
+        for (int step = destinationId; step != sourceId; ) {
+            route.add(towns.town(step));
+            int road = local.via(step);
+            step = roadSource[road] == step ? roadDestination[road] : roadSource[road];
+        }
+        route.add(towns.town(sourceId));
+        Collections.reverse(route);
+        return route;
+    }
+
+    /**
+     * Finds the shortest path between two towns with a single search,
+     * giving its steps, the towns along it and its length together. Like the
+     * overlay search it keeps its state local to the call.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the route; its steps and towns are empty and its distance -1 if no path exists
+     * @throws java.util.concurrent.CancellationException if the thread is interrupted during the search
+     */
+    public LandmarkIndex.Route route(Town source, Town destination) {
+        int sourceId = towns.idOf(source);
+        int destinationId = towns.idOf(destination);
+        SearchState local = localState.get();
+        if (sourceId < 0 || destinationId < 0) {
+            return new LandmarkIndex.Route(new ArrayList<>(), new ArrayList<>(), -1, 0);
+        }
+        int distance = search(sourceId, destinationId, null, local);
+        if (distance < 0) {
+            return new LandmarkIndex.Route(new ArrayList<>(), new ArrayList<>(), -1, 0);
+        }
+        ArrayList<String> names = new ArrayList<>();
+        for (int step = destinationId; step != sourceId; ) {
+            names.add(towns.town(step).getName());
+            int road = local.via(step);
+            step = roadSource[road] == step ? roadDestination[road] : roadSource[road];
+        }
+        names.add(source.getName());
+        Collections.reverse(names);
+        return new LandmarkIndex.Route(describePath(sourceId, destinationId, local, null), names, distance, 0);
+    }
+
+    /**
+     * Finds the length of the shortest path between two towns. Like the overlay
+     * search it keeps its state local to the call.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the length of the shortest path, or -1 if no path exists
+     */
+    public int distance(Town source, Town destination) {
+        return search(towns.idOf(source), towns.idOf(destination), null, localState.get());
+    }
+
+    /**
+     * Gets the lengths of the shortest paths from one town to several others
+     * with a single search, which stops as soon as every reachable
+     * destination is settled.
+     *
+     * @param source the source town
+     * @param destinations the destination towns
+     * @return the distance to each destination in order, or -1 where there is no path
+     */
+    public int[] distances(Town source, List<Town> destinations) {
+        int[] result = new int[destinations.size()];
+        Arrays.fill(result, -1);
+        int sourceId = towns.idOf(source);
+        if (sourceId < 0) {
+            return result;
+        }
+        int[] ids = new int[result.length];
+        BitSet pending = new BitSet();
+        int remaining = 0;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = towns.idOf(destinations.get(i));
+            if (ids[i] >= 0 && !pending.get(ids[i]) && components.connected(this, sourceId, ids[i])) {
+                pending.set(ids[i]);
+                remaining++;
+            }
+        }
+        BitSet wanted = (BitSet) pending.clone();
+        SearchState search = localState.get();
+        search.reset(towns.bound());
+        search.reach(sourceId, 0, -1);
+        while (remaining > 0 && !search.isQueueEmpty()) {
+            int current = search.poll();
+            int currentDist = search.distance(current);
+            if (pending.get(current)) {
+                pending.clear(current);
+                remaining--;
+            }
+            for (int half = firstHalf[current]; half != -1; half = nextHalf[half]) {
+                int road = half >> 1;
+                if (!leaves(half)) continue;
+                int adj = (half & 1) == 0 ? roadDestination[road] : roadSource[road];
+                int altDist = currentDist + roadWeight[road];
+                if (altDist < search.distance(adj)) {
+                    search.reach(adj, altDist, road);
+                }
+            }
+        }
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] >= 0 && wanted.get(ids[i]) && !pending.get(ids[i])) {
+                result[i] = search.distance(ids[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the id the graph gave a town.
+     *
+     * @param town the town
+     * @return the town's id, or -1 if the town is not in the graph
+     */
+    int idOf(Town town) {
+        return towns.idOf(town);
+    }
+
+    /**
+     * Gets an upper bound on town ids, for sizing id-indexed arrays.
+     *
+     * @return one more than the largest town id in use
+     */
+    int townIdBound() {
+        return towns.bound();
+    }
+
+    /**
+     * Gets an upper bound on road ids, for sizing id-indexed arrays.
+     *
+     * @return one more than the largest road id in use
+     */
+    int roadIdBound() {
+        return roadIdBound;
+    }
+
+    /**
+     * Gets the dictionary of road names in use, with the number of roads
+     * sharing each name.
+     *
+     * @return the road name dictionary
+     */
+    NameDictionary roadNames() {
+        return roadNames;
+    }
+
+    /**
+     * Gets the sorted index of town names, maintained as towns are added and
+     * removed.
+     *
+     * @return the town name index
+     */
+    SkipListIndex townNames() {
+        return towns.names();
+    }
+
+    /**
+     * Checks if a town id is in use.
+     *
+     * @param id the town id
+     * @return true if a town has the id
+     */
+    boolean hasTown(int id) {
+        return towns.town(id) != null;
+    }
+
+    /**
+     * Gets the id of the source town of a road, by road id.
+     *
+     * @param road the road id
+     * @return the source town's id, or -1 if the road id is free
+     */
+    int roadSource(int road) {
+        return roadSource[road];
+    }
+
+    /**
+     * Gets the id of the destination town of a road, by road id.
+     *
+     * @param road the road id
+     * @return the destination town's id, or -1 if the road id is free
+     */
+    int roadDestination(int road) {
+        return roadDestination[road];
+    }
+
+    /**
+     * Gets the name of a town, by town id.
+     *
+     * @param id the town id
+     * @return the town's name, or null if the id is free
+     */
+    String townName(int id) {
+        Town town = towns.town(id);
+        return town == null ? null : town.getName();
+    }
+
+    /**
+     * Gets the weight of a road, by road id.
+     *
+     * @param road the road id
+     * @return the road's weight
+     */
+    int roadWeight(int road) {
+        return roadWeight[road];
+    }
+
+    /**
+     * Checks if a road is one-way, by road id.
+     *
+     * @param road the road id
+     * @return true if the road runs only from its source to its destination
+     */
+    boolean isOneWay(int road) {
+        return oneWay.get(road);
+    }
+
+    /**
+     * Gets the name of a road, by road id.
+     *
+     * @param road the road id
+     * @return the shared instance of the road's name
+     */
+    String roadName(int road) {
+        return roadNames.name(roadName[road]);
+    }
+
+    /**
+     * Estimates the heap used by the graph, by structure. Towns and roads are
+     * charged separately so the per-road cost of the layout can be read off
+     * directly; road names are counted once per distinct name.
+     *
+     * @return the memory report
+     */
+    public MemoryReport memoryReport() {
+        MemoryReport report = new MemoryReport(towns.size(), roadCount);
+        for (int id = 0; id < towns.bound(); id++) {
+            Town town = towns.town(id);
+            if (town != null) {
+                report.add("town objects", MemoryReport.Scope.TOWN,
+                        MemoryReport.object(2 * MemoryReport.REFERENCE + 4));
+                report.add("town names", MemoryReport.Scope.TOWN, MemoryReport.string(town.getName()));
+            }
+        }
+        report.add("town registry", MemoryReport.Scope.TOWN, towns.footprint());
+        report.add("adjacency heads", MemoryReport.Scope.TOWN, 2 * MemoryReport.array(firstHalf.length, 4));
+        report.add("search state", MemoryReport.Scope.TOWN, state.footprint());
+        report.add("road endpoints and weights", MemoryReport.Scope.ROAD, 3 * MemoryReport.array(roadSource.length, 4));
+        report.add("half-edge links", MemoryReport.Scope.ROAD, MemoryReport.array(nextHalf.length, 4));
+        report.add("road name ids", MemoryReport.Scope.ROAD, MemoryReport.array(roadName.length, 4));
+        report.add("one-way flags", MemoryReport.Scope.ROAD, MemoryReport.array(oneWay.size() / 64, 8));
+        report.add("road names", MemoryReport.Scope.ROAD, roadNames.footprint());
+        report.add("free road ids", MemoryReport.Scope.ROAD, MemoryReport.array(freeRoadIds.length, 4));
+        return report;
+    }
+
+    private int search(int source, int destination, RouteOverlay overlay, SearchState search) {
+        if (overlay != null && overlay.getGraph() != this) {
+            throw new IllegalArgumentException("Overlay belongs to a different graph.");
+        }
+        if (overlay != null) {
+            overlay.checkCurrent();
+        }
+        if (!components.connected(this, source, destination)
+                || (overlay != null && (overlay.isBanned(source) || overlay.isBanned(destination)))) {
+            return -1;
+        }
+
+        search.reset(towns.bound());
+        search.reach(source, 0, -1);
+        int settled = 0;
+
+        while (!search.isQueueEmpty()) {
+            SearchState.checkInterrupted(++settled);
+            int current = search.poll();
+            int currentDist = search.distance(current);
+            if (current == destination) return currentDist;
+
+            for (int half = firstHalf[current]; half != -1; half = nextHalf[half]) {
+                int road = half >> 1;
+                if (!leaves(half) || (overlay != null && overlay.isClosed(road))) continue;
+                int adj = (half & 1) == 0 ? roadDestination[road] : roadSource[road];
+                if (overlay != null && overlay.isBanned(adj)) continue;
+                //in long, so a heavily scaled road cannot wrap around to a short one
+                long altDist = (long) currentDist + (overlay == null ? roadWeight[road] : overlay.weightOf(road, roadWeight[road]));
+                if (altDist < search.distance(adj)) {
+                    search.reach(adj, (int) altDist, road);
+                }
+            }
+        }
+        return -1;
+    }
+
+    private ArrayList<String> describePath(int source, int destination, SearchState search, RouteOverlay overlay) {
+        ArrayList<String> path = new ArrayList<>();
+        int step = destination;
+        while (step != source) {
+            int road = search.via(step);
+            int prev = roadSource[road] == step ? roadDestination[road] : roadSource[road];
+            int weight = overlay == null ? roadWeight[road] : overlay.weightOf(road, roadWeight[road]);
+            path.add(String.format("%s via %s to %s %d mi", towns.town(prev), roadNames.name(roadName[road]), towns.town(step), weight));
+            step = prev;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    private Road road(int road) {
+        Road materialized = new Road(towns.town(roadSource[road]), towns.town(roadDestination[road]),
+                roadWeight[road], roadNames.name(roadName[road]), oneWay.get(road));
+        materialized.id = road;
+        materialized.sourceId = roadSource[road];
+        materialized.destinationId = roadDestination[road];
+        return materialized;
+    }
+
+    private boolean insertTown(Town vertex) {
+        int id = towns.intern(vertex);
+        if (id < 0) {
+            return false;
+        }
+        if (id >= firstHalf.length) {
+            int capacity = Math.max(id + 1, firstHalf.length * 2);
+            firstHalf = Arrays.copyOf(firstHalf, capacity);
+            lastHalf = Arrays.copyOf(lastHalf, capacity);
+        }
+        firstHalf[id] = -1;
+        lastHalf[id] = -1;
+        components.townAdded(id);
+        return true;
+    }
+
+    private int insertRoad(int sourceId, int destinationId, int weight, String description, boolean oneWay) {
+        int road = allocateRoadId();
+        roadSource[road] = sourceId;
+        roadDestination[road] = destinationId;
+        roadWeight[road] = weight;
+        roadName[road] = roadNames.intern(description);
+        if (oneWay) {
+            this.oneWay.set(road);
+            oneWayCount++;
+        }
+        link(sourceId, 2 * road);
+        link(destinationId, 2 * road + 1);
+        roadCount++;
+        components.roadAdded(sourceId, destinationId);
+        return road;
+    }
 
-        if (previous.get(step) == null) {
-            return new ArrayList<>(); 
+    private boolean hasRoad(int source, int destination, int weight, String description, boolean oneWay) {
+        for (int half = firstHalf[source]; half != -1; half = nextHalf[half]) {
+            int road = half >> 1;
+            int other = (half & 1) == 0 ? roadDestination[road] : roadSource[road];
+            //a one-way road only repeats one running the same way
+            if (other == destination && roadWeight[road] == weight && this.oneWay.get(road) == oneWay
+                    && (!oneWay || (half & 1) == 0)
+                    && Objects.equals(roadNames.name(roadName[road]), description)) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        while (step != null && previous.get(step) != null) {
-            Town prev = previous.get(step);
-            Road edge = getEdge(prev, step);
-            if (edge == null) {
-                break; 
+    private int findRoad(int source, int destination, String description) {
+        for (int half = firstHalf[source]; half != -1; half = nextHalf[half]) {
+            int road = half >> 1;
+            int other = (half & 1) == 0 ? roadDestination[road] : roadSource[road];
+            if (other == destination && Objects.equals(roadNames.name(roadName[road]), description)) {
+                return road;
             }
-            String pathStep = String.format("%s via %s to %s %d mi", prev, edge.getName(), step, edge.getWeight());
-            path.add(0, pathStep); 
+        }
+        return -1;
+    }
+
+    private int findRoad(int source, int destination) {
+        for (int half = firstHalf[source]; half != -1; half = nextHalf[half]) {
+            int road = half >> 1;
+            int other = (half & 1) == 0 ? roadDestination[road] : roadSource[road];
+            if (other == destination) {
+                return road;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if a search may follow a half-edge out of its town: always,
+     * unless it is the destination's half of a one-way road.
+     */
+    private boolean leaves(int half) {
+        return (half & 1) == 0 || oneWayCount == 0 || !oneWay.get(half >> 1);
+    }
+
+    private void link(int town, int half) {
+        nextHalf[half] = -1;
+        if (lastHalf[town] == -1) {
+            firstHalf[town] = half;
+        } else {
+            nextHalf[lastHalf[town]] = half;
+        }
+        lastHalf[town] = half;
+    }
+
+    private void unlink(int town, int half) {
+        int prev = -1;
+        int current = firstHalf[town];
+        while (current != half) {
+            prev = current;
+            current = nextHalf[current];
+        }
+        if (prev == -1) {
+            firstHalf[town] = nextHalf[half];
+        } else {
+            nextHalf[prev] = nextHalf[half];
+        }
+        if (lastHalf[town] == half) {
+            lastHalf[town] = prev;
+        }
+    }
 
+    private void unlinkRoad(int road) {
+        unlink(roadSource[road], 2 * road);
+        unlink(roadDestination[road], 2 * road + 1);
+        roadSource[road] = -1;
+        roadDestination[road] = -1;
+        if (oneWay.get(road)) {
+            oneWay.clear(road);
+            oneWayCount--;
+        }
+        roadNames.release(roadName[road]);
+        roadCount--;
+        releaseRoadId(road);
+    }
 
-            step = prev; 
+    private int allocateRoadId() {
+        if (freeRoadCount > 0) {
+            return freeRoadIds[--freeRoadCount];
+        }
+        if (roadIdBound == roadSource.length) {
+            int capacity = roadIdBound * 2;
+            roadSource = Arrays.copyOf(roadSource, capacity);
+            roadDestination = Arrays.copyOf(roadDestination, capacity);
+            roadWeight = Arrays.copyOf(roadWeight, capacity);
+            roadName = Arrays.copyOf(roadName, capacity);
+            nextHalf = Arrays.copyOf(nextHalf, 2 * capacity);
         }
+        return roadIdBound++;
+    }
 
-        return new ArrayList<>(path);
+    /**
+     * Grows the road arrays once so the next few road ids need no copying.
+     */
+    private void reserveRoadIds(int count) {
+        int needed = roadIdBound + Math.max(0, count - freeRoadCount);
+        if (needed > roadSource.length) {
+            int capacity = Math.max(needed, roadSource.length * 2);
+            roadSource = Arrays.copyOf(roadSource, capacity);
+            roadDestination = Arrays.copyOf(roadDestination, capacity);
+            roadWeight = Arrays.copyOf(roadWeight, capacity);
+            roadName = Arrays.copyOf(roadName, capacity);
+            nextHalf = Arrays.copyOf(nextHalf, 2 * capacity);
+        }
     }
 
+    private void releaseRoadId(int id) {
+        if (freeRoadCount == freeRoadIds.length) {
+            freeRoadIds = Arrays.copyOf(freeRoadIds, freeRoadCount * 2);
+        }
+        freeRoadIds[freeRoadCount++] = id;
+    }
 
-    Map<Town, Integer> dist = new HashMap<>();
-    Map<Town, Town> previous = new HashMap<>();
-    PriorityQueue<Town> queue = new PriorityQueue<>(Comparator.comparingInt(dist::get));
 
-    
     /**
      * Runs Dijkstra's algorithm to find the shortest paths from a source town to all other towns.
      *
      * @param source the source town
      */
-    
+
     @Override
     public void dijkstraShortestPath(Town source) {
-        dist.clear();
-        previous.clear();
-        queue.clear();
-
-        for (Town v : vertices) {
-            dist.put(v, v.equals(source) ? 0 : Integer.MAX_VALUE);
-            previous.put(v, null);
-            queue.add(v);
-        }
-
-        while (!queue.isEmpty()) {
-            Town current = queue.poll();
-            if (dist.get(current) == Integer.MAX_VALUE) break;
-
-            for (Road edge : adjacencyList.get(current)) {
-                Town adj = edge.getDestination().equals(current) ? (Town) edge.getSource() : (Town) edge.getDestination();
-                int altDist = dist.get(current) + edge.getWeight();
-                if (altDist < dist.get(adj)) {
-                    dist.put(adj, altDist);
-                    previous.put(adj, current);
-                    queue.remove(adj);
-                    queue.add(adj);
+        state.reset(towns.bound());
+        int sourceId = towns.idOf(source);
+        if (sourceId < 0) {
+            return;
+        }
+        state.reach(sourceId, 0, -1);
+
+        while (!state.isQueueEmpty()) {
+            int current = state.poll();
+            int currentDist = state.distance(current);
+
+            for (int half = firstHalf[current]; half != -1; half = nextHalf[half]) {
+                int road = half >> 1;
+                if (!leaves(half)) continue;
+                int adj = (half & 1) == 0 ? roadDestination[road] : roadSource[road];
+                int altDist = currentDist + roadWeight[road];
+                if (altDist < state.distance(adj)) {
+                    state.reach(adj, altDist, road);
                 }
             }
         }
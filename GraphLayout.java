@@ -0,0 +1,208 @@
+import java.util.Arrays;
+
+/**
+ * Planar positions for the towns of a graph, for drawing a map when the input
+ * has no coordinates. Each component is seeded by a breadth-first search that
+ * puts towns on rings by hop count from a start town, spread evenly around
+ * each ring, and the seed is then smoothed by repeatedly moving every town
+ * toward the average of its neighbours while it stays tied to its seed, which
+ * untangles most crossings in O(iterations * roads). Components are packed
+ * side by side in rows. Plain computation, meant to run off the UI thread.
+ *
+ * @author Liam Ghershony
+ */
+public class GraphLayout {
+
+    private final double[] x;
+    private final double[] y;
+    private double minX, minY, maxX, maxY;
+
+    private GraphLayout(int n) {
+        x = new double[n];
+        y = new double[n];
+    }
+
+    /**
+     * Lays out a graph.
+     *
+     * @param graph the graph
+     * @param iterations the number of smoothing passes, e.g. 30
+     * @return the layout, with one position per vertex of the graph
+     */
+    public static GraphLayout compute(CompactGraph graph, int iterations) {
+        int n = graph.vertexCount();
+        GraphLayout layout = new GraphLayout(n);
+        double[] seedX = new double[n];
+        double[] seedY = new double[n];
+        seed(graph, seedX, seedY);
+        System.arraycopy(seedX, 0, layout.x, 0, n);
+        System.arraycopy(seedY, 0, layout.y, 0, n);
+        double[] nextX = new double[n];
+        double[] nextY = new double[n];
+        for (int pass = 0; pass < iterations; pass++) {
+            for (int v = 0; v < n; v++) {
+                double sumX = seedX[v];
+                double sumY = seedY[v];
+                int end = graph.firstArc(v + 1);
+                for (int arc = graph.firstArc(v); arc < end; arc++) {
+                    int w = graph.arcTarget(arc);
+                    sumX += layout.x[w];
+                    sumY += layout.y[w];
+                }
+                int weight = end - graph.firstArc(v) + 1;
+                nextX[v] = sumX / weight;
+                nextY[v] = sumY / weight;
+            }
+            System.arraycopy(nextX, 0, layout.x, 0, n);
+            System.arraycopy(nextY, 0, layout.y, 0, n);
+        }
+        layout.computeBounds();
+        return layout;
+    }
+
+    /**
+     * Gets the number of positioned vertices.
+     *
+     * @return the vertex count
+     */
+    public int size() {
+        return x.length;
+    }
+
+    /**
+     * Gets the horizontal position of a vertex.
+     *
+     * @param v the vertex index
+     * @return the x coordinate
+     */
+    public double x(int v) {
+        return x[v];
+    }
+
+    /**
+     * Gets the vertical position of a vertex.
+     *
+     * @param v the vertex index
+     * @return the y coordinate
+     */
+    public double y(int v) {
+        return y[v];
+    }
+
+    /**
+     * Gets the smallest x coordinate of any vertex.
+     *
+     * @return the left edge of the layout
+     */
+    public double minX() {
+        return minX;
+    }
+
+    /**
+     * Gets the smallest y coordinate of any vertex.
+     *
+     * @return the top edge of the layout
+     */
+    public double minY() {
+        return minY;
+    }
+
+    /**
+     * Gets the largest x coordinate of any vertex.
+     *
+     * @return the right edge of the layout
+     */
+    public double maxX() {
+        return maxX;
+    }
+
+    /**
+     * Gets the largest y coordinate of any vertex.
+     *
+     * @return the bottom edge of the layout
+     */
+    public double maxY() {
+        return maxY;
+    }
+
+    /**
+     * Buckets the positions into a grid for finding the towns in view.
+     *
+     * @param cellSize the width and height of a grid cell
+     * @return the grid over this layout's positions
+     */
+    public SpatialGrid index(double cellSize) {
+        return new SpatialGrid(x, y, cellSize);
+    }
+
+    /**
+     * Places every component on concentric rings around its first town and
+     * packs the components in rows, largest radius setting each row's height.
+     */
+    private static void seed(CompactGraph graph, double[] seedX, double[] seedY) {
+        int n = graph.vertexCount();
+        int[] depth = new int[n];
+        Arrays.fill(depth, -1);
+        int[] queue = new int[n];
+        int[] ringSize = new int[n + 1];
+        int[] ringSeen = new int[n + 1];
+        int rowWidth = (int) Math.ceil(Math.sqrt(n)) * 4;
+        double cursorX = 0, cursorY = 0, rowHeight = 0;
+        for (int start = 0; start < n; start++) {
+            if (depth[start] >= 0) {
+                continue;
+            }
+            int head = 0, tail = 0, deepest = 0;
+            queue[tail++] = start;
+            depth[start] = 0;
+            while (head < tail) {
+                int v = queue[head++];
+                deepest = Math.max(deepest, depth[v]);
+                ringSize[depth[v]]++;
+                int end = graph.firstArc(v + 1);
+                for (int arc = graph.firstArc(v); arc < end; arc++) {
+                    int w = graph.arcTarget(arc);
+                    if (depth[w] < 0) {
+                        depth[w] = depth[v] + 1;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            double radius = deepest + 1;
+            if (cursorX > 0 && cursorX + 2 * radius > rowWidth) {
+                cursorX = 0;
+                cursorY += rowHeight + 1;
+                rowHeight = 0;
+            }
+            double centerX = cursorX + radius;
+            double centerY = cursorY + radius;
+            for (int i = 0; i < tail; i++) {
+                int v = queue[i];
+                int ring = depth[v];
+                double angle = 2 * Math.PI * ringSeen[ring]++ / ringSize[ring];
+                seedX[v] = centerX + ring * Math.cos(angle);
+                seedY[v] = centerY + ring * Math.sin(angle);
+            }
+            for (int ring = 0; ring <= deepest; ring++) {
+                ringSize[ring] = 0;
+                ringSeen[ring] = 0;
+            }
+            cursorX += 2 * radius + 1;
+            rowHeight = Math.max(rowHeight, 2 * radius);
+        }
+    }
+
+    private void computeBounds() {
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+        for (int v = 0; v < x.length; v++) {
+            minX = Math.min(minX, x[v]);
+            minY = Math.min(minY, y[v]);
+            maxX = Math.max(maxX, x[v]);
+            maxY = Math.max(maxY, y[v]);
+        }
+        if (x.length == 0) {
+            minX = minY = maxX = maxY = 0;
+        }
+    }
+}
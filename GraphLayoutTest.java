@@ -0,0 +1,70 @@
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphLayoutTest {
+    private Graph graph;
+    private Town[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new Graph();
+        town = new Town[8];
+        for (int i = 1; i < 8; i++) {
+            town[i] = new Town("Town_" + i);
+            graph.addVertex(town[i]);
+        }
+        graph.addEdge(town[1], town[2], 2, "Road_1");
+        graph.addEdge(town[2], town[3], 4, "Road_2");
+        graph.addEdge(town[3], town[1], 6, "Road_3");
+        graph.addEdge(town[3], town[4], 1, "Road_4");
+        graph.addEdge(town[5], town[6], 2, "Road_5");
+        graph.addEdge(town[6], town[7], 3, "Road_6");
+    }
+
+    @Test
+    public void testPositionsWithinBounds() {
+        CompactGraph network = CompactGraph.of(graph);
+        GraphLayout layout = GraphLayout.compute(network, 30);
+        assertEquals(7, layout.size());
+        for (int v = 0; v < layout.size(); v++) {
+            assertFalse(Double.isNaN(layout.x(v)) || Double.isNaN(layout.y(v)));
+            assertTrue(layout.x(v) >= layout.minX() && layout.x(v) <= layout.maxX());
+            assertTrue(layout.y(v) >= layout.minY() && layout.y(v) <= layout.maxY());
+        }
+        SpatialGrid grid = layout.index(1);
+        assertEquals(7, grid.count(layout.minX(), layout.minY(), layout.maxX(), layout.maxY()));
+    }
+
+    @Test
+    public void testComponentsKeptApart() {
+        CompactGraph network = CompactGraph.of(graph);
+        GraphLayout layout = GraphLayout.compute(network, 30);
+        double[] first = box(network, layout, 1, 4);
+        double[] second = box(network, layout, 5, 7);
+        boolean apartX = first[2] < second[0] || second[2] < first[0];
+        boolean apartY = first[3] < second[1] || second[3] < first[1];
+        assertTrue(apartX || apartY);
+    }
+
+    @Test
+    public void testEmptyGraph() {
+        GraphLayout layout = GraphLayout.compute(CompactGraph.of(new Graph()), 10);
+        assertEquals(0, layout.size());
+        assertEquals(0, layout.maxX(), 0);
+    }
+
+    private double[] box(CompactGraph network, GraphLayout layout, int from, int to) {
+        double[] box = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        for (int i = from; i <= to; i++) {
+            int v = network.indexOf(town[i]);
+            box[0] = Math.min(box[0], layout.x(v));
+            box[1] = Math.min(box[1], layout.y(v));
+            box[2] = Math.max(box[2], layout.x(v));
+            box[3] = Math.max(box[3], layout.y(v));
+        }
+        return box;
+    }
+}
@@ -0,0 +1,305 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Nested partition of a graph's towns into cells, for multi-level routing
+ * overlays. Each level splits the towns into cells of at most a given number
+ * of towns, and every cell of a level lies inside one cell of the next, so the
+ * levels form a tree of ever larger cells.
+ *
+ * Cells are found by size-constrained label propagation: every town starts
+ * in a cell of its own and repeatedly joins the neighbouring cell it has the
+ * most roads to, as long as that cell stays within the size bound. When the
+ * cells stop changing they are contracted into single nodes, weighted by
+ * their size, and propagation runs again on the contracted graph until no
+ * two cells can be merged, which grows cells close to the bound along the
+ * sparse cuts of the network. The next level starts from the contracted
+ * graph of the level below with a larger bound. The partition depends only
+ * on which towns are joined, never on road weights.
+ *
+ * @author Liam Ghershony
+ */
+public class GraphPartition {
+
+    //label propagation passes per round, and rounds of contraction per level
+    private static final int MAX_PASSES = 10;
+    private static final int MAX_ROUNDS = 12;
+
+    private final int vertexCount;
+    private final int[][] cells;
+    private final int[] cellCounts;
+
+    private GraphPartition(int vertexCount, int[][] cells, int[] cellCounts) {
+        this.vertexCount = vertexCount;
+        this.cells = cells;
+        this.cellCounts = cellCounts;
+    }
+
+    /**
+     * Partitions a graph into nested cells.
+     *
+     * @param graph the graph
+     * @param maxCellSizes the largest number of towns in a cell, per level from the smallest cells up;
+     * each must be larger than the one before
+     * @return the partition
+     * @throws IllegalArgumentException if no level is given or the sizes do not increase
+     */
+    public static GraphPartition build(CompactGraph graph, int... maxCellSizes) {
+        if (maxCellSizes.length == 0) {
+            throw new IllegalArgumentException("At least one level is required.");
+        }
+        for (int l = 0; l < maxCellSizes.length; l++) {
+            if (maxCellSizes[l] < 1 || (l > 0 && maxCellSizes[l] <= maxCellSizes[l - 1])) {
+                throw new IllegalArgumentException("Cell sizes must be positive and increase by level.");
+            }
+        }
+        int n = graph.vertexCount();
+        Nodes nodes = Nodes.of(graph);
+        int[] nodeOf = new int[n];
+        for (int v = 0; v < n; v++) {
+            nodeOf[v] = v;
+        }
+        Random random = new Random(n);
+        int[][] cells = new int[maxCellSizes.length][];
+        int[] cellCounts = new int[maxCellSizes.length];
+        for (int l = 0; l < maxCellSizes.length; l++) {
+            for (int round = 0; round < MAX_ROUNDS; round++) {
+                int[] label = new int[nodes.count];
+                int count = nodes.propagate(maxCellSizes[l], label, random);
+                if (count == nodes.count) {
+                    break;
+                }
+                for (int v = 0; v < n; v++) {
+                    nodeOf[v] = label[nodeOf[v]];
+                }
+                nodes = nodes.contract(label, count);
+            }
+            cells[l] = nodeOf.clone();
+            cellCounts[l] = nodes.count;
+        }
+        return new GraphPartition(n, cells, cellCounts);
+    }
+
+    /**
+     * Gets the number of levels.
+     *
+     * @return the number of levels
+     */
+    public int levelCount() {
+        return cells.length;
+    }
+
+    /**
+     * Gets the number of towns partitioned.
+     *
+     * @return the number of towns
+     */
+    public int vertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Gets the number of cells on a level.
+     *
+     * @param level the level, 0 for the smallest cells
+     * @return the number of cells
+     */
+    public int cellCount(int level) {
+        return cellCounts[level];
+    }
+
+    /**
+     * Gets the cell a town is in on a level.
+     *
+     * @param level the level, 0 for the smallest cells
+     * @param v the vertex of the town
+     * @return the cell, between 0 and cellCount(level) - 1
+     */
+    public int cell(int level, int v) {
+        return cells[level][v];
+    }
+
+    /**
+     * Gets the cell of every vertex on a level, without copying.
+     */
+    int[] cells(int level) {
+        return cells[level];
+    }
+
+    /**
+     * Counts the edges whose endpoints lie in different cells on a level.
+     *
+     * @param graph the graph that was partitioned
+     * @param level the level, 0 for the smallest cells
+     * @return the number of cut edges
+     */
+    public int cutEdges(CompactGraph graph, int level) {
+        int[] cell = cells[level];
+        int cut = 0;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            if (cell[graph.edgeSource(e)] != cell[graph.edgeTarget(e)]) {
+                cut++;
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * A graph of weighted nodes, the towns themselves or contracted cells,
+     * with the number of roads between two nodes as the weight of their arc.
+     */
+    private static class Nodes {
+        final int count;
+        final int[] size;
+        final int[] offsets;
+        final int[] targets;
+        final int[] roads;
+
+        Nodes(int count, int[] size, int[] offsets, int[] targets, int[] roads) {
+            this.count = count;
+            this.size = size;
+            this.offsets = offsets;
+            this.targets = targets;
+            this.roads = roads;
+        }
+
+        static Nodes of(CompactGraph graph) {
+            int n = graph.vertexCount();
+            int[] size = new int[n];
+            Arrays.fill(size, 1);
+            int[] offsets = new int[n + 1];
+            int[] targets = new int[graph.firstArc(n)];
+            int arcs = 0;
+            for (int v = 0; v < n; v++) {
+                for (int arc = graph.firstArc(v), end = graph.firstArc(v + 1); arc < end; arc++) {
+                    if (graph.arcTarget(arc) != v) {
+                        targets[arcs++] = graph.arcTarget(arc);
+                    }
+                }
+                offsets[v + 1] = arcs;
+            }
+            int[] roads = new int[arcs];
+            Arrays.fill(roads, 1);
+            return new Nodes(n, size, offsets, Arrays.copyOf(targets, arcs), roads);
+        }
+
+        /**
+         * Runs size-constrained label propagation and numbers the resulting
+         * cells from 0.
+         *
+         * @return the number of cells
+         */
+        int propagate(int maxSize, int[] label, Random random) {
+            int[] labelSize = new int[count];
+            int[] order = new int[count];
+            for (int v = 0; v < count; v++) {
+                label[v] = v;
+                labelSize[v] = size[v];
+                order[v] = v;
+            }
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            int[] gain = new int[count];
+            int[] touched = new int[count];
+            for (int pass = 0; pass < MAX_PASSES; pass++) {
+                int moved = 0;
+                for (int v : order) {
+                    int touchedCount = 0;
+                    for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                        int l = label[targets[arc]];
+                        if (gain[l] == 0) {
+                            touched[touchedCount++] = l;
+                        }
+                        gain[l] += roads[arc];
+                    }
+                    int current = label[v];
+                    int best = current;
+                    for (int i = 0; i < touchedCount; i++) {
+                        int l = touched[i];
+                        if (l != current && labelSize[l] + size[v] <= maxSize
+                                && (gain[l] > gain[best] || (gain[l] == gain[best] && best != current
+                                        && labelSize[l] < labelSize[best]))) {
+                            best = l;
+                        }
+                    }
+                    for (int i = 0; i < touchedCount; i++) {
+                        gain[touched[i]] = 0;
+                    }
+                    if (best != current) {
+                        labelSize[current] -= size[v];
+                        labelSize[best] += size[v];
+                        label[v] = best;
+                        moved++;
+                    }
+                }
+                if (moved == 0) {
+                    break;
+                }
+            }
+            int[] number = new int[count];
+            Arrays.fill(number, -1);
+            int cells = 0;
+            for (int v = 0; v < count; v++) {
+                if (number[label[v]] < 0) {
+                    number[label[v]] = cells++;
+                }
+                label[v] = number[label[v]];
+            }
+            return cells;
+        }
+
+        /**
+         * Contracts every cell into one node, merging the arcs between two cells.
+         */
+        Nodes contract(int[] label, int cells) {
+            int[] cellSize = new int[cells];
+            int[] start = new int[cells + 1];
+            for (int v = 0; v < count; v++) {
+                cellSize[label[v]] += size[v];
+                start[label[v] + 1]++;
+            }
+            for (int c = 0; c < cells; c++) {
+                start[c + 1] += start[c];
+            }
+            int[] members = new int[count];
+            int[] fill = Arrays.copyOf(start, cells);
+            for (int v = 0; v < count; v++) {
+                members[fill[label[v]]++] = v;
+            }
+            int[] cellOffsets = new int[cells + 1];
+            int[] cellTargets = new int[targets.length];
+            int[] cellRoads = new int[targets.length];
+            int[] gain = new int[cells];
+            int[] touched = new int[cells];
+            int arcs = 0;
+            for (int c = 0; c < cells; c++) {
+                int touchedCount = 0;
+                for (int i = start[c]; i < start[c + 1]; i++) {
+                    int v = members[i];
+                    for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                        int l = label[targets[arc]];
+                        if (l != c) {
+                            if (gain[l] == 0) {
+                                touched[touchedCount++] = l;
+                            }
+                            gain[l] += roads[arc];
+                        }
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int l = touched[i];
+                    cellTargets[arcs] = l;
+                    cellRoads[arcs++] = gain[l];
+                    gain[l] = 0;
+                }
+                cellOffsets[c + 1] = arcs;
+            }
+            return new Nodes(cells, cellSize, cellOffsets,
+                    Arrays.copyOf(cellTargets, arcs), Arrays.copyOf(cellRoads, arcs));
+        }
+    }
+}
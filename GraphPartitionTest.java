@@ -0,0 +1,73 @@
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GraphPartitionTest {
+    private CompactGraph network;
+
+    @Before
+    public void setUp() throws Exception {
+        network = RoutingBenchmark.randomNetwork(2000, 6000, 5);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        network = null;
+    }
+
+    @Test
+    public void testCellSizes() {
+        GraphPartition partition = GraphPartition.build(network, 32, 256);
+        assertEquals(2, partition.levelCount());
+        assertEquals(2000, partition.vertexCount());
+        int[] bounds = {32, 256};
+        for (int l = 0; l < 2; l++) {
+            int[] size = new int[partition.cellCount(l)];
+            for (int v = 0; v < 2000; v++) {
+                size[partition.cell(l, v)]++;
+            }
+            for (int c = 0; c < size.length; c++) {
+                assertTrue("empty cell " + c, size[c] > 0);
+                assertTrue("cell " + c + " has " + size[c] + " towns", size[c] <= bounds[l]);
+            }
+        }
+        //cells should fill up rather than stay near single towns
+        assertTrue(partition.cellCount(0) < 2000 / 8);
+        assertTrue(partition.cellCount(1) < partition.cellCount(0));
+        assertTrue(partition.cutEdges(network, 1) <= partition.cutEdges(network, 0));
+    }
+
+    @Test
+    public void testNested() {
+        GraphPartition partition = GraphPartition.build(network, 16, 128, 1024);
+        for (int l = 1; l < 3; l++) {
+            int[] parent = new int[partition.cellCount(l - 1)];
+            java.util.Arrays.fill(parent, -1);
+            for (int v = 0; v < 2000; v++) {
+                int c = partition.cell(l - 1, v);
+                if (parent[c] < 0) {
+                    parent[c] = partition.cell(l, v);
+                }
+                assertEquals(parent[c], partition.cell(l, v));
+            }
+        }
+    }
+
+    @Test
+    public void testBadSizes() {
+        try {
+            GraphPartition.build(network, 64, 64);
+            fail("sizes that do not increase were accepted");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            GraphPartition.build(network);
+            fail("no levels were accepted");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+}
@@ -0,0 +1,338 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hub-label distance index built with pruned landmark labeling. Every town
+ * gets a label of (hub, distance) pairs, sorted by hub, such that any two
+ * towns share a hub on one of their shortest paths. A distance query is a
+ * single merge of two short sorted int arrays, with no search at all.
+ *
+ * Towns are processed from highest to lowest degree and each pruned Dijkstra
+ * stops wherever the labels built so far already give the right distance,
+ * which keeps labels small on road-like networks.
+ *
+ * @author Liam Ghershony
+ */
+public class HubLabelIndex {
+
+    private static final int MAGIC = 0x48554233;
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final String[] names;
+    private final Map<String, Integer> index;
+    private final int[] offsets;
+    private final int[] hubs;
+    private final int[] distances;
+    private final long fingerprint;
+
+    private HubLabelIndex(String[] names, int[] offsets, int[] hubs, int[] distances, long fingerprint) {
+        this.names = names;
+        this.fingerprint = fingerprint;
+        this.offsets = offsets;
+        this.hubs = hubs;
+        this.distances = distances;
+        this.index = new HashMap<>(names.length * 2);
+        for (int v = 0; v < names.length; v++) {
+            index.put(names[v], v);
+        }
+    }
+
+    /**
+     * Builds the index for a graph.
+     *
+     * @param graph the graph
+     * @return the index
+     * @throws IllegalArgumentException if the graph has one-way roads
+     */
+    public static HubLabelIndex build(Graph graph) {
+        return build(CompactGraph.of(graph));
+    }
+
+    /**
+     * Builds the index for a compact graph. Towns are identified by name, or
+     * by their vertex number when the snapshot has no towns.
+     *
+     * @param graph the compact graph
+     * @return the index
+     * @throws IllegalArgumentException if the graph has one-way roads, as a
+     * town's one label serves as both ends of a query
+     */
+    public static HubLabelIndex build(CompactGraph graph) {
+        if (graph.isDirected()) {
+            throw new IllegalArgumentException("Hub labels need a graph without one-way roads.");
+        }
+        int n = graph.vertexCount();
+        Integer[] boxed = new Integer[n];
+        for (int v = 0; v < n; v++) {
+            boxed[v] = v;
+        }
+        Arrays.sort(boxed, (a, b) -> Integer.compare(degree(graph, b), degree(graph, a)));
+
+        int[][] labelHubs = new int[n][];
+        int[][] labelDists = new int[n][];
+        int[] labelSize = new int[n];
+        for (int v = 0; v < n; v++) {
+            labelHubs[v] = new int[4];
+            labelDists[v] = new int[4];
+        }
+
+        int[] hubDist = new int[n];
+        int[] dist = new int[n];
+        int[] touched = new int[n];
+        Arrays.fill(hubDist, INFINITY);
+        Arrays.fill(dist, INFINITY);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+
+        for (int rank = 0; rank < n; rank++) {
+            int root = boxed[rank];
+            for (int i = 0; i < labelSize[root]; i++) {
+                hubDist[labelHubs[root][i]] = labelDists[root][i];
+            }
+            int touchedCount = 0;
+            dist[root] = 0;
+            touched[touchedCount++] = root;
+            heap.offer(root, 0);
+
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                int d = dist[u];
+                if (covered(labelHubs[u], labelDists[u], labelSize[u], hubDist, d)) {
+                    continue;
+                }
+                if (labelSize[u] == labelHubs[u].length) {
+                    labelHubs[u] = Arrays.copyOf(labelHubs[u], labelSize[u] * 2);
+                    labelDists[u] = Arrays.copyOf(labelDists[u], labelSize[u] * 2);
+                }
+                labelHubs[u][labelSize[u]] = rank;
+                labelDists[u][labelSize[u]++] = d;
+
+                for (int arc = graph.firstArc(u), end = graph.firstArc(u + 1); arc < end; arc++) {
+                    int w = graph.arcTarget(arc);
+                    long alt = (long) d + graph.arcWeight(arc);
+                    if (alt < dist[w]) {
+                        if (dist[w] == INFINITY) {
+                            touched[touchedCount++] = w;
+                        }
+                        dist[w] = (int) alt;
+                        heap.offer(w, (int) alt);
+                    }
+                }
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = INFINITY;
+            }
+            for (int i = 0; i < labelSize[root]; i++) {
+                hubDist[labelHubs[root][i]] = INFINITY;
+            }
+        }
+
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] = offsets[v] + labelSize[v];
+        }
+        int[] hubs = new int[offsets[n]];
+        int[] distances = new int[offsets[n]];
+        String[] names = new String[n];
+        for (int v = 0; v < n; v++) {
+            System.arraycopy(labelHubs[v], 0, hubs, offsets[v], labelSize[v]);
+            System.arraycopy(labelDists[v], 0, distances, offsets[v], labelSize[v]);
+            Town town = graph.town(v);
+            names[v] = town == null ? Integer.toString(v) : town.getName();
+        }
+        return new HubLabelIndex(names, offsets, hubs, distances, fingerprint(graph, names));
+    }
+
+    /**
+     * Gets the shortest distance between two towns.
+     *
+     * @param source the name of the source town
+     * @param destination the name of the destination town
+     * @return the distance, or -1 if either town is unknown or no route exists
+     */
+    public long distance(String source, String destination) {
+        Integer s = index.get(source);
+        Integer t = index.get(destination);
+        if (s == null || t == null) {
+            return -1;
+        }
+        return distance(s, t);
+    }
+
+    /**
+     * Gets the shortest distance between two vertices by merging their labels.
+     *
+     * @param s the source vertex
+     * @param t the destination vertex
+     * @return the distance, or -1 if no route exists
+     */
+    public long distance(int s, int t) {
+        int i = offsets[s], iEnd = offsets[s + 1];
+        int j = offsets[t], jEnd = offsets[t + 1];
+        long best = Long.MAX_VALUE;
+        while (i < iEnd && j < jEnd) {
+            int hi = hubs[i];
+            int hj = hubs[j];
+            if (hi == hj) {
+                best = Math.min(best, (long) distances[i++] + distances[j++]);
+            } else if (hi < hj) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return best == Long.MAX_VALUE ? -1 : best;
+    }
+
+    /**
+     * Checks if the index was built from a graph with the same towns and
+     * roads as a given one, e.g. before trusting an index loaded from a file.
+     *
+     * @param graph the graph
+     * @return true if the towns, and the endpoints and weights of the roads, match
+     */
+    public boolean matches(Graph graph) {
+        CompactGraph network = CompactGraph.of(graph);
+        if (network.vertexCount() != names.length) {
+            return false;
+        }
+        String[] current = new String[names.length];
+        for (int v = 0; v < current.length; v++) {
+            current[v] = network.town(v).getName();
+            if (!index.containsKey(current[v])) {
+                return false;
+            }
+        }
+        return fingerprint(network, current) == fingerprint;
+    }
+
+    /**
+     * Gets the number of towns in the index.
+     *
+     * @return the number of towns
+     */
+    public int townCount() {
+        return names.length;
+    }
+
+    /**
+     * Gets the total number of label entries over all towns.
+     *
+     * @return the number of label entries
+     */
+    public int labelEntries() {
+        return hubs.length;
+    }
+
+    /**
+     * Writes the index so it can be loaded after a restart.
+     *
+     * @param out the stream to write to; it is not closed
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(names.length);
+        data.writeInt(hubs.length);
+        data.writeLong(fingerprint);
+        for (String name : names) {
+            //length-prefixed rather than writeUTF, which caps a name at 65535 bytes
+            byte[] utf = name.getBytes(StandardCharsets.UTF_8);
+            data.writeInt(utf.length);
+            data.write(utf);
+        }
+        for (int v = 1; v <= names.length; v++) {
+            data.writeInt(offsets[v]);
+        }
+        for (int i = 0; i < hubs.length; i++) {
+            data.writeInt(hubs[i]);
+            data.writeInt(distances[i]);
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads an index written by {@link #write(OutputStream)}.
+     *
+     * @param in the stream to read from; it is not closed
+     * @return the index
+     * @throws IOException if an I/O error occurs or the data is not an index
+     */
+    public static HubLabelIndex read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a hub label index.");
+        }
+        int n = data.readInt();
+        int entries = data.readInt();
+        long fingerprint = data.readLong();
+        String[] names = new String[n];
+        for (int v = 0; v < n; v++) {
+            int length = data.readInt();
+            if (length < 0) {
+                throw new IOException("Corrupt hub label index.");
+            }
+            byte[] utf = new byte[length];
+            data.readFully(utf);
+            names[v] = new String(utf, StandardCharsets.UTF_8);
+        }
+        int[] offsets = new int[n + 1];
+        for (int v = 1; v <= n; v++) {
+            offsets[v] = data.readInt();
+        }
+        int[] hubs = new int[entries];
+        int[] distances = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            hubs[i] = data.readInt();
+            distances[i] = data.readInt();
+        }
+        if (offsets[n] != entries) {
+            throw new IOException("Corrupt hub label index.");
+        }
+        return new HubLabelIndex(names, offsets, hubs, distances, fingerprint);
+    }
+
+    /**
+     * Hashes the roads of a graph by the names of their endpoints and their
+     * weights. Each road adds its own mixed hash, so the result does not
+     * depend on the order the towns and roads were numbered in.
+     */
+    private static long fingerprint(CompactGraph graph, String[] names) {
+        long sum = 0;
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            int a = names[graph.edgeSource(e)].hashCode();
+            int b = names[graph.edgeTarget(e)].hashCode();
+            long ends = ((long) Math.min(a, b) << 32) ^ (Math.max(a, b) & 0xFFFFFFFFL);
+            sum += mix(ends * 31 + graph.edgeWeight(e));
+        }
+        return sum;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    private static boolean covered(int[] labelHubs, int[] labelDists, int size, int[] hubDist, int d) {
+        for (int i = 0; i < size; i++) {
+            int viaHub = hubDist[labelHubs[i]];
+            if (viaHub != INFINITY && (long) viaHub + labelDists[i] <= d) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int degree(CompactGraph graph, int v) {
+        return graph.firstArc(v + 1) - graph.firstArc(v);
+    }
+}
@@ -0,0 +1,171 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HubLabelIndexTest {
+    private Graph graph;
+    private Town[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new Graph();
+        town = new Town[13];
+
+        for (int i = 1; i < 13; i++) {
+            town[i] = new Town("Town_" + i);
+            graph.addVertex(town[i]);
+        }
+
+        graph.addEdge(town[1], town[2], 2, "Road_1");
+        graph.addEdge(town[1], town[3], 4, "Road_2");
+        graph.addEdge(town[1], town[5], 6, "Road_3");
+        graph.addEdge(town[3], town[7], 1, "Road_4");
+        graph.addEdge(town[3], town[8], 2, "Road_5");
+        graph.addEdge(town[4], town[8], 3, "Road_6");
+        graph.addEdge(town[6], town[9], 3, "Road_7");
+        graph.addEdge(town[9], town[10], 4, "Road_8");
+        graph.addEdge(town[8], town[10], 2, "Road_9");
+        graph.addEdge(town[5], town[10], 5, "Road_10");
+        graph.addEdge(town[10], town[11], 3, "Road_11");
+        graph.addEdge(town[2], town[11], 6, "Road_12");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph = null;
+    }
+
+    @Test
+    public void testMatchesSearch() {
+        HubLabelIndex index = HubLabelIndex.build(graph);
+        for (int i = 1; i < 13; i++) {
+            for (int j = 1; j < 13; j++) {
+                assertEquals(graph.distance(town[i], town[j]), index.distance(town[i].getName(), town[j].getName()));
+            }
+        }
+        assertEquals(8, index.distance("Town_1", "Town_10"));
+        assertEquals(-1, index.distance("Town_1", "Town_12"));
+        assertEquals(-1, index.distance("Town_1", "Town_99"));
+    }
+
+    @Test
+    public void testRandomNetwork() {
+        CompactGraph network = RoutingBenchmark.randomNetwork(500, 1500, 3);
+        HubLabelIndex index = HubLabelIndex.build(network);
+        AllPairsCheck check = new AllPairsCheck(network);
+        for (int s = 0; s < 500; s += 7) {
+            int[] dist = check.from(s);
+            for (int t = 0; t < 500; t++) {
+                assertEquals(dist[t], index.distance(s, t));
+            }
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        HubLabelIndex index = HubLabelIndex.build(graph);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(bytes);
+        HubLabelIndex copy = HubLabelIndex.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(index.labelEntries(), copy.labelEntries());
+        assertEquals(index.distance("Town_4", "Town_6"), copy.distance("Town_4", "Town_6"));
+    }
+
+    @Test
+    public void testWriteLongName() throws Exception {
+        //longer than writeUTF can encode
+        char[] letters = new char[70000];
+        Arrays.fill(letters, 'x');
+        String name = new String(letters);
+        graph.addVertex(new Town(name));
+        graph.addEdge(town[1], new Town(name), 9, "Long_Road");
+        HubLabelIndex index = HubLabelIndex.build(graph);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.write(bytes);
+        HubLabelIndex copy = HubLabelIndex.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(9, copy.distance("Town_1", name));
+    }
+
+    @Test
+    public void testManagerDistance() throws Exception {
+        TownGraphManager manager = new TownGraphManager();
+        manager.addTown("A");
+        manager.addTown("B");
+        manager.addTown("C");
+        manager.addRoad("A", "B", 3, "AB");
+        manager.addRoad("B", "C", 4, "BC");
+        manager.buildDistanceIndex();
+        assertEquals(7, manager.getDistance("A", "C"));
+        File file = File.createTempFile("hubs", ".idx");
+        file.deleteOnExit();
+        manager.saveDistanceIndex(file);
+        manager.addRoad("A", "C", 5, "AC");
+        assertEquals(5, manager.getDistance("A", "C"));
+        try {
+            manager.loadDistanceIndex(file);
+            fail("An index for other roads should be rejected");
+        } catch (IOException e) {
+            //expected
+        }
+        assertEquals(5, manager.getDistance("A", "C"));
+        manager.deleteRoadConnection("A", "C", "AC");
+        manager.setRoadWeights(Arrays.asList(new RoadRecord("B", "C", 5, "BC")));
+        try {
+            manager.loadDistanceIndex(file);
+            fail("An index for other weights should be rejected");
+        } catch (IOException e) {
+            //expected
+        }
+        manager.setRoadWeights(Arrays.asList(new RoadRecord("B", "C", 4, "BC")));
+        manager.loadDistanceIndex(file);
+        assertEquals(7, manager.getDistance("A", "C"));
+
+        TownGraphManager other = new TownGraphManager();
+        other.addTown("A");
+        other.addTown("B");
+        other.addTown("D");
+        other.addRoad("A", "B", 3, "AB");
+        other.addRoad("B", "D", 4, "BC");
+        try {
+            other.loadDistanceIndex(file);
+            fail("An index for other towns should be rejected");
+        } catch (IOException e) {
+            //expected
+        }
+    }
+
+    private static class AllPairsCheck {
+        private final CompactGraph network;
+
+        AllPairsCheck(CompactGraph network) {
+            this.network = network;
+        }
+
+        int[] from(int source) {
+            int[] dist = new int[network.vertexCount()];
+            Arrays.fill(dist, -1);
+            IndexedMinHeap heap = new IndexedMinHeap(dist.length);
+            heap.offer(source, 0);
+            while (!heap.isEmpty()) {
+                int key = heap.keyOf(heap.peek());
+                int v = heap.poll();
+                dist[v] = key;
+                for (int arc = network.firstArc(v); arc < network.firstArc(v + 1); arc++) {
+                    int w = network.arcTarget(arc);
+                    if (dist[w] < 0) {
+                        heap.offer(w, key + network.arcWeight(arc));
+                    }
+                }
+            }
+            return dist;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over the ints 0..capacity-1 keyed by int priorities, with
+ * position tracking so decrease-key and membership tests run without any
+ * allocation or boxing.
+ *
+ * @author Liam Ghershony
+ */
+public class IndexedMinHeap {
+
+    private int[] heap;
+    private int[] position;
+    private int[] keys;
+    private int size;
+
+    /**
+     * Creates a heap for the elements 0..capacity-1.
+     *
+     * @param capacity the number of distinct elements
+     */
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        keys = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    /**
+     * Grows the heap so it can hold the elements 0..capacity-1.
+     *
+     * @param capacity the new number of distinct elements
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > position.length) {
+            int old = position.length;
+            heap = Arrays.copyOf(heap, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            position = Arrays.copyOf(position, capacity);
+            Arrays.fill(position, old, capacity, -1);
+        }
+    }
+
+    /**
+     * Checks if the heap is empty.
+     *
+     * @return true if the heap holds no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the number of elements in the heap.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if an element is in the heap.
+     *
+     * @param element the element
+     * @return true if the element is queued
+     */
+    public boolean contains(int element) {
+        return position[element] >= 0;
+    }
+
+    /**
+     * Gets the key of a queued element.
+     *
+     * @param element the element
+     * @return its key
+     */
+    public int keyOf(int element) {
+        return keys[element];
+    }
+
+    /**
+     * Inserts an element, or lowers its key if it is already queued with a
+     * larger one.
+     *
+     * @param element the element
+     * @param key the key
+     * @return true if the element was inserted or its key lowered
+     */
+    public boolean offer(int element, int key) {
+        int pos = position[element];
+        if (pos < 0) {
+            keys[element] = key;
+            heap[size] = element;
+            position[element] = size;
+            siftUp(size++);
+            return true;
+        }
+        if (key < keys[element]) {
+            keys[element] = key;
+            siftUp(pos);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the element with the smallest key without removing it.
+     *
+     * @return the smallest element
+     */
+    public int peek() {
+        if (size == 0) {
+            throw new IllegalStateException("Heap is empty.");
+        }
+        return heap[0];
+    }
+
+    /**
+     * Removes and returns the element with the smallest key.
+     *
+     * @return the smallest element
+     */
+    public int poll() {
+        int top = peek();
+        position[top] = -1;
+        if (--size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Removes every element.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int pos) {
+        int element = heap[pos];
+        int key = keys[element];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int above = heap[parent];
+            if (keys[above] <= key) {
+                break;
+            }
+            heap[pos] = above;
+            position[above] = pos;
+            pos = parent;
+        }
+        heap[pos] = element;
+        position[element] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int element = heap[pos];
+        int key = keys[element];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            if (key <= keys[heap[child]]) {
+                break;
+            }
+            heap[pos] = heap[child];
+            position[heap[pos]] = pos;
+            pos = child;
+        }
+        heap[pos] = element;
+        position[element] = pos;
+    }
+}
@@ -0,0 +1,364 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * ALT preprocessing (A*, landmarks, triangle inequality) for goal-directed
+ * routing on graphs without coordinates. A few landmark towns are chosen and
+ * the distance from every landmark to every town is stored; by the triangle
+ * inequality |d(L, t) - d(L, v)| is then a lower bound on d(v, t), which an
+ * A* search uses to settle far fewer towns than Dijkstra.
+ *
+ * With one-way roads distances differ by direction, so the distance from
+ * every town to every landmark is stored as well, found by a backward search
+ * over the in-arcs, and the bound is the larger of d(L, t) - d(L, v) and
+ * d(v, L) - d(t, L). Without them the two tables are one and the same.
+ *
+ * @author Liam Ghershony
+ */
+public class LandmarkIndex {
+
+    /**
+     * Strategies for choosing landmarks.
+     */
+    public enum Selection {
+        /** Landmarks drawn uniformly at random. */
+        RANDOM,
+        /** The towns with the most roads. */
+        DEGREE,
+        /** Each landmark is the town farthest from those chosen so far. */
+        FARTHEST
+    }
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final CompactGraph graph;
+    private final int[] landmarks;
+    private final int[][] distances;
+    //distances to the landmarks; the same arrays as distances unless the graph is directed
+    private final int[][] toLandmarks;
+    private final int version;
+    private final ThreadLocal<SearchState> localState = ThreadLocal.withInitial(SearchState::new);
+
+    private LandmarkIndex(CompactGraph graph, int[] landmarks, int[][] distances, int[][] toLandmarks, int version) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.distances = distances;
+        this.toLandmarks = toLandmarks;
+        this.version = version;
+    }
+
+    /**
+     * Selects landmarks in a graph and precomputes their distance arrays.
+     *
+     * @param graph the graph
+     * @param count the number of landmarks
+     * @param selection how to choose the landmarks
+     * @return the index
+     */
+    public static LandmarkIndex build(Graph graph, int count, Selection selection) {
+        return build(CompactGraph.of(graph), count, selection, graph.getVersion());
+    }
+
+    /**
+     * Selects landmarks in a compact graph and precomputes their distance arrays.
+     *
+     * @param graph the compact graph
+     * @param count the number of landmarks
+     * @param selection how to choose the landmarks
+     * @param version the version of the graph the snapshot was taken from
+     * @return the index
+     */
+    public static LandmarkIndex build(CompactGraph graph, int count, Selection selection, int version) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one landmark is required.");
+        }
+        int n = graph.vertexCount();
+        count = Math.min(count, n);
+        int[] landmarks;
+        int[][] distances;
+        if (selection == Selection.FARTHEST) {
+            landmarks = new int[count];
+            distances = new int[count][];
+            int[] nearest = new int[n];
+            Arrays.fill(nearest, INFINITY);
+            int next = n == 0 ? 0 : new Random(n).nextInt(n);
+            for (int i = 0; i < count; i++) {
+                landmarks[i] = next;
+                distances[i] = distances(graph, next, false);
+                int farthest = -1;
+                for (int v = 0; v < n; v++) {
+                    nearest[v] = Math.min(nearest[v], distances[i][v]);
+                    if (nearest[v] > 0 && (farthest < 0 || nearest[v] > nearest[farthest])) {
+                        farthest = v;
+                    }
+                }
+                if (farthest < 0) {
+                    landmarks = Arrays.copyOf(landmarks, i + 1);
+                    distances = Arrays.copyOf(distances, i + 1);
+                    break;
+                }
+                next = farthest;
+            }
+        } else {
+            landmarks = selection == Selection.DEGREE ? byDegree(graph, count) : atRandom(n, count);
+            int[] chosen = landmarks;
+            distances = IntStream.range(0, chosen.length).parallel()
+                    .mapToObj(i -> distances(graph, chosen[i], false))
+                    .toArray(int[][]::new);
+        }
+        int[][] toLandmarks = distances;
+        if (graph.isDirected()) {
+            int[] chosen = landmarks;
+            toLandmarks = IntStream.range(0, chosen.length).parallel()
+                    .mapToObj(i -> distances(graph, chosen[i], true))
+                    .toArray(int[][]::new);
+        }
+        return new LandmarkIndex(graph, landmarks, distances, toLandmarks, version);
+    }
+
+    /**
+     * Gets the graph version the index was built from.
+     *
+     * @return the graph version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the number of landmarks.
+     *
+     * @return the number of landmarks
+     */
+    public int landmarkCount() {
+        return landmarks.length;
+    }
+
+    /**
+     * Gets the landmark towns.
+     *
+     * @return the landmarks
+     */
+    public ArrayList<Town> getLandmarks() {
+        ArrayList<Town> towns = new ArrayList<>();
+        for (int landmark : landmarks) {
+            towns.add(graph.town(landmark));
+        }
+        return towns;
+    }
+
+    /**
+     * Finds the shortest path between two towns with a landmark-guided A* search.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the route; its steps are empty if no path exists
+     * @throws java.util.concurrent.CancellationException if the thread is interrupted during the search
+     */
+    public Route shortestPath(Town source, Town destination) {
+        int s = graph.indexOf(source);
+        int t = graph.indexOf(destination);
+        if (s < 0 || t < 0) {
+            return new Route(new ArrayList<>(), new ArrayList<>(), -1, 0);
+        }
+        return search(s, t, true);
+    }
+
+    /**
+     * Finds the shortest path between two vertices.
+     *
+     * @param s the source vertex
+     * @param t the destination vertex
+     * @param useLandmarks true for the A* search, false for plain Dijkstra
+     * @return the route
+     */
+    public Route search(int s, int t, boolean useLandmarks) {
+        //reused per thread and stamped per search, so a query costs what it settles
+        SearchState state = localState.get();
+        state.reset(graph.vertexCount());
+        state.reach(s, 0, -1, useLandmarks ? lowerBound(s, t) : 0);
+        int settledCount = 0;
+
+        while (!state.isQueueEmpty()) {
+            int v = state.poll();
+            SearchState.checkInterrupted(++settledCount);
+            if (v == t) {
+                break;
+            }
+            int d = state.distance(v);
+            //the landmark bounds are consistent, so a settled town is never reached more cheaply
+            for (int arc = graph.firstOutArc(v), end = graph.firstOutArc(v + 1); arc < end; arc++) {
+                int w = graph.outArcTarget(arc);
+                long alt = (long) d + graph.outArcWeight(arc);
+                if (alt < state.distance(w)) {
+                    long key = useLandmarks ? alt + lowerBound(w, t) : alt;
+                    state.reach(w, (int) alt, arc, (int) Math.min(key, INFINITY - 1));
+                }
+            }
+        }
+
+        ArrayList<String> steps = new ArrayList<>();
+        ArrayList<String> towns = new ArrayList<>();
+        int distance = state.distance(t);
+        if (distance == INFINITY) {
+            return new Route(steps, towns, -1, settledCount);
+        }
+        for (int v = t; v != s; ) {
+            int arc = state.via(v);
+            int e = graph.outArcEdge(arc);
+            int u = graph.otherEnd(e, v);
+            String road = graph.roadName(e);
+            steps.add(String.format("%s via %s to %s %d mi", graph.town(u),
+                    road == null ? Integer.toString(e) : road, graph.town(v), graph.outArcWeight(arc)));
+            towns.add(String.valueOf(graph.town(v)));
+            v = u;
+        }
+        towns.add(String.valueOf(graph.town(s)));
+        Collections.reverse(steps);
+        Collections.reverse(towns);
+        return new Route(steps, towns, distance, settledCount);
+    }
+
+    /**
+     * Gets the landmark lower bound on the distance from one vertex to another.
+     *
+     * @param v the first vertex
+     * @param t the second vertex
+     * @return a lower bound on the distance from v to t
+     */
+    public int lowerBound(int v, int t) {
+        int bound = 0;
+        if (toLandmarks == distances) {
+            for (int[] fromLandmark : distances) {
+                int dv = fromLandmark[v];
+                int dt = fromLandmark[t];
+                if (dv != INFINITY && dt != INFINITY) {
+                    bound = Math.max(bound, Math.abs(dt - dv));
+                }
+            }
+            return bound;
+        }
+        for (int i = 0; i < distances.length; i++) {
+            int dv = distances[i][v];
+            int dt = distances[i][t];
+            if (dv != INFINITY && dt != INFINITY) {
+                bound = Math.max(bound, dt - dv);
+            }
+            dv = toLandmarks[i][v];
+            dt = toLandmarks[i][t];
+            if (dv != INFINITY && dt != INFINITY) {
+                bound = Math.max(bound, dv - dt);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Finds the distances from a vertex to every vertex, or with backward set
+     * from every vertex to it, searching the in-arcs.
+     */
+    private static int[] distances(CompactGraph graph, int source, boolean backward) {
+        int n = graph.vertexCount();
+        int[] dist = new int[n];
+        Arrays.fill(dist, INFINITY);
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        dist[source] = 0;
+        heap.offer(source, 0);
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            int end = backward ? graph.firstInArc(v + 1) : graph.firstOutArc(v + 1);
+            for (int arc = backward ? graph.firstInArc(v) : graph.firstOutArc(v); arc < end; arc++) {
+                int w = backward ? graph.inArcSource(arc) : graph.outArcTarget(arc);
+                int alt = dist[v] + (backward ? graph.inArcWeight(arc) : graph.outArcWeight(arc));
+                if (alt < dist[w]) {
+                    dist[w] = alt;
+                    heap.offer(w, alt);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static int[] byDegree(CompactGraph graph, int count) {
+        Integer[] order = new Integer[graph.vertexCount()];
+        for (int v = 0; v < order.length; v++) {
+            order[v] = v;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(
+                graph.firstArc(b + 1) - graph.firstArc(b), graph.firstArc(a + 1) - graph.firstArc(a)));
+        int[] landmarks = new int[count];
+        for (int i = 0; i < count; i++) {
+            landmarks[i] = order[i];
+        }
+        return landmarks;
+    }
+
+    private static int[] atRandom(int n, int count) {
+        Random random = new Random(n);
+        int[] all = IntStream.range(0, n).toArray();
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(n - i);
+            int swap = all[i];
+            all[i] = all[j];
+            all[j] = swap;
+        }
+        return Arrays.copyOf(all, count);
+    }
+
+    /**
+     * The result of a landmark-guided search.
+     */
+    public static class Route {
+        private final ArrayList<String> steps;
+        private final ArrayList<String> towns;
+        private final int distance;
+        private final int settled;
+
+        Route(ArrayList<String> steps, ArrayList<String> towns, int distance, int settled) {
+            this.steps = steps;
+            this.towns = towns;
+            this.distance = distance;
+            this.settled = settled;
+        }
+
+        /**
+         * Gets the steps of the route in the format of {@link Graph#shortestPath(Town, Town)}.
+         *
+         * @return the steps, empty if no path exists
+         */
+        public ArrayList<String> getSteps() {
+            return steps;
+        }
+
+        /**
+         * Gets the names of the towns along the route, e.g. to highlight it
+         * on a map.
+         *
+         * @return the towns from source to destination, empty if no path exists
+         */
+        public ArrayList<String> getTowns() {
+            return towns;
+        }
+
+        /**
+         * Gets the length of the route.
+         *
+         * @return the distance, or -1 if no path exists
+         */
+        public int getDistance() {
+            return distance;
+        }
+
+        /**
+         * Gets the number of towns the search settled.
+         *
+         * @return the number of settled towns
+         */
+        public int getSettled() {
+            return settled;
+        }
+    }
+}
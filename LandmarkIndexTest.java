@@ -0,0 +1,159 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LandmarkIndexTest {
+    private TownGraphManager graph;
+    private String[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new TownGraphManager();
+        town = new String[12];
+
+        for (int i = 1; i < 12; i++) {
+            town[i] = "Town_" + i;
+            graph.addTown(town[i]);
+        }
+
+        graph.addRoad(town[1], town[2], 2, "Road_1");
+        graph.addRoad(town[1], town[3], 4, "Road_2");
+        graph.addRoad(town[1], town[5], 6, "Road_3");
+        graph.addRoad(town[3], town[7], 1, "Road_4");
+        graph.addRoad(town[3], town[8], 2, "Road_5");
+        graph.addRoad(town[4], town[8], 3, "Road_6");
+        graph.addRoad(town[6], town[9], 3, "Road_7");
+        graph.addRoad(town[9], town[10], 4, "Road_8");
+        graph.addRoad(town[8], town[10], 2, "Road_9");
+        graph.addRoad(town[5], town[10], 5, "Road_10");
+        graph.addRoad(town[10], town[11], 3, "Road_11");
+        graph.addRoad(town[2], town[11], 6, "Road_12");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph = null;
+    }
+
+    @Test
+    public void testGetPathWithLandmarks() {
+        for (LandmarkIndex.Selection selection : LandmarkIndex.Selection.values()) {
+            graph.buildLandmarks(3, selection);
+            ArrayList<String> path = graph.getPath(town[1], town[6]);
+            assertEquals(5, path.size());
+            assertEquals("Town_1 via Road_2 to Town_3 4 mi", path.get(0).trim());
+            assertEquals("Town_9 via Road_7 to Town_6 3 mi", path.get(4).trim());
+        }
+    }
+
+    @Test
+    public void testStaleLandmarksIgnored() {
+        graph.buildLandmarks(2, LandmarkIndex.Selection.DEGREE);
+        graph.addRoad(town[1], town[6], 1, "Road_13");
+        ArrayList<String> path = graph.getPath(town[1], town[6]);
+        assertEquals(1, path.size());
+        assertEquals("Town_1 via Road_13 to Town_6 1 mi", path.get(0).trim());
+    }
+
+    @Test
+    public void testSettlesFewerTowns() {
+        CompactGraph network = RoutingBenchmark.randomNetwork(10000, 30000, 5);
+        LandmarkIndex index = LandmarkIndex.build(network, 8, LandmarkIndex.Selection.FARTHEST, 0);
+        long dijkstraSettled = 0, altSettled = 0;
+        for (int q = 0; q < 20; q++) {
+            int s = (q * 7919) % 10000, t = (q * 104729 + 17) % 10000;
+            LandmarkIndex.Route plain = index.search(s, t, false);
+            LandmarkIndex.Route guided = index.search(s, t, true);
+            assertEquals(plain.getDistance(), guided.getDistance());
+            dijkstraSettled += plain.getSettled();
+            altSettled += guided.getSettled();
+        }
+        assertTrue(altSettled * 2 < dijkstraSettled);
+    }
+
+    @Test
+    public void testOneWayRoads() {
+        CompactGraph undirected = RoutingBenchmark.randomNetwork(400, 1000, 9);
+        int m = undirected.edgeCount();
+        int[] source = new int[m], target = new int[m], weight = new int[m];
+        boolean[] oneWay = new boolean[m];
+        for (int e = 0; e < m; e++) {
+            source[e] = undirected.edgeSource(e);
+            target[e] = undirected.edgeTarget(e);
+            weight[e] = undirected.edgeWeight(e);
+            oneWay[e] = e % 3 == 0;
+        }
+        CompactGraph network = new CompactGraph(400, source, target, weight, oneWay);
+        assertTrue(network.isDirected());
+        assertEquals(2 * m - (m + 2) / 3, network.firstOutArc(400));
+        assertEquals(network.firstOutArc(400), network.firstInArc(400));
+
+        //Bellman-Ford over the edges, each one-way edge taken its own way only
+        int[][] expected = new int[400][];
+        for (int s = 0; s < 400; s += 40) {
+            int[] dist = new int[400];
+            Arrays.fill(dist, Integer.MAX_VALUE);
+            dist[s] = 0;
+            for (boolean changed = true; changed; ) {
+                changed = false;
+                for (int e = 0; e < m; e++) {
+                    for (int end = 0; end < (oneWay[e] ? 1 : 2); end++) {
+                        int a = end == 0 ? source[e] : target[e], b = end == 0 ? target[e] : source[e];
+                        if (dist[a] != Integer.MAX_VALUE && dist[a] + weight[e] < dist[b]) {
+                            dist[b] = dist[a] + weight[e];
+                            changed = true;
+                        }
+                    }
+                }
+            }
+            expected[s] = dist;
+        }
+        boolean asymmetric = false;
+        for (LandmarkIndex.Selection selection : LandmarkIndex.Selection.values()) {
+            LandmarkIndex index = LandmarkIndex.build(network, 6, selection, 0);
+            for (int s = 0; s < 400; s += 40) {
+                for (int t = 0; t < 400; t += 7) {
+                    int distance = expected[s][t] == Integer.MAX_VALUE ? -1 : expected[s][t];
+                    assertEquals(s + " to " + t, distance, index.search(s, t, true).getDistance());
+                    assertTrue(index.lowerBound(s, t) <= expected[s][t]);
+                    if (t % 40 == 0 && expected[t][s] != expected[s][t]) {
+                        asymmetric = true;
+                    }
+                }
+            }
+        }
+        assertTrue(asymmetric);
+    }
+
+    @Test
+    public void testIdenticalParallelRoads() {
+        Graph network = new Graph();
+        Town a = new Town("A");
+        Town b = new Town("B");
+        Town c = new Town("C");
+        network.addVertex(a);
+        network.addVertex(b);
+        network.addVertex(c);
+        Road first = network.addEdge(a, b, 3, "Ferry");
+        Road second = network.addEdge(a, b, 3, "Ferry");
+        network.addEdge(b, c, 4, "Bridge");
+        CompactGraph snapshot = CompactGraph.of(network);
+        assertEquals(3, snapshot.edgeCount());
+        assertEquals("Ferry", snapshot.roadName(0));
+        assertEquals(first.id, snapshot.roadId(0));
+        assertEquals(second.id, snapshot.roadId(1));
+        assertEquals(first, snapshot.road(1));
+        assertEquals(2, CompactGraph.of(network, Arrays.asList(a, b)).edgeCount());
+
+        network.removeEdge(a, b, 3, "Ferry");
+        LandmarkIndex index = LandmarkIndex.build(network, 2, LandmarkIndex.Selection.FARTHEST);
+        assertEquals(2, CompactGraph.of(network).edgeCount());
+        assertEquals(Arrays.asList("A via Ferry to B 3 mi", "B via Bridge to C 4 mi"),
+                index.shortestPath(a, c).getSteps());
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * Receives progress while a town graph file is loaded, and can cancel the
+ * load. Called on the loading thread every few thousand lines and once more
+ * when the file has been read.
+ *
+ * @author Liam Ghershony
+ */
+public interface LoadProgressListener {
+
+    /**
+     * Reports progress of the load.
+     *
+     * @param bytesRead the number of bytes read from the file so far
+     * @param totalBytes the length of the file
+     * @param lines the number of lines parsed so far
+     * @param towns the number of towns added so far
+     * @param roads the number of roads added so far
+     * @return true to continue loading, false to stop at this point
+     */
+    boolean progress(long bytesRead, long totalBytes, int lines, int towns, int roads);
+}
@@ -0,0 +1,316 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
+import javafx.concurrent.Task;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+/**
+ * A pannable, zoomable map of the towns and roads drawn on a single canvas.
+ * The graph is snapshotted and laid out on a background thread, and the
+ * positions are bucketed into a {@link SpatialGrid} so each frame only visits
+ * the towns in view. When too many towns are in view to draw one by one they
+ * are aggregated into small screen buckets shaded by how many towns they hold,
+ * with one line per pair of neighbouring buckets that roads connect. The
+ * canvas is redrawn at most once per frame and only after something changed.
+ *
+ * @author Liam Ghershony
+ */
+public class MapCanvasPane extends Pane {
+
+	//towns in view above which towns are aggregated instead of drawn one by one
+	private static final int DETAIL_LIMIT = 4000;
+	//towns in view below which names are drawn
+	private static final int LABEL_LIMIT = 150;
+	private static final double BUCKET_PIXELS = 6;
+	private static final int LAYOUT_ITERATIONS = 30;
+
+	//everything drawn comes from one snapshot, swapped in as a unit
+	private static final class MapData {
+		final CompactGraph network;
+		final GraphLayout layout;
+		final SpatialGrid grid;
+
+		MapData(CompactGraph network, GraphLayout layout, SpatialGrid grid) {
+			this.network = network;
+			this.layout = layout;
+			this.grid = grid;
+		}
+	}
+
+	private final TownGraphManager graph;
+	private final Canvas canvas = new Canvas();
+	private final AnimationTimer timer;
+	private MapData data;
+	private Task<MapData> pendingLayout;
+	private List<String> routeTowns;
+	private int[] route = new int[0];
+	//screen position = (world position - offset) * scale
+	private double scale = 1, offsetX, offsetY;
+	private double dragX, dragY;
+	private boolean dirty = true, fitPending;
+
+	/**
+	 * Creates a map of a manager's graph. Call {@link #refresh()} to lay it out.
+	 *
+	 * @param graph the manager whose graph is drawn
+	 */
+	public MapCanvasPane(TownGraphManager graph) {
+		this.graph = graph;
+		setMinSize(0, 0);
+		setPrefSize(800, 600);
+		getChildren().add(canvas);
+		canvas.widthProperty().bind(widthProperty());
+		canvas.heightProperty().bind(heightProperty());
+		canvas.widthProperty().addListener(observable -> dirty = true);
+		canvas.heightProperty().addListener(observable -> dirty = true);
+
+		setOnMousePressed(event -> {
+			dragX = event.getX();
+			dragY = event.getY();
+		});
+		setOnMouseDragged(event -> {
+			offsetX -= (event.getX() - dragX) / scale;
+			offsetY -= (event.getY() - dragY) / scale;
+			dragX = event.getX();
+			dragY = event.getY();
+			dirty = true;
+		});
+		//zoom about the cursor so the point under it stays put
+		setOnScroll(event -> {
+			double worldX = offsetX + event.getX() / scale;
+			double worldY = offsetY + event.getY() / scale;
+			scale *= event.getDeltaY() > 0 ? 1.25 : 0.8;
+			offsetX = worldX - event.getX() / scale;
+			offsetY = worldY - event.getY() / scale;
+			dirty = true;
+		});
+
+		timer = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				if (dirty) {
+					dirty = false;
+					draw();
+				}
+			}
+		};
+		timer.start();
+	}
+
+	/**
+	 * Snapshots the graph and lays it out again on a background thread,
+	 * replacing the map once the layout is ready.
+	 */
+	public void refresh() {
+		if (pendingLayout != null) {
+			pendingLayout.cancel();
+		}
+		Task<MapData> layoutTask = new Task<MapData>() {
+			@Override
+			protected MapData call() {
+				CompactGraph network = graph.snapshot();
+				GraphLayout layout = GraphLayout.compute(network, LAYOUT_ITERATIONS);
+				double extent = Math.max(layout.maxX() - layout.minX(), layout.maxY() - layout.minY());
+				return new MapData(network, layout, layout.index(Math.max(1, extent / 256)));
+			}
+		};
+		layoutTask.setOnSucceeded(event -> {
+			data = layoutTask.getValue();
+			pendingLayout = null;
+			fitPending = true;
+			mapRoute();
+			dirty = true;
+		});
+		pendingLayout = layoutTask;
+		Thread worker = new Thread(layoutTask, "map-layout");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Highlights a route on the map.
+	 *
+	 * @param towns the names of the towns along the route, in order, or an empty list for none
+	 */
+	public void highlightRoute(List<String> towns) {
+		routeTowns = towns;
+		mapRoute();
+		dirty = true;
+	}
+
+	/**
+	 * Stops redrawing, e.g. when the map's window is closed.
+	 */
+	public void stop() {
+		timer.stop();
+		if (pendingLayout != null) {
+			pendingLayout.cancel();
+		}
+	}
+
+	private void mapRoute() {
+		if (data == null || routeTowns == null) {
+			route = new int[0];
+			return;
+		}
+		route = new int[routeTowns.size()];
+		int length = 0;
+		for (String name : routeTowns) {
+			int v = data.network.indexOf(new Town(name));
+			if (v >= 0) {
+				route[length++] = v;
+			}
+		}
+		route = Arrays.copyOf(route, length);
+	}
+
+	private void draw() {
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		double width = canvas.getWidth();
+		double height = canvas.getHeight();
+		gc.setFill(Color.WHITE);
+		gc.fillRect(0, 0, width, height);
+		MapData map = data;
+		if (map == null) {
+			gc.setFill(Color.GRAY);
+			gc.fillText("Laying out map...", 10, 20);
+			return;
+		}
+		if (fitPending && width > 0 && height > 0) {
+			fitPending = false;
+			fit(map.layout, width, height);
+		}
+		double minX = offsetX, minY = offsetY;
+		double maxX = offsetX + width / scale, maxY = offsetY + height / scale;
+		int visible = map.grid.count(minX, minY, maxX, maxY);
+		if (visible > DETAIL_LIMIT) {
+			drawAggregated(gc, map, width, height, minX, minY, maxX, maxY);
+		} else {
+			drawDetailed(gc, map, visible, minX, minY, maxX, maxY);
+		}
+		drawRoute(gc, map.layout);
+	}
+
+	private void fit(GraphLayout layout, double width, double height) {
+		double spanX = layout.maxX() - layout.minX() + 2;
+		double spanY = layout.maxY() - layout.minY() + 2;
+		scale = Math.min(width / spanX, height / spanY);
+		offsetX = layout.minX() - 1;
+		offsetY = layout.minY() - 1;
+	}
+
+	//every road with an end in view as one path, then the towns on top
+	private void drawDetailed(GraphicsContext gc, MapData map, int visible,
+			double minX, double minY, double maxX, double maxY) {
+		GraphLayout layout = map.layout;
+		CompactGraph network = map.network;
+		gc.setStroke(Color.LIGHTGRAY);
+		gc.setLineWidth(1);
+		gc.beginPath();
+		map.grid.query(minX, minY, maxX, maxY, v -> {
+			int end = network.firstArc(v + 1);
+			for (int arc = network.firstArc(v); arc < end; arc++) {
+				int w = network.arcTarget(arc);
+				//draw each road once: from its lower end, or from the only end in view
+				if (v < w || !inView(layout, w, minX, minY, maxX, maxY)) {
+					gc.moveTo(screenX(layout.x(v)), screenY(layout.y(v)));
+					gc.lineTo(screenX(layout.x(w)), screenY(layout.y(w)));
+				}
+			}
+		});
+		gc.stroke();
+		double radius = Math.max(1.5, Math.min(4, scale / 4));
+		gc.setFill(Color.STEELBLUE);
+		boolean labels = visible <= LABEL_LIMIT;
+		map.grid.query(minX, minY, maxX, maxY, v -> {
+			double x = screenX(layout.x(v));
+			double y = screenY(layout.y(v));
+			gc.fillOval(x - radius, y - radius, 2 * radius, 2 * radius);
+			if (labels) {
+				gc.fillText(network.town(v).getName(), x + radius + 2, y - radius);
+			}
+		});
+	}
+
+	//towns counted into screen buckets; roads reduced to links between neighbouring buckets
+	private void drawAggregated(GraphicsContext gc, MapData map, double width, double height,
+			double minX, double minY, double maxX, double maxY) {
+		GraphLayout layout = map.layout;
+		CompactGraph network = map.network;
+		int columns = (int) Math.ceil(width / BUCKET_PIXELS);
+		int rows = (int) Math.ceil(height / BUCKET_PIXELS);
+		int[] counts = new int[columns * rows];
+		BitSet links = new BitSet(8 * counts.length);
+		map.grid.query(minX, minY, maxX, maxY, v -> {
+			int column = bucket(screenX(layout.x(v)), columns);
+			int row = bucket(screenY(layout.y(v)), rows);
+			counts[row * columns + column]++;
+			int end = network.firstArc(v + 1);
+			for (int arc = network.firstArc(v); arc < end; arc++) {
+				int w = network.arcTarget(arc);
+				int dc = bucket(screenX(layout.x(w)), columns) - column;
+				int dr = bucket(screenY(layout.y(w)), rows) - row;
+				if ((dc != 0 || dr != 0) && Math.abs(dc) <= 1 && Math.abs(dr) <= 1) {
+					int direction = (dr + 1) * 3 + (dc + 1);
+					links.set(8 * (row * columns + column) + (direction > 4 ? direction - 1 : direction));
+				}
+			}
+		});
+		gc.setStroke(Color.LIGHTGRAY);
+		gc.setLineWidth(1);
+		gc.beginPath();
+		for (int link = links.nextSetBit(0); link >= 0; link = links.nextSetBit(link + 1)) {
+			int cell = link / 8;
+			int direction = link % 8;
+			direction = direction >= 4 ? direction + 1 : direction;
+			int column = cell % columns, row = cell / columns;
+			double x = (column + 0.5) * BUCKET_PIXELS, y = (row + 0.5) * BUCKET_PIXELS;
+			gc.moveTo(x, y);
+			gc.lineTo(x + (direction % 3 - 1) * BUCKET_PIXELS, y + (direction / 3 - 1) * BUCKET_PIXELS);
+		}
+		gc.stroke();
+		for (int cell = 0; cell < counts.length; cell++) {
+			if (counts[cell] > 0) {
+				double opacity = Math.min(1, 0.25 + counts[cell] / 16.0);
+				gc.setFill(Color.STEELBLUE.deriveColor(0, 1, 1, opacity));
+				gc.fillRect((cell % columns) * BUCKET_PIXELS, (cell / columns) * BUCKET_PIXELS,
+						BUCKET_PIXELS - 1, BUCKET_PIXELS - 1);
+			}
+		}
+	}
+
+	private void drawRoute(GraphicsContext gc, GraphLayout layout) {
+		if (route.length < 2) {
+			return;
+		}
+		gc.setStroke(Color.CRIMSON);
+		gc.setLineWidth(3);
+		gc.beginPath();
+		gc.moveTo(screenX(layout.x(route[0])), screenY(layout.y(route[0])));
+		for (int i = 1; i < route.length; i++) {
+			gc.lineTo(screenX(layout.x(route[i])), screenY(layout.y(route[i])));
+		}
+		gc.stroke();
+	}
+
+	private boolean inView(GraphLayout layout, int v, double minX, double minY, double maxX, double maxY) {
+		return layout.x(v) >= minX && layout.x(v) <= maxX && layout.y(v) >= minY && layout.y(v) <= maxY;
+	}
+
+	private double screenX(double worldX) {
+		return (worldX - offsetX) * scale;
+	}
+
+	private double screenY(double worldY) {
+		return (worldY - offsetY) * scale;
+	}
+
+	private static int bucket(double screen, int buckets) {
+		return (int) Math.max(0, Math.min(buckets - 1, screen / BUCKET_PIXELS));
+	}
+}
@@ -0,0 +1,176 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estimated heap footprint of a graph, broken down by structure. Sizes assume
+ * a 64-bit JVM with compressed references: 12-byte object headers, 16-byte
+ * array headers, 4-byte references and 8-byte alignment. Each structure is
+ * charged either to towns or to roads so per-town and per-road costs can be
+ * compared between layouts.
+ *
+ * @author Liam Ghershony
+ */
+public class MemoryReport {
+
+    /** Bytes in an object header. */
+    public static final int OBJECT_HEADER = 12;
+    /** Bytes in an array header. */
+    public static final int ARRAY_HEADER = 16;
+    /** Bytes in a compressed reference. */
+    public static final int REFERENCE = 4;
+
+    /**
+     * What a structure's size grows with.
+     */
+    public enum Scope {
+        /** The structure grows with the number of towns. */
+        TOWN,
+        /** The structure grows with the number of roads. */
+        ROAD
+    }
+
+    private final Map<String, Long> bytes = new LinkedHashMap<>();
+    private final Map<String, Scope> scopes = new LinkedHashMap<>();
+    private final int towns;
+    private final int roads;
+
+    /**
+     * Creates an empty report.
+     *
+     * @param towns the number of towns in the graph
+     * @param roads the number of roads in the graph
+     */
+    public MemoryReport(int towns, int roads) {
+        this.towns = towns;
+        this.roads = roads;
+    }
+
+    /**
+     * Adds bytes to a structure.
+     *
+     * @param structure the name of the structure
+     * @param scope what the structure grows with
+     * @param size the number of bytes
+     */
+    public void add(String structure, Scope scope, long size) {
+        bytes.merge(structure, size, Long::sum);
+        scopes.put(structure, scope);
+    }
+
+    /**
+     * Gets the bytes used by one structure.
+     *
+     * @param structure the name of the structure
+     * @return the bytes, or 0 for an unknown structure
+     */
+    public long bytes(String structure) {
+        return bytes.getOrDefault(structure, 0L);
+    }
+
+    /**
+     * Gets the bytes used by all structures.
+     *
+     * @return the total bytes
+     */
+    public long totalBytes() {
+        long total = 0;
+        for (long size : bytes.values()) {
+            total += size;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the bytes charged to towns, divided by the number of towns.
+     *
+     * @return the bytes per town
+     */
+    public double bytesPerTown() {
+        return towns == 0 ? 0 : scopeBytes(Scope.TOWN) / (double) towns;
+    }
+
+    /**
+     * Gets the bytes charged to roads, divided by the number of roads.
+     *
+     * @return the bytes per road
+     */
+    public double bytesPerRoad() {
+        return roads == 0 ? 0 : scopeBytes(Scope.ROAD) / (double) roads;
+    }
+
+    /**
+     * Estimates the size of an object.
+     *
+     * @param fieldBytes the bytes of all its fields
+     * @return the aligned size
+     */
+    public static long object(long fieldBytes) {
+        return align(OBJECT_HEADER + fieldBytes);
+    }
+
+    /**
+     * Estimates the size of an array.
+     *
+     * @param length the number of elements
+     * @param elementBytes the bytes per element
+     * @return the aligned size
+     */
+    public static long array(int length, int elementBytes) {
+        return align(ARRAY_HEADER + (long) length * elementBytes);
+    }
+
+    /**
+     * Estimates the size of a String and its backing array, assuming compact
+     * Latin-1 strings.
+     *
+     * @param value the string
+     * @return the aligned size
+     */
+    public static long string(String value) {
+        return value == null ? 0 : object(REFERENCE + 4 + 1 + 1) + array(value.length(), 1);
+    }
+
+    /**
+     * Estimates the size of a HashMap's table and entries.
+     *
+     * @param entries the number of entries
+     * @return the aligned size, not counting the keys and values
+     */
+    public static long hashMap(int entries) {
+        int table = Integer.highestOneBit(Math.max((int) (entries / 0.75f), 1) * 2 - 1);
+        return object(REFERENCE * 4 + 4 * 4) + array(table, REFERENCE)
+                + (long) entries * object(4 + REFERENCE * 3);
+    }
+
+    /**
+     * Returns a table of the structures and their sizes.
+     *
+     * @return the report as text
+     */
+    @Override
+    public String toString() {
+        StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Long> entry : bytes.entrySet()) {
+            report.append(String.format("%-28s %-5s %,14d bytes%n", entry.getKey(),
+                    scopes.get(entry.getKey()).name().toLowerCase(), entry.getValue()));
+        }
+        report.append(String.format("%-34s %,14d bytes%n", "total", totalBytes()));
+        report.append(String.format("%,d towns at %.1f bytes each, %,d roads at %.1f bytes each%n",
+                towns, bytesPerTown(), roads, bytesPerRoad()));
+        return report.toString();
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private long scopeBytes(Scope scope) {
+        long total = 0;
+        for (Map.Entry<String, Long> entry : bytes.entrySet()) {
+            if (scopes.get(entry.getKey()) == scope) {
+                total += entry.getValue();
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,126 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryReportTest {
+    private Graph graph;
+    private Town[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new Graph();
+        town = new Town[13];
+
+        for (int i = 1; i < 13; i++) {
+            town[i] = new Town("Town_" + i);
+            graph.addVertex(town[i]);
+        }
+
+        graph.addEdge(town[1], town[2], 2, "Road_1");
+        graph.addEdge(town[1], town[3], 4, "Road_2");
+        graph.addEdge(town[1], town[5], 6, "Road_3");
+        graph.addEdge(town[3], town[7], 1, "Road_4");
+        graph.addEdge(town[3], town[8], 2, "Road_5");
+        graph.addEdge(town[4], town[8], 3, "Road_6");
+        graph.addEdge(town[6], town[9], 3, "Road_7");
+        graph.addEdge(town[9], town[10], 4, "Road_8");
+        graph.addEdge(town[8], town[10], 2, "Road_9");
+        graph.addEdge(town[5], town[10], 5, "Road_10");
+        graph.addEdge(town[10], town[11], 3, "Road_11");
+        graph.addEdge(town[2], town[11], 6, "Road_12");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph = null;
+    }
+
+    @Test
+    public void testReport() {
+        MemoryReport report = graph.memoryReport();
+        assertTrue(report.bytes("road names") > 0);
+        assertTrue(report.bytes("town names") > 0);
+        assertEquals(0, report.bytes("no such structure"));
+        assertTrue(report.totalBytes() > report.bytes("road names"));
+        assertTrue(report.toString().contains("12 roads"));
+    }
+
+    @Test
+    public void testRemovedRoadsReleaseNames() {
+        long before = graph.memoryReport().bytes("road names");
+        graph.removeEdge(town[1], town[2], 2, "Road_1");
+        assertTrue(graph.memoryReport().bytes("road names") < before);
+        graph.removeVertex(town[10]);
+        assertFalse(graph.containsEdge(town[9], town[10]));
+        assertTrue(graph.containsEdge(town[6], town[9]));
+        assertEquals(7, graph.edgeSet().size());
+        assertEquals(6, graph.distance(town[1], town[8]));
+    }
+
+    @Test
+    public void testMillionRoadFootprint() {
+        int side = 708;
+        int roads = 2 * side * (side - 1);
+        assertTrue(roads >= 1_000_000);
+        Town[] grid = new Town[side * side];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = new Town("T" + i);
+        }
+        String[] names = {"I-95", "Main St", "Route 1", "Elm St"};
+
+        //the same roads as one object each, the layout the graph replaced
+        long before = usedHeap();
+        ArrayList<Road<Town>> objects = new ArrayList<>(roads);
+        for (int v = 0; v < grid.length; v++) {
+            if (v % side + 1 < side) {
+                objects.add(new Road<>(grid[v], grid[v + 1], 1 + v % 7, names[v % names.length]));
+            }
+            if (v + side < grid.length) {
+                objects.add(new Road<>(grid[v], grid[v + side], 1 + v % 5, names[(v + 1) % names.length]));
+            }
+        }
+        long objectBytes = usedHeap() - before;
+        assertEquals(roads, objects.size());
+        objects = null;
+
+        Graph large = new Graph();
+        for (Town town : grid) {
+            large.addVertex(town);
+        }
+        before = usedHeap();
+        for (int v = 0; v < grid.length; v++) {
+            if (v % side + 1 < side) {
+                large.addEdge(grid[v], grid[v + 1], 1 + v % 7, names[v % names.length]);
+            }
+            if (v + side < grid.length) {
+                large.addEdge(grid[v], grid[v + side], 1 + v % 5, names[(v + 1) % names.length]);
+            }
+        }
+        long graphBytes = usedHeap() - before;
+        MemoryReport report = large.memoryReport();
+        String measured = "measured " + graphBytes / roads + " bytes per road in the graph, "
+                + objectBytes / roads + " for the Road objects alone; " + report;
+        assertTrue(measured, report.bytesPerRoad() < 50);
+        //heap deltas are rough, so allow a fifth over the model
+        assertTrue(measured, graphBytes < 1.2 * report.bytesPerRoad() * roads);
+        assertTrue(measured, graphBytes / roads < 60);
+        //the roads and their adjacency in less than the bare Road objects
+        assertTrue(measured, graphBytes < objectBytes);
+        assertTrue(large.isConnected(grid[0], grid[grid.length - 1]));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        //take the lowest of several readings, as a collection can leave some garbage behind
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
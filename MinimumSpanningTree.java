@@ -0,0 +1,140 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Minimum spanning forest algorithms over a graph. Both work on a
+ * {@link CompactGraph} snapshot with primitive arrays: Kruskal sorts packed
+ * weight/edge keys with a parallel sort and joins components with a
+ * {@link UnionFind}; Prim grows each tree from an {@link IndexedMinHeap}.
+ * Disconnected graphs yield one tree per component.
+ *
+ * @author Liam Ghershony
+ */
+public final class MinimumSpanningTree {
+
+    private MinimumSpanningTree() {
+    }
+
+    /**
+     * Computes a minimum spanning forest with Kruskal's algorithm.
+     *
+     * @param graph the graph
+     * @return the roads of the spanning forest
+     */
+    public static Set<Road> kruskal(Graph graph) {
+        CompactGraph compact = CompactGraph.of(graph);
+        return toRoads(compact, kruskal(compact));
+    }
+
+    /**
+     * Computes a minimum spanning forest with Prim's algorithm.
+     *
+     * @param graph the graph
+     * @return the roads of the spanning forest
+     */
+    public static Set<Road> prim(Graph graph) {
+        CompactGraph compact = CompactGraph.of(graph);
+        return toRoads(compact, prim(compact));
+    }
+
+    /**
+     * Computes a minimum spanning forest with Kruskal's algorithm.
+     *
+     * @param graph the compact graph
+     * @return the edge indices of the spanning forest
+     */
+    public static int[] kruskal(CompactGraph graph) {
+        int edgeCount = graph.edgeCount();
+        long[] order = new long[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            order[e] = ((long) graph.edgeWeight(e) << 32) | e;
+        }
+        Arrays.parallelSort(order);
+
+        UnionFind forest = new UnionFind(graph.vertexCount());
+        int[] chosen = new int[Math.max(graph.vertexCount() - 1, 0)];
+        int count = 0;
+        for (int i = 0; i < edgeCount && count < chosen.length; i++) {
+            int e = (int) order[i];
+            if (forest.union(graph.edgeSource(e), graph.edgeTarget(e))) {
+                chosen[count++] = e;
+            }
+        }
+        return Arrays.copyOf(chosen, count);
+    }
+
+    /**
+     * Computes a minimum spanning forest with Prim's algorithm.
+     *
+     * @param graph the compact graph
+     * @return the edge indices of the spanning forest
+     */
+    public static int[] prim(CompactGraph graph) {
+        int n = graph.vertexCount();
+        IndexedMinHeap heap = new IndexedMinHeap(n);
+        boolean[] inTree = new boolean[n];
+        int[] bestArc = new int[n];
+        int[] chosen = new int[Math.max(n - 1, 0)];
+        int count = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (inTree[root]) {
+                continue;
+            }
+            bestArc[root] = -1;
+            heap.offer(root, Integer.MIN_VALUE);
+            while (!heap.isEmpty()) {
+                int v = heap.poll();
+                inTree[v] = true;
+                if (bestArc[v] >= 0) {
+                    chosen[count++] = graph.arcEdge(bestArc[v]);
+                }
+                for (int arc = graph.firstArc(v), end = graph.firstArc(v + 1); arc < end; arc++) {
+                    int w = graph.arcTarget(arc);
+                    if (!inTree[w] && heap.offer(w, graph.arcWeight(arc))) {
+                        bestArc[w] = arc;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(chosen, count);
+    }
+
+    /**
+     * Sums the weights of a set of roads.
+     *
+     * @param roads the roads
+     * @return the total weight
+     */
+    public static long totalWeight(Set<Road> roads) {
+        long total = 0;
+        for (Road road : roads) {
+            total += road.getWeight();
+        }
+        return total;
+    }
+
+    /**
+     * Sums the weights of a set of edges.
+     *
+     * @param graph the compact graph
+     * @param edges the edge indices
+     * @return the total weight
+     */
+    public static long totalWeight(CompactGraph graph, int[] edges) {
+        long total = 0;
+        for (int e : edges) {
+            total += graph.edgeWeight(e);
+        }
+        return total;
+    }
+
+    private static Set<Road> toRoads(CompactGraph graph, int[] edges) {
+        Set<Road> roads = new HashSet<>(edges.length * 2);
+        for (int e : edges) {
+            roads.add(graph.road(e));
+        }
+        return roads;
+    }
+}
@@ -0,0 +1,74 @@
+import static org.junit.Assert.*;
+
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MinimumSpanningTreeTest {
+    private Graph graph;
+    private Town[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new Graph();
+        town = new Town[12];
+
+        for (int i = 1; i < 12; i++) {
+            town[i] = new Town("Town_" + i);
+            graph.addVertex(town[i]);
+        }
+
+        graph.addEdge(town[1], town[2], 2, "Road_1");
+        graph.addEdge(town[1], town[3], 4, "Road_2");
+        graph.addEdge(town[1], town[5], 6, "Road_3");
+        graph.addEdge(town[3], town[7], 1, "Road_4");
+        graph.addEdge(town[3], town[8], 2, "Road_5");
+        graph.addEdge(town[4], town[8], 3, "Road_6");
+        graph.addEdge(town[6], town[9], 3, "Road_7");
+        graph.addEdge(town[9], town[10], 4, "Road_8");
+        graph.addEdge(town[8], town[10], 2, "Road_9");
+        graph.addEdge(town[5], town[10], 5, "Road_10");
+        graph.addEdge(town[10], town[11], 3, "Road_11");
+        graph.addEdge(town[2], town[11], 6, "Road_12");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph = null;
+    }
+
+    @Test
+    public void testKruskal() {
+        Set<Road> tree = MinimumSpanningTree.kruskal(graph);
+        assertEquals(10, tree.size());
+        assertEquals(29, MinimumSpanningTree.totalWeight(tree));
+        assertFalse(tree.contains(graph.getEdge(town[2], town[11])));
+    }
+
+    @Test
+    public void testPrim() {
+        Set<Road> tree = MinimumSpanningTree.prim(graph);
+        assertEquals(10, tree.size());
+        assertEquals(29, MinimumSpanningTree.totalWeight(tree));
+    }
+
+    @Test
+    public void testSpanningForest() {
+        graph.addVertex(new Town("Town_12"));
+        graph.addVertex(new Town("Town_13"));
+        graph.addEdge(new Town("Town_12"), new Town("Town_13"), 7, "Road_13");
+        assertEquals(11, MinimumSpanningTree.kruskal(graph).size());
+        assertEquals(36, MinimumSpanningTree.totalWeight(MinimumSpanningTree.prim(graph)));
+    }
+
+    @Test
+    public void testRandomNetworkAgrees() {
+        CompactGraph network = RoutingBenchmark.randomNetwork(2000, 9000, 7);
+        int[] kruskal = MinimumSpanningTree.kruskal(network);
+        int[] prim = MinimumSpanningTree.prim(network);
+        assertEquals(1999, kruskal.length);
+        assertEquals(MinimumSpanningTree.totalWeight(network, kruskal), MinimumSpanningTree.totalWeight(network, prim));
+    }
+}
@@ -0,0 +1,643 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-level overlay for customizable route planning (CRP). The graph is
+ * split into nested cells by a {@link GraphPartition}; a town with a road
+ * leaving its cell is a boundary town of that cell, and for every cell the
+ * overlay stores the shortest distance between each pair of its boundary
+ * towns, found inside the cell. Cells on higher levels get their distances
+ * from the level below, so each level is a smaller graph of the same
+ * network.
+ *
+ * A query searches the roads of the smallest cells holding its source and
+ * destination, and elsewhere moves across whole cells, using the highest
+ * level whose cell holds neither end. Only a few thousand towns are settled
+ * on a network where Dijkstra settles most of it.
+ *
+ * The partition does not depend on road weights, so when weights change
+ * only the cells holding the changed roads are customized again, smallest
+ * cells first, which takes milliseconds where a full rebuild takes seconds.
+ * Queries may run side by side, each keeping its state per thread, but not
+ * while weights are being changed or customized.
+ *
+ * @author Liam Ghershony
+ */
+public class MultiLevelOverlay {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final CompactGraph graph;
+    private final GraphPartition partition;
+    private final int[][] cell;
+    private final int[] weights;
+    private final int[][] boundaryStart;
+    private final int[][] boundary;
+    private final int[][] boundaryIndex;
+    private final int[][] cliqueStart;
+    private final int[][] clique;
+    private final int[][] nodeStart;
+    private final int[][] nodes;
+    private final boolean[][] dirty;
+    private final ThreadLocal<SearchState> localState = ThreadLocal.withInitial(SearchState::new);
+    private final ThreadLocal<CellGraph> cellGraph;
+
+    private MultiLevelOverlay(CompactGraph graph, GraphPartition partition) {
+        this.graph = graph;
+        this.partition = partition;
+        int n = graph.vertexCount();
+        int levels = partition.levelCount();
+        cell = new int[levels][];
+        weights = new int[graph.edgeCount()];
+        for (int e = 0; e < weights.length; e++) {
+            weights[e] = graph.edgeWeight(e);
+        }
+        boundaryStart = new int[levels][];
+        boundary = new int[levels][];
+        boundaryIndex = new int[levels][];
+        cliqueStart = new int[levels][];
+        clique = new int[levels][];
+        nodeStart = new int[levels][];
+        nodes = new int[levels][];
+        dirty = new boolean[levels][];
+        cellGraph = ThreadLocal.withInitial(() -> new CellGraph(n));
+
+        for (int l = 0; l < levels; l++) {
+            int[] in = partition.cells(l);
+            int cells = partition.cellCount(l);
+            cell[l] = in;
+            int[] start = new int[cells + 1];
+            int[] index = new int[n];
+            Arrays.fill(index, -1);
+            for (int v = 0; v < n; v++) {
+                for (int arc = graph.firstArc(v), end = graph.firstArc(v + 1); arc < end; arc++) {
+                    if (in[graph.arcTarget(arc)] != in[v]) {
+                        index[v] = start[in[v] + 1]++;
+                        break;
+                    }
+                }
+            }
+            for (int c = 0; c < cells; c++) {
+                start[c + 1] += start[c];
+            }
+            int[] towns = new int[start[cells]];
+            for (int v = 0; v < n; v++) {
+                if (index[v] >= 0) {
+                    towns[start[in[v]] + index[v]] = v;
+                }
+            }
+            int[] matrixStart = new int[cells + 1];
+            long entries = 0;
+            for (int c = 0; c < cells; c++) {
+                long k = start[c + 1] - start[c];
+                entries += k * k;
+                if (entries > Integer.MAX_VALUE - 8) {
+                    throw new IllegalArgumentException("Cells on level " + l + " have too many boundary towns.");
+                }
+                matrixStart[c + 1] = (int) entries;
+            }
+            boundaryStart[l] = start;
+            boundary[l] = towns;
+            boundaryIndex[l] = index;
+            cliqueStart[l] = matrixStart;
+            clique[l] = new int[(int) entries];
+            dirty[l] = new boolean[cells];
+            Arrays.fill(dirty[l], true);
+
+            //a cell is customized over its towns on the lowest level, otherwise over the boundary towns below
+            int[] below = l == 0 ? null : boundary[l - 1];
+            int count = l == 0 ? n : below.length;
+            int[] nodeCells = new int[cells + 1];
+            for (int i = 0; i < count; i++) {
+                nodeCells[in[l == 0 ? i : below[i]] + 1]++;
+            }
+            for (int c = 0; c < cells; c++) {
+                nodeCells[c + 1] += nodeCells[c];
+            }
+            int[] grouped = new int[count];
+            int[] fill = Arrays.copyOf(nodeCells, cells);
+            for (int i = 0; i < count; i++) {
+                int v = l == 0 ? i : below[i];
+                grouped[fill[in[v]]++] = v;
+            }
+            nodeStart[l] = nodeCells;
+            nodes[l] = grouped;
+        }
+    }
+
+    /**
+     * Builds the overlay of a partitioned graph and customizes every cell
+     * with the graph's road weights.
+     *
+     * @param graph the graph
+     * @param partition a partition of the graph
+     * @return the overlay
+     * @throws IllegalArgumentException if the partition is of another graph, or the graph has one-way
+     * roads, as each cell keeps one symmetric table of distances between its boundary towns
+     */
+    public static MultiLevelOverlay build(CompactGraph graph, GraphPartition partition) {
+        if (partition.vertexCount() != graph.vertexCount()) {
+            throw new IllegalArgumentException("The partition is of another graph.");
+        }
+        if (graph.isDirected()) {
+            throw new IllegalArgumentException("The overlay needs a graph without one-way roads.");
+        }
+        MultiLevelOverlay overlay = new MultiLevelOverlay(graph, partition);
+        overlay.customize();
+        return overlay;
+    }
+
+    /**
+     * Gets the partition the overlay is built on.
+     *
+     * @return the partition
+     */
+    public GraphPartition getPartition() {
+        return partition;
+    }
+
+    /**
+     * Finds the edge of the overlay's graph that a road of the original
+     * graph was copied to.
+     *
+     * @param road a road of the graph the snapshot was taken from
+     * @return the edge, or -1 if the road is not in the snapshot
+     */
+    public int edgeOf(Road road) {
+        int v = graph.indexOf((Town) road.getSource());
+        if (v < 0) {
+            return -1;
+        }
+        for (int arc = graph.firstArc(v), end = graph.firstArc(v + 1); arc < end; arc++) {
+            if (road.id >= 0 && graph.roadId(graph.arcEdge(arc)) == road.id) {
+                return graph.arcEdge(arc);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the current weight of an edge.
+     *
+     * @param e the edge
+     * @return the weight
+     */
+    public int weight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * Changes the weight of an edge and marks the cells holding it for
+     * customization. Distances are wrong until {@link #customize()} is called.
+     *
+     * @param e the edge
+     * @param weight the new weight
+     */
+    public void setWeight(int e, int weight) {
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weights cannot be negative.");
+        }
+        if (weights[e] == weight) {
+            return;
+        }
+        weights[e] = weight;
+        int a = graph.edgeSource(e);
+        int b = graph.edgeTarget(e);
+        //the smallest cell holding both ends searches the edge; cells above see it only if that cell's distances change
+        for (int l = 0; l < cell.length; l++) {
+            if (cell[l][a] == cell[l][b]) {
+                dirty[l][cell[l][a]] = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Recomputes the boundary distances of every cell marked by a weight
+     * change, level by level from the smallest cells; a cell whose distances
+     * changed marks the cell above it in turn. The cells of a level are
+     * customized in parallel.
+     *
+     * @return the number of cells customized
+     */
+    public int customize() {
+        int customized = 0;
+        for (int l = 0; l < cell.length; l++) {
+            int level = l;
+            int[] cells = IntStream.range(0, dirty[l].length).filter(c -> dirty[level][c]).toArray();
+            IntStream.of(cells).parallel().forEach(c -> customize(level, c));
+            Arrays.fill(dirty[l], false);
+            customized += cells.length;
+        }
+        return customized;
+    }
+
+    private void customize(int level, int c) {
+        CellGraph local = cellGraph.get();
+        int[] matrix = clique[level];
+        int base = cliqueStart[level][c];
+        int[] previous = local.keep(matrix, base, cliqueStart[level][c + 1] - base);
+        int[] members = nodes[level];
+        int from = nodeStart[level][c];
+        int size = nodeStart[level][c + 1] - from;
+        local.reset(size);
+        for (int i = 0; i < size; i++) {
+            local.index[members[from + i]] = i;
+        }
+        int first = boundaryStart[level][c];
+        int k = boundaryStart[level][c + 1] - first;
+        for (int j = 0; j < k; j++) {
+            local.column[local.index[boundary[level][first + j]]] = j;
+        }
+        for (int i = 0; i < size; i++) {
+            int u = members[from + i];
+            if (level == 0) {
+                for (int arc = graph.firstArc(u), end = graph.firstArc(u + 1); arc < end; arc++) {
+                    int w = graph.arcTarget(arc);
+                    if (cell[0][w] == c) {
+                        local.add(local.index[w], weights[graph.arcEdge(arc)]);
+                    }
+                }
+            } else {
+                int below = level - 1;
+                int[] in = cell[below];
+                int sub = in[u];
+                int subFirst = boundaryStart[below][sub];
+                int subK = boundaryStart[below][sub + 1] - subFirst;
+                int row = cliqueStart[below][sub] + boundaryIndex[below][u] * subK;
+                for (int j = 0; j < subK; j++) {
+                    int across = clique[below][row + j];
+                    if (across != INFINITY && boundary[below][subFirst + j] != u) {
+                        local.add(local.index[boundary[below][subFirst + j]], across);
+                    }
+                }
+                for (int arc = graph.firstArc(u), end = graph.firstArc(u + 1); arc < end; arc++) {
+                    int w = graph.arcTarget(arc);
+                    if (in[w] != sub && cell[level][w] == c) {
+                        local.add(local.index[w], weights[graph.arcEdge(arc)]);
+                    }
+                }
+            }
+            local.end(i);
+        }
+        for (int i = 0; i < k; i++) {
+            local.distances(local.index[boundary[level][first + i]], k, matrix, base + i * k);
+        }
+        for (int i = 0; i < size; i++) {
+            local.index[members[from + i]] = -1;
+        }
+        if (k > 0 && level + 1 < cell.length
+                && !Arrays.equals(matrix, base, base + k * k, previous, 0, k * k)) {
+            //cells of a level run in parallel, but every write here stores the same true
+            dirty[level + 1][cell[level + 1][boundary[level][first]]] = true;
+        }
+    }
+
+    /**
+     * Relaxes the moves out of a town that stay inside a cell: its roads on
+     * the lowest level, otherwise the overlay of the level below.
+     */
+    private void expand(int level, int c, int u, int d, SearchState state) {
+        if (level > 0) {
+            relax(level - 1, u, d, state, cell[level], c);
+            return;
+        }
+        int[] in = cell[0];
+        for (int arc = graph.firstArc(u), end = graph.firstArc(u + 1); arc < end; arc++) {
+            int w = graph.arcTarget(arc);
+            if (in[w] == c) {
+                reach(state, w, (long) d + weights[graph.arcEdge(arc)], arc);
+            }
+        }
+    }
+
+    /**
+     * Relaxes the moves out of a boundary town on a level's overlay: across
+     * its cell to the cell's other boundary towns, and along its roads into
+     * other cells. Roads leaving the enclosing cell, if one is given, are
+     * skipped.
+     */
+    private void relax(int level, int u, int d, SearchState state, int[] within, int withinCell) {
+        int[] in = cell[level];
+        int c = in[u];
+        int i = boundaryIndex[level][u];
+        if (i >= 0) {
+            int first = boundaryStart[level][c];
+            int k = boundaryStart[level][c + 1] - first;
+            int row = cliqueStart[level][c] + i * k;
+            int[] matrix = clique[level];
+            for (int j = 0; j < k; j++) {
+                int across = matrix[row + j];
+                if (j != i && across != INFINITY) {
+                    reach(state, boundary[level][first + j], (long) d + across, -2 - u);
+                }
+            }
+        }
+        for (int arc = graph.firstArc(u), end = graph.firstArc(u + 1); arc < end; arc++) {
+            int w = graph.arcTarget(arc);
+            if (in[w] != c && (within == null || within[w] == withinCell)) {
+                reach(state, w, (long) d + weights[graph.arcEdge(arc)], arc);
+            }
+        }
+    }
+
+    private static void reach(SearchState state, int w, long alt, int via) {
+        if (alt < state.distance(w)) {
+            state.reach(w, (int) alt, via);
+        }
+    }
+
+    /**
+     * Gets the highest level on which a town's cell holds neither the source
+     * nor the destination of a query.
+     *
+     * @return the level, or -1 if every cell of the town holds one of them
+     */
+    private int queryLevel(int u, int s, int t) {
+        for (int l = cell.length - 1; l >= 0; l--) {
+            int c = cell[l][u];
+            if (c != cell[l][s] && c != cell[l][t]) {
+                return l;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Runs a query search, leaving its distances and moves in the state.
+     *
+     * @return the number of towns settled, negated if the destination was not reached
+     */
+    private int search(int s, int t, SearchState state) {
+        state.reset(graph.vertexCount());
+        state.reach(s, 0, -1);
+        int settled = 0;
+        while (!state.isQueueEmpty()) {
+            int u = state.poll();
+            SearchState.checkInterrupted(++settled);
+            if (u == t) {
+                return settled;
+            }
+            int d = state.distance(u);
+            int level = queryLevel(u, s, t);
+            if (level >= 0) {
+                relax(level, u, d, state, null, 0);
+                continue;
+            }
+            for (int arc = graph.firstArc(u), end = graph.firstArc(u + 1); arc < end; arc++) {
+                reach(state, graph.arcTarget(arc), (long) d + weights[graph.arcEdge(arc)], arc);
+            }
+        }
+        return -settled;
+    }
+
+    /**
+     * Gets the shortest distance between two vertices.
+     *
+     * @param s the source vertex
+     * @param t the destination vertex
+     * @return the distance, or -1 if no route exists
+     */
+    public long distance(int s, int t) {
+        SearchState state = localState.get();
+        return search(s, t, state) > 0 ? state.distance(t) : -1;
+    }
+
+    /**
+     * Gets the shortest distance between two towns.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the distance, or -1 if either town is not in the graph or no route exists
+     */
+    public long distance(Town source, Town destination) {
+        int s = graph.indexOf(source);
+        int t = graph.indexOf(destination);
+        return s < 0 || t < 0 ? -1 : distance(s, t);
+    }
+
+    /**
+     * Finds the shortest path between two towns, unpacking every move
+     * across a cell into the roads it stands for.
+     *
+     * @param source the source town
+     * @param destination the destination town
+     * @return the route; its steps are empty if no path exists
+     */
+    public LandmarkIndex.Route shortestPath(Town source, Town destination) {
+        int s = graph.indexOf(source);
+        int t = graph.indexOf(destination);
+        if (s < 0 || t < 0) {
+            return new LandmarkIndex.Route(new ArrayList<>(), new ArrayList<>(), -1, 0);
+        }
+        return route(s, t);
+    }
+
+    /**
+     * Finds the shortest path between two vertices.
+     *
+     * @param s the source vertex
+     * @param t the destination vertex
+     * @return the route
+     */
+    public LandmarkIndex.Route route(int s, int t) {
+        SearchState state = localState.get();
+        int settled = search(s, t, state);
+        ArrayList<String> steps = new ArrayList<>();
+        ArrayList<String> towns = new ArrayList<>();
+        if (settled < 0) {
+            return new LandmarkIndex.Route(steps, towns, -1, -settled);
+        }
+        int distance = state.distance(t);
+        //moves are read back to front; a move across a cell is kept as its level and ends
+        ArrayList<int[]> moves = new ArrayList<>();
+        for (int v = t; v != s; ) {
+            int via = state.via(v);
+            if (via >= 0) {
+                moves.add(new int[] {-1, via});
+                v = graph.otherEnd(graph.arcEdge(via), v);
+            } else {
+                int u = -2 - via;
+                moves.add(new int[] {queryLevel(u, s, t), u, v});
+                v = u;
+            }
+        }
+        Collections.reverse(moves);
+        ArrayList<Integer> arcs = new ArrayList<>();
+        for (int[] move : moves) {
+            if (move[0] < 0) {
+                arcs.add(move[1]);
+            } else {
+                unpack(move[0], move[1], move[2], state, arcs);
+            }
+        }
+        int v = s;
+        towns.add(name(s));
+        for (int arc : arcs) {
+            int e = graph.arcEdge(arc);
+            int w = graph.arcTarget(arc);
+            String road = graph.roadName(e);
+            steps.add(String.format("%s via %s to %s %d mi", name(v),
+                    road == null ? Integer.toString(e) : road, name(w), weights[e]));
+            towns.add(name(w));
+            v = w;
+        }
+        return new LandmarkIndex.Route(steps, towns, distance, settled);
+    }
+
+    /**
+     * Appends the arcs of the shortest path inside a cell between two of its
+     * boundary towns, unpacking moves across smaller cells in turn.
+     */
+    private void unpack(int level, int from, int to, SearchState state, ArrayList<Integer> arcs) {
+        int c = cell[level][from];
+        state.reset(graph.vertexCount());
+        state.reach(from, 0, -1);
+        while (!state.isQueueEmpty()) {
+            int u = state.poll();
+            if (u == to) {
+                break;
+            }
+            expand(level, c, u, state.distance(u), state);
+        }
+        ArrayList<int[]> moves = new ArrayList<>();
+        for (int v = to; v != from; ) {
+            int via = state.via(v);
+            if (via >= 0) {
+                moves.add(new int[] {via});
+                v = graph.otherEnd(graph.arcEdge(via), v);
+            } else {
+                moves.add(new int[] {-2 - via, v});
+                v = -2 - via;
+            }
+        }
+        for (int i = moves.size() - 1; i >= 0; i--) {
+            int[] move = moves.get(i);
+            if (move.length == 1) {
+                arcs.add(move[0]);
+            } else {
+                unpack(level - 1, move[0], move[1], state, arcs);
+            }
+        }
+    }
+
+    private String name(int v) {
+        Town town = graph.town(v);
+        return town == null ? Integer.toString(v) : town.getName();
+    }
+
+    /**
+     * Gets the number of boundary towns on a level.
+     *
+     * @param level the level, 0 for the smallest cells
+     * @return the number of boundary towns
+     */
+    public int boundaryCount(int level) {
+        return boundary[level].length;
+    }
+
+    /**
+     * Gets the number of stored boundary distances over all cells and levels.
+     *
+     * @return the number of distances
+     */
+    public long cliqueEntries() {
+        long entries = 0;
+        for (int[] matrix : clique) {
+            entries += matrix.length;
+        }
+        return entries;
+    }
+
+    /**
+     * The graph searched to customize one cell, with the cell's towns
+     * numbered from 0 so the searches run on small arrays instead of ones
+     * as large as the network. Kept per thread and reused from cell to cell.
+     */
+    private static class CellGraph {
+        final int[] index;
+        int[] column = new int[0];
+        int[] offsets = new int[1];
+        int[] targets = new int[16];
+        int[] lengths = new int[16];
+        int[] dist = new int[0];
+        int[] previous = new int[0];
+        final IndexedMinHeap heap = new IndexedMinHeap(0);
+        int size;
+        int arcs;
+
+        CellGraph(int vertexCount) {
+            index = new int[vertexCount];
+            Arrays.fill(index, -1);
+        }
+
+        /**
+         * Copies a cell's matrix before it is recomputed.
+         */
+        int[] keep(int[] matrix, int from, int length) {
+            if (length > previous.length) {
+                previous = new int[Math.max(length, 2 * previous.length)];
+            }
+            System.arraycopy(matrix, from, previous, 0, length);
+            return previous;
+        }
+
+        void reset(int size) {
+            if (size > dist.length) {
+                column = new int[size];
+                offsets = new int[size + 1];
+                dist = new int[size];
+                heap.ensureCapacity(size);
+            }
+            Arrays.fill(column, 0, size, -1);
+            this.size = size;
+            arcs = 0;
+        }
+
+        void add(int target, int length) {
+            if (arcs == targets.length) {
+                targets = Arrays.copyOf(targets, 2 * arcs);
+                lengths = Arrays.copyOf(lengths, 2 * arcs);
+            }
+            targets[arcs] = target;
+            lengths[arcs++] = length;
+        }
+
+        void end(int node) {
+            offsets[node + 1] = arcs;
+        }
+
+        /**
+         * Searches from a node until every boundary town is settled, writing
+         * their distances to a row of the cell's matrix.
+         */
+        void distances(int source, int k, int[] matrix, int row) {
+            Arrays.fill(matrix, row, row + k, INFINITY);
+            Arrays.fill(dist, 0, size, INFINITY);
+            dist[source] = 0;
+            heap.offer(source, 0);
+            int found = 0;
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                int d = dist[u];
+                if (column[u] >= 0) {
+                    matrix[row + column[u]] = d;
+                    if (++found == k) {
+                        heap.clear();
+                        return;
+                    }
+                }
+                for (int arc = offsets[u], end = offsets[u + 1]; arc < end; arc++) {
+                    int w = targets[arc];
+                    long alt = (long) d + lengths[arc];
+                    if (alt < dist[w]) {
+                        dist[w] = (int) alt;
+                        heap.offer(w, (int) alt);
+                    }
+                }
+            }
+        }
+    }
+}
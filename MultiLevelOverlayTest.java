@@ -0,0 +1,133 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MultiLevelOverlayTest {
+    private CompactGraph network;
+    private MultiLevelOverlay overlay;
+
+    @Before
+    public void setUp() throws Exception {
+        network = RoutingBenchmark.randomNetwork(1500, 4500, 11);
+        overlay = MultiLevelOverlay.build(network, GraphPartition.build(network, 24, 160, 900));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        network = null;
+        overlay = null;
+    }
+
+    /**
+     * Plain Dijkstra over the overlay's current weights.
+     */
+    private int[] from(int source) {
+        int[] dist = new int[network.vertexCount()];
+        Arrays.fill(dist, -1);
+        IndexedMinHeap heap = new IndexedMinHeap(dist.length);
+        heap.offer(source, 0);
+        while (!heap.isEmpty()) {
+            int key = heap.keyOf(heap.peek());
+            int v = heap.poll();
+            dist[v] = key;
+            for (int arc = network.firstArc(v); arc < network.firstArc(v + 1); arc++) {
+                int w = network.arcTarget(arc);
+                if (dist[w] < 0) {
+                    heap.offer(w, key + overlay.weight(network.arcEdge(arc)));
+                }
+            }
+        }
+        return dist;
+    }
+
+    private void assertMatchesSearch() {
+        for (int s = 0; s < 1500; s += 37) {
+            int[] dist = from(s);
+            for (int t = 0; t < 1500; t += 3) {
+                assertEquals(s + " to " + t, dist[t], overlay.distance(s, t));
+            }
+        }
+    }
+
+    @Test
+    public void testDistances() {
+        assertTrue(overlay.boundaryCount(0) > overlay.boundaryCount(2));
+        assertMatchesSearch();
+    }
+
+    @Test
+    public void testPathsAddUp() {
+        Random random = new Random(3);
+        for (int i = 0; i < 60; i++) {
+            int s = random.nextInt(1500);
+            int t = random.nextInt(1500);
+            LandmarkIndex.Route route = overlay.route(s, t);
+            ArrayList<String> steps = route.getSteps();
+            assertEquals(from(s)[t], route.getDistance());
+            int total = 0;
+            String at = Integer.toString(s);
+            for (String step : steps) {
+                String[] words = step.split(" ");
+                assertEquals(at, words[0]);
+                total += Integer.parseInt(words[5]);
+                at = words[4];
+            }
+            assertEquals(s == t ? 0 : route.getDistance(), total);
+            assertEquals(Integer.toString(t), at);
+        }
+    }
+
+    @Test
+    public void testCustomize() {
+        Random random = new Random(8);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 40; i++) {
+                overlay.setWeight(random.nextInt(network.edgeCount()), random.nextInt(300));
+            }
+            int customized = overlay.customize();
+            assertTrue(customized > 0);
+            assertMatchesSearch();
+        }
+        assertEquals(0, overlay.customize());
+    }
+
+    @Test
+    public void testManagerWeights() {
+        TownGraphManager manager = new TownGraphManager();
+        for (int i = 0; i < 40; i++) {
+            manager.addTown("Town_" + i);
+        }
+        for (int i = 1; i < 40; i++) {
+            manager.addRoad("Town_" + (i - 1), "Town_" + i, 2, "Main");
+            if (i % 5 == 0) {
+                manager.addRoad("Town_" + (i - 5), "Town_" + i, 7, "Bypass_" + i);
+            }
+        }
+        manager.buildMultiLevelOverlay(4, 16);
+        assertEquals(57, manager.getDistance("Town_0", "Town_39"));
+        assertTrue(manager.setRoadWeight("Town_10", "Town_15", "Bypass_15", 30));
+        assertFalse(manager.setRoadWeight("Town_10", "Town_15", "Bypass_15", 30));
+        assertFalse(manager.setRoadWeight("Town_10", "Town_16", "Bypass_15", 1));
+        assertEquals(60, manager.getDistance("Town_0", "Town_39"));
+        ArrayList<String> path = manager.getPath("Town_0", "Town_39");
+        assertEquals("Town_0 via Bypass_5 to Town_5 7 mi", path.get(0).trim());
+        assertEquals("Town_10 via Main to Town_11 2 mi", path.get(2).trim());
+        assertEquals(15, path.size());
+        try {
+            manager.setRoadWeights(Arrays.asList(new RoadRecord("Town_10", "Town_15", 2, "Bypass_15"),
+                    new RoadRecord("Town_0", "Town_5", -1, "Bypass_5")));
+            fail("A negative weight should be rejected");
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        //nothing changed, and the overlay is still in use
+        assertEquals(60, manager.getDistance("Town_0", "Town_39"));
+        assertEquals(path, manager.getPath("Town_0", "Town_39"));
+    }
+}
@@ -0,0 +1,856 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Append-only log of the changes made to a graph, so they survive a restart.
+ * Every change is appended as a checksummed record to an in-memory batch, and
+ * a single flusher thread writes whole batches to the log file with one fsync
+ * each. Callers that need durability wait for the fsync covering their record,
+ * so changes made while an fsync is running share the next one.
+ *
+ * The log is compacted by starting a new generation and writing a snapshot of
+ * the graph as it was at that point: snapshot-g.dat holds everything before
+ * log-g.wal. Recovery loads the newest snapshot and replays only the logs from
+ * its generation on, cutting off a record torn by a crash at the very end.
+ *
+ * @author Liam Ghershony
+ */
+public class MutationLog implements Closeable {
+
+    /**
+     * Receives the changes read back from a snapshot and the logs after it.
+     */
+    interface Target {
+        void addTown(String name);
+
+        void addRoad(String town1, String town2, int weight, String roadName);
+
+        void addOneWayRoad(String from, String to, int weight, String roadName);
+
+        void deleteRoad(String town1, String town2, String roadName);
+
+        void deleteTown(String name);
+
+        void setRoadWeight(String town1, String town2, String roadName, int weight);
+    }
+
+    /**
+     * The towns and roads of a graph copied out at one point, to be written
+     * as a snapshot without holding up further changes.
+     */
+    static final class Snapshot {
+        final String[] towns;
+        final int[] source;
+        final int[] destination;
+        final int[] weight;
+        final String[] roadNames;
+        final boolean[] oneWay;
+
+        private Snapshot(String[] towns, int[] source, int[] destination, int[] weight, String[] roadNames,
+                boolean[] oneWay) {
+            this.towns = towns;
+            this.source = source;
+            this.destination = destination;
+            this.weight = weight;
+            this.roadNames = roadNames;
+            this.oneWay = oneWay;
+        }
+    }
+
+    private static final class Batch {
+        byte[] bytes = new byte[1 << 16];
+        int size;
+
+        void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + extra));
+            }
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            setInt(size, value);
+            size += 4;
+        }
+
+        void setInt(int at, int value) {
+            bytes[at] = (byte) (value >>> 24);
+            bytes[at + 1] = (byte) (value >>> 16);
+            bytes[at + 2] = (byte) (value >>> 8);
+            bytes[at + 3] = (byte) value;
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] utf = value.getBytes(StandardCharsets.UTF_8);
+            putInt(utf.length);
+            ensure(utf.length);
+            System.arraycopy(utf, 0, bytes, size, utf.length);
+            size += utf.length;
+        }
+    }
+
+    private static final byte ADD_TOWN = 1;
+    private static final byte ADD_ROAD = 2;
+    private static final byte DELETE_ROAD = 3;
+    private static final byte DELETE_TOWN = 4;
+    private static final byte ADD_ONE_WAY_ROAD = 5;
+    private static final byte SET_WEIGHT = 6;
+    //set on a road's name number in a snapshot if the road is one-way
+    private static final int ONE_WAY = 1 << 31;
+    private static final int LOG_MAGIC = 0x4D4C4F47;
+    private static final int SNAPSHOT_MAGIC = 0x4D534E50;
+    private static final int HEADER = 8;
+    private static final int MAX_RECORD = 1 << 20;
+
+    private final File dir;
+    private final boolean waitForSync;
+    private final Thread flusher;
+    //held while a batch is taken and written, so batches reach the file in order
+    private final Object channelLock = new Object();
+    private FileChannel channel;
+    private int generation;
+    private Batch spare = new Batch();
+    //guards the batch being filled and the counters below
+    private final Object monitor = new Object();
+    private Batch pending = new Batch();
+    private long appended;
+    private long durable;
+    private long records;
+    private IOException failure;
+    private boolean closed;
+    private int snapshotGeneration;
+
+    private MutationLog(File dir, boolean waitForSync, int generation, int snapshotGeneration) {
+        this.dir = dir;
+        this.waitForSync = waitForSync;
+        this.generation = generation;
+        this.snapshotGeneration = snapshotGeneration;
+        this.flusher = new Thread(this::flushLoop, "mutation-log-flusher");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Opens the log in a directory, first replaying the newest snapshot and
+     * the changes logged after it into a target.
+     *
+     * @param dir the directory holding the log, created if missing
+     * @param waitForSync true if {@link #await(long)} should wait for the fsync
+     *        covering a change, false to only wait for it to be buffered
+     * @param target the graph to restore
+     * @return the log, ready for appending
+     * @throws IOException if an I/O error occurs or the log is corrupt
+     */
+    static MutationLog open(File dir, boolean waitForSync, Target target) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create the log directory " + dir + ".");
+        }
+        TreeMap<Integer, File> snapshots = new TreeMap<>();
+        TreeMap<Integer, File> logs = new TreeMap<>();
+        File[] files = dir.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                //a snapshot that was never finished
+                Files.deleteIfExists(file.toPath());
+            } else if (name.matches("snapshot-\\d+\\.dat")) {
+                snapshots.put(Integer.parseInt(name.substring(9, name.length() - 4)), file);
+            } else if (name.matches("log-\\d+\\.wal")) {
+                logs.put(Integer.parseInt(name.substring(4, name.length() - 4)), file);
+            }
+        }
+        int base = snapshots.isEmpty() ? 0 : snapshots.lastKey();
+        if (!snapshots.isEmpty()) {
+            readSnapshot(snapshots.lastEntry().getValue(), base, target);
+        }
+        int generation = base;
+        long end = 0;
+        for (Map.Entry<Integer, File> log : logs.tailMap(base, true).entrySet()) {
+            generation = log.getKey();
+            end = replay(log.getValue(), generation, log.getKey().equals(logs.lastKey()), target);
+        }
+        MutationLog log = new MutationLog(dir, waitForSync, generation, base);
+        File current = log.logFile(generation);
+        if (end >= HEADER) {
+            log.channel = FileChannel.open(current.toPath(), StandardOpenOption.WRITE);
+            log.channel.truncate(end);
+            log.channel.position(end);
+        } else {
+            log.channel = log.createLog(generation);
+        }
+        log.deleteBefore(base);
+        log.flusher.start();
+        return log;
+    }
+
+    /**
+     * Copies the towns and roads out of a graph for a snapshot. Must not run
+     * alongside changes to the graph.
+     *
+     * @param graph the graph
+     * @return the copy
+     */
+    static Snapshot capture(Graph graph) {
+        int bound = graph.townIdBound();
+        int[] index = new int[bound];
+        ArrayList<String> towns = new ArrayList<>();
+        for (int id = 0; id < bound; id++) {
+            String name = graph.townName(id);
+            if (name != null) {
+                index[id] = towns.size();
+                towns.add(name);
+            }
+        }
+        int roadBound = graph.roadIdBound();
+        int count = 0;
+        for (int road = 0; road < roadBound; road++) {
+            if (graph.roadSource(road) >= 0) {
+                count++;
+            }
+        }
+        int[] source = new int[count];
+        int[] destination = new int[count];
+        int[] weight = new int[count];
+        String[] roadNames = new String[count];
+        boolean[] oneWay = new boolean[count];
+        int e = 0;
+        for (int road = 0; road < roadBound; road++) {
+            if (graph.roadSource(road) >= 0) {
+                source[e] = index[graph.roadSource(road)];
+                destination[e] = index[graph.roadDestination(road)];
+                weight[e] = graph.roadWeight(road);
+                oneWay[e] = graph.isOneWay(road);
+                roadNames[e++] = graph.roadName(road);
+            }
+        }
+        return new Snapshot(towns.toArray(new String[0]), source, destination, weight, roadNames, oneWay);
+    }
+
+    /**
+     * Logs the addition of a town.
+     *
+     * @param name the town's name
+     * @return the sequence number of the change, to pass to {@link #await(long)}
+     * @throws IOException if the log has failed or is closed
+     */
+    public long addTown(String name) throws IOException {
+        synchronized (monitor) {
+            int start = begin(ADD_TOWN);
+            pending.putString(name);
+            return finish(start);
+        }
+    }
+
+    /**
+     * Logs the addition of a road.
+     *
+     * @param town1 the name of one town
+     * @param town2 the name of the other town
+     * @param weight the road's weight
+     * @param roadName the road's name
+     * @return the sequence number of the change, to pass to {@link #await(long)}
+     * @throws IOException if the log has failed or is closed
+     */
+    public long addRoad(String town1, String town2, int weight, String roadName) throws IOException {
+        synchronized (monitor) {
+            int start = begin(ADD_ROAD);
+            pending.putString(town1);
+            pending.putString(town2);
+            pending.putInt(weight);
+            pending.putString(roadName);
+            return finish(start);
+        }
+    }
+
+    /**
+     * Logs the addition of a one-way road.
+     *
+     * @param from the name of the town the road starts from
+     * @param to the name of the town the road leads to
+     * @param weight the road's weight
+     * @param roadName the road's name
+     * @return the sequence number of the change, to pass to {@link #await(long)}
+     * @throws IOException if the log has failed or is closed
+     */
+    public long addOneWayRoad(String from, String to, int weight, String roadName) throws IOException {
+        synchronized (monitor) {
+            int start = begin(ADD_ONE_WAY_ROAD);
+            pending.putString(from);
+            pending.putString(to);
+            pending.putInt(weight);
+            pending.putString(roadName);
+            return finish(start);
+        }
+    }
+
+    /**
+     * Logs the deletion of a road.
+     *
+     * @param town1 the name of one town
+     * @param town2 the name of the other town
+     * @param roadName the road's name
+     * @return the sequence number of the change, to pass to {@link #await(long)}
+     * @throws IOException if the log has failed or is closed
+     */
+    public long deleteRoad(String town1, String town2, String roadName) throws IOException {
+        synchronized (monitor) {
+            int start = begin(DELETE_ROAD);
+            pending.putString(town1);
+            pending.putString(town2);
+            pending.putString(roadName);
+            return finish(start);
+        }
+    }
+
+    /**
+     * Logs a change to a road's weight. The road is named by its towns and
+     * name, so replaying the change finds the same road even where others
+     * run between the same towns.
+     *
+     * @param town1 the name of the town the road starts from
+     * @param town2 the name of the other town
+     * @param roadName the road's name
+     * @param weight the road's new weight
+     * @return the sequence number of the change, to pass to {@link #await(long)}
+     * @throws IOException if the log has failed or is closed
+     */
+    public long setRoadWeight(String town1, String town2, String roadName, int weight) throws IOException {
+        synchronized (monitor) {
+            int start = begin(SET_WEIGHT);
+            pending.putString(town1);
+            pending.putString(town2);
+            pending.putString(roadName);
+            pending.putInt(weight);
+            return finish(start);
+        }
+    }
+
+    /**
+     * Logs the deletion of a town and its roads.
+     *
+     * @param name the town's name
+     * @return the sequence number of the change, to pass to {@link #await(long)}
+     * @throws IOException if the log has failed or is closed
+     */
+    public long deleteTown(String name) throws IOException {
+        synchronized (monitor) {
+            int start = begin(DELETE_TOWN);
+            pending.putString(name);
+            return finish(start);
+        }
+    }
+
+    /**
+     * Waits until a logged change is on disk. If the log was opened without
+     * waiting for fsyncs, only checks that the log has not failed.
+     *
+     * @param sequence the sequence number of the change
+     * @throws IOException if the log failed before the change was written
+     */
+    public void await(long sequence) throws IOException {
+        synchronized (monitor) {
+            boolean interrupted = false;
+            while (waitForSync && durable < sequence && failure == null) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new IOException("The mutation log failed.", failure);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of changes logged since the last compaction.
+     *
+     * @return the number of records in the current log file
+     */
+    public long recordsSinceSnapshot() {
+        synchronized (monitor) {
+            return records;
+        }
+    }
+
+    /**
+     * Gets the generation of the log file being appended to.
+     *
+     * @return the current generation
+     */
+    public int generation() {
+        synchronized (channelLock) {
+            return generation;
+        }
+    }
+
+    /**
+     * Writes out everything logged so far and starts the next log file. The
+     * snapshot for the new generation must be captured at the same point,
+     * with no changes in between.
+     *
+     * @return the new generation
+     * @throws IOException if an I/O error occurs
+     */
+    int rotate() throws IOException {
+        synchronized (channelLock) {
+            flush();
+            channel.close();
+            channel = createLog(generation + 1);
+            generation++;
+            synchronized (monitor) {
+                records = 0;
+            }
+            return generation;
+        }
+    }
+
+    /**
+     * Writes a snapshot for a generation and deletes the files it makes
+     * obsolete. The snapshot is written to a temporary file and renamed once
+     * it is on disk, so a crash leaves either the old or the new snapshot.
+     *
+     * @param gen the generation returned by {@link #rotate()}
+     * @param snapshot the graph as captured when the generation started
+     * @throws IOException if an I/O error occurs
+     */
+    synchronized void writeSnapshot(int gen, Snapshot snapshot) throws IOException {
+        if (gen <= snapshotGeneration) {
+            return;
+        }
+        File tmp = new File(dir, "snapshot-" + gen + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            CRC32 crc = new CRC32();
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(gen);
+            out.writeInt(snapshot.towns.length);
+            for (String town : snapshot.towns) {
+                writeString(out, town);
+            }
+            Map<String, Integer> ids = new HashMap<>();
+            ArrayList<String> names = new ArrayList<>();
+            int[] nameOf = new int[snapshot.roadNames.length];
+            for (int e = 0; e < nameOf.length; e++) {
+                Integer id = ids.get(snapshot.roadNames[e]);
+                if (id == null) {
+                    id = names.size();
+                    ids.put(snapshot.roadNames[e], id);
+                    names.add(snapshot.roadNames[e]);
+                }
+                nameOf[e] = id;
+            }
+            out.writeInt(names.size());
+            for (String name : names) {
+                writeString(out, name);
+            }
+            out.writeInt(nameOf.length);
+            for (int e = 0; e < nameOf.length; e++) {
+                out.writeInt(snapshot.source[e]);
+                out.writeInt(snapshot.destination[e]);
+                out.writeInt(snapshot.weight[e]);
+                out.writeInt(snapshot.oneWay[e] ? nameOf[e] | ONE_WAY : nameOf[e]);
+            }
+            out.flush();
+            out.writeInt((int) crc.getValue());
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(tmp.toPath(), new File(dir, "snapshot-" + gen + ".dat").toPath(),
+                StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+        snapshotGeneration = gen;
+        deleteBefore(gen);
+    }
+
+    /**
+     * Writes out everything logged and closes the log.
+     *
+     * @throws IOException if the log failed or an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (monitor) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            monitor.notifyAll();
+        }
+        boolean interrupted = false;
+        while (flusher.isAlive()) {
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (channelLock) {
+            channel.close();
+        }
+        synchronized (monitor) {
+            if (failure != null) {
+                throw new IOException("The mutation log failed.", failure);
+            }
+        }
+    }
+
+    private int begin(byte op) throws IOException {
+        if (failure != null) {
+            throw new IOException("The mutation log failed.", failure);
+        }
+        if (closed) {
+            throw new IOException("The mutation log is closed.");
+        }
+        int start = pending.size;
+        pending.putInt(0);
+        pending.putByte(op);
+        return start;
+    }
+
+    /**
+     * Fills in the length and checksum of the record started at an offset of
+     * the pending batch and wakes the flusher.
+     */
+    private long finish(int start) throws IOException {
+        int length = pending.size - start - 4;
+        if (length > MAX_RECORD) {
+            pending.size = start;
+            throw new IOException("A change is too large to log.");
+        }
+        pending.setInt(start, length);
+        CRC32 crc = new CRC32();
+        crc.update(pending.bytes, start + 4, length);
+        pending.putInt((int) crc.getValue());
+        records++;
+        monitor.notifyAll();
+        return ++appended;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            synchronized (monitor) {
+                while (pending.size == 0 && !closed) {
+                    try {
+                        monitor.wait();
+                    } catch (InterruptedException e) {
+                        //only close stops the flusher
+                    }
+                }
+                if (pending.size == 0) {
+                    return;
+                }
+            }
+            try {
+                flush();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the pending batch and fsyncs it. Changes appended meanwhile go
+     * to the spare batch and are written by the next flush.
+     */
+    private void flush() throws IOException {
+        synchronized (channelLock) {
+            Batch batch;
+            long upTo;
+            synchronized (monitor) {
+                if (failure != null) {
+                    throw new IOException("The mutation log failed.", failure);
+                }
+                if (pending.size == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                upTo = appended;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch.bytes, 0, batch.size);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                synchronized (monitor) {
+                    failure = e;
+                    monitor.notifyAll();
+                }
+                throw e;
+            }
+            batch.size = 0;
+            spare = batch;
+            synchronized (monitor) {
+                durable = upTo;
+                monitor.notifyAll();
+            }
+        }
+    }
+
+    private File logFile(int gen) {
+        return new File(dir, "log-" + gen + ".wal");
+    }
+
+    private FileChannel createLog(int gen) throws IOException {
+        FileChannel created = FileChannel.open(logFile(gen).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(LOG_MAGIC).putInt(gen).flip();
+        while (header.hasRemaining()) {
+            created.write(header);
+        }
+        created.force(false);
+        syncDirectory();
+        return created;
+    }
+
+    /**
+     * Deletes the snapshots and logs older than a generation, which the
+     * snapshot for that generation covers.
+     */
+    private void deleteBefore(int gen) throws IOException {
+        File[] files = dir.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            int old = -1;
+            if (name.matches("snapshot-\\d+\\.dat")) {
+                old = Integer.parseInt(name.substring(9, name.length() - 4));
+            } else if (name.matches("log-\\d+\\.wal")) {
+                old = Integer.parseInt(name.substring(4, name.length() - 4));
+            }
+            if (old >= 0 && old < gen) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            //not every platform can sync a directory; the files themselves are synced
+        }
+    }
+
+    /**
+     * Reads a snapshot into a target. The whole file is read and its checksum
+     * checked before anything is applied, so a corrupt snapshot leaves the
+     * target untouched.
+     */
+    private static void readSnapshot(File file, int gen, Target target) throws IOException {
+        CRC32 crc = new CRC32();
+        String[] towns;
+        String[] names;
+        int[] roads;
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16), crc))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != gen) {
+                throw new IOException("Not a graph snapshot: " + file);
+            }
+            towns = new String[count(in, file)];
+            for (int v = 0; v < towns.length; v++) {
+                towns[v] = readString(in);
+            }
+            names = new String[count(in, file)];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = readString(in);
+            }
+            //source, destination, weight and name number of each road
+            roads = new int[4 * count(in, file)];
+            for (int i = 0; i < roads.length; i++) {
+                roads[i] = in.readInt();
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Corrupt graph snapshot: " + file);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Truncated graph snapshot: " + file, e);
+        }
+        for (String town : towns) {
+            target.addTown(town);
+        }
+        for (int i = 0; i < roads.length; i += 4) {
+            String source = towns[roads[i]];
+            String destination = towns[roads[i + 1]];
+            int name = roads[i + 3];
+            if ((name & ONE_WAY) != 0) {
+                target.addOneWayRoad(source, destination, roads[i + 2], names[name & ~ONE_WAY]);
+            } else {
+                target.addRoad(source, destination, roads[i + 2], names[name]);
+            }
+        }
+    }
+
+    private static int count(DataInputStream in, File file) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > Integer.MAX_VALUE / 4) {
+            throw new IOException("Corrupt graph snapshot: " + file);
+        }
+        return count;
+    }
+
+    /**
+     * Replays the records of one log file.
+     *
+     * @return the length of the file up to the end of the last good record,
+     *         or 0 if not even the header was written
+     */
+    private static long replay(File file, int gen, boolean last, Target target) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            try {
+                if (in.readInt() != LOG_MAGIC || in.readInt() != gen) {
+                    throw new IOException("Not a mutation log: " + file);
+                }
+            } catch (EOFException e) {
+                if (last) {
+                    return 0;
+                }
+                throw new IOException("Truncated mutation log: " + file, e);
+            }
+            long position = HEADER;
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return position;
+                }
+                byte[] payload = null;
+                int checksum = 0;
+                if (length > 0 && length <= MAX_RECORD) {
+                    payload = new byte[length];
+                    try {
+                        in.readFully(payload);
+                        checksum = in.readInt();
+                    } catch (EOFException e) {
+                        payload = null;
+                    }
+                }
+                if (payload != null) {
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                }
+                if (payload == null || (int) crc.getValue() != checksum) {
+                    //a crash can only tear the record being written last
+                    if (last) {
+                        return position;
+                    }
+                    throw new IOException("Corrupt mutation log: " + file);
+                }
+                apply(payload, target);
+                position += 8 + length;
+            }
+        }
+    }
+
+    private static void apply(byte[] payload, Target target) throws IOException {
+        ByteBuffer record = ByteBuffer.wrap(payload);
+        switch (record.get()) {
+            case ADD_TOWN:
+                target.addTown(getString(record));
+                break;
+            case ADD_ROAD:
+                String town1 = getString(record);
+                String town2 = getString(record);
+                int weight = record.getInt();
+                target.addRoad(town1, town2, weight, getString(record));
+                break;
+            case ADD_ONE_WAY_ROAD:
+                String start = getString(record);
+                String end = getString(record);
+                int length = record.getInt();
+                target.addOneWayRoad(start, end, length, getString(record));
+                break;
+            case DELETE_ROAD:
+                String from = getString(record);
+                String to = getString(record);
+                target.deleteRoad(from, to, getString(record));
+                break;
+            case DELETE_TOWN:
+                target.deleteTown(getString(record));
+                break;
+            case SET_WEIGHT:
+                String one = getString(record);
+                String two = getString(record);
+                String road = getString(record);
+                target.setRoadWeight(one, two, road, record.getInt());
+                break;
+            default:
+                throw new IOException("Unknown mutation log record.");
+        }
+    }
+
+    private static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+        record.position(record.position() + length);
+        return value;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] utf = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf.length);
+        out.write(utf);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf = new byte[length];
+        in.readFully(utf);
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+}
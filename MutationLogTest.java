@@ -0,0 +1,247 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MutationLogTest {
+    private File dir;
+    private TownGraphManager graph;
+    private String[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("mutation-log").toFile();
+        graph = new TownGraphManager();
+        town = new String[12];
+        for (int i = 1; i < 12; i++) {
+            town[i] = "Town_" + i;
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph.closeMutationLog();
+        File[] files = dir.listFiles();
+        for (File file : files == null ? new File[0] : files) {
+            file.delete();
+        }
+        dir.delete();
+        graph = null;
+    }
+
+    private void addFixture(TownGraphManager manager) {
+        for (int i = 1; i < 12; i++) {
+            manager.addTown(town[i]);
+        }
+        manager.addRoad(town[1], town[2], 2, "Road_1");
+        manager.addRoad(town[1], town[3], 4, "Road_2");
+        manager.addRoad(town[1], town[5], 6, "Road_3");
+        manager.addRoad(town[3], town[7], 1, "Road_4");
+        manager.addRoad(town[3], town[8], 2, "Road_5");
+        manager.addRoad(town[4], town[8], 3, "Road_6");
+        manager.addRoad(town[6], town[9], 3, "Road_7");
+        manager.addRoad(town[9], town[10], 4, "Road_8");
+        manager.addRoad(town[8], town[10], 2, "Road_9");
+        manager.addRoad(town[5], town[10], 5, "Road_10");
+        manager.addRoad(town[10], town[11], 3, "Road_11");
+        manager.addRoad(town[2], town[11], 6, "Road_12");
+    }
+
+    private TownGraphManager recover() throws IOException {
+        TownGraphManager recovered = new TownGraphManager();
+        recovered.openMutationLog(dir);
+        return recovered;
+    }
+
+    @Test
+    public void testRecoverChanges() throws IOException {
+        graph.openMutationLog(dir);
+        addFixture(graph);
+        assertTrue(graph.deleteRoadConnection(town[2], town[11], new String("Road_12")));
+        assertTrue(graph.deleteTown(town[6]));
+        graph.closeMutationLog();
+
+        TownGraphManager recovered = recover();
+        try {
+            assertEquals(graph.allTowns(), recovered.allTowns());
+            assertEquals(graph.allRoads(), recovered.allRoads());
+            assertFalse(recovered.containsRoadConnection(town[2], town[11]));
+            assertEquals(graph.getPath(town[1], town[11]), recovered.getPath(town[1], town[11]));
+        } finally {
+            recovered.closeMutationLog();
+        }
+    }
+
+    @Test
+    public void testRecoverOneWayRoads() throws IOException {
+        graph.openMutationLog(dir);
+        addFixture(graph);
+        graph.addOneWayRoad(town[1], town[6], 1, "Road_13");
+        graph.compactMutationLog();
+        graph.addOneWayRoad(town[7], town[4], 1, "Road_14");
+        graph.closeMutationLog();
+
+        TownGraphManager recovered = recover();
+        try {
+            assertEquals(1, recovered.getPath(town[1], town[6]).size());
+            assertEquals(graph.getPath(town[6], town[1]), recovered.getPath(town[6], town[1]));
+            assertEquals(1, recovered.getPath(town[7], town[4]).size());
+            assertEquals(3, recovered.getPath(town[4], town[7]).size());
+        } finally {
+            recovered.closeMutationLog();
+        }
+    }
+
+    @Test
+    public void testRecoverAfterCompaction() throws IOException {
+        graph.openMutationLog(dir);
+        addFixture(graph);
+        graph.compactMutationLog();
+        graph.addTown("Town_12");
+        graph.addRoad(town[11], "Town_12", 7, "Road_13");
+        graph.deleteTown(town[4]);
+        graph.closeMutationLog();
+
+        ArrayList<String> files = new ArrayList<>(Arrays.asList(dir.list()));
+        files.sort(null);
+        assertEquals(Arrays.asList("log-1.wal", "snapshot-1.dat"), files);
+
+        TownGraphManager recovered = recover();
+        try {
+            assertEquals(graph.allTowns(), recovered.allTowns());
+            assertEquals(graph.allRoads(), recovered.allRoads());
+            assertEquals("Road_13", recovered.getRoad(town[11], "Town_12"));
+        } finally {
+            recovered.closeMutationLog();
+        }
+    }
+
+    @Test
+    public void testRecoverWeightOfParallelRoad() throws IOException {
+        graph.openMutationLog(dir);
+        addFixture(graph);
+        graph.addRoad(town[1], town[2], 9, "Bypass");
+        graph.addOneWayRoad(town[2], town[1], 3, "Back");
+        assertTrue(graph.setRoadWeight(town[1], town[2], "Road_1", 20));
+        assertTrue(graph.setRoadWeight(town[2], town[1], "Back", 1));
+        graph.closeMutationLog();
+
+        TownGraphManager recovered = recover();
+        try {
+            assertEquals(graph.allRoads(), recovered.allRoads());
+            assertEquals(Arrays.asList("Town_1 via Bypass to Town_2 9 mi"), recovered.getPath(town[1], town[2]));
+            assertEquals(Arrays.asList("Town_2 via Back to Town_1 1 mi"), recovered.getPath(town[2], town[1]));
+        } finally {
+            recovered.closeMutationLog();
+        }
+    }
+
+    @Test
+    public void testCorruptSnapshotLeavesGraphUntouched() throws IOException {
+        graph.openMutationLog(dir);
+        addFixture(graph);
+        graph.compactMutationLog();
+        graph.closeMutationLog();
+        File snapshot = new File(dir, "snapshot-1.dat");
+        byte[] bytes = Files.readAllBytes(snapshot.toPath());
+        //the weight of the last road, just before the checksum
+        bytes[bytes.length - 9] ^= 1;
+        Files.write(snapshot.toPath(), bytes);
+
+        TownGraphManager recovered = new TownGraphManager();
+        try {
+            recovered.openMutationLog(dir);
+            fail("A corrupt snapshot should not be recovered");
+        } catch (IOException e) {
+            //expected
+        }
+        assertTrue(recovered.allTowns().isEmpty());
+        assertTrue(recovered.allRoads().isEmpty());
+    }
+
+    @Test
+    public void testTornRecordCutOff() throws IOException {
+        graph.openMutationLog(dir);
+        addFixture(graph);
+        graph.closeMutationLog();
+        //a crash halfway through writing a record
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "log-0.wal"), true)) {
+            out.write(new byte[] {0, 0, 0, 40, 2, 0, 0});
+        }
+
+        TownGraphManager recovered = recover();
+        assertEquals(graph.allRoads(), recovered.allRoads());
+        recovered.addTown("Town_12");
+        recovered.closeMutationLog();
+
+        TownGraphManager again = recover();
+        try {
+            assertEquals(12, again.allTowns().size());
+            assertTrue(again.containsTown("Town_12"));
+        } finally {
+            again.closeMutationLog();
+        }
+    }
+
+    @Test
+    public void testExistingTownsSnapshotted() throws IOException {
+        addFixture(graph);
+        graph.openMutationLog(dir);
+        graph.addRoad(town[4], town[11], 9, "Road_13");
+        graph.closeMutationLog();
+
+        TownGraphManager recovered = recover();
+        try {
+            assertEquals(graph.allTowns(), recovered.allTowns());
+            assertEquals(graph.allRoads(), recovered.allRoads());
+        } finally {
+            recovered.closeMutationLog();
+        }
+    }
+
+    @Test
+    public void testConcurrentWriters() throws Exception {
+        graph.openMutationLog(dir);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < 250; i++) {
+                        graph.addTown("Town_" + thread + "_" + i);
+                        if (i > 0) {
+                            graph.addRoad("Town_" + thread + "_" + (i - 1), "Town_" + thread + "_" + i, i, "Road_" + thread);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        graph.closeMutationLog();
+
+        TownGraphManager recovered = recover();
+        try {
+            assertEquals(1000, recovered.allTowns().size());
+            assertEquals(996, recovered.allRoads().size());
+            assertEquals(249, recovered.getRoadSegmentCount("Road_2"));
+        } finally {
+            recovered.closeMutationLog();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns repeated names, such as road names shared by many segments, to
+ * dense int ids with a use count per name. Each distinct name is stored once
+ * however many times it is interned, and the names are also kept in a
+ * sorted {@link SkipListIndex} so listings can be produced without sorting.
+ * A name is forgotten and its id reused once its count drops to zero.
+ *
+ * @author Liam Ghershony
+ */
+public class NameDictionary {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final SkipListIndex sorted = new SkipListIndex();
+    private String[] names = new String[16];
+    private int[] counts = new int[16];
+    private int[] free = new int[16];
+    private int freeCount;
+    private int bound;
+    private int total;
+
+    /**
+     * Interns one use of a name.
+     *
+     * @param name the name
+     * @return the name's id
+     */
+    public int intern(String name) {
+        Integer known = ids.get(name);
+        int id;
+        if (known != null) {
+            id = known;
+        } else {
+            if (freeCount > 0) {
+                id = free[--freeCount];
+            } else {
+                if (bound == names.length) {
+                    names = Arrays.copyOf(names, bound * 2);
+                    counts = Arrays.copyOf(counts, bound * 2);
+                }
+                id = bound++;
+            }
+            names[id] = name;
+            ids.put(name, id);
+        }
+        sorted.add(name);
+        counts[id]++;
+        total++;
+        return id;
+    }
+
+    /**
+     * Releases one use of a name, forgetting it when no uses remain.
+     *
+     * @param id the name's id
+     */
+    public void release(int id) {
+        total--;
+        sorted.remove(names[id]);
+        if (--counts[id] > 0) {
+            return;
+        }
+        ids.remove(names[id]);
+        names[id] = null;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = id;
+    }
+
+    /**
+     * Gets the name with an id.
+     *
+     * @param id the id
+     * @return the shared instance of the name
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Gets the id of a name.
+     *
+     * @param name the name
+     * @return the name's id, or -1 if it is not in use
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the number of uses of a name.
+     *
+     * @param name the name
+     * @return the count, or 0 if the name is not in use
+     */
+    public int count(String name) {
+        int id = idOf(name);
+        return id < 0 ? 0 : counts[id];
+    }
+
+    /**
+     * Gets the number of distinct names in use.
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Gets the number of uses of all names together.
+     *
+     * @return the total count
+     */
+    public int total() {
+        return total;
+    }
+
+    /**
+     * Lists every use of every name in sorted order, each name repeated as
+     * many times as it is in use.
+     *
+     * @return the sorted names with repeats
+     */
+    public ArrayList<String> occurrences() {
+        return sorted.list(0, total);
+    }
+
+    /**
+     * Lists a page of the uses of names in sorted order, as
+     * {@link #occurrences()} would, starting at a position.
+     *
+     * @param offset the position of the first name, from 0
+     * @param limit the largest number of names to return
+     * @return the names
+     */
+    public ArrayList<String> occurrences(int offset, int limit) {
+        return sorted.list(offset, limit);
+    }
+
+    /**
+     * Lists the distinct names that start with a prefix, in sorted order.
+     *
+     * @param prefix the prefix
+     * @param limit the largest number of names to return
+     * @return the matching names
+     */
+    public ArrayList<String> withPrefix(String prefix, int limit) {
+        return sorted.withPrefix(prefix, limit);
+    }
+
+    /**
+     * Lists the distinct names in sorted order.
+     *
+     * @return the sorted names
+     */
+    public ArrayList<String> names() {
+        return sorted.keys();
+    }
+
+    /**
+     * Estimates the heap used by the dictionary, including the names.
+     *
+     * @return the size in bytes
+     */
+    public long footprint() {
+        long size = MemoryReport.hashMap(ids.size()) + (long) ids.size() * MemoryReport.object(4)
+                + sorted.footprint() + MemoryReport.array(names.length, MemoryReport.REFERENCE)
+                + MemoryReport.array(counts.length, 4) + MemoryReport.array(free.length, 4);
+        for (int id = 0; id < bound; id++) {
+            size += MemoryReport.string(names[id]);
+        }
+        return size;
+    }
+}
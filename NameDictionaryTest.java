@@ -0,0 +1,59 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NameDictionaryTest {
+    private NameDictionary names;
+
+    @Before
+    public void setUp() throws Exception {
+        names = new NameDictionary();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        names = null;
+    }
+
+    @Test
+    public void testIntern() {
+        int i95 = names.intern("I-95");
+        assertEquals(i95, names.intern(new String("I-95")));
+        int main = names.intern("Main St");
+        assertTrue(i95 != main);
+        assertEquals(2, names.count("I-95"));
+        assertEquals(1, names.count("Main St"));
+        assertEquals(0, names.count("Elm St"));
+        assertEquals(2, names.size());
+        assertEquals(3, names.total());
+        assertSame(names.name(i95), names.name(names.idOf("I-95")));
+    }
+
+    @Test
+    public void testOccurrences() {
+        names.intern("Main St");
+        names.intern("I-95");
+        names.intern("Main St");
+        names.intern("Elm St");
+        assertEquals(Arrays.asList("Elm St", "I-95", "Main St", "Main St"), names.occurrences());
+        assertEquals(Arrays.asList("Elm St", "I-95", "Main St"), names.names());
+    }
+
+    @Test
+    public void testRelease() {
+        int elm = names.intern("Elm St");
+        names.intern("Elm St");
+        names.release(elm);
+        assertEquals(1, names.count("Elm St"));
+        names.release(elm);
+        assertEquals(-1, names.idOf("Elm St"));
+        assertEquals(new ArrayList<String>(), names.occurrences());
+        assertEquals(elm, names.intern("Oak St"));
+        assertEquals("Oak St", names.name(elm));
+    }
+}
@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+/**
+ * A character trie over a set of names for autocompletion. Prefix lookups
+ * walk straight to the prefix's node and read the first k names below it in
+ * sorted order. Fuzzy lookups walk the trie once computing a row of the edit
+ * distance table per node, and skip every subtree whose row already exceeds
+ * the allowed number of edits, so only a small part of the trie is visited
+ * for short queries.
+ *
+ * @author Liam Ghershony
+ */
+public class NameTrie {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private static final class Node {
+        char[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        boolean terminal;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(labels, c);
+            return i < 0 ? null : children[i];
+        }
+    }
+
+    private static final class Match implements Comparable<Match> {
+        final String name;
+        final int distance;
+
+        Match(String name, int distance) {
+            this.name = name;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Match other) {
+            int comp = Integer.compare(distance, other.distance);
+            return comp != 0 ? comp : name.compareTo(other.name);
+        }
+    }
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Adds a name.
+     *
+     * @param name the name
+     * @return true if the name was not already in the trie
+     */
+    public boolean add(String name) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            int at = Arrays.binarySearch(node.labels, c);
+            if (at < 0) {
+                at = -at - 1;
+                Node child = new Node();
+                node.labels = insert(node.labels, at, c);
+                node.children = insert(node.children, at, child);
+            }
+            node = node.children[at];
+        }
+        if (node.terminal) {
+            return false;
+        }
+        node.terminal = true;
+        size++;
+        return true;
+    }
+
+    /**
+     * Removes a name, pruning nodes no other name needs.
+     *
+     * @param name the name
+     * @return true if the name was in the trie
+     */
+    public boolean remove(String name) {
+        Node[] path = new Node[name.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < name.length(); i++) {
+            path[i + 1] = path[i].child(name.charAt(i));
+            if (path[i + 1] == null) {
+                return false;
+            }
+        }
+        Node node = path[name.length()];
+        if (!node.terminal) {
+            return false;
+        }
+        node.terminal = false;
+        size--;
+        for (int i = name.length(); i > 0 && !path[i].terminal && path[i].labels.length == 0; i--) {
+            Node parent = path[i - 1];
+            int at = Arrays.binarySearch(parent.labels, name.charAt(i - 1));
+            parent.labels = delete(parent.labels, at);
+            parent.children = delete(parent.children, at);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a name is in the trie.
+     *
+     * @param name the name
+     * @return true if the name was added and not removed since
+     */
+    public boolean contains(String name) {
+        Node node = find(name);
+        return node != null && node.terminal;
+    }
+
+    /**
+     * Gets the number of names in the trie.
+     *
+     * @return the number of names
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Finds the first names in sorted order that start with a prefix.
+     *
+     * @param prefix the prefix
+     * @param limit the largest number of names to return
+     * @return the matching names, in sorted order
+     */
+    public ArrayList<String> withPrefix(String prefix, int limit) {
+        ArrayList<String> names = new ArrayList<>();
+        Node node = find(prefix);
+        if (node != null && limit > 0) {
+            collect(node, new StringBuilder(prefix), names, limit);
+        }
+        return names;
+    }
+
+    /**
+     * Finds the names closest to a query by edit distance, counting single
+     * character insertions, deletions and substitutions.
+     *
+     * @param query the text to match
+     * @param maxEdits the largest edit distance to accept
+     * @param limit the largest number of names to return
+     * @return the matching names, closest first and then in sorted order
+     */
+    public ArrayList<String> closest(String query, int maxEdits, int limit) {
+        PriorityQueue<Match> best = new PriorityQueue<>(Collections.reverseOrder());
+        if (limit > 0 && maxEdits >= 0) {
+            int[] row = new int[query.length() + 1];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = i;
+            }
+            search(root, new StringBuilder(), query, row, new ArrayList<>(), maxEdits, limit, best);
+        }
+        ArrayList<Match> sorted = new ArrayList<>(best);
+        Collections.sort(sorted);
+        ArrayList<String> names = new ArrayList<>(sorted.size());
+        for (Match match : sorted) {
+            names.add(match.name);
+        }
+        return names;
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.child(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private void collect(Node node, StringBuilder name, ArrayList<String> names, int limit) {
+        if (node.terminal) {
+            names.add(name.toString());
+        }
+        for (int i = 0; i < node.labels.length && names.size() < limit; i++) {
+            name.append(node.labels[i]);
+            collect(node.children[i], name, names, limit);
+            name.setLength(name.length() - 1);
+        }
+    }
+
+    /**
+     * Visits the children of a node in sorted order. Because names are met in
+     * sorted order, once the queue is full a later name can only displace a
+     * queued one by being strictly closer, which tightens the bound. The rows
+     * for each depth are allocated once and reused across siblings.
+     */
+    private void search(Node node, StringBuilder name, String query, int[] row, ArrayList<int[]> rows,
+            int maxEdits, int limit, PriorityQueue<Match> best) {
+        int last = row[query.length()];
+        if (node.terminal && last <= bound(maxEdits, limit, best)) {
+            best.offer(new Match(name.toString(), last));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        int depth = name.length();
+        if (rows.size() == depth) {
+            rows.add(new int[row.length]);
+        }
+        int[] next = rows.get(depth);
+        for (int c = 0; c < node.labels.length; c++) {
+            char label = node.labels[c];
+            next[0] = row[0] + 1;
+            int lowest = next[0];
+            for (int i = 1; i < row.length; i++) {
+                int cost = query.charAt(i - 1) == label ? 0 : 1;
+                next[i] = Math.min(Math.min(next[i - 1] + 1, row[i] + 1), row[i - 1] + cost);
+                lowest = Math.min(lowest, next[i]);
+            }
+            if (lowest <= bound(maxEdits, limit, best)) {
+                name.append(label);
+                search(node.children[c], name, query, next, rows, maxEdits, limit, best);
+                name.setLength(name.length() - 1);
+            }
+        }
+    }
+
+    private static int bound(int maxEdits, int limit, PriorityQueue<Match> best) {
+        return best.size() < limit ? maxEdits : Math.min(maxEdits, best.peek().distance - 1);
+    }
+
+    private static char[] insert(char[] array, int at, char value) {
+        char[] grown = new char[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, at);
+        grown[at] = value;
+        System.arraycopy(array, at, grown, at + 1, array.length - at);
+        return grown;
+    }
+
+    private static Node[] insert(Node[] array, int at, Node value) {
+        Node[] grown = new Node[array.length + 1];
+        System.arraycopy(array, 0, grown, 0, at);
+        grown[at] = value;
+        System.arraycopy(array, at, grown, at + 1, array.length - at);
+        return grown;
+    }
+
+    private static char[] delete(char[] array, int at) {
+        char[] shrunk = array.length == 1 ? NO_LABELS : new char[array.length - 1];
+        System.arraycopy(array, 0, shrunk, 0, at);
+        System.arraycopy(array, at + 1, shrunk, at, array.length - at - 1);
+        return shrunk;
+    }
+
+    private static Node[] delete(Node[] array, int at) {
+        Node[] shrunk = array.length == 1 ? NO_CHILDREN : new Node[array.length - 1];
+        System.arraycopy(array, 0, shrunk, 0, at);
+        System.arraycopy(array, at + 1, shrunk, at, array.length - at - 1);
+        return shrunk;
+    }
+}
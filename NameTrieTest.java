@@ -0,0 +1,55 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NameTrieTest {
+    private NameTrie trie;
+
+    @Before
+    public void setUp() throws Exception {
+        trie = new NameTrie();
+        for (String name : new String[] {"Baltimore", "Bethesda", "Boston", "Bowie", "Boise", "Rockville", "Rockport"}) {
+            trie.add(name);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        trie = null;
+    }
+
+    @Test
+    public void testWithPrefix() {
+        assertEquals(Arrays.asList("Boise", "Boston", "Bowie"), trie.withPrefix("Bo", 10));
+        assertEquals(Arrays.asList("Baltimore", "Bethesda"), trie.withPrefix("B", 2));
+        assertEquals(7, trie.withPrefix("", 10).size());
+        assertTrue(trie.withPrefix("X", 10).isEmpty());
+    }
+
+    @Test
+    public void testClosest() {
+        assertEquals(Arrays.asList("Boston"), trie.closest("Bostn", 1, 10));
+        assertEquals(Arrays.asList("Bowie", "Boise"), trie.closest("Bosie", 2, 2));
+        assertEquals(Arrays.asList("Rockport", "Rockville"), trie.closest("Rockvort", 5, 2));
+        assertTrue(trie.closest("Chicago", 2, 10).isEmpty());
+    }
+
+    @Test
+    public void testRemove() {
+        assertTrue(trie.remove("Boston"));
+        assertFalse(trie.remove("Boston"));
+        assertFalse(trie.remove("Bos"));
+        assertFalse(trie.contains("Boston"));
+        assertEquals(Arrays.asList("Boise", "Bowie"), trie.withPrefix("Bo", 10));
+        assertEquals(6, trie.size());
+        trie.add("Bo");
+        assertTrue(trie.remove("Bo"));
+        assertTrue(trie.contains("Bowie"));
+        assertEquals(new ArrayList<String>(), trie.withPrefix("Bos", 10));
+    }
+}
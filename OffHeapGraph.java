@@ -0,0 +1,493 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Graph of towns and roads stored entirely outside the Java heap, for
+ * networks too large to keep as Town and Road objects. Towns, roads, names and
+ * the name index live in {@link OffHeapRegion}s, either direct memory or
+ * memory-mapped files, so the garbage collector never traces them.
+ *
+ * Each road is a fixed-size record holding both endpoints, its weight, its
+ * name and one adjacency link per endpoint; a town's roads form a linked list
+ * of these half-edges. Town and Road objects are only created when the
+ * {@link GraphInterface} methods hand them out, and the results match those of
+ * {@link Graph}.
+ *
+ * @author Liam Ghershony
+ */
+public class OffHeapGraph implements GraphInterface<Town, Road>, AutoCloseable {
+
+    private static final int TOWN_BYTES = 12;
+    private static final int TOWN_HEAD = 0;
+    private static final int TOWN_NAME = 4;
+    private static final int TOWN_NAME_LENGTH = 8;
+
+    private static final int ROAD_BYTES = 28;
+    private static final int ROAD_SOURCE = 0;
+    private static final int ROAD_DESTINATION = 4;
+    private static final int ROAD_WEIGHT = 8;
+    private static final int ROAD_NAME = 12;
+    private static final int ROAD_NAME_LENGTH = 16;
+    private static final int ROAD_NEXT = 20;
+
+    private static final int REMOVED = -1;
+    private static final int EMPTY_SLOT = 0;
+    private static final int DELETED_SLOT = -1;
+
+    private final OffHeapRegion towns;
+    private final OffHeapRegion roads;
+    private final OffHeapRegion names;
+    private OffHeapRegion slots;
+
+    private int townBound;
+    private int townCount;
+    private int roadBound;
+    private int roadCount;
+    private int nameBytes;
+    private int slotCount = 1024;
+    private int slotsUsed;
+
+    private int[] dist = new int[0];
+    private int[] viaHalfEdge = new int[0];
+    private int[] stamp = new int[0];
+    private int generation;
+    private IndexedMinHeap queue = new IndexedMinHeap(0);
+    private int searchSource = -1;
+
+    /**
+     * Constructs an empty graph in direct memory.
+     */
+    public OffHeapGraph() {
+        towns = new OffHeapRegion(1024 * TOWN_BYTES);
+        roads = new OffHeapRegion(1024 * ROAD_BYTES);
+        names = new OffHeapRegion(16 * 1024);
+        slots = new OffHeapRegion(slotCount * 4);
+    }
+
+    /**
+     * Constructs an empty graph backed by memory-mapped files in a directory,
+     * so the operating system can page it to disk. Existing files of the same
+     * names are overwritten.
+     *
+     * @param directory the directory for the backing files
+     * @throws IOException if the files cannot be created
+     */
+    public OffHeapGraph(File directory) throws IOException {
+        towns = new OffHeapRegion(new File(directory, "towns.bin"), 1024 * TOWN_BYTES);
+        roads = new OffHeapRegion(new File(directory, "roads.bin"), 1024 * ROAD_BYTES);
+        names = new OffHeapRegion(new File(directory, "names.bin"), 16 * 1024);
+        slots = new OffHeapRegion(slotCount * 4);
+    }
+
+    @Override
+    public Road getEdge(Town source, Town destination) {
+        int road = findRoad(idOf(source), idOf(destination));
+        return road < 0 ? null : toRoad(road);
+    }
+
+    @Override
+    public Road addEdge(Town source, Town destination, int weight, String description) {
+        if (source == null || destination == null) {
+            throw new NullPointerException("Source or destination cannot be null.");
+        }
+        int sourceId = idOf(source);
+        int destinationId = idOf(destination);
+        if (sourceId < 0 || destinationId < 0) {
+            throw new IllegalArgumentException("Both vertices must be added before adding an edge.");
+        }
+        int road = roadBound++;
+        roads.ensureCapacity((long) roadBound * ROAD_BYTES);
+        int base = road * ROAD_BYTES;
+        roads.putInt(base + ROAD_SOURCE, sourceId);
+        roads.putInt(base + ROAD_DESTINATION, destinationId);
+        roads.putInt(base + ROAD_WEIGHT, weight);
+        byte[] name = description == null ? null : description.getBytes(StandardCharsets.UTF_8);
+        roads.putInt(base + ROAD_NAME, name == null ? 0 : appendName(name));
+        roads.putInt(base + ROAD_NAME_LENGTH, name == null ? Integer.MIN_VALUE : name.length);
+        link(sourceId, 2 * road);
+        link(destinationId, 2 * road + 1);
+        roadCount++;
+        return toRoad(road);
+    }
+
+    @Override
+    public boolean addVertex(Town v) {
+        if (v == null) {
+            throw new NullPointerException("Vertex cannot be null.");
+        }
+        byte[] name = v.getName().getBytes(StandardCharsets.UTF_8);
+        if (find(name) >= 0) {
+            return false;
+        }
+        if (2 * (slotsUsed + 1) > slotCount) {
+            rehash();
+        }
+        int town = townBound++;
+        towns.ensureCapacity((long) townBound * TOWN_BYTES);
+        int base = town * TOWN_BYTES;
+        towns.putInt(base + TOWN_HEAD, -1);
+        towns.putInt(base + TOWN_NAME, appendName(name));
+        towns.putInt(base + TOWN_NAME_LENGTH, name.length);
+        insertSlot(town, name);
+        townCount++;
+        return true;
+    }
+
+    @Override
+    public boolean containsEdge(Town sourceVertex, Town destinationVertex) {
+        return findRoad(idOf(sourceVertex), idOf(destinationVertex)) >= 0;
+    }
+
+    @Override
+    public boolean containsVertex(Town v) {
+        return idOf(v) >= 0;
+    }
+
+    @Override
+    public Set<Road> edgeSet() {
+        Set<Road> edges = new HashSet<>(roadCount * 2);
+        for (int road = 0; road < roadBound; road++) {
+            if (roadAlive(road)) {
+                edges.add(toRoad(road));
+            }
+        }
+        return edges;
+    }
+
+    @Override
+    public Set<Road> edgesOf(Town vertex) {
+        int town = idOf(vertex);
+        if (town < 0) {
+            return Collections.emptySet();
+        }
+        Set<Road> edges = new HashSet<>();
+        for (int half = head(town); half >= 0; half = next(half)) {
+            edges.add(toRoad(half >> 1));
+        }
+        return edges;
+    }
+
+    @Override
+    public Road removeEdge(Town sourceVertex, Town destinationVertex, int weight, String description) {
+        int road = findRoad(idOf(sourceVertex), idOf(destinationVertex));
+        if (road < 0) {
+            return null;
+        }
+        Road removed = toRoad(road);
+        if (removed.getWeight() == weight && removed.getName().equals(description)) {
+            deleteRoad(road);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean removeVertex(Town v) {
+        int town = idOf(v);
+        if (town < 0) {
+            return false;
+        }
+        for (int half = head(town); half >= 0; half = head(town)) {
+            deleteRoad(half >> 1);
+        }
+        int base = town * TOWN_BYTES;
+        byte[] name = nameBytes(towns.getInt(base + TOWN_NAME), towns.getInt(base + TOWN_NAME_LENGTH));
+        slots.putInt(slotOf(name) * 4, DELETED_SLOT);
+        towns.putInt(base + TOWN_NAME_LENGTH, REMOVED);
+        townCount--;
+        return true;
+    }
+
+    @Override
+    public Set<Town> vertexSet() {
+        Set<Town> vertices = new HashSet<>(townCount * 2);
+        for (int town = 0; town < townBound; town++) {
+            if (townAlive(town)) {
+                vertices.add(toTown(town));
+            }
+        }
+        return vertices;
+    }
+
+    @Override
+    public ArrayList<String> shortestPath(Town sourceVertex, Town destinationVertex) {
+        dijkstraShortestPath(sourceVertex);
+        ArrayList<String> path = new ArrayList<>();
+        int step = idOf(destinationVertex);
+        if (step < 0 || searchSource < 0 || step == searchSource || stamp[step] != generation) {
+            return path;
+        }
+        while (step != searchSource) {
+            int half = viaHalfEdge[step];
+            int road = half >> 1;
+            int prev = owner(half);
+            path.add(String.format("%s via %s to %s %d mi", townName(prev), roadName(road), townName(step), weight(road)));
+            step = prev;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    @Override
+    public void dijkstraShortestPath(Town sourceVertex) {
+        if (dist.length < townBound) {
+            dist = Arrays.copyOf(dist, townBound);
+            viaHalfEdge = Arrays.copyOf(viaHalfEdge, townBound);
+            stamp = Arrays.copyOf(stamp, townBound);
+            queue.ensureCapacity(townBound);
+        }
+        queue.clear();
+        generation++;
+        searchSource = idOf(sourceVertex);
+        if (searchSource < 0) {
+            return;
+        }
+        reach(searchSource, 0, -1);
+        while (!queue.isEmpty()) {
+            int town = queue.poll();
+            int d = dist[town];
+            for (int half = head(town); half >= 0; half = next(half)) {
+                int adj = owner(half ^ 1);
+                int alt = d + weight(half >> 1);
+                if (stamp[adj] != generation || alt < dist[adj]) {
+                    reach(adj, alt, half);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of towns.
+     *
+     * @return the number of towns
+     */
+    public int townCount() {
+        return townCount;
+    }
+
+    /**
+     * Gets the number of roads.
+     *
+     * @return the number of roads
+     */
+    public int roadCount() {
+        return roadCount;
+    }
+
+    /**
+     * Gets the number of off-heap bytes reserved by the graph.
+     *
+     * @return the reserved bytes
+     */
+    public long offHeapBytes() {
+        return (long) towns.capacity() + roads.capacity() + names.capacity() + slots.capacity();
+    }
+
+    /**
+     * Releases any backing files.
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        towns.close();
+        roads.close();
+        names.close();
+        slots.close();
+    }
+
+    private void reach(int town, int distance, int half) {
+        stamp[town] = generation;
+        dist[town] = distance;
+        viaHalfEdge[town] = half;
+        queue.offer(town, distance);
+    }
+
+    private int idOf(Town town) {
+        if (town == null || town.getName() == null) {
+            return -1;
+        }
+        return find(town.getName().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int findRoad(int source, int destination) {
+        if (source < 0 || destination < 0) {
+            return -1;
+        }
+        for (int half = head(source); half >= 0; half = next(half)) {
+            if (owner(half ^ 1) == destination) {
+                return half >> 1;
+            }
+        }
+        return -1;
+    }
+
+    private void deleteRoad(int road) {
+        int base = road * ROAD_BYTES;
+        unlink(roads.getInt(base + ROAD_SOURCE), 2 * road);
+        unlink(roads.getInt(base + ROAD_DESTINATION), 2 * road + 1);
+        roads.putInt(base + ROAD_NAME_LENGTH, REMOVED);
+        roadCount--;
+    }
+
+    private void link(int town, int half) {
+        int base = town * TOWN_BYTES;
+        setNext(half, towns.getInt(base + TOWN_HEAD));
+        towns.putInt(base + TOWN_HEAD, half);
+    }
+
+    private void unlink(int town, int half) {
+        int base = town * TOWN_BYTES;
+        int current = towns.getInt(base + TOWN_HEAD);
+        if (current == half) {
+            towns.putInt(base + TOWN_HEAD, next(half));
+            return;
+        }
+        while (current >= 0) {
+            int following = next(current);
+            if (following == half) {
+                setNext(current, next(half));
+                return;
+            }
+            current = following;
+        }
+    }
+
+    private int head(int town) {
+        return towns.getInt(town * TOWN_BYTES + TOWN_HEAD);
+    }
+
+    private int next(int half) {
+        return roads.getInt((half >> 1) * ROAD_BYTES + ROAD_NEXT + 4 * (half & 1));
+    }
+
+    private void setNext(int half, int next) {
+        roads.putInt((half >> 1) * ROAD_BYTES + ROAD_NEXT + 4 * (half & 1), next);
+    }
+
+    /** The town a half-edge belongs to: the road's source for even, destination for odd. */
+    private int owner(int half) {
+        return roads.getInt((half >> 1) * ROAD_BYTES + ((half & 1) == 0 ? ROAD_SOURCE : ROAD_DESTINATION));
+    }
+
+    private int weight(int road) {
+        return roads.getInt(road * ROAD_BYTES + ROAD_WEIGHT);
+    }
+
+    private boolean townAlive(int town) {
+        return towns.getInt(town * TOWN_BYTES + TOWN_NAME_LENGTH) != REMOVED;
+    }
+
+    private boolean roadAlive(int road) {
+        return roads.getInt(road * ROAD_BYTES + ROAD_NAME_LENGTH) != REMOVED;
+    }
+
+    private String townName(int town) {
+        int base = town * TOWN_BYTES;
+        return new String(nameBytes(towns.getInt(base + TOWN_NAME), towns.getInt(base + TOWN_NAME_LENGTH)),
+                StandardCharsets.UTF_8);
+    }
+
+    private String roadName(int road) {
+        int base = road * ROAD_BYTES;
+        int length = roads.getInt(base + ROAD_NAME_LENGTH);
+        if (length == Integer.MIN_VALUE) {
+            return null;
+        }
+        return new String(nameBytes(roads.getInt(base + ROAD_NAME), length), StandardCharsets.UTF_8);
+    }
+
+    private Town toTown(int town) {
+        return new Town(townName(town));
+    }
+
+    private Road toRoad(int road) {
+        int base = road * ROAD_BYTES;
+        return new Road(toTown(roads.getInt(base + ROAD_SOURCE)), toTown(roads.getInt(base + ROAD_DESTINATION)),
+                weight(road), roadName(road));
+    }
+
+    private int appendName(byte[] name) {
+        int offset = nameBytes;
+        names.ensureCapacity((long) nameBytes + name.length);
+        names.put(offset, name);
+        nameBytes += name.length;
+        return offset;
+    }
+
+    private byte[] nameBytes(int offset, int length) {
+        byte[] bytes = new byte[length];
+        names.get(offset, bytes);
+        return bytes;
+    }
+
+    private boolean nameEquals(int town, byte[] name) {
+        int base = town * TOWN_BYTES;
+        if (towns.getInt(base + TOWN_NAME_LENGTH) != name.length) {
+            return false;
+        }
+        int offset = towns.getInt(base + TOWN_NAME);
+        for (int i = 0; i < name.length; i++) {
+            if (names.get(offset + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int find(byte[] name) {
+        int slot = slotOf(name);
+        int value = slots.getInt(slot * 4);
+        return value > 0 ? value - 1 : -1;
+    }
+
+    /** Finds the slot holding a name, or the empty slot where it would go. */
+    private int slotOf(byte[] name) {
+        int mask = slotCount - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int value = slots.getInt(slot * 4);
+            if (value == EMPTY_SLOT || (value > 0 && nameEquals(value - 1, name))) {
+                return slot;
+            }
+        }
+    }
+
+    private void insertSlot(int town, byte[] name) {
+        int mask = slotCount - 1;
+        int slot = hash(name) & mask;
+        while (slots.getInt(slot * 4) > 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (slots.getInt(slot * 4) == EMPTY_SLOT) {
+            slotsUsed++;
+        }
+        slots.putInt(slot * 4, town + 1);
+    }
+
+    private void rehash() {
+        if (2 * townCount > slotCount / 2) {
+            slotCount *= 2;
+        }
+        slots = new OffHeapRegion(slotCount * 4);
+        slotsUsed = 0;
+        for (int town = 0; town < townBound; town++) {
+            if (townAlive(town)) {
+                int base = town * TOWN_BYTES;
+                insertSlot(town, nameBytes(towns.getInt(base + TOWN_NAME), towns.getInt(base + TOWN_NAME_LENGTH)));
+            }
+        }
+    }
+
+    private static int hash(byte[] name) {
+        int h = 0x811c9dc5;
+        for (byte b : name) {
+            h = (h ^ b) * 0x01000193;
+        }
+        return h ^ (h >>> 16);
+    }
+}
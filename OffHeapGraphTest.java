@@ -0,0 +1,144 @@
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapGraphTest {
+    private OffHeapGraph graph;
+    private Town[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new OffHeapGraph();
+        town = new Town[12];
+
+        for (int i = 1; i < 12; i++) {
+            town[i] = new Town("Town_" + i);
+            graph.addVertex(town[i]);
+        }
+
+        graph.addEdge(town[1], town[2], 2, "Road_1");
+        graph.addEdge(town[1], town[3], 4, "Road_2");
+        graph.addEdge(town[1], town[5], 6, "Road_3");
+        graph.addEdge(town[3], town[7], 1, "Road_4");
+        graph.addEdge(town[3], town[8], 2, "Road_5");
+        graph.addEdge(town[4], town[8], 3, "Road_6");
+        graph.addEdge(town[6], town[9], 3, "Road_7");
+        graph.addEdge(town[9], town[10], 4, "Road_8");
+        graph.addEdge(town[8], town[10], 2, "Road_9");
+        graph.addEdge(town[5], town[10], 5, "Road_10");
+        graph.addEdge(town[10], town[11], 3, "Road_11");
+        graph.addEdge(town[2], town[11], 6, "Road_12");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph.close();
+        graph = null;
+    }
+
+    @Test
+    public void testGetEdge() {
+        assertEquals(new Road(town[2], town[11], 6, "Road_12"), graph.getEdge(town[2], town[11]));
+        assertEquals(new Road(town[3], town[7], 1, "Road_4"), graph.getEdge(town[7], town[3]));
+        assertNull(graph.getEdge(town[3], town[5]));
+    }
+
+    @Test
+    public void testAddVertex() {
+        assertEquals(false, graph.addVertex(new Town("Town_3")));
+        assertEquals(true, graph.addVertex(new Town("Town_12")));
+        assertEquals(true, graph.containsVertex(new Town("Town_12")));
+        assertEquals(12, graph.townCount());
+    }
+
+    @Test
+    public void testEdgesOf() {
+        Set<Road> roads = graph.edgesOf(town[1]);
+        ArrayList<String> roadArrayList = new ArrayList<>();
+        for (Road road : roads) {
+            roadArrayList.add(road.getName());
+        }
+        Collections.sort(roadArrayList);
+        assertEquals(3, roadArrayList.size());
+        assertEquals("Road_1", roadArrayList.get(0));
+        assertEquals("Road_3", roadArrayList.get(2));
+        assertEquals(12, graph.edgeSet().size());
+    }
+
+    @Test
+    public void testRemoveEdgeAndVertex() {
+        graph.removeEdge(town[2], town[11], 6, "Road_12");
+        assertEquals(false, graph.containsEdge(town[2], town[11]));
+        graph.removeVertex(town[10]);
+        assertEquals(false, graph.containsVertex(town[10]));
+        assertEquals(false, graph.containsEdge(town[9], town[10]));
+        assertEquals(7, graph.edgeSet().size());
+        assertEquals(true, graph.addVertex(new Town("Town_10")));
+    }
+
+    @Test
+    public void testShortestPath() {
+        ArrayList<String> path = graph.shortestPath(town[1], town[6]);
+        assertEquals(5, path.size());
+        assertEquals("Town_1 via Road_2 to Town_3 4 mi", path.get(0).trim());
+        assertEquals("Town_3 via Road_5 to Town_8 2 mi", path.get(1).trim());
+        assertEquals("Town_8 via Road_9 to Town_10 2 mi", path.get(2).trim());
+        assertEquals("Town_10 via Road_8 to Town_9 4 mi", path.get(3).trim());
+        assertEquals("Town_9 via Road_7 to Town_6 3 mi", path.get(4).trim());
+        graph.addVertex(new Town("Town_12"));
+        assertTrue(graph.shortestPath(town[1], new Town("Town_12")).isEmpty());
+    }
+
+    @Test
+    public void testMatchesGraph() throws Exception {
+        File directory = Files.createTempDirectory("offheap").toFile();
+        Random random = new Random(11);
+        Graph heap = new Graph();
+        try (OffHeapGraph mapped = new OffHeapGraph(directory)) {
+            for (int i = 0; i < 3000; i++) {
+                heap.addVertex(new Town("T" + i));
+                mapped.addVertex(new Town("T" + i));
+            }
+            for (int e = 0; e < 9000; e++) {
+                Town a = new Town("T" + random.nextInt(3000));
+                Town b = new Town("T" + random.nextInt(3000));
+                int weight = 1 + random.nextInt(50);
+                heap.addEdge(a, b, weight, "R" + e);
+                mapped.addEdge(a, b, weight, "R" + e);
+            }
+            for (int i = 0; i < 3000; i += 10) {
+                heap.removeVertex(new Town("T" + i));
+                mapped.removeVertex(new Town("T" + i));
+            }
+            assertEquals(heap.edgeSet(), mapped.edgeSet());
+            assertEquals(heap.vertexSet(), mapped.vertexSet());
+            for (int q = 0; q < 20; q++) {
+                Town a = new Town("T" + (1 + 10 * random.nextInt(299)));
+                Town b = new Town("T" + (1 + 10 * random.nextInt(299)));
+                assertEquals(pathLength(heap.shortestPath(a, b)), pathLength(mapped.shortestPath(a, b)));
+            }
+        }
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static int pathLength(ArrayList<String> path) {
+        int total = 0;
+        for (String step : path) {
+            String[] parts = step.split(" ");
+            total += Integer.parseInt(parts[parts.length - 2]);
+        }
+        return total;
+    }
+}
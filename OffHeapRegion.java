@@ -0,0 +1,154 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A growable block of memory outside the Java heap, either a direct buffer or
+ * a memory-mapped file. The garbage collector sees only the small buffer
+ * object, never the contents, so large structures stored here add nothing to
+ * collection pauses. A region is limited to 2 GB.
+ *
+ * @author Liam Ghershony
+ */
+public class OffHeapRegion implements AutoCloseable {
+
+    private final File file;
+    private RandomAccessFile raf;
+    private ByteBuffer buffer;
+
+    /**
+     * Creates a region in direct memory.
+     *
+     * @param capacity the initial capacity in bytes
+     */
+    public OffHeapRegion(int capacity) {
+        this.file = null;
+        this.buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Creates a region backed by a memory-mapped file. Any existing contents of
+     * the file are discarded.
+     *
+     * @param file the backing file
+     * @param capacity the initial capacity in bytes
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public OffHeapRegion(File file, int capacity) throws IOException {
+        this.file = file;
+        this.raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        this.buffer = map(capacity);
+    }
+
+    /**
+     * Gets the capacity of the region in bytes.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Grows the region so it holds at least the given number of bytes,
+     * keeping its contents.
+     *
+     * @param bytes the required capacity
+     */
+    public void ensureCapacity(long bytes) {
+        if (bytes <= buffer.capacity()) {
+            return;
+        }
+        if (bytes > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Off-heap region cannot exceed 2 GB.");
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(bytes, 2L * buffer.capacity()));
+        if (file != null) {
+            try {
+                buffer = map(capacity);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not grow " + file, e);
+            }
+        } else {
+            ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+            buffer.clear();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @param offset the byte offset
+     * @return the value
+     */
+    public int getInt(int offset) {
+        return buffer.getInt(offset);
+    }
+
+    /**
+     * Writes an int.
+     *
+     * @param offset the byte offset
+     * @param value the value
+     */
+    public void putInt(int offset, int value) {
+        buffer.putInt(offset, value);
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @param offset the byte offset
+     * @return the value
+     */
+    public byte get(int offset) {
+        return buffer.get(offset);
+    }
+
+    /**
+     * Copies bytes out of the region.
+     *
+     * @param offset the byte offset
+     * @param target the array to fill
+     */
+    public void get(int offset, byte[] target) {
+        buffer.get(offset, target);
+    }
+
+    /**
+     * Copies bytes into the region.
+     *
+     * @param offset the byte offset
+     * @param source the bytes to write
+     */
+    public void put(int offset, byte[] source) {
+        buffer.put(offset, source);
+    }
+
+    /**
+     * Releases the backing file, if any. Direct memory is released when the
+     * region is collected.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+
+    private MappedByteBuffer map(int capacity) throws IOException {
+        MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        mapped.order(ByteOrder.nativeOrder());
+        return mapped;
+    }
+}
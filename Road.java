@@ -1,7 +1,9 @@
 import java.util.Objects;
 
 /**
- * Represents a road between two towns in a graph.
+ * Represents a road between two towns in a graph. A road can be travelled
+ * both ways unless it is one-way, in which case it runs only from its source
+ * to its destination.
  *
  * @param <V> the type of the towns
  * @author Liam Ghershony
@@ -13,6 +15,10 @@ public class Road<V> implements Comparable<Road<V>> {
     private V destination;
     private int weight;
     private String name;
+    private boolean oneWay;
+    int id = -1;
+    int sourceId = -1;
+    int destinationId = -1;
     
     
     /**
@@ -25,10 +31,25 @@ public class Road<V> implements Comparable<Road<V>> {
      */
     
     public Road(V source, V destination, int weight, String name) {
+        this(source, destination, weight, name, false);
+    }
+
+    /**
+     * Constructs a new road, one-way from its source to its destination if asked.
+     * 
+     * @param source the source town of the road
+     * @param destination the destination town of the road
+     * @param weight the weight (distance) of the road
+     * @param name the name of the road
+     * @param oneWay true if the road runs only from source to destination
+     */
+    
+    public Road(V source, V destination, int weight, String name, boolean oneWay) {
         this.source = source;
         this.destination = destination;
         this.weight = weight;
         this.name = name;
+        this.oneWay = oneWay;
     }
 
     /**
@@ -52,6 +73,8 @@ public class Road<V> implements Comparable<Road<V>> {
 
     /**
      * Indicates whether some other object is "equal to" this one.
+     * A two-way road equals one joining the same towns in either order; a
+     * one-way road only equals one running in the same direction.
      * 
      * @param obj the reference object with which to compare
      * @return true if this road is the same as the obj argument; false otherwise
@@ -62,9 +85,10 @@ public class Road<V> implements Comparable<Road<V>> {
         if (this == obj) return true;
         if (obj == null || getClass() != obj.getClass()) return false;
         Road<?> other = (Road<?>) obj;
-        // Check for bidirectional equality
+        if (oneWay != other.oneWay) return false;
+        // Check for bidirectional equality, unless the road only runs one way
         boolean sameDirection = source.equals(other.source) && destination.equals(other.destination);
-        boolean oppositeDirection = source.equals(other.destination) && destination.equals(other.source);
+        boolean oppositeDirection = !oneWay && source.equals(other.destination) && destination.equals(other.source);
         return (sameDirection || oppositeDirection) && weight == other.weight && Objects.equals(name, other.name);
     }
 
@@ -76,6 +100,9 @@ public class Road<V> implements Comparable<Road<V>> {
     
     @Override
     public int hashCode() {
+        if (oneWay) {
+            return Objects.hash(source, destination, weight, name, true);
+        }
         // Use symmetric hashing to handle bidirectional equality
         return Objects.hash(Math.min(source.hashCode(), destination.hashCode()), 
                             Math.max(source.hashCode(), destination.hashCode()), 
@@ -120,6 +147,16 @@ public class Road<V> implements Comparable<Road<V>> {
         return name;
     }
 
+    /**
+     * Checks if the road runs only from its source to its destination.
+     * 
+     * @return true if the road is one-way
+     */
+    
+    public boolean isOneWay() {
+        return oneWay;
+    }
+
     /**
      * Returns a string representation of the road.
      * 
@@ -0,0 +1,513 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte-level parser for road files, lines of the form
+ * {@code road name,weight;town 1;town 2}, or
+ * {@code road name,weight,oneway;town 1;town 2} for a road that only runs
+ * from town 1 to town 2. The file is mapped in chunks and
+ * scanned for line ends and delimiters without decoding it; weights are
+ * parsed straight from the bytes, and names go through a cache keyed by
+ * their bytes, so a String is created only the first time a town or road
+ * name is seen.
+ *
+ * Lines are accepted and trimmed exactly as the reader-based loader did with
+ * String.split and String.trim: empty fields at the end of a line are
+ * ignored, and a line with the wrong number of fields or a bad weight is
+ * skipped. Scanning bytes for delimiters only works for charsets that encode
+ * them as single ASCII bytes; see {@link #supports(Charset)}.
+ *
+ * @author Liam Ghershony
+ */
+public class RoadFileParser {
+
+    /**
+     * Receives the roads read from a file and its progress.
+     */
+    interface Handler {
+        /**
+         * Receives a town name the first time it is seen, before the road
+         * that names it.
+         *
+         * @param name the town name
+         */
+        void town(String name);
+
+        /**
+         * Receives one well-formed line.
+         *
+         * @param roadName the road name
+         * @param weight the road weight
+         * @param town1 the name of the first town
+         * @param town2 the name of the second town
+         */
+        void road(String roadName, int weight, String town1, String town2);
+
+        /**
+         * Receives one well-formed line that may mark a one-way road. A
+         * handler that keeps no directions takes every road as two-way.
+         *
+         * @param roadName the road name
+         * @param weight the road weight
+         * @param town1 the name of the first town
+         * @param town2 the name of the second town
+         * @param oneWay true if the road only runs from the first town to the second
+         */
+        default void road(String roadName, int weight, String town1, String town2, boolean oneWay) {
+            road(roadName, weight, town1, town2);
+        }
+
+        /**
+         * Called every progress interval lines, before the line is parsed.
+         *
+         * @param bytesRead the offset of the line in the input
+         * @param lines the number of lines so far, including this one
+         * @return true to go on, false to stop
+         */
+        boolean progress(long bytesRead, int lines);
+    }
+
+    /**
+     * Strings for byte sequences, so repeated names share one instance and
+     * are decoded once. Names are kept in the order they were first seen:
+     * their bytes end to end in one array and their strings in another, so
+     * names from nearby lines sit near each other in memory, and the hash
+     * table holds only each name's hash and index, in one long per slot.
+     */
+    private static final class NameCache {
+        private long[] table = new long[1024];
+        private int[] offsets = new int[513];
+        private String[] values = new String[512];
+        private byte[] bytes = new byte[16 * 1024];
+        private int size;
+
+        String get(byte[] source, int start, int end, Charset charset) {
+            int hash = 0x811C9DC5;
+            for (int i = start; i < end; i++) {
+                hash = (hash ^ source[i]) * 0x01000193;
+            }
+            hash ^= hash >>> 16;
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            for (long entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+                //slots hold the hash above the index plus one, so zero means empty
+                int index = (int) entry - 1;
+                if ((int) (entry >>> 32) == hash && Arrays.equals(bytes, offsets[index], offsets[index + 1],
+                        source, start, end)) {
+                    return values[index];
+                }
+            }
+            boolean ascii = true;
+            for (int i = start; i < end; i++) {
+                ascii &= source[i] >= 0;
+            }
+            String value = new String(source, start, end - start, ascii ? StandardCharsets.ISO_8859_1 : charset);
+            if (size == values.length) {
+                values = Arrays.copyOf(values, 2 * size);
+                offsets = Arrays.copyOf(offsets, 2 * size + 1);
+            }
+            int used = offsets[size];
+            if (used + end - start > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, used + end - start));
+            }
+            System.arraycopy(source, start, bytes, used, end - start);
+            values[size] = value;
+            offsets[size + 1] = used + end - start;
+            table[slot] = (long) hash << 32 | ++size;
+            if (2 * size > table.length) {
+                grow();
+            }
+            return value;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[2 * old.length];
+            int mask = table.length - 1;
+            for (long entry : old) {
+                if (entry != 0) {
+                    int slot = (int) (entry >>> 32) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = entry;
+                }
+            }
+        }
+    }
+
+    /** The third field of the first part of a line marking a one-way road, in any case. */
+    static final String ONE_WAY = "oneway";
+    private static final byte[] ONE_WAY_BYTES = ONE_WAY.getBytes(StandardCharsets.US_ASCII);
+
+    //bytes mapped at a time; a line longer than this doubles the window
+    private static final long CHUNK = 64L << 20;
+
+    private final Charset charset;
+    private final int progressInterval;
+    private final Handler handler;
+    private final NameCache roadNames = new NameCache();
+    private final NameCache townNames = new NameCache();
+    private byte[] scratch;
+    private long consumed;
+    private int lines;
+    private boolean skipLineFeed;
+
+    /**
+     * Creates a parser.
+     *
+     * @param charset the charset of the input, which must be {@link #supports(Charset) supported}
+     * @param progressInterval the number of lines between progress calls
+     * @param handler the handler to pass roads and progress to
+     */
+    public RoadFileParser(Charset charset, int progressInterval, Handler handler) {
+        if (!supports(charset)) {
+            throw new IllegalArgumentException("Cannot scan " + charset + " text byte by byte.");
+        }
+        this.charset = charset;
+        this.progressInterval = progressInterval;
+        this.handler = handler;
+    }
+
+    /**
+     * Checks if a charset encodes the delimiters and line ends as the single
+     * ASCII bytes the parser scans for, as UTF-8 and the ISO-8859 and
+     * Windows code pages do.
+     *
+     * @param charset the charset
+     * @return true if road files in the charset can be parsed
+     */
+    public static boolean supports(Charset charset) {
+        return Arrays.equals(";,\r\n".getBytes(charset), new byte[] {';', ',', '\r', '\n'});
+    }
+
+    /**
+     * Parses a whole file.
+     *
+     * @param channel the file, read from its start
+     * @return true if the whole file was parsed, false if the handler stopped it
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean parse(FileChannel channel) throws IOException {
+        return parse(channel, CHUNK);
+    }
+
+    /**
+     * Parses a whole file, mapping it a window at a time.
+     */
+    boolean parse(FileChannel channel, long chunk) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        long window = chunk;
+        while (position < size) {
+            long length = Math.min(window, size - position);
+            boolean last = position + length == size;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (!feed(buffer, last)) {
+                return false;
+            }
+            if (buffer.position() == 0 && !last) {
+                //no line ends in the window; map a larger one
+                if (window > Integer.MAX_VALUE / 2) {
+                    throw new IOException("A line is longer than " + Integer.MAX_VALUE + " bytes.");
+                }
+                window *= 2;
+                continue;
+            }
+            position += buffer.position();
+            window = chunk;
+        }
+        return true;
+    }
+
+    /**
+     * Parses a whole stream, such as a decompressing one, a block at a time.
+     * A partial line at the end of a block is carried over to the next.
+     *
+     * @param in the stream, read to its end but not closed
+     * @return true if the whole stream was parsed, false if the handler stopped it
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean parse(InputStream in) throws IOException {
+        byte[] block = new byte[1 << 16];
+        int filled = 0;
+        for (int n; (n = in.read(block, filled, block.length - filled)) >= 0; ) {
+            filled += n;
+            ByteBuffer buffer = ByteBuffer.wrap(block, 0, filled);
+            if (!feed(buffer, false)) {
+                return false;
+            }
+            int used = buffer.position();
+            System.arraycopy(block, used, block, 0, filled - used);
+            filled -= used;
+            if (filled == block.length) {
+                //a line longer than the block
+                block = Arrays.copyOf(block, 2 * block.length);
+            }
+        }
+        return feed(ByteBuffer.wrap(block, 0, filled), true);
+    }
+
+    /**
+     * Parses the complete lines in a buffer, from its position to its limit,
+     * and leaves the position at the start of the first incomplete line so
+     * the caller can carry it over. A buffer marked last has no incomplete
+     * line: whatever follows the last line end is parsed as a line.
+     *
+     * @param buffer the bytes to parse
+     * @param last true if nothing follows the buffer
+     * @return true to go on, false if the handler stopped the parse
+     */
+    public boolean feed(ByteBuffer buffer, boolean last) {
+        if (buffer.hasArray()) {
+            int offset = buffer.arrayOffset();
+            int end = scan(buffer.array(), offset + buffer.position(), offset + buffer.limit(), last);
+            if (end < 0) {
+                return false;
+            }
+            buffer.position(end - offset);
+            return true;
+        }
+        //scanning a byte[] is several times faster than get(int) on a direct
+        //buffer, so mapped bytes are copied over a slice at a time
+        if (scratch == null) {
+            scratch = new byte[1 << 20];
+        }
+        while (buffer.hasRemaining()) {
+            int remaining = buffer.remaining();
+            int length = Math.min(remaining, scratch.length);
+            boolean lastSlice = last && length == remaining;
+            buffer.get(buffer.position(), scratch, 0, length);
+            int end = scan(scratch, 0, length, lastSlice);
+            if (end < 0) {
+                return false;
+            }
+            buffer.position(buffer.position() + end);
+            if (length == remaining) {
+                //whatever is left is the buffer's incomplete last line
+                return true;
+            }
+            if (end == 0) {
+                //a line longer than the scratch array
+                scratch = new byte[2 * scratch.length];
+            }
+            //otherwise the next slice starts with the line this one cut off
+        }
+        return true;
+    }
+
+    /**
+     * Parses the complete lines in a range of bytes.
+     *
+     * @return the index after the last complete line, or -1 if the handler stopped the parse
+     */
+    private int scan(byte[] bytes, int start, int limit, boolean last) {
+        int lineStart = start;
+        if (skipLineFeed && lineStart < limit) {
+            //the previous buffer ended with the \r of a \r\n
+            skipLineFeed = false;
+            if (bytes[lineStart] == '\n') {
+                lineStart++;
+            }
+        }
+        for (int i = lineStart; i < limit; i++) {
+            byte b = bytes[i];
+            if (b != '\n' && b != '\r') {
+                continue;
+            }
+            if (!line(bytes, lineStart, i, consumed + lineStart - start)) {
+                return -1;
+            }
+            if (b == '\r') {
+                if (i + 1 < limit) {
+                    if (bytes[i + 1] == '\n') {
+                        i++;
+                    }
+                } else {
+                    skipLineFeed = true;
+                }
+            }
+            lineStart = i + 1;
+        }
+        if (last && lineStart < limit) {
+            if (!line(bytes, lineStart, limit, consumed + lineStart - start)) {
+                return -1;
+            }
+            lineStart = limit;
+        }
+        consumed += lineStart - start;
+        return lineStart;
+    }
+
+    /**
+     * Gets the number of lines read so far.
+     *
+     * @return the line count
+     */
+    public int lines() {
+        return lines;
+    }
+
+    /**
+     * Gets the number of bytes parsed so far.
+     *
+     * @return the offset just past the last complete line
+     */
+    public long bytesRead() {
+        return consumed;
+    }
+
+    private boolean line(byte[] bytes, int start, int end, long offset) {
+        if (++lines % progressInterval == 0 && !handler.progress(offset, lines)) {
+            return false;
+        }
+        //fields split on ';', and only the third may be followed by anything, and that only more ';'
+        int semi1 = indexOf(bytes, start, end, (byte) ';');
+        int semi2 = semi1 < 0 ? -1 : indexOf(bytes, semi1 + 1, end, (byte) ';');
+        if (semi2 < 0) {
+            return true;
+        }
+        int semi3 = indexOf(bytes, semi2 + 1, end, (byte) ';');
+        int townEnd = semi3 < 0 ? end : semi3;
+        if (townEnd == semi2 + 1 || (semi3 >= 0 && !only(bytes, semi3, end, (byte) ';'))) {
+            return true;
+        }
+        //the first field splits the same way on ',', into a name, a weight and perhaps the one-way mark
+        int comma1 = indexOf(bytes, start, semi1, (byte) ',');
+        int comma2 = comma1 < 0 ? -1 : indexOf(bytes, comma1 + 1, semi1, (byte) ',');
+        int weightEnd = comma2 < 0 ? semi1 : comma2;
+        if (comma1 < 0 || weightEnd == comma1 + 1) {
+            return true;
+        }
+        boolean oneWay = false;
+        if (comma2 >= 0 && !only(bytes, comma2, semi1, (byte) ',')) {
+            int comma3 = indexOf(bytes, comma2 + 1, semi1, (byte) ',');
+            int markEnd = comma3 < 0 ? semi1 : comma3;
+            if (!oneWayMark(bytes, comma2 + 1, markEnd) || (comma3 >= 0 && !only(bytes, comma3, semi1, (byte) ','))) {
+                return true;
+            }
+            oneWay = true;
+        }
+        long weight = parseWeight(bytes, comma1 + 1, weightEnd);
+        if (weight == Long.MIN_VALUE) {
+            return true;
+        }
+        String town1 = name(townNames, bytes, semi1 + 1, semi2);
+        String town2 = name(townNames, bytes, semi2 + 1, townEnd);
+        String roadName = name(roadNames, bytes, start, comma1);
+        if (oneWay) {
+            handler.road(roadName, (int) weight, town1, town2, true);
+        } else {
+            handler.road(roadName, (int) weight, town1, town2);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if a field, trimmed, is the one-way mark in any case.
+     */
+    private static boolean oneWayMark(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        if (end - start != ONE_WAY_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < ONE_WAY_BYTES.length; i++) {
+            if ((bytes[start + i] | 0x20) != ONE_WAY_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String name(NameCache names, byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        int size = names.size;
+        String name = names.get(bytes, start, end, charset);
+        if (names == townNames && names.size != size) {
+            handler.town(name);
+        }
+        return name;
+    }
+
+    /**
+     * Parses a trimmed int as Integer.parseInt would.
+     *
+     * @return the value, or Long.MIN_VALUE if it is not an int
+     */
+    private long parseWeight(byte[] bytes, int start, int end) {
+        while (start < end && (bytes[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        boolean negative = false;
+        int i = start;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        if (i == end) {
+            return Long.MIN_VALUE;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = bytes[i];
+            if (b < 0) {
+                //Integer.parseInt also takes non-ASCII digits
+                return parseDecoded(bytes, start, end);
+            }
+            if (b < '0' || b > '9') {
+                return Long.MIN_VALUE;
+            }
+            value = 10 * value + (b - '0');
+            if (value > Integer.MAX_VALUE + 1L) {
+                return Long.MIN_VALUE;
+            }
+        }
+        value = negative ? -value : value;
+        return value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+    }
+
+    private long parseDecoded(byte[] bytes, int start, int end) {
+        try {
+            return Integer.parseInt(new String(bytes, start, end - start, charset).trim());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int indexOf(byte[] bytes, int start, int end, byte target) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean only(byte[] bytes, int start, int end, byte target) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] != target) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,246 @@
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoadFileParserTest {
+    private static final String TEXT = "Road_1,2;Town_1;Town_2\n"
+            + "  Road_2 , 4 ;  Town_1 ;Town_3  \r\n"
+            + "Road_3,+6;Town_1;Town_5;;\r"
+            + "Road_4,-1;Town_3;Town_7;x\n"
+            + "\n"
+            + "Road_5,2,;Town_3;Town_8\n"
+            + "Road_6,,3;Town_4;Town_8\n"
+            + "Road_7,2147483648;Town_6;Town_9\n"
+            + "Road_8,-2147483648;Town_9;Town_10\n"
+            + "Road_9,2;Town_8;\n"
+            + ";Town_8;Town_10\n"
+            + ",5;;Town_10\n"
+            + "Route \u00e9t\u00e9,3;Ville \u00e0;Town_11\r\n"
+            + "Road_11,3\t;Town_10;Town_11;;;\n"
+            + "Road_12,six;Town_2;Town_11\n"
+            + "Road_12,6;Town_2;Town_11";
+
+    private File file;
+    private List<String> parsed;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("roads", ".txt");
+        Files.write(file.toPath(), TEXT.getBytes(Charset.defaultCharset()));
+        parsed = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+        parsed = null;
+    }
+
+    /**
+     * The loader's original split and trim parsing, for comparison.
+     */
+    private static List<String> split(String text) throws IOException {
+        List<String> roads = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new StringReader(text));
+        String oneLine;
+        while ((oneLine = br.readLine()) != null) {
+            String[] frags = oneLine.split(";");
+            if (frags.length != 3) continue;
+            String[] road = frags[0].split(",");
+            if (road.length != 2) continue;
+            try {
+                int weight = Integer.parseInt(road[1].trim());
+                roads.add(road[0].trim() + "|" + weight + "|" + frags[1].trim() + "|" + frags[2].trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+        }
+        return roads;
+    }
+
+    private List<String> expected() throws IOException {
+        return split(new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset()));
+    }
+
+    private RoadFileParser parser(int progressInterval, boolean cancel) {
+        return new RoadFileParser(Charset.defaultCharset(), progressInterval, new RoadFileParser.Handler() {
+            @Override
+            public void town(String name) {
+            }
+
+            @Override
+            public void road(String roadName, int weight, String town1, String town2) {
+                parsed.add(roadName + "|" + weight + "|" + town1 + "|" + town2);
+            }
+
+            @Override
+            public boolean progress(long bytesRead, int lines) {
+                return !cancel;
+            }
+        });
+    }
+
+    @Test
+    public void testMatchesSplit() throws IOException {
+        RoadFileParser parser = parser(4096, false);
+        try (FileInputStream in = new FileInputStream(file)) {
+            assertTrue(parser.parse(in.getChannel()));
+        }
+        assertEquals(expected(), parsed);
+        assertEquals(16, parser.lines());
+        assertEquals(file.length(), parser.bytesRead());
+    }
+
+    @Test
+    public void testChunkBoundaries() throws IOException {
+        List<String> expected = expected();
+        for (int chunk = 1; chunk < 40; chunk++) {
+            parsed.clear();
+            RoadFileParser parser = parser(4096, false);
+            try (FileInputStream in = new FileInputStream(file)) {
+                assertTrue(parser.parse(in.getChannel(), chunk));
+            }
+            assertEquals("chunk " + chunk, expected, parsed);
+            assertEquals("chunk " + chunk, 16, parser.lines());
+        }
+    }
+
+    @Test
+    public void testStream() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            Files.copy(file.toPath(), out);
+        }
+        RoadFileParser parser = parser(4096, false);
+        assertTrue(parser.parse(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+        assertEquals(expected(), parsed);
+        assertEquals(16, parser.lines());
+    }
+
+    @Test
+    public void testFeedCarriesPartialLine() {
+        RoadFileParser parser = parser(4096, false);
+        ByteBuffer buffer = ByteBuffer.wrap("Road_1,2;Town_1;Town_2\r".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(parser.feed(buffer, false));
+        assertEquals(buffer.limit(), buffer.position());
+        buffer = ByteBuffer.wrap("\nRoad_2,4;Town_1;To".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(parser.feed(buffer, false));
+        assertEquals(1, buffer.position());
+        assertEquals(1, parser.lines());
+        buffer = ByteBuffer.wrap("Road_2,4;Town_1;Town_3".getBytes(StandardCharsets.US_ASCII));
+        assertTrue(parser.feed(buffer, true));
+        assertEquals(2, parser.lines());
+        assertEquals(2, parsed.size());
+        assertEquals("Road_2|4|Town_1|Town_3", parsed.get(1));
+    }
+
+    @Test
+    public void testFeedDirectBufferPastScratch() {
+        //a mapped window is copied out a megabyte at a time; lines cut at a
+        //slice boundary must not end the feed before the window is used up
+        RoadFileParser parser = parser(1 << 30, false);
+        byte[] line = "Road_1,2;Town_1;Town_2\n".getBytes(StandardCharsets.US_ASCII);
+        int lines = 3 * (1 << 20) / line.length;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(lines * line.length + 5);
+        for (int i = 0; i < lines; i++) {
+            buffer.put(line);
+        }
+        buffer.put("Road_".getBytes(StandardCharsets.US_ASCII));
+        buffer.flip();
+        assertTrue(parser.feed(buffer, false));
+        assertEquals(lines * line.length, buffer.position());
+        assertEquals(lines, parser.lines());
+    }
+
+    @Test
+    public void testCancel() throws IOException {
+        RoadFileParser parser = parser(3, true);
+        try (FileInputStream in = new FileInputStream(file)) {
+            assertFalse(parser.parse(in.getChannel()));
+        }
+        assertEquals(expected().subList(0, 2), parsed);
+    }
+
+    @Test
+    public void testSharedNames() throws IOException {
+        List<String> towns = new ArrayList<>();
+        RoadFileParser parser = new RoadFileParser(Charset.defaultCharset(), 4096, new RoadFileParser.Handler() {
+            @Override
+            public void town(String name) {
+            }
+
+            @Override
+            public void road(String roadName, int weight, String town1, String town2) {
+                towns.add(town1);
+            }
+
+            @Override
+            public boolean progress(long bytesRead, int lines) {
+                return true;
+            }
+        });
+        try (FileInputStream in = new FileInputStream(file)) {
+            parser.parse(in.getChannel());
+        }
+        assertEquals("Town_1", towns.get(0));
+        assertSame(towns.get(0), towns.get(1));
+        assertSame(towns.get(0), towns.get(2));
+        assertFalse(RoadFileParser.supports(StandardCharsets.UTF_16));
+        assertTrue(RoadFileParser.supports(StandardCharsets.ISO_8859_1));
+    }
+
+    @Test
+    public void testOneWayMark() {
+        List<String> roads = new ArrayList<>();
+        RoadFileParser parser = new RoadFileParser(Charset.defaultCharset(), 4096, new RoadFileParser.Handler() {
+            @Override
+            public void town(String name) {
+            }
+
+            @Override
+            public void road(String roadName, int weight, String town1, String town2) {
+                roads.add(roadName);
+            }
+
+            @Override
+            public void road(String roadName, int weight, String town1, String town2, boolean oneWay) {
+                roads.add(roadName + (oneWay ? " " + town1 + ">" + town2 : ""));
+            }
+
+            @Override
+            public boolean progress(long bytesRead, int lines) {
+                return true;
+            }
+        });
+        String text = "Road_1,2,oneway;Town_1;Town_2\n"
+                + "Road_2,3, OneWay ,,;Town_2;Town_1\n"
+                + "Road_3,4,twoway;Town_1;Town_3\n"
+                + "Road_4,5,oneway,x;Town_1;Town_4\n"
+                + "Road_5,6,,oneway;Town_1;Town_5\n"
+                + "Road_6,7;Town_1;Town_6\n";
+        parser.feed(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), true);
+        assertEquals("[Road_1 Town_1>Town_2, Road_2 Town_2>Town_1, Road_6]", roads.toString());
+
+        //a handler that keeps no directions gets one-way roads as two-way ones
+        parser(4096, false).feed(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), true);
+        assertEquals("[Road_1|2|Town_1|Town_2, Road_2|3|Town_2|Town_1, Road_6|7|Town_1|Town_6]", parsed.toString());
+    }
+}
@@ -0,0 +1,341 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming readers for road networks in standard formats, passing what they
+ * read to the same {@link RoadFileParser.Handler} the road file loader uses,
+ * so imports go through the same batch path:
+ * <ul>
+ * <li>DIMACS shortest-path graphs ({@code .gr}), as used by the 9th DIMACS
+ * implementation challenge: {@code p sp n m} then one {@code a u v w} line
+ * per arc. Towns are named by their vertex numbers, and arcs become one-way
+ * roads unless paired with an arc of the same weight the other way.</li>
+ * <li>DIMACS coordinates ({@code .co}): {@code v id x y} lines.</li>
+ * <li>CSV edge lists: {@code source,target,weight[,name]} lines, with an
+ * optional header line and RFC 4180 quoting.</li>
+ * </ul>
+ * Unlike road files, where bad lines are skipped, a malformed line here is
+ * an error naming the line, since these files come from tools rather than
+ * people and a bad line usually means the wrong file.
+ *
+ * @author Liam Ghershony
+ */
+public class RoadNetworkImporter {
+
+    private RoadNetworkImporter() {
+    }
+
+    /**
+     * Reads a DIMACS graph. Its arcs are directed. The challenge's road
+     * networks list every road as two arcs, one each way, so an arc is paired
+     * with an unpaired arc of the same weight running the other way, and the
+     * pair becomes one two-way road; this keeps such networks undirected for
+     * the indexes that need them to be. An arc without such a partner, or
+     * whose reverse has another weight, becomes a one-way road. The arcs are
+     * held until the whole graph is read, since a partner may come anywhere
+     * in the file.
+     *
+     * @param in the graph, read to its end but not closed
+     * @param roadName the name to give every road, as the format has none
+     * @param progressInterval the number of lines between progress calls
+     * @param handler the handler to pass towns, roads and progress to
+     * @return the number of lines read, or -1 if the handler stopped the read
+     * @throws IOException if an I/O error occurs or a line is malformed
+     */
+    public static int readDimacsGraph(InputStream in, String roadName, int progressInterval,
+            RoadFileParser.Handler handler) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16);
+        String[] names = null;
+        long[] fields = new long[3];
+        //the arcs as read: tail, head and weight of each
+        int[] arcs = new int[3 * 1024];
+        int arcCount = 0;
+        int lines = 0;
+        for (String line; (line = reader.readLine()) != null; ) {
+            if (++lines % progressInterval == 0 && !handler.progress(0, lines)) {
+                return -1;
+            }
+            if (line.isEmpty() || line.charAt(0) == 'c') {
+                continue;
+            }
+            if (line.charAt(0) == 'p') {
+                String[] problem = line.trim().split("\\s+");
+                if (problem.length != 4 || !problem[1].equals("sp")) {
+                    throw malformed(lines, line, "p sp <towns> <arcs>");
+                }
+                names = new String[parseCount(problem[2], lines, line) + 1];
+            } else if (line.charAt(0) == 'a') {
+                if (names == null) {
+                    throw malformed(lines, line, "a problem line before the first arc");
+                }
+                if (numbers(line, 1, fields) != 3 || fields[0] < 1 || fields[0] >= names.length
+                        || fields[1] < 1 || fields[1] >= names.length || fields[2] < 0 || fields[2] > Integer.MAX_VALUE) {
+                    throw malformed(lines, line, "a <from> <to> <weight> with towns 1 to " + (names.length - 1)
+                            + " and a weight of 0 or more");
+                }
+                town(names, (int) fields[0], handler);
+                town(names, (int) fields[1], handler);
+                if (3 * arcCount == arcs.length) {
+                    arcs = Arrays.copyOf(arcs, 2 * arcs.length);
+                }
+                arcs[3 * arcCount] = (int) fields[0];
+                arcs[3 * arcCount + 1] = (int) fields[1];
+                arcs[3 * arcCount + 2] = (int) fields[2];
+                arcCount++;
+            } else {
+                throw malformed(lines, line, "a c, p or a line");
+            }
+        }
+        if (names != null && !addArcs(names, arcs, arcCount, roadName, lines, progressInterval, handler)) {
+            return -1;
+        }
+        return lines;
+    }
+
+    /**
+     * Passes the arcs of a DIMACS graph to the handler in the order they were
+     * read, as two-way roads where an arc pairs with one the other way and
+     * one-way roads otherwise. Progress is reported every progress interval
+     * roads, so the handler adds them in batches and can stop the import.
+     *
+     * @return true if every arc was passed on, false if the handler stopped it
+     */
+    private static boolean addArcs(String[] names, int[] arcs, int arcCount, String roadName, int lines,
+            int progressInterval, RoadFileParser.Handler handler) {
+        //the arcs out of each town, in read order, to look up partners
+        int[] first = new int[names.length + 1];
+        for (int a = 0; a < arcCount; a++) {
+            first[arcs[3 * a] + 1]++;
+        }
+        for (int v = 0; v < names.length; v++) {
+            first[v + 1] += first[v];
+        }
+        int[] out = new int[arcCount];
+        int[] fill = Arrays.copyOf(first, names.length);
+        for (int a = 0; a < arcCount; a++) {
+            out[fill[arcs[3 * a]]++] = a;
+        }
+        BitSet paired = new BitSet(arcCount);
+        int roads = 0;
+        for (int a = 0; a < arcCount; a++) {
+            if (paired.get(a)) {
+                continue;
+            }
+            if (++roads % progressInterval == 0 && !handler.progress(0, lines)) {
+                return false;
+            }
+            int tail = arcs[3 * a];
+            int head = arcs[3 * a + 1];
+            int weight = arcs[3 * a + 2];
+            int partner = -1;
+            for (int i = first[head]; i < first[head + 1] && partner < 0; i++) {
+                int b = out[i];
+                if (b != a && !paired.get(b) && arcs[3 * b + 1] == tail && arcs[3 * b + 2] == weight) {
+                    partner = b;
+                }
+            }
+            if (partner >= 0) {
+                paired.set(partner);
+            }
+            handler.road(roadName, weight, names[tail], names[head], partner < 0);
+        }
+        return true;
+    }
+
+    /**
+     * Reads DIMACS coordinates, as integers scaled as the file has them (the
+     * challenge's are millionths of a degree of longitude and latitude).
+     *
+     * @param in the coordinates, read to its end but not closed
+     * @return the x and y of each town, by town name as
+     * {@link #readDimacsGraph(InputStream, String, int, RoadFileParser.Handler)} names them
+     * @throws IOException if an I/O error occurs or a line is malformed
+     */
+    public static Map<String, double[]> readDimacsCoordinates(InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 1 << 16);
+        HashMap<String, double[]> coordinates = new HashMap<>();
+        long[] fields = new long[3];
+        int lines = 0;
+        for (String line; (line = reader.readLine()) != null; ) {
+            lines++;
+            if (line.isEmpty() || line.charAt(0) == 'c' || line.charAt(0) == 'p') {
+                continue;
+            }
+            if (line.charAt(0) != 'v' || numbers(line, 1, fields) != 3 || fields[0] < 1) {
+                throw malformed(lines, line, "v <town> <x> <y>");
+            }
+            coordinates.put(Long.toString(fields[0]), new double[] {fields[1], fields[2]});
+        }
+        return coordinates;
+    }
+
+    /**
+     * Reads a CSV edge list. A first line whose weight is not a number is
+     * taken as a header. Weights with a fraction are rounded to the nearest
+     * whole number.
+     *
+     * @param in the edge list, read to its end but not closed
+     * @param roadName the name to give roads whose line has no name
+     * @param progressInterval the number of lines between progress calls
+     * @param handler the handler to pass towns, roads and progress to
+     * @return the number of lines read, or -1 if the handler stopped the read
+     * @throws IOException if an I/O error occurs or a line is malformed
+     */
+    public static int readEdgeList(InputStream in, String roadName, int progressInterval,
+            RoadFileParser.Handler handler) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        ArrayList<String> fields = new ArrayList<>();
+        //each name once, so the handler hears of a town only the first time
+        HashMap<String, String> towns = new HashMap<>();
+        int lines = 0;
+        for (String line; (line = reader.readLine()) != null; ) {
+            if (++lines % progressInterval == 0 && !handler.progress(0, lines)) {
+                return -1;
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            csvFields(line, fields);
+            long weight = fields.size() < 3 ? Long.MIN_VALUE : parseWeight(fields.get(2).trim());
+            if (weight == Long.MIN_VALUE && lines == 1) {
+                continue;
+            }
+            if (fields.size() < 3 || fields.size() > 4 || weight < 0 || weight > Integer.MAX_VALUE) {
+                throw malformed(lines, line, "source,target,weight[,name] with a weight of 0 or more");
+            }
+            String town1 = town(towns, fields.get(0).trim(), handler);
+            String town2 = town(towns, fields.get(1).trim(), handler);
+            handler.road(fields.size() == 4 ? fields.get(3).trim() : roadName, (int) weight, town1, town2);
+        }
+        return lines;
+    }
+
+    private static String town(HashMap<String, String> towns, String name, RoadFileParser.Handler handler) {
+        String seen = towns.putIfAbsent(name, name);
+        if (seen != null) {
+            return seen;
+        }
+        handler.town(name);
+        return name;
+    }
+
+    private static String town(String[] names, int vertex, RoadFileParser.Handler handler) {
+        if (names[vertex] == null) {
+            names[vertex] = Integer.toString(vertex);
+            handler.town(names[vertex]);
+        }
+        return names[vertex];
+    }
+
+    /**
+     * Parses whitespace-separated whole numbers from a line.
+     *
+     * @return the number of fields, or -1 if one is not a number
+     */
+    private static int numbers(String line, int start, long[] fields) {
+        int count = 0;
+        int i = start;
+        int length = line.length();
+        while (true) {
+            while (i < length && line.charAt(i) <= ' ') {
+                i++;
+            }
+            if (i == length) {
+                return count;
+            }
+            if (count == fields.length) {
+                return count + 1;
+            }
+            boolean negative = line.charAt(i) == '-';
+            if (negative) {
+                i++;
+            }
+            int digits = 0;
+            long value = 0;
+            for (; i < length && line.charAt(i) > ' '; i++, digits++) {
+                char c = line.charAt(i);
+                if (c < '0' || c > '9' || digits == 18) {
+                    return -1;
+                }
+                value = 10 * value + (c - '0');
+            }
+            if (digits == 0) {
+                return -1;
+            }
+            fields[count++] = negative ? -value : value;
+        }
+    }
+
+    private static int parseCount(String field, int lines, String line) throws IOException {
+        try {
+            int count = Integer.parseInt(field);
+            if (count >= 0 && count < Integer.MAX_VALUE) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+        throw malformed(lines, line, "p sp <towns> <arcs>");
+    }
+
+    /**
+     * Parses a weight, rounding a fraction.
+     *
+     * @return the weight, or Long.MIN_VALUE if it is not a number
+     */
+    private static long parseWeight(String field) {
+        try {
+            return Long.parseLong(field);
+        } catch (NumberFormatException e) {
+            try {
+                double weight = Double.parseDouble(field);
+                return Double.isNaN(weight) ? Long.MIN_VALUE : Math.round(Math.max(weight, -1));
+            } catch (NumberFormatException notDecimal) {
+                return Long.MIN_VALUE;
+            }
+        }
+    }
+
+    /**
+     * Splits a CSV line into fields, unquoting quoted ones.
+     */
+    private static void csvFields(String line, ArrayList<String> fields) {
+        fields.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+    private static IOException malformed(int lines, String line, String expected) {
+        String shown = line.length() > 80 ? line.substring(0, 80) + "..." : line;
+        return new IOException("Line " + lines + " \"" + shown + "\": expected " + expected + ".");
+    }
+}
@@ -0,0 +1,201 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoadNetworkImporterTest {
+    private static final String GRAPH = "c 9th DIMACS Implementation Challenge: Shortest Paths\n"
+            + "c a small test network\n"
+            + "p sp 5 10\n"
+            + "a 1 2 7\n"
+            + "a 2 1 7\n"
+            + "a 2 3 4\n"
+            + "a 3 2 4\n"
+            + "a 1 3 20\n"
+            + "a 3 1 20\n"
+            + "a 3 4 1\n"
+            + "a 4 3 1\n"
+            + "a 4 5 2\n"
+            + "a 5 4 2\n";
+
+    private TownGraphManager graph;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new TownGraphManager();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (file != null) {
+            file.delete();
+        }
+        graph = null;
+    }
+
+    private File write(String name, String text, boolean gzip) throws IOException {
+        file = new File(System.getProperty("java.io.tmpdir"), name);
+        FileOutputStream out = new FileOutputStream(file);
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                gzip ? new GZIPOutputStream(out) : out, StandardCharsets.UTF_8))) {
+            writer.print(text);
+        }
+        return file;
+    }
+
+    @Test
+    public void testDimacsGraph() throws IOException {
+        long[] last = new long[3];
+        assertTrue(graph.importDimacsGraph(write("test-net.gr", GRAPH, false), (bytes, total, lines, towns, roads) -> {
+            last[0] = lines;
+            last[1] = towns;
+            last[2] = roads;
+            return true;
+        }));
+        assertEquals("[13, 5, 5]", Arrays.toString(last));
+        assertEquals(5, graph.getTownCount());
+        assertEquals(5, graph.allRoads().size());
+        assertEquals("test-net", graph.getRoad("1", "2"));
+        assertEquals(14, graph.getDistance("1", "5"));
+        assertEquals("1 via test-net to 2 7 mi", graph.getPath("1", "5").get(0).trim());
+    }
+
+    @Test
+    public void testGzippedDimacsGraph() throws IOException {
+        assertTrue(graph.importDimacsGraph(write("test-net.gr.gz", GRAPH, true), null));
+        assertEquals(5, graph.allRoads().size());
+        assertEquals("test-net", graph.getRoad("4", "5"));
+    }
+
+    @Test
+    public void testDimacsArcsKeepDirection() throws IOException {
+        assertTrue(graph.importDimacsGraph(write("directed.gr", "p sp 4 5\n"
+                + "a 1 2 7\n"
+                + "a 2 1 9\n"
+                + "a 2 3 4\n"
+                + "a 3 4 1\n"
+                + "a 4 3 1\n", false), null));
+        assertEquals(4, graph.allRoads().size());
+        assertEquals(7, graph.getDistance("1", "2"));
+        assertEquals(9, graph.getDistance("2", "1"));
+        assertEquals(-1, graph.getDistance("3", "2"));
+        //the equal pair is one two-way road
+        assertEquals(1, graph.getDistance("4", "3"));
+        assertEquals(12, graph.getDistance("1", "4"));
+    }
+
+    @Test
+    public void testEdgeListTownsOnce() throws IOException {
+        ArrayList<String> towns = new ArrayList<>();
+        RoadNetworkImporter.readEdgeList(new ByteArrayInputStream(
+                "A,B,1\nB,C,2\nA,C,3\n".getBytes(StandardCharsets.UTF_8)), "edges", 1000,
+                new RoadFileParser.Handler() {
+                    @Override
+                    public void town(String name) {
+                        towns.add(name);
+                    }
+
+                    @Override
+                    public void road(String roadName, int weight, String town1, String town2) {
+                        assertTrue(towns.contains(town1) && towns.contains(town2));
+                    }
+
+                    @Override
+                    public boolean progress(long bytesRead, int lines) {
+                        return true;
+                    }
+                });
+        assertEquals(Arrays.asList("A", "B", "C"), towns);
+    }
+
+    @Test
+    public void testDimacsRoadsInBatches() throws IOException {
+        //the arcs are held to the end of the file, then passed on with progress calls between
+        ArrayList<String> calls = new ArrayList<>();
+        int lines = RoadNetworkImporter.readDimacsGraph(new ByteArrayInputStream(GRAPH.getBytes(StandardCharsets.US_ASCII)),
+                "test-net", 2, new RoadFileParser.Handler() {
+                    @Override
+                    public void town(String name) {
+                    }
+
+                    @Override
+                    public void road(String roadName, int weight, String town1, String town2) {
+                        calls.add("road");
+                    }
+
+                    @Override
+                    public boolean progress(long bytesRead, int lines) {
+                        calls.add("progress");
+                        return !calls.contains("road");
+                    }
+                });
+        assertEquals(-1, lines);
+        //six calls while reading the lines, then one road before the next call stops it
+        assertEquals(Arrays.asList("progress", "road", "progress"), calls.subList(5, 8));
+        assertEquals(8, calls.size());
+    }
+
+    @Test
+    public void testDimacsErrors() throws IOException {
+        try {
+            graph.importDimacsGraph(write("bad.gr", "p sp 3 2\na 1 2 5\na 1 4 5\n", false), null);
+            fail("an arc to a missing town was accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 3 \"a 1 4 5\""));
+        }
+        try {
+            graph.importDimacsGraph(write("bad.gr", "a 1 2 5\n", false), null);
+            fail("an arc before the problem line was accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 1 "));
+        }
+    }
+
+    @Test
+    public void testDimacsCoordinates() throws IOException {
+        Map<String, double[]> coordinates = TownGraphManager.readDimacsCoordinates(write("test-net.co",
+                "c coordinates\np aux sp co 2\nv 1 -73530767 41085396\nv 2 -73530538 41086098\n", false));
+        assertEquals(2, coordinates.size());
+        assertEquals("[-7.3530767E7, 4.1085396E7]", Arrays.toString(coordinates.get("1")));
+        assertEquals(-73530538, coordinates.get("2")[0], 0);
+        assertEquals(41086098, coordinates.get("2")[1], 0);
+    }
+
+    @Test
+    public void testEdgeList() throws IOException {
+        assertTrue(graph.importEdgeList(write("edges.csv", "source,target,weight,name\n"
+                + "Town_1,Town_2,2,Road_1\n"
+                + "\"Town, the 3rd\",Town_2,4.6,\"Road \"\"Two\"\"\"\n"
+                + "\n"
+                + "Town_3,Town_1,5\n", false), null));
+        assertEquals(4, graph.getTownCount());
+        assertEquals("Road_1", graph.getRoad("Town_1", "Town_2"));
+        assertEquals("Road \"Two\"", graph.getRoad("Town, the 3rd", "Town_2"));
+        assertEquals(7, graph.getDistance("Town_1", "Town, the 3rd"));
+        assertEquals("edges", graph.getRoad("Town_3", "Town_1"));
+    }
+
+    @Test
+    public void testEdgeListErrors() throws IOException {
+        try {
+            graph.importEdgeList(write("edges.csv", "Town_1,Town_2,2\nTown_2,Town_3,-1\n", false), null);
+            fail("a negative weight was accepted");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Line 2 "));
+        }
+    }
+}
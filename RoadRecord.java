@@ -0,0 +1,120 @@
+import java.util.Objects;
+
+/**
+ * A road named by the names of the towns it joins, for adding or deleting
+ * many roads at once. Like {@link Road}, two records are equal if they join
+ * the same towns, in either order, with the same weight and name; a one-way
+ * record runs from town 1 to town 2 and only equals one in the same direction.
+ *
+ * @author Liam Ghershony
+ */
+
+public final class RoadRecord {
+
+    private final String town1;
+    private final String town2;
+    private final int weight;
+    private final String name;
+    private final boolean oneWay;
+
+    /**
+     * Constructs a new road record.
+     *
+     * @param town1 the name of one town
+     * @param town2 the name of the other town
+     * @param weight the weight (distance) of the road
+     * @param name the name of the road
+     */
+
+    public RoadRecord(String town1, String town2, int weight, String name) {
+        this(town1, town2, weight, name, false);
+    }
+
+    /**
+     * Constructs a new road record, one-way from town 1 to town 2 if asked.
+     *
+     * @param town1 the name of the town the road starts from
+     * @param town2 the name of the town the road leads to
+     * @param weight the weight (distance) of the road
+     * @param name the name of the road
+     * @param oneWay true if the road runs only from town 1 to town 2
+     */
+
+    public RoadRecord(String town1, String town2, int weight, String name, boolean oneWay) {
+        this.town1 = town1;
+        this.town2 = town2;
+        this.weight = weight;
+        this.name = name;
+        this.oneWay = oneWay;
+    }
+
+    /**
+     * Gets the name of the first town.
+     *
+     * @return the name of town 1
+     */
+    public String getTown1() {
+        return town1;
+    }
+
+    /**
+     * Gets the name of the second town.
+     *
+     * @return the name of town 2
+     */
+    public String getTown2() {
+        return town2;
+    }
+
+    /**
+     * Gets the weight (distance) of the road.
+     *
+     * @return the weight of the road
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Gets the name of the road.
+     *
+     * @return the name of the road
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks if the road runs only from town 1 to town 2.
+     *
+     * @return true if the road is one-way
+     */
+    public boolean isOneWay() {
+        return oneWay;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        RoadRecord other = (RoadRecord) obj;
+        if (oneWay != other.oneWay) return false;
+        boolean sameDirection = Objects.equals(town1, other.town1) && Objects.equals(town2, other.town2);
+        boolean oppositeDirection = !oneWay && Objects.equals(town1, other.town2) && Objects.equals(town2, other.town1);
+        return (sameDirection || oppositeDirection) && weight == other.weight && Objects.equals(name, other.name);
+    }
+
+    @Override
+    public int hashCode() {
+        if (oneWay) {
+            return Objects.hash(town1, town2, weight, name, true);
+        }
+        // Symmetric in the towns, matching equals
+        return Objects.hashCode(town1) + Objects.hashCode(town2) + 31 * (31 * weight + Objects.hashCode(name));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s to %s via %s (%d)", town1, town2, name, weight);
+    }
+}
@@ -0,0 +1,79 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * One partition of a road network, as seen by a {@link ShardedRouter}: the
+ * towns of the partition and the roads between them. The router tells each
+ * shard which of its towns have roads to other shards, its boundary towns,
+ * and routes across shards through them.
+ *
+ * A shard is either a {@link ShardWorker} in the router's own process or a
+ * {@link ShardClient} talking to a worker in another process, so every call
+ * may fail with an I/O error.
+ *
+ * @author Liam Ghershony
+ */
+public interface RoadShard extends Closeable {
+
+    /**
+     * Adds towns to the shard.
+     *
+     * @param towns the names of the towns
+     * @return the number of towns added
+     * @throws IOException if the shard cannot be reached
+     */
+    int addTowns(Collection<String> towns) throws IOException;
+
+    /**
+     * Adds roads between towns of the shard.
+     *
+     * @param roads the roads
+     * @return the number of roads added
+     * @throws IOException if the shard cannot be reached
+     */
+    int addRoads(Collection<RoadRecord> roads) throws IOException;
+
+    /**
+     * Sets the shard's boundary towns and gets the distances between them
+     * using the shard's own roads.
+     *
+     * @param towns the names of the boundary towns
+     * @return the distances, indexed by the towns' positions in the list, -1 where no path exists
+     * @throws IOException if the shard cannot be reached
+     */
+    int[][] setBoundary(List<String> towns) throws IOException;
+
+    /**
+     * Gets the distances from a town to every boundary town, and to one
+     * other town, using the shard's own roads.
+     *
+     * @param town the name of the town
+     * @param other the name of the other town, which may be in another shard
+     * @return the distance to each boundary town in order followed by the distance to the other town,
+     * -1 where no path exists; or null if the town is not in this shard
+     * @throws IOException if the shard cannot be reached
+     */
+    long[] reach(String town, String other) throws IOException;
+
+    /**
+     * Gets the shortest path between two towns using the shard's own roads.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return the steps of the path, or an empty list if no path exists
+     * @throws IOException if the shard cannot be reached
+     */
+    ArrayList<String> getPath(String town1, String town2) throws IOException;
+
+    /**
+     * Gets the heap in use by the process holding the shard, after a
+     * garbage collection.
+     *
+     * @return the heap in use, in bytes
+     * @throws IOException if the shard cannot be reached
+     */
+    long heapUsed() throws IOException;
+}
@@ -0,0 +1,262 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A what-if overlay that a route query can carry. Closed roads and banned
+ * towns are skipped by the search and roads can have their weight scaled,
+ * all without touching the graph itself, so several overlays can be
+ * evaluated against the same graph at once.
+ *
+ * Roads and towns are recorded by the ids their graph gave them, so honoring
+ * the overlay costs a bit test per relaxation. Since the graph reuses the
+ * ids of removed towns and roads, the overlay is stamped with the graph's
+ * version and goes stale once the graph changes: changing or searching
+ * with a stale overlay throws, until it is cleared. An overlay created by a
+ * {@link TownGraphManager} reads the graph under the manager's read lock.
+ *
+ * @author Liam Ghershony
+ */
+public class RouteOverlay {
+
+    private final Graph graph;
+    private final Lock lock;
+    private final BitSet closedRoads = new BitSet();
+    private final BitSet bannedTowns = new BitSet();
+    private final BitSet scaledRoads = new BitSet();
+    private double[] multipliers = new double[0];
+    private int version;
+
+    /**
+     * Creates an empty overlay over the given graph.
+     *
+     * @param graph the graph the overlay applies to
+     */
+    public RouteOverlay(Graph graph) {
+        this(graph, new ReentrantReadWriteLock().readLock());
+    }
+
+    /**
+     * Creates an empty overlay over a graph guarded by a lock.
+     *
+     * @param graph the graph the overlay applies to
+     * @param lock the lock to hold while reading the graph
+     */
+    RouteOverlay(Graph graph, Lock lock) {
+        if (graph == null) {
+            throw new NullPointerException("Graph cannot be null.");
+        }
+        this.graph = graph;
+        this.lock = lock;
+        lock.lock();
+        try {
+            version = graph.getVersion();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the road between two towns for queries carrying this overlay.
+     *
+     * @param source one end of the road
+     * @param destination the other end of the road
+     * @return true if a road was found and closed, false otherwise
+     * @throws IllegalStateException if the graph has changed since the overlay was created or cleared
+     */
+    public boolean closeRoad(Town source, Town destination) {
+        lock.lock();
+        try {
+            checkCurrent();
+            Road road = graph.getEdge(source, destination);
+            if (road == null || closedRoads.get(road.id)) {
+                return false;
+            }
+            closedRoads.set(road.id);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Bans a town so that no route passes through it.
+     *
+     * @param town the town to ban
+     * @return true if the town is in the graph and was not already banned
+     * @throws IllegalStateException if the graph has changed since the overlay was created or cleared
+     */
+    public boolean banTown(Town town) {
+        lock.lock();
+        try {
+            checkCurrent();
+            if (town == null) {
+                throw new NullPointerException("Town cannot be null.");
+            }
+            int id = graph.idOf(town);
+            if (id < 0 || bannedTowns.get(id)) {
+                return false;
+            }
+            bannedTowns.set(id);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Scales the weight of the road between two towns, e.g. 2.0 for a road
+     * that takes twice as long because of roadworks.
+     *
+     * @param source one end of the road
+     * @param destination the other end of the road
+     * @param multiplier the factor to apply to the road's weight
+     * @return true if a road was found and scaled, false otherwise
+     * @throws IllegalStateException if the graph has changed since the overlay was created or cleared
+     */
+    public boolean scaleRoad(Town source, Town destination, double multiplier) {
+        lock.lock();
+        try {
+            checkCurrent();
+            if (multiplier < 0 || Double.isNaN(multiplier)) {
+                throw new IllegalArgumentException("Multiplier must be a non-negative number.");
+            }
+            Road road = graph.getEdge(source, destination);
+            if (road == null) {
+                return false;
+            }
+            if (road.id >= multipliers.length) {
+                multipliers = Arrays.copyOf(multipliers, Math.max(road.id + 1, graph.roadIdBound()));
+            }
+            multipliers[road.id] = multiplier;
+            scaledRoads.set(road.id);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every closure, ban and multiplier from this overlay, making a
+     * stale overlay current again.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            closedRoads.clear();
+            bannedTowns.clear();
+            scaledRoads.clear();
+            version = graph.getVersion();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the graph this overlay applies to.
+     *
+     * @return the graph
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Checks if the graph is unchanged since the overlay was created or last
+     * cleared, so the ids it holds still name the same towns and roads.
+     *
+     * @return true if the overlay is current
+     */
+    public boolean isCurrent() {
+        lock.lock();
+        try {
+            return version == graph.getVersion();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Throws if the overlay is stale.
+     *
+     * @throws IllegalStateException if the graph has changed since the overlay was created or cleared
+     */
+    void checkCurrent() {
+        if (version != graph.getVersion()) {
+            throw new IllegalStateException("Overlay is stale; the graph has changed since it was created.");
+        }
+    }
+
+    /**
+     * Checks if a road is closed in this overlay.
+     *
+     * @param road the road to check
+     * @return true if the road is closed
+     */
+    public boolean isClosed(Road road) {
+        //a road the graph did not hand out has no id
+        return road.id >= 0 && closedRoads.get(road.id);
+    }
+
+    /**
+     * Checks if the road with an id is closed in this overlay.
+     *
+     * @param road the road's id
+     * @return true if the road is closed
+     */
+    boolean isClosed(int road) {
+        return closedRoads.get(road);
+    }
+
+    /**
+     * Checks if a town is banned in this overlay.
+     *
+     * @param town the town to check
+     * @return true if the town is banned
+     */
+    public boolean isBanned(Town town) {
+        lock.lock();
+        try {
+            int id = graph.idOf(town);
+            return id >= 0 && bannedTowns.get(id);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if the town with an id is banned in this overlay.
+     *
+     * @param id the town's id
+     * @return true if the town is banned
+     */
+    boolean isBanned(int id) {
+        return bannedTowns.get(id);
+    }
+
+    /**
+     * Gets the weight of a road as seen through this overlay.
+     *
+     * @param road the road
+     * @return the scaled weight of the road, saturating at Integer.MAX_VALUE - 1
+     */
+    public int weightOf(Road road) {
+        return road.id < 0 ? road.getWeight() : weightOf(road.id, road.getWeight());
+    }
+
+    /**
+     * Gets the weight of the road with an id as seen through this overlay.
+     *
+     * @param road the road's id
+     * @param weight the road's weight in the graph
+     * @return the scaled weight of the road, saturating at Integer.MAX_VALUE - 1
+     */
+    int weightOf(int road, int weight) {
+        if (!scaledRoads.get(road)) {
+            return weight;
+        }
+        double scaled = Math.ceil(weight * multipliers[road]);
+        return scaled >= Integer.MAX_VALUE - 1 ? Integer.MAX_VALUE - 1 : (int) scaled;
+    }
+}
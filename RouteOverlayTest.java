@@ -0,0 +1,126 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RouteOverlayTest {
+    private TownGraphManager graph;
+    private String[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new TownGraphManager();
+        town = new String[12];
+
+        for (int i = 1; i < 12; i++) {
+            town[i] = "Town_" + i;
+            graph.addTown(town[i]);
+        }
+
+        graph.addRoad(town[1], town[2], 2, "Road_1");
+        graph.addRoad(town[1], town[3], 4, "Road_2");
+        graph.addRoad(town[1], town[5], 6, "Road_3");
+        graph.addRoad(town[3], town[7], 1, "Road_4");
+        graph.addRoad(town[3], town[8], 2, "Road_5");
+        graph.addRoad(town[4], town[8], 3, "Road_6");
+        graph.addRoad(town[6], town[9], 3, "Road_7");
+        graph.addRoad(town[9], town[10], 4, "Road_8");
+        graph.addRoad(town[8], town[10], 2, "Road_9");
+        graph.addRoad(town[5], town[10], 5, "Road_10");
+        graph.addRoad(town[10], town[11], 3, "Road_11");
+        graph.addRoad(town[2], town[11], 6, "Road_12");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        graph = null;
+    }
+
+    @Test
+    public void testEmptyOverlayMatchesGetPath() {
+        RouteOverlay overlay = graph.createOverlay();
+        assertEquals(graph.getPath(town[1], town[6]), graph.getPath(town[1], town[6], overlay));
+        assertEquals(graph.getPath(town[4], town[11]), graph.getPath(town[4], town[11], null));
+    }
+
+    @Test
+    public void testClosedRoad() {
+        RouteOverlay overlay = graph.createOverlay();
+        assertTrue(overlay.closeRoad(graph.getTown(town[2]), graph.getTown(town[11])));
+        ArrayList<String> path = graph.getPath(town[1], town[11], overlay);
+        assertEquals("Town_1 via Road_2 to Town_3 4 mi", path.get(0).trim());
+        assertEquals("Town_3 via Road_5 to Town_8 2 mi", path.get(1).trim());
+        assertEquals("Town_8 via Road_9 to Town_10 2 mi", path.get(2).trim());
+        assertEquals("Town_10 via Road_11 to Town_11 3 mi", path.get(3).trim());
+        assertTrue(graph.containsRoadConnection(town[2], town[11]));
+    }
+
+    @Test
+    public void testBannedTown() {
+        RouteOverlay overlay = graph.createOverlay();
+        overlay.banTown(graph.getTown(town[8]));
+        ArrayList<String> path = graph.getPath(town[1], town[10], overlay);
+        assertEquals("Town_1 via Road_3 to Town_5 6 mi", path.get(0).trim());
+        assertEquals("Town_5 via Road_10 to Town_10 5 mi", path.get(1).trim());
+        assertTrue(graph.getPath(town[1], town[4], overlay).isEmpty());
+        assertTrue(graph.containsTown(town[8]));
+    }
+
+    @Test
+    public void testScaledRoad() {
+        RouteOverlay overlay = graph.createOverlay();
+        assertTrue(overlay.scaleRoad(graph.getTown(town[1]), graph.getTown(town[2]), 2.0));
+        ArrayList<String> path = graph.getPath(town[1], town[2], overlay);
+        assertEquals("Town_1 via Road_1 to Town_2 4 mi", path.get(0).trim());
+        assertFalse(overlay.scaleRoad(graph.getTown(town[3]), graph.getTown(town[5]), 2.0));
+        overlay.clear();
+        assertEquals(graph.getPath(town[1], town[2]), graph.getPath(town[1], town[2], overlay));
+    }
+
+    @Test
+    public void testStaleOverlay() {
+        RouteOverlay overlay = graph.createOverlay();
+        assertTrue(overlay.closeRoad(graph.getTown(town[2]), graph.getTown(town[11])));
+        //the removed road's id is reused by the new one
+        graph.deleteRoadConnection(town[2], town[11], "Road_12");
+        graph.addRoad(town[4], town[6], 1, "Road_13");
+        assertFalse(overlay.isCurrent());
+        try {
+            graph.getPath(town[4], town[6], overlay);
+            fail("A stale overlay should be rejected");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        try {
+            overlay.banTown(graph.getTown(town[8]));
+            fail("A stale overlay should be rejected");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        overlay.clear();
+        assertTrue(overlay.isCurrent());
+        assertEquals("Town_4 via Road_13 to Town_6 1 mi", graph.getPath(town[4], town[6], overlay).get(0).trim());
+    }
+
+    @Test
+    public void testHeavilyScaledRoad() {
+        RouteOverlay overlay = graph.createOverlay();
+        //saturates near Integer.MAX_VALUE; adding it to a distance must not wrap around
+        assertTrue(overlay.scaleRoad(graph.getTown(town[1]), graph.getTown(town[2]), 1e12));
+        ArrayList<String> path = graph.getPath(town[3], town[2], overlay);
+        assertEquals("Town_3 via Road_5 to Town_8 2 mi", path.get(0).trim());
+        assertEquals(4, path.size());
+        assertEquals("Town_11 via Road_12 to Town_2 6 mi", path.get(3).trim());
+    }
+
+    @Test
+    public void testRoadWithoutId() {
+        RouteOverlay overlay = graph.createOverlay();
+        Road loose = new Road(new Town("A"), new Town("B"), 3, "Loose");
+        assertFalse(overlay.isClosed(loose));
+        assertEquals(3, overlay.weightOf(loose));
+    }
+}
@@ -0,0 +1,879 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Command-line micro-benchmarks for the routing and analytics code. Each
+ * benchmark builds a random road network of the requested size, warms up and
+ * reports the best of several timed runs.
+ *
+ * Usage: java RoutingBenchmark [benchmark] [towns] [roads], or
+ * java RoutingBenchmark dimacs [file.gr] to route on a DIMACS road network
+ *
+ * @author Liam Ghershony
+ */
+public class RoutingBenchmark {
+
+    private static final int RUNS = 5;
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args optional benchmark name, town count and road count
+     */
+    public static void main(String[] args) {
+        String which = args.length > 0 ? args[0] : "all";
+        if (which.equals("dimacs") && args.length > 1 && !args[1].matches("\\d+")) {
+            benchmarkDimacs(new File(args[1]));
+            return;
+        }
+        int towns = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int roads = args.length > 2 ? Integer.parseInt(args[2]) : 4 * towns;
+
+        if (which.equals("all") || which.equals("mst")) {
+            benchmarkSpanningTree(towns, roads);
+        }
+        if (which.equals("all") || which.equals("search")) {
+            benchmarkSearchAllocation(Math.min(towns, 200_000), Math.min(roads, 600_000));
+        }
+        if (which.equals("all") || which.equals("offheap")) {
+            benchmarkFootprint(Math.min(towns, 500_000), Math.min(roads, 1_500_000));
+        }
+        if (which.equals("all") || which.equals("alt")) {
+            benchmarkLandmarks(towns, roads);
+        }
+        if (which.equals("all") || which.equals("crp")) {
+            //cell boundaries grow with density, so unless told otherwise use a road network's 1.25 roads per town
+            benchmarkMultiLevelOverlay(towns, args.length > 2 ? roads : towns + towns / 4);
+        }
+        if (which.equals("all") || which.equals("hubs")) {
+            benchmarkHubLabels(Math.min(towns, 50_000), Math.min(roads, 150_000));
+        }
+        if (which.equals("all") || which.equals("suggest")) {
+            benchmarkSuggestions(towns);
+        }
+        if (which.equals("all") || which.equals("batch")) {
+            benchmarkBatchMutations(Math.min(towns, 500_000), Math.min(roads, 1_500_000));
+        }
+        if (which.equals("all") || which.equals("wal")) {
+            benchmarkMutationLog(Math.min(towns, 200_000), Math.min(roads, 600_000));
+        }
+        if (which.equals("all") || which.equals("load")) {
+            benchmarkLoading(Math.min(towns, 500_000), Math.min(roads, 1_500_000));
+        }
+        if (which.equals("all") || which.equals("dimacs")) {
+            benchmarkDimacs(Math.min(towns, 500_000), Math.min(roads, 1_500_000));
+        }
+        if (which.equals("all") || which.equals("shards")) {
+            benchmarkShardedLoading(Math.min(towns, 500_000), Math.min(roads, 1_500_000), 4);
+        }
+        if (which.equals("all") || which.equals("cluster")) {
+            int clusterTowns = Math.min(towns, 200_000);
+            benchmarkCluster(clusterTowns, args.length > 2 ? Math.min(roads, 600_000) : clusterTowns + clusterTowns / 4, 4);
+        }
+    }
+
+    /**
+     * Measures prefix and fuzzy town-name lookups as typed into a combo box.
+     *
+     * @param towns the number of town names
+     */
+    static void benchmarkSuggestions(int towns) {
+        NameTrie trie = new NameTrie();
+        Random random = new Random(42);
+        String[] names = new String[towns];
+        for (int i = 0; i < towns; i++) {
+            names[i] = "Town_" + Integer.toString(random.nextInt(Integer.MAX_VALUE), 36);
+            trie.add(names[i]);
+        }
+        int queries = 10_000;
+        long prefixBest = Long.MAX_VALUE, fuzzyBest = Long.MAX_VALUE;
+        long found = 0;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                String name = names[random.nextInt(towns)];
+                found += trie.withPrefix(name.substring(0, 7), 10).size();
+            }
+            prefixBest = Math.min(prefixBest, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                String name = names[random.nextInt(towns)];
+                found += trie.closest(name.substring(0, name.length() - 1) + "x", 1, 10).size();
+            }
+            fuzzyBest = Math.min(fuzzyBest, System.nanoTime() - start);
+        }
+        System.out.printf("suggest  %,d towns: prefix %.1f us, fuzzy %.1f us per lookup (%d found)%n",
+                towns, prefixBest / 1e3 / queries, fuzzyBest / 1e3 / queries, found);
+    }
+
+    /**
+     * Compares adding a network's towns and roads one call at a time with
+     * adding them through the batch methods.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkBatchMutations(int towns, int roads) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        String[] names = new String[towns];
+        for (int v = 0; v < towns; v++) {
+            names[v] = "Town_" + v;
+        }
+        ArrayList<String> townBatch = new ArrayList<>(Arrays.asList(names));
+        ArrayList<RoadRecord> roadBatch = new ArrayList<>(network.edgeCount());
+        for (int e = 0; e < network.edgeCount(); e++) {
+            roadBatch.add(new RoadRecord(names[network.edgeSource(e)], names[network.edgeTarget(e)],
+                    network.edgeWeight(e), "Road_" + (e % 1000)));
+        }
+        int mutations = towns + network.edgeCount();
+        long singleBest = Long.MAX_VALUE, batchBest = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            TownGraphManager single = new TownGraphManager();
+            long start = System.nanoTime();
+            for (String name : names) {
+                single.addTown(name);
+            }
+            for (RoadRecord road : roadBatch) {
+                single.addRoad(road.getTown1(), road.getTown2(), road.getWeight(), road.getName());
+            }
+            singleBest = Math.min(singleBest, System.nanoTime() - start);
+
+            TownGraphManager batch = new TownGraphManager();
+            start = System.nanoTime();
+            batch.addTowns(townBatch);
+            batch.addRoads(roadBatch);
+            batchBest = Math.min(batchBest, System.nanoTime() - start);
+        }
+        System.out.printf("batch    %,d mutations: per item %,.0f/s, batched %,.0f/s%n",
+                mutations, mutations / (singleBest / 1e9), mutations / (batchBest / 1e9));
+    }
+
+    /**
+     * Measures logged mutations per second, buffered from one thread and
+     * group-committed from many, and recovery time before and after the log
+     * is compacted.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkMutationLog(int towns, int roads) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        int threads = 16;
+        try {
+            File dir = Files.createTempDirectory("wal-benchmark").toFile();
+            try {
+                TownGraphManager buffered = new TownGraphManager();
+                buffered.openMutationLog(dir, false);
+                long start = System.nanoTime();
+                for (int v = 0; v < towns; v++) {
+                    buffered.addTown("Town_" + v);
+                }
+                for (int e = 0; e < network.edgeCount(); e++) {
+                    buffered.addRoad("Town_" + network.edgeSource(e), "Town_" + network.edgeTarget(e),
+                            network.edgeWeight(e), "Road_" + (e % 1000));
+                }
+                buffered.closeMutationLog();
+                long bufferedTime = System.nanoTime() - start;
+                int mutations = towns + network.edgeCount();
+
+                start = System.nanoTime();
+                TownGraphManager recovered = new TownGraphManager();
+                recovered.openMutationLog(dir, false);
+                long replayTime = System.nanoTime() - start;
+                recovered.compactMutationLog();
+                recovered.closeMutationLog();
+                start = System.nanoTime();
+                recovered = new TownGraphManager();
+                recovered.openMutationLog(dir, false);
+                long snapshotTime = System.nanoTime() - start;
+
+                //every change waits for its fsync; concurrent writers share them
+                int synced = Math.min(mutations, 200_000);
+                ExecutorService pool = Executors.newFixedThreadPool(threads);
+                TownGraphManager durable = recovered;
+                start = System.nanoTime();
+                ArrayList<Future<?>> writers = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int thread = t;
+                    writers.add(pool.submit(() -> {
+                        for (int i = thread; i < synced; i += threads) {
+                            durable.addTown("Extra_" + i);
+                        }
+                    }));
+                }
+                for (Future<?> writer : writers) {
+                    writer.get();
+                }
+                long syncedTime = System.nanoTime() - start;
+                pool.shutdown();
+                recovered.closeMutationLog();
+
+                System.out.printf("wal      %,d mutations: buffered %,.0f/s, synced x%d threads %,.0f/s,"
+                        + " recovery %.1f ms from log, %.1f ms from snapshot%n",
+                        mutations, mutations / (bufferedTime / 1e9), threads, synced / (syncedTime / 1e9),
+                        replayTime / 1e6, snapshotTime / 1e6);
+            } finally {
+                File[] files = dir.listFiles();
+                for (File file : files == null ? new File[0] : files) {
+                    file.delete();
+                }
+                dir.delete();
+            }
+        } catch (IOException | InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("Mutation log benchmark failed.", e);
+        }
+    }
+
+    /**
+     * Measures road file parse throughput in MB/s for the line reader with
+     * String.split and for the byte-level parser, and the time to populate a
+     * graph through each. The reader's figure is for splitting alone; the
+     * byte parser also resolves every name to one shared String.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkLoading(int towns, int roads) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        try {
+            File file = File.createTempFile("roads", ".txt");
+            try {
+                try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), Charset.defaultCharset())) {
+                    for (int e = 0; e < network.edgeCount(); e++) {
+                        out.write("Road_" + (e % 1000) + "," + network.edgeWeight(e) + ";Town_"
+                                + network.edgeSource(e) + ";Town_" + network.edgeTarget(e) + "\n");
+                    }
+                }
+                double megabytes = file.length() / 1e6;
+                long readerBest = Long.MAX_VALUE, parserBest = Long.MAX_VALUE;
+                long readerLoadBest = Long.MAX_VALUE, parserLoadBest = Long.MAX_VALUE;
+                long checksum = 0;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    checksum += readRoads(file, null);
+                    readerBest = Math.min(readerBest, System.nanoTime() - start);
+
+                    long[] sum = new long[1];
+                    start = System.nanoTime();
+                    try (FileInputStream in = new FileInputStream(file)) {
+                        new RoadFileParser(Charset.defaultCharset(), Integer.MAX_VALUE, new RoadFileParser.Handler() {
+                            @Override
+                            public void town(String name) {
+                            }
+
+                            @Override
+                            public void road(String roadName, int weight, String town1, String town2) {
+                                sum[0] += weight + roadName.length() + town1.length() + town2.length();
+                            }
+
+                            @Override
+                            public boolean progress(long bytesRead, int lines) {
+                                return true;
+                            }
+                        }).parse(in.getChannel());
+                    }
+                    parserBest = Math.min(parserBest, System.nanoTime() - start);
+                    checksum -= sum[0];
+
+                    TownGraphManager graph = new TownGraphManager();
+                    start = System.nanoTime();
+                    readRoads(file, graph);
+                    readerLoadBest = Math.min(readerLoadBest, System.nanoTime() - start);
+                    int loaded = graph.allRoads().size();
+
+                    graph = new TownGraphManager();
+                    start = System.nanoTime();
+                    graph.populateTownGraph(file);
+                    parserLoadBest = Math.min(parserLoadBest, System.nanoTime() - start);
+                    checksum += graph.allRoads().size() - loaded;
+                }
+                System.out.printf("load     %.1f MB: reader %.0f MB/s, byte parser %.0f MB/s;"
+                        + " populate via reader %.0f ms, via byte parser %.0f ms (checksum %d)%n",
+                        megabytes, megabytes / (readerBest / 1e9), megabytes / (parserBest / 1e9),
+                        readerLoadBest / 1e6, parserLoadBest / 1e6, checksum);
+            } finally {
+                file.delete();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Loading benchmark failed.", e);
+        }
+    }
+
+    /**
+     * Writes a random network as a DIMACS graph, with an arc each way for
+     * every road as the challenge files have, and routes on it.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkDimacs(int towns, int roads) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        try {
+            File file = File.createTempFile("roads", ".gr");
+            try {
+                try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), Charset.defaultCharset())) {
+                    out.write("c random network\np sp " + towns + " " + 2 * network.edgeCount() + "\n");
+                    for (int e = 0; e < network.edgeCount(); e++) {
+                        int a = network.edgeSource(e) + 1, b = network.edgeTarget(e) + 1, w = network.edgeWeight(e);
+                        out.write("a " + a + " " + b + " " + w + "\na " + b + " " + a + " " + w + "\n");
+                    }
+                }
+                benchmarkDimacs(file);
+            } finally {
+                file.delete();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("DIMACS benchmark failed.", e);
+        }
+    }
+
+    /**
+     * Imports a DIMACS graph and measures random point-to-point routes on it,
+     * plain and with landmarks.
+     *
+     * @param file the graph file, plain or gzipped
+     */
+    static void benchmarkDimacs(File file) {
+        try {
+            TownGraphManager graph = new TownGraphManager();
+            long start = System.nanoTime();
+            graph.importDimacsGraph(file, null);
+            long importTime = System.nanoTime() - start;
+            int towns = graph.getTownCount();
+            int queries = 200;
+            Random random = new Random(42);
+            String[][] pairs = new String[queries][];
+            for (int q = 0; q < queries; q++) {
+                pairs[q] = new String[] {Integer.toString(1 + random.nextInt(towns)),
+                        Integer.toString(1 + random.nextInt(towns))};
+            }
+            long checksum = 0;
+            start = System.nanoTime();
+            for (String[] pair : pairs) {
+                checksum += graph.getPath(pair[0], pair[1]).size();
+            }
+            long plainTime = System.nanoTime() - start;
+            graph.buildLandmarks(16, LandmarkIndex.Selection.FARTHEST);
+            start = System.nanoTime();
+            for (String[] pair : pairs) {
+                checksum -= graph.getPath(pair[0], pair[1]).size();
+            }
+            long landmarkTime = System.nanoTime() - start;
+            System.out.printf("dimacs   %s: %,d towns, %,d roads imported in %.0f ms;"
+                    + " routes %.2f ms plain, %.2f ms with landmarks (checksum %d)%n",
+                    file.getName(), towns, graph.allRoads().size(), importTime / 1e6,
+                    plainTime / 1e6 / queries, landmarkTime / 1e6 / queries, checksum);
+        } catch (IOException e) {
+            throw new IllegalStateException("DIMACS benchmark failed.", e);
+        }
+    }
+
+    /**
+     * Measures loading one network from a plain file, from one gzipped file,
+     * and from gzipped shards loaded in parallel.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     * @param shards the number of shards
+     */
+    static void benchmarkShardedLoading(int towns, int roads, int shards) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        try {
+            File dir = Files.createTempDirectory("shard-benchmark").toFile();
+            File plain = File.createTempFile("roads", ".txt");
+            File gzipped = File.createTempFile("roads", ".txt.gz");
+            try {
+                BufferedWriter[] outs = new BufferedWriter[shards + 2];
+                for (int s = 0; s < shards; s++) {
+                    outs[s] = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+                            new FileOutputStream(new File(dir, "roads-" + s + ".txt.gz"))), Charset.defaultCharset()));
+                }
+                outs[shards] = Files.newBufferedWriter(plain.toPath(), Charset.defaultCharset());
+                outs[shards + 1] = new BufferedWriter(new OutputStreamWriter(
+                        new GZIPOutputStream(new FileOutputStream(gzipped)), Charset.defaultCharset()));
+                for (int e = 0; e < network.edgeCount(); e++) {
+                    String line = "Road_" + (e % 1000) + "," + network.edgeWeight(e) + ";Town_"
+                            + network.edgeSource(e) + ";Town_" + network.edgeTarget(e) + "\n";
+                    outs[e % shards].write(line);
+                    outs[shards].write(line);
+                    outs[shards + 1].write(line);
+                }
+                for (BufferedWriter out : outs) {
+                    out.close();
+                }
+                long plainBest = Long.MAX_VALUE, gzipBest = Long.MAX_VALUE, shardBest = Long.MAX_VALUE;
+                for (int run = 0; run < RUNS; run++) {
+                    long start = System.nanoTime();
+                    new TownGraphManager().populateTownGraph(plain);
+                    plainBest = Math.min(plainBest, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    new TownGraphManager().populateTownGraph(gzipped);
+                    gzipBest = Math.min(gzipBest, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    new TownGraphManager().populateTownGraph(dir);
+                    shardBest = Math.min(shardBest, System.nanoTime() - start);
+                }
+                System.out.printf("shards   %,d roads (%.1f MB, %.1f MB gzipped): plain %.0f ms, gzip %.0f ms,"
+                        + " %d gzip shards on %d cores %.0f ms%n",
+                        network.edgeCount(), plain.length() / 1e6, gzipped.length() / 1e6, plainBest / 1e6,
+                        gzipBest / 1e6, shards, Runtime.getRuntime().availableProcessors(), shardBest / 1e6);
+            } finally {
+                File[] files = dir.listFiles();
+                for (File file : files == null ? new File[0] : files) {
+                    file.delete();
+                }
+                dir.delete();
+                plain.delete();
+                gzipped.delete();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Sharded loading benchmark failed.", e);
+        }
+    }
+
+    /**
+     * Compares a network held by one worker process with the same network
+     * split across several, by heap in use in each worker and by query
+     * latency through the router against a TownGraphManager in this process.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     * @param shards the number of worker processes to split across
+     */
+    static void benchmarkCluster(int towns, int roads, int shards) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        TownGraphManager graph = new TownGraphManager();
+        ArrayList<String> names = new ArrayList<>();
+        for (int v = 0; v < towns; v++) {
+            names.add("Town_" + v);
+        }
+        ArrayList<RoadRecord> records = new ArrayList<>();
+        for (int e = 0; e < network.edgeCount(); e++) {
+            records.add(new RoadRecord("Town_" + network.edgeSource(e), "Town_" + network.edgeTarget(e),
+                    network.edgeWeight(e), "Road_" + e));
+        }
+        graph.addTowns(names);
+        graph.addRoads(records);
+        names = null;
+        records = null;
+
+        int queries = 100;
+        int[] pairs = new Random(7).ints(2 * queries, 0, towns).toArray();
+        long localTime = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                graph.getDistance("Town_" + pairs[2 * q], "Town_" + pairs[2 * q + 1]);
+            }
+            localTime = Math.min(localTime, System.nanoTime() - start);
+        }
+        System.out.printf("cluster  %,d towns %,d roads: in process %.2f ms/query%n",
+                towns, network.edgeCount(), localTime / 1e6 / queries);
+
+        for (int k : new int[] {1, shards}) {
+            ArrayList<ShardClient> workers = new ArrayList<>();
+            try {
+                for (int s = 0; s < k; s++) {
+                    workers.add(ShardClient.launch("-Xmx1g"));
+                }
+                long start = System.nanoTime();
+                try (ShardedRouter router = ShardedRouter.build(graph, workers)) {
+                    long built = System.nanoTime() - start;
+                    long[] heap = router.heapUsed();
+                    long distanceTime = Long.MAX_VALUE, pathTime = Long.MAX_VALUE;
+                    for (int run = 0; run < RUNS; run++) {
+                        start = System.nanoTime();
+                        for (int q = 0; q < queries; q++) {
+                            String from = "Town_" + pairs[2 * q], to = "Town_" + pairs[2 * q + 1];
+                            long distance = router.getDistance(from, to);
+                            if (run == 0 && distance != graph.getDistance(from, to)) {
+                                throw new IllegalStateException("Sharded distance " + distance + " for " + from + " to " + to);
+                            }
+                        }
+                        distanceTime = Math.min(distanceTime, System.nanoTime() - start);
+                        start = System.nanoTime();
+                        for (int q = 0; q < queries; q++) {
+                            router.getPath("Town_" + pairs[2 * q], "Town_" + pairs[2 * q + 1]);
+                        }
+                        pathTime = Math.min(pathTime, System.nanoTime() - start);
+                    }
+                    long total = 0, largest = 0;
+                    for (long used : heap) {
+                        total += used;
+                        largest = Math.max(largest, used);
+                    }
+                    System.out.printf("cluster  %d worker(s), built in %.0f ms: heap %,d KB largest, %,d KB total;"
+                            + " %,d boundary towns, %,d crossing roads; %.2f ms/query (%.2f ms with path)%n",
+                            k, built / 1e6, largest / 1024, total / 1024, router.getBoundaryCount(),
+                            router.getCrossingRoadCount(), distanceTime / 1e6 / queries, pathTime / 1e6 / queries);
+                }
+            } catch (IOException e) {
+                for (ShardClient worker : workers) {
+                    try {
+                        worker.close();
+                    } catch (IOException closing) {
+                        //already failing
+                    }
+                }
+                throw new IllegalStateException("Cluster benchmark failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Reads a road file the way the loader did before the byte-level parser,
+     * adding the roads to a graph a batch at a time if one is given.
+     *
+     * @return a checksum of the fields read
+     */
+    private static long readRoads(File file, TownGraphManager graph) throws IOException {
+        long checksum = 0;
+        int lines = 0;
+        ArrayList<String> townBatch = new ArrayList<>();
+        ArrayList<RoadRecord> roadBatch = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(file.toPath(), Charset.defaultCharset())) {
+            String oneLine;
+            while ((oneLine = br.readLine()) != null) {
+                if (graph != null && ++lines % 4096 == 0) {
+                    graph.addTowns(townBatch);
+                    graph.addRoads(roadBatch);
+                    townBatch.clear();
+                    roadBatch.clear();
+                }
+                String[] frags = oneLine.split(";");
+                String[] road = frags[0].split(",");
+                String name = road[0].trim(), town1 = frags[1].trim(), town2 = frags[2].trim();
+                int weight = Integer.parseInt(road[1].trim());
+                checksum += weight + name.length() + town1.length() + town2.length();
+                if (graph != null) {
+                    townBatch.add(town1);
+                    townBatch.add(town2);
+                    roadBatch.add(new RoadRecord(town1, town2, weight, name));
+                }
+            }
+        }
+        if (graph != null) {
+            graph.addTowns(townBatch);
+            graph.addRoads(roadBatch);
+        }
+        return checksum;
+    }
+
+    /**
+     * Compares Kruskal and Prim on the same random network.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkSpanningTree(int towns, int roads) {
+        CompactGraph graph = randomNetwork(towns, roads, 42);
+        long kruskalWeight = 0, primWeight = 0;
+        long kruskalBest = Long.MAX_VALUE, primBest = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            kruskalWeight = MinimumSpanningTree.totalWeight(graph, MinimumSpanningTree.kruskal(graph));
+            kruskalBest = Math.min(kruskalBest, System.nanoTime() - start);
+            start = System.nanoTime();
+            primWeight = MinimumSpanningTree.totalWeight(graph, MinimumSpanningTree.prim(graph));
+            primBest = Math.min(primBest, System.nanoTime() - start);
+        }
+        System.out.printf("mst      %,d towns %,d roads: kruskal %.1f ms, prim %.1f ms (weights %d / %d)%n",
+                towns, roads, kruskalBest / 1e6, primBest / 1e6, kruskalWeight, primWeight);
+    }
+
+    /**
+     * Measures hub-label build time, label size and distance query latency.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkHubLabels(int towns, int roads) {
+        CompactGraph graph = randomNetwork(towns, roads, 42);
+        long start = System.nanoTime();
+        HubLabelIndex index = HubLabelIndex.build(graph);
+        long build = System.nanoTime() - start;
+
+        int queries = 1_000_000;
+        int[] pairs = new Random(7).ints(2 * queries, 0, towns).toArray();
+        long checksum = 0, best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                checksum += index.distance(pairs[2 * q], pairs[2 * q + 1]);
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("hubs     %,d towns %,d roads: build %.1f ms, %.1f entries/town, query %.0f ns (checksum %d)%n",
+                towns, roads, build / 1e6, index.labelEntries() / (double) towns, best / (double) queries, checksum);
+    }
+
+    /**
+     * Measures latency and bytes allocated per query for Graph.distance and
+     * Graph.dijkstraShortestPath once their search state is warmed up.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkSearchAllocation(int towns, int roads) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        Graph graph = toGraph(network);
+        Town[] byIndex = new Town[towns];
+        for (int v = 0; v < towns; v++) {
+            byIndex[v] = graph.getTown("Town_" + v);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int queries = 200;
+        int[] pairs = new Random(7).ints(2 * queries, 0, towns).toArray();
+        long checksum = 0;
+        for (int q = 0; q < queries; q++) {
+            checksum += graph.distance(byIndex[pairs[2 * q]], byIndex[pairs[2 * q + 1]]);
+            graph.dijkstraShortestPath(byIndex[pairs[2 * q]]);
+        }
+
+        long bytes = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            checksum += graph.distance(byIndex[pairs[2 * q]], byIndex[pairs[2 * q + 1]]);
+        }
+        long distanceTime = System.nanoTime() - start;
+        long distanceBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+        bytes = threads.getThreadAllocatedBytes(thread);
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            graph.dijkstraShortestPath(byIndex[pairs[2 * q]]);
+        }
+        long dijkstraTime = System.nanoTime() - start;
+        long dijkstraBytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+        System.out.printf("search   %,d towns: distance %.2f ms %d B/op, full dijkstra %.2f ms %d B/op (checksum %d)%n",
+                towns, distanceTime / 1e6 / queries, distanceBytes / queries,
+                dijkstraTime / 1e6 / queries, dijkstraBytes / queries, checksum);
+    }
+
+    /**
+     * Compares retained heap and full collection pause time with the network
+     * held in a Graph and in an OffHeapGraph.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkFootprint(int towns, int roads) {
+        CompactGraph network = randomNetwork(towns, roads, 42);
+        long baseline = usedHeapAfterGc();
+
+        Graph graph = toGraph(network);
+        long graphHeap = usedHeapAfterGc() - baseline;
+        long graphPause = fullGcMillis();
+        System.out.printf("offheap  %,d towns %,d roads: Graph        heap %,d KB, %d B/road, full GC %d ms (%d roads)%n",
+                towns, roads, graphHeap / 1024, graphHeap / Math.max(1, graph.edgeSet().size()), graphPause,
+                graph.edgeSet().size());
+        System.out.print(graph.memoryReport());
+        graph = null;
+
+        baseline = usedHeapAfterGc();
+        OffHeapGraph offHeap = new OffHeapGraph();
+        Town[] byIndex = new Town[towns];
+        for (int v = 0; v < towns; v++) {
+            byIndex[v] = new Town("Town_" + v);
+            offHeap.addVertex(byIndex[v]);
+        }
+        for (int e = 0; e < network.edgeCount(); e++) {
+            offHeap.addEdge(byIndex[network.edgeSource(e)], byIndex[network.edgeTarget(e)], network.edgeWeight(e), "Road_" + e);
+        }
+        byIndex = null;
+        long offHeapUsed = usedHeapAfterGc() - baseline;
+        long offHeapPause = fullGcMillis();
+        System.out.printf("offheap  %,d towns %,d roads: OffHeapGraph heap %,d KB, off-heap %,d KB, full GC %d ms (%d roads)%n",
+                towns, roads, offHeapUsed / 1024, offHeap.offHeapBytes() / 1024, offHeapPause, offHeap.roadCount());
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long fullGcMillis() {
+        long before = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            before += bean.getCollectionTime();
+        }
+        System.gc();
+        long after = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            after += bean.getCollectionTime();
+        }
+        return after - before;
+    }
+
+    /**
+     * Loads a compact network into a Graph, naming towns Town_i and roads Road_e.
+     *
+     * @param network the network
+     * @return the graph
+     */
+    static Graph toGraph(CompactGraph network) {
+        Graph graph = new Graph();
+        Town[] towns = new Town[network.vertexCount()];
+        for (int v = 0; v < towns.length; v++) {
+            towns[v] = new Town("Town_" + v);
+            graph.addVertex(towns[v]);
+        }
+        for (int e = 0; e < network.edgeCount(); e++) {
+            graph.addEdge(towns[network.edgeSource(e)], towns[network.edgeTarget(e)], network.edgeWeight(e), "Road_" + e);
+        }
+        return graph;
+    }
+
+    /**
+     * Compares the towns settled by Dijkstra and by ALT with each landmark
+     * selection strategy over the same random queries.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkLandmarks(int towns, int roads) {
+        CompactGraph graph = randomNetwork(towns, roads, 42);
+        int queries = 100;
+        int[] pairs = new Random(7).ints(2 * queries, 0, towns).toArray();
+        for (LandmarkIndex.Selection selection : LandmarkIndex.Selection.values()) {
+            long start = System.nanoTime();
+            LandmarkIndex index = LandmarkIndex.build(graph, 16, selection, 0);
+            long build = System.nanoTime() - start;
+            long dijkstraSettled = 0, altSettled = 0, dijkstraTime = 0, altTime = 0;
+            for (int q = 0; q < queries; q++) {
+                start = System.nanoTime();
+                dijkstraSettled += index.search(pairs[2 * q], pairs[2 * q + 1], false).getSettled();
+                dijkstraTime += System.nanoTime() - start;
+                start = System.nanoTime();
+                altSettled += index.search(pairs[2 * q], pairs[2 * q + 1], true).getSettled();
+                altTime += System.nanoTime() - start;
+            }
+            System.out.printf("alt      %,d towns %-8s build %.1f ms: settled %,d -> %,d (%.1fx), %.2f -> %.2f ms/query%n",
+                    towns, selection, build / 1e6, dijkstraSettled / queries, altSettled / queries,
+                    dijkstraSettled / (double) altSettled, dijkstraTime / 1e6 / queries, altTime / 1e6 / queries);
+        }
+    }
+
+    /**
+     * Measures partitioning, customization and query latency of the
+     * multi-level overlay against Dijkstra, and re-customization after a
+     * batch of weight changes such as a traffic update.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads
+     */
+    static void benchmarkMultiLevelOverlay(int towns, int roads) {
+        CompactGraph graph = randomNetwork(towns, roads, 42);
+        long start = System.nanoTime();
+        GraphPartition partition = GraphPartition.build(graph, 128, 2048, 32768);
+        long partitioned = System.nanoTime() - start;
+        start = System.nanoTime();
+        MultiLevelOverlay overlay = MultiLevelOverlay.build(graph, partition);
+        long customized = System.nanoTime() - start;
+        System.out.printf("crp      %,d towns %,d roads: partition %.0f ms, customize %.0f ms, "
+                + "%,d / %,d / %,d cells, %,d cut roads, %.1f MB of boundary distances%n",
+                towns, roads, partitioned / 1e6, customized / 1e6, partition.cellCount(0), partition.cellCount(1),
+                partition.cellCount(2), partition.cutEdges(graph, 0), overlay.cliqueEntries() * 4 / 1e6);
+
+        int queries = 100;
+        int[] pairs = new Random(7).ints(2 * queries, 0, towns).toArray();
+        LandmarkIndex dijkstra = LandmarkIndex.build(graph, 1, LandmarkIndex.Selection.RANDOM, 0);
+        long dijkstraSettled = 0, crpSettled = 0, dijkstraTime = 0, crpTime = 0, pathTime = 0;
+        for (int q = 0; q < queries; q++) {
+            int s = pairs[2 * q], t = pairs[2 * q + 1];
+            start = System.nanoTime();
+            LandmarkIndex.Route expected = dijkstra.search(s, t, false);
+            dijkstraTime += System.nanoTime() - start;
+            dijkstraSettled += expected.getSettled();
+            start = System.nanoTime();
+            long distance = overlay.distance(s, t);
+            crpTime += System.nanoTime() - start;
+            start = System.nanoTime();
+            LandmarkIndex.Route route = overlay.route(s, t);
+            pathTime += System.nanoTime() - start;
+            crpSettled += route.getSettled();
+            if (distance != expected.getDistance() || route.getDistance() != expected.getDistance()) {
+                throw new IllegalStateException("Overlay distance " + distance + " != " + expected.getDistance());
+            }
+        }
+        System.out.printf("crp      query: settled %,d -> %,d, %.2f -> %.2f ms/query (%.2f ms with path)%n",
+                dijkstraSettled / queries, crpSettled / queries, dijkstraTime / 1e6 / queries,
+                crpTime / 1e6 / queries, pathTime / 1e6 / queries);
+
+        Random random = new Random(11);
+        for (int changes : new int[] {1, 100, 10_000}) {
+            long best = Long.MAX_VALUE;
+            int cells = 0;
+            for (int run = 0; run < RUNS; run++) {
+                for (int i = 0; i < changes; i++) {
+                    int e = random.nextInt(graph.edgeCount());
+                    overlay.setWeight(e, graph.edgeWeight(e) + random.nextInt(100));
+                }
+                start = System.nanoTime();
+                cells = overlay.customize();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("crp      re-customize after %,d weight changes: %,d cells in %.1f ms%n",
+                    changes, cells, best / 1e6);
+        }
+    }
+
+    /**
+     * Builds a connected, road-like random network. Towns sit on a square
+     * grid; a spanning set of grid roads keeps it connected and the remaining
+     * roads join towns at most two cells apart.
+     *
+     * @param towns the number of towns
+     * @param roads the number of roads, at least towns - 1
+     * @param seed the random seed
+     * @return the network
+     */
+    static CompactGraph randomNetwork(int towns, int roads, long seed) {
+        Random random = new Random(seed);
+        int side = (int) Math.ceil(Math.sqrt(towns));
+        roads = Math.max(roads, towns - 1);
+        int[] source = new int[roads];
+        int[] target = new int[roads];
+        int[] weight = new int[roads];
+        for (int e = 0; e < roads; e++) {
+            int a, b;
+            if (e < towns - 1) {
+                a = e + 1;
+                b = a % side != 0 ? a - 1 : a - side;
+            } else {
+                do {
+                    a = random.nextInt(towns);
+                    int row = a / side + random.nextInt(5) - 2;
+                    int column = a % side + random.nextInt(5) - 2;
+                    b = row * side + column;
+                } while (b < 0 || b >= towns || b == a || Math.abs(b % side - a % side) > 2);
+            }
+            source[e] = a;
+            target[e] = b;
+            weight[e] = 1 + random.nextInt(100);
+        }
+        return new CompactGraph(towns, source, target, weight);
+    }
+}
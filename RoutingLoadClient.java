@@ -0,0 +1,251 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load-test client for {@link RoutingServer}. Each client thread keeps one
+ * connection open and sends /path queries between random towns on it,
+ * optionally pipelined several deep, then the latencies of all requests are
+ * merged to report p50, p99 and throughput.
+ *
+ * Usage: java RoutingLoadClient [towns | url] [threads] [seconds] [depth]
+ *
+ * With a town count, a random network of that size is served in-process on
+ * localhost; with a url such as http://localhost:8080 an existing server is
+ * used, and its towns are found through /towns.
+ *
+ * @author Liam Ghershony
+ */
+public class RoutingLoadClient {
+
+    private static final int WARM_UP_SECONDS = 2;
+
+    /**
+     * Runs the load test.
+     *
+     * @param args the town count or server url, client threads, seconds and pipeline depth
+     * @throws Exception if the server cannot be reached or fails
+     */
+    public static void main(String[] args) throws Exception {
+        String target = args.length > 0 ? args[0] : "100000";
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        RoutingServer.useNoDelay();
+        RoutingServer server = null;
+        String host;
+        int port;
+        List<String> towns;
+        if (target.startsWith("http")) {
+            URI uri = URI.create(target);
+            host = uri.getHost();
+            port = uri.getPort() < 0 ? 80 : uri.getPort();
+            towns = fetchTowns(host, port);
+        } else {
+            int count = Integer.parseInt(target);
+            TownGraphManager graph = new TownGraphManager();
+            CompactGraph network = RoutingBenchmark.randomNetwork(count, 3 * count, 42);
+            towns = new ArrayList<>(count);
+            for (int v = 0; v < count; v++) {
+                towns.add("Town_" + v);
+            }
+            ArrayList<RoadRecord> roads = new ArrayList<>(network.edgeCount());
+            for (int e = 0; e < network.edgeCount(); e++) {
+                roads.add(new RoadRecord(towns.get(network.edgeSource(e)), towns.get(network.edgeTarget(e)),
+                        network.edgeWeight(e), "Road_" + (e % 1000)));
+            }
+            graph.addTowns(towns);
+            graph.addRoads(roads);
+            graph.buildLandmarks(RoutingServer.LANDMARKS, LandmarkIndex.Selection.FARTHEST);
+            if (!graph.hasOneWayRoads()) {
+                graph.buildDistanceIndex();
+            }
+            server = new RoutingServer(graph, new InetSocketAddress("localhost", 0),
+                    Runtime.getRuntime().availableProcessors(), 1024);
+            server.start();
+            host = "localhost";
+            port = server.getPort();
+        }
+        try {
+            run(host, port, towns, threads, WARM_UP_SECONDS, depth);
+            long[] latencies = run(host, port, towns, threads, seconds, depth);
+            Arrays.sort(latencies);
+            System.out.printf("%,d requests, %d threads, depth %d: %,.0f req/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    latencies.length, threads, depth, latencies.length / (double) seconds,
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6);
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+        }
+    }
+
+    /**
+     * Runs the client threads for a while and collects every request's
+     * latency in nanoseconds.
+     */
+    private static long[] run(String host, int port, List<String> towns, int threads, int seconds, int depth)
+            throws Exception {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<long[]>> clients = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                clients.add(pool.submit(() -> client(host, port, towns, deadline, depth, new Random(seed))));
+            }
+            long[] all = new long[0];
+            for (Future<long[]> client : clients) {
+                long[] latencies = client.get();
+                int start = all.length;
+                all = Arrays.copyOf(all, start + latencies.length);
+                System.arraycopy(latencies, 0, all, start, latencies.length);
+            }
+            return all;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Sends requests on one connection until the deadline, keeping up to
+     * depth of them in flight.
+     */
+    private static long[] client(String host, int port, List<String> towns, long deadline, int depth, Random random)
+            throws IOException {
+        long[] latencies = new long[1 << 12];
+        int count = 0;
+        long[] sent = new long[depth];
+        int head = 0, tail = 0;
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            while (true) {
+                boolean open = System.nanoTime() < deadline;
+                while (open && head - tail < depth) {
+                    String from = towns.get(random.nextInt(towns.size()));
+                    String to = towns.get(random.nextInt(towns.size()));
+                    byte[] request = ("GET /path?from=" + URLEncoder.encode(from, "UTF-8") + "&to="
+                            + URLEncoder.encode(to, "UTF-8") + " HTTP/1.1\r\nHost: " + host + "\r\n\r\n")
+                            .getBytes(StandardCharsets.US_ASCII);
+                    out.write(request);
+                    sent[head++ % depth] = System.nanoTime();
+                }
+                out.flush();
+                if (head == tail) {
+                    break;
+                }
+                int status = readResponse(in, null);
+                if (status != 200) {
+                    throw new IOException("The server answered " + status + ".");
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, 2 * count);
+                }
+                latencies[count++] = System.nanoTime() - sent[tail++ % depth];
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * Reads one HTTP response with a Content-Length body.
+     *
+     * @param body where to copy the body, or null to discard it
+     * @return the status code
+     */
+    private static int readResponse(InputStream in, ByteArrayOutputStream body) throws IOException {
+        String statusLine = readLine(in);
+        int status = Integer.parseInt(statusLine.split(" ")[1]);
+        long length = 0;
+        String header;
+        while (!(header = readLine(in)).isEmpty()) {
+            int colon = header.indexOf(':');
+            if (colon > 0 && header.substring(0, colon).trim().equalsIgnoreCase("Content-Length")) {
+                length = Long.parseLong(header.substring(colon + 1).trim());
+            }
+        }
+        for (long i = 0; i < length; i++) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("The response body was cut short.");
+            }
+            if (body != null) {
+                body.write(b);
+            }
+        }
+        return status;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new EOFException("The connection was closed.");
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    /**
+     * Asks a running server for up to a thousand town names to route between.
+     */
+    private static List<String> fetchTowns(String host, int port) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(("GET /towns?q=&limit=1000 HTTP/1.1\r\nHost: " + host + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            if (readResponse(new BufferedInputStream(socket.getInputStream()), body) != 200) {
+                throw new IOException("Could not list the server's towns.");
+            }
+            //the body is {"towns":["a","b",...]}; names with quotes or escapes are skipped
+            String json = body.toString("UTF-8");
+            ArrayList<String> towns = new ArrayList<>();
+            int at = json.indexOf('[');
+            while ((at = json.indexOf('"', at + 1)) >= 0) {
+                int end = json.indexOf('"', at + 1);
+                String name = json.substring(at + 1, end);
+                if (!name.contains("\\")) {
+                    towns.add(name);
+                }
+                at = end;
+            }
+            if (towns.size() < 2) {
+                throw new IOException("The server has too few towns to route between.");
+            }
+            return towns;
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(fraction * sorted.length) - 1)];
+    }
+}
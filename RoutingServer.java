@@ -0,0 +1,452 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A small HTTP service answering route queries from a {@link TownGraphManager},
+ * built on the JDK's HttpServer. Connections are kept alive between requests,
+ * and requests run on a fixed pool of workers with a bounded queue; when the
+ * queue is full the accepting thread runs the request itself, which stops it
+ * accepting more until the backlog drains. Responses are JSON, built in a
+ * per-worker buffer that is reused from request to request.
+ *
+ * Headers and body go out as separate writes, so Nagle's algorithm holds the
+ * body back for the client's delayed ACK unless the JVM runs with
+ * -Dsun.net.httpserver.nodelay=true. The launchers in {@link #main(String[])}
+ * and {@link RoutingLoadClient} set it; an embedding application should pass
+ * the flag itself, since it applies to every HttpServer in the JVM.
+ *
+ * Endpoints, all GET:
+ * <ul>
+ * <li>/path?from=A&amp;to=B: the steps and distance of the shortest route</li>
+ * <li>/matrix?sources=A,B&amp;targets=C,D: the distance between every pair</li>
+ * <li>/towns?q=Ab&amp;limit=10: towns starting with or close to some text</li>
+ * </ul>
+ *
+ * @author Liam Ghershony
+ */
+public class RoutingServer {
+
+    //sources times targets above which a matrix request is refused
+    private static final int MAX_MATRIX_CELLS = 10_000;
+    private static final int MAX_TOWN_LIMIT = 1000;
+    static final int LANDMARKS = 16;
+
+    /**
+     * JSON text built into reusable char and byte arrays, so a response
+     * allocates nothing once the buffers have grown to fit.
+     */
+    static final class JsonBuffer {
+        private char[] chars = new char[4096];
+        private byte[] bytes = new byte[4096];
+        private int length;
+        private boolean comma;
+
+        JsonBuffer clear() {
+            length = 0;
+            comma = false;
+            return this;
+        }
+
+        JsonBuffer beginObject() {
+            separate();
+            append('{');
+            comma = false;
+            return this;
+        }
+
+        JsonBuffer endObject() {
+            append('}');
+            comma = true;
+            return this;
+        }
+
+        JsonBuffer beginArray() {
+            separate();
+            append('[');
+            comma = false;
+            return this;
+        }
+
+        JsonBuffer endArray() {
+            append(']');
+            comma = true;
+            return this;
+        }
+
+        JsonBuffer key(String key) {
+            value(key);
+            append(':');
+            comma = false;
+            return this;
+        }
+
+        JsonBuffer value(long value) {
+            separate();
+            if (value < 0) {
+                append('-');
+            }
+            //digits are produced last first, negated so Long.MIN_VALUE needs no special case
+            long rest = value < 0 ? value : -value;
+            int start = length;
+            do {
+                append((char) ('0' - rest % 10));
+                rest /= 10;
+            } while (rest != 0);
+            for (int i = start, j = length - 1; i < j; i++, j--) {
+                char c = chars[i];
+                chars[i] = chars[j];
+                chars[j] = c;
+            }
+            comma = true;
+            return this;
+        }
+
+        JsonBuffer value(String value) {
+            separate();
+            if (value == null) {
+                append('n');
+                append('u');
+                append('l');
+                append('l');
+                comma = true;
+                return this;
+            }
+            append('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    append('\\');
+                    append(c);
+                } else if (c < 0x20) {
+                    append('\\');
+                    append('u');
+                    append('0');
+                    append('0');
+                    append(Character.forDigit(c >> 4, 16));
+                    append(Character.forDigit(c & 15, 16));
+                } else {
+                    append(c);
+                }
+            }
+            append('"');
+            comma = true;
+            return this;
+        }
+
+        /**
+         * Encodes the text as UTF-8 into the byte buffer.
+         *
+         * @return the number of bytes, which are read with {@link #bytes()}
+         */
+        int encode() {
+            if (bytes.length < 3 * length) {
+                bytes = new byte[Math.max(3 * length, 2 * bytes.length)];
+            }
+            int size = 0;
+            for (int i = 0; i < length; i++) {
+                char c = chars[i];
+                if (c < 0x80) {
+                    bytes[size++] = (byte) c;
+                } else if (c < 0x800) {
+                    bytes[size++] = (byte) (0xC0 | c >> 6);
+                    bytes[size++] = (byte) (0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+                    int code = Character.toCodePoint(c, chars[++i]);
+                    bytes[size++] = (byte) (0xF0 | code >> 18);
+                    bytes[size++] = (byte) (0x80 | code >> 12 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | code >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | code & 0x3F);
+                } else {
+                    bytes[size++] = (byte) (0xE0 | c >> 12);
+                    bytes[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    bytes[size++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            return size;
+        }
+
+        byte[] bytes() {
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+
+        private void separate() {
+            if (comma) {
+                append(',');
+            }
+        }
+
+        private void append(char c) {
+            if (length == chars.length) {
+                chars = Arrays.copyOf(chars, 2 * length);
+            }
+            chars[length++] = c;
+        }
+    }
+
+    /**
+     * A request that cannot be answered, with the status to answer it with.
+     */
+    private static final class BadRequest extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        BadRequest(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private final TownGraphManager graph;
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final ThreadLocal<JsonBuffer> buffers = ThreadLocal.withInitial(JsonBuffer::new);
+
+    /**
+     * Creates a server for a graph. Call {@link #start()} to begin serving.
+     *
+     * @param graph the graph to answer queries from
+     * @param address the address to listen on, e.g. localhost with port 0 for any free port
+     * @param threads the number of worker threads
+     * @param queueSize the number of requests that may wait for a worker
+     * @throws IOException if the address cannot be bound
+     */
+    public RoutingServer(TownGraphManager graph, InetSocketAddress address, int threads, int queueSize)
+            throws IOException {
+        this.graph = graph;
+        AtomicInteger count = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), task -> {
+                    Thread worker = new Thread(task, "routing-worker-" + count.incrementAndGet());
+                    worker.setDaemon(true);
+                    return worker;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        server = HttpServer.create(address, 0);
+        server.setExecutor(workers);
+        server.createContext("/path", exchange -> respond(exchange, this::path));
+        server.createContext("/matrix", exchange -> respond(exchange, this::matrix));
+        server.createContext("/towns", exchange -> respond(exchange, this::towns));
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to a delay for the ones in progress
+     * and shuts the workers down.
+     *
+     * @param delaySeconds the longest time to wait for requests in progress
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        workers.shutdown();
+    }
+
+    /**
+     * Gets the port the server listens on, useful when it was bound to port 0.
+     *
+     * @return the port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Serves a road file on localhost.
+     *
+     * Usage: java RoutingServer file [port] [threads]
+     *
+     * @param args the road file, and optionally the port and worker count
+     * @throws IOException if the file cannot be read or the port bound
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java RoutingServer file [port] [threads]");
+            return;
+        }
+        useNoDelay();
+        TownGraphManager graph = new TownGraphManager();
+        graph.populateTownGraph(new File(args[0]));
+        //routes are answered with landmark search and distances from hub labels,
+        //which need two-way roads; otherwise distances fall back to searches
+        graph.buildLandmarks(LANDMARKS, LandmarkIndex.Selection.FARTHEST);
+        if (!graph.hasOneWayRoads()) {
+            graph.buildDistanceIndex();
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        RoutingServer server = new RoutingServer(graph, new InetSocketAddress("localhost", port), threads, 256);
+        server.start();
+        System.out.printf("Serving %,d towns on http://localhost:%d/%n", graph.getTownCount(), server.getPort());
+    }
+
+    /**
+     * Turns off Nagle's algorithm for the JDK's HttpServer, unless the flag
+     * was given on the command line. The setting is read once, when the first
+     * server in the JVM is created, so this must run before that.
+     */
+    static void useNoDelay() {
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private interface Endpoint {
+        void answer(Map<String, String> query, JsonBuffer json) throws BadRequest;
+    }
+
+    private void respond(HttpExchange exchange, Endpoint endpoint) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            //drain any body so the connection can be reused
+            while (body.read() >= 0) {
+                continue;
+            }
+        }
+        JsonBuffer json = buffers.get().clear();
+        int status = 200;
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                throw new BadRequest(405, "Only GET is supported.");
+            }
+            endpoint.answer(parseQuery(exchange.getRequestURI().getRawQuery()), json);
+        } catch (BadRequest e) {
+            status = e.status;
+            json.clear().beginObject().key("error").value(e.getMessage()).endObject();
+        } catch (RuntimeException e) {
+            status = 500;
+            json.clear().beginObject().key("error").value(String.valueOf(e)).endObject();
+        }
+        int size = json.encode();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, size);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json.bytes(), 0, size);
+        }
+    }
+
+    private void path(Map<String, String> query, JsonBuffer json) throws BadRequest {
+        String from = knownTown(query, "from");
+        String to = knownTown(query, "to");
+        //one search for both, so the steps and distance always agree
+        LandmarkIndex.Route route = graph.getRoute(from, to);
+        json.beginObject().key("from").value(from).key("to").value(to).key("distance").value(route.getDistance());
+        json.key("steps").beginArray();
+        for (String step : route.getSteps()) {
+            json.value(step);
+        }
+        json.endArray().endObject();
+    }
+
+    private void matrix(Map<String, String> query, JsonBuffer json) throws BadRequest {
+        List<String> sources = townList(query, "sources");
+        List<String> targets = query.containsKey("targets") ? townList(query, "targets") : sources;
+        if ((long) sources.size() * targets.size() > MAX_MATRIX_CELLS) {
+            throw new BadRequest(400, "At most " + MAX_MATRIX_CELLS + " source and target pairs are allowed.");
+        }
+        long[][] distances = graph.getDistanceMatrix(sources, targets);
+        json.beginObject().key("sources").beginArray();
+        for (String source : sources) {
+            json.value(source);
+        }
+        json.endArray().key("targets").beginArray();
+        for (String target : targets) {
+            json.value(target);
+        }
+        json.endArray().key("distances").beginArray();
+        for (long[] row : distances) {
+            json.beginArray();
+            for (long distance : row) {
+                json.value(distance);
+            }
+            json.endArray();
+        }
+        json.endArray().endObject();
+    }
+
+    private void towns(Map<String, String> query, JsonBuffer json) throws BadRequest {
+        String text = query.getOrDefault("q", "");
+        int limit = 10;
+        if (query.containsKey("limit")) {
+            try {
+                limit = Integer.parseInt(query.get("limit"));
+            } catch (NumberFormatException e) {
+                throw new BadRequest(400, "The limit must be a number.");
+            }
+            if (limit < 0 || limit > MAX_TOWN_LIMIT) {
+                throw new BadRequest(400, "The limit must be between 0 and " + MAX_TOWN_LIMIT + ".");
+            }
+        }
+        json.beginObject().key("towns").beginArray();
+        for (String town : graph.suggestTowns(text, limit)) {
+            json.value(town);
+        }
+        json.endArray().endObject();
+    }
+
+    private String knownTown(Map<String, String> query, String parameter) throws BadRequest {
+        String name = query.get(parameter);
+        if (name == null) {
+            throw new BadRequest(400, "Missing parameter " + parameter + ".");
+        }
+        if (!graph.containsTown(name)) {
+            throw new BadRequest(404, "Unknown town " + name + ".");
+        }
+        return name;
+    }
+
+    private List<String> townList(Map<String, String> query, String parameter) throws BadRequest {
+        String names = query.get(parameter);
+        if (names == null || names.isEmpty()) {
+            throw new BadRequest(400, "Missing parameter " + parameter + ".");
+        }
+        List<String> towns = Arrays.asList(names.split(","));
+        for (String town : towns) {
+            if (!graph.containsTown(town)) {
+                throw new BadRequest(404, "Unknown town " + town + ".");
+            }
+        }
+        return towns;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws BadRequest {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        try {
+            for (String pair : rawQuery.split("&")) {
+                int equals = pair.indexOf('=');
+                String key = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                query.put(key, value);
+            }
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new BadRequest(400, "Malformed query string.");
+        }
+        return query;
+    }
+}
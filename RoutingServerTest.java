@@ -0,0 +1,112 @@
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RoutingServerTest {
+    private TownGraphManager graph;
+    private RoutingServer server;
+    private String[] town;
+
+    @Before
+    public void setUp() throws Exception {
+        graph = new TownGraphManager();
+        town = new String[12];
+
+        for (int i = 1; i < 12; i++) {
+            town[i] = "Town_" + i;
+            graph.addTown(town[i]);
+        }
+
+        graph.addRoad(town[1], town[2], 2, "Road_1");
+        graph.addRoad(town[1], town[3], 4, "Road_2");
+        graph.addRoad(town[1], town[5], 6, "Road_3");
+        graph.addRoad(town[3], town[7], 1, "Road_4");
+        graph.addRoad(town[3], town[8], 2, "Road_5");
+        graph.addRoad(town[4], town[8], 3, "Road_6");
+        graph.addRoad(town[6], town[9], 3, "Road_7");
+        graph.addRoad(town[9], town[10], 4, "Road_8");
+        graph.addRoad(town[8], town[10], 2, "Road_9");
+        graph.addRoad(town[5], town[10], 5, "Road_10");
+        graph.addRoad(town[10], town[11], 3, "Road_11");
+        graph.addRoad(town[2], town[11], 6, "Road_12");
+        graph.addTown("Town \"12\"");
+
+        server = new RoutingServer(graph, new InetSocketAddress("localhost", 0), 2, 16);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        graph = null;
+    }
+
+    private String get(String path, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(
+                "http://localhost:" + server.getPort() + path).openConnection();
+        assertEquals(expectedStatus, connection.getResponseCode());
+        assertEquals("application/json; charset=utf-8", connection.getContentType());
+        try (InputStream in = expectedStatus == 200 ? connection.getInputStream() : connection.getErrorStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) >= 0) {
+                body.write(b);
+            }
+            return body.toString("UTF-8");
+        }
+    }
+
+    @Test
+    public void testPath() throws IOException {
+        assertEquals("{\"from\":\"Town_1\",\"to\":\"Town_11\",\"distance\":8,\"steps\":"
+                + "[\"Town_1 via Road_1 to Town_2 2 mi\",\"Town_2 via Road_12 to Town_11 6 mi\"]}",
+                get("/path?from=Town_1&to=Town_11", 200));
+        assertEquals("{\"from\":\"Town_1\",\"to\":\"Town \\\"12\\\"\",\"distance\":-1,\"steps\":[]}",
+                get("/path?from=Town_1&to=Town+%2212%22", 200));
+    }
+
+    @Test
+    public void testMatrix() throws IOException {
+        assertEquals("{\"sources\":[\"Town_1\",\"Town_4\"],\"targets\":[\"Town_11\",\"Town_1\"],"
+                + "\"distances\":[[8,0],[8,9]]}",
+                get("/matrix?sources=Town_1,Town_4&targets=Town_11,Town_1", 200));
+        graph.buildDistanceIndex();
+        assertEquals("{\"sources\":[\"Town_1\",\"Town_4\"],\"targets\":[\"Town_1\",\"Town_4\"],"
+                + "\"distances\":[[0,9],[9,0]]}",
+                get("/matrix?sources=Town_1,Town_4", 200));
+    }
+
+    @Test
+    public void testTowns() throws IOException {
+        assertEquals("{\"towns\":[\"Town_1\",\"Town_10\",\"Town_11\"]}", get("/towns?q=Town_1&limit=3", 200));
+        assertEquals("{\"towns\":[]}", get("/towns?q=Zzz", 200));
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        assertEquals("{\"error\":\"Unknown town Nowhere.\"}", get("/path?from=Town_1&to=Nowhere", 404));
+        assertEquals("{\"error\":\"Missing parameter to.\"}", get("/path?from=Town_1", 400));
+        assertEquals("{\"error\":\"The limit must be a number.\"}", get("/towns?q=T&limit=x", 400));
+    }
+
+    @Test
+    public void testJsonNumbers() {
+        RoutingServer.JsonBuffer json = new RoutingServer.JsonBuffer();
+        json.beginArray();
+        for (long value : Arrays.asList(0L, 7L, -42L, 1234567890123L, Long.MIN_VALUE)) {
+            json.value(value);
+        }
+        json.endArray();
+        assertEquals("[0,7,-42,1234567890123,-9223372036854775808]", json.toString());
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Reusable state for a shortest path search over town ids: tentative
+ * distances, the road each town was reached by, and the open queue. Entries
+ * are stamped with the generation of the search that wrote them, so starting a
+ * new search is O(1) instead of refilling the arrays, and a search on a
+ * warmed-up state allocates nothing.
+ *
+ * @author Liam Ghershony
+ */
+public class SearchState {
+
+    private int[] dist = new int[0];
+    private int[] stamp = new int[0];
+    private int[] via = new int[0];
+    private IndexedMinHeap queue = new IndexedMinHeap(0);
+    private int generation;
+
+    /**
+     * Stops a search whose thread has been interrupted, e.g. a route the user
+     * no longer wants. The flag is read once every 1024 settled towns, so a
+     * search costs next to nothing extra; it is left set for the caller.
+     *
+     * @param settled the number of towns the search has settled so far
+     * @throws CancellationException if the current thread is interrupted
+     */
+    static void checkInterrupted(int settled) {
+        if ((settled & 1023) == 0 && Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Search interrupted.");
+        }
+    }
+
+    /**
+     * Starts a new search over ids below a bound, forgetting the previous one.
+     *
+     * @param bound one more than the largest id the search may visit
+     */
+    public void reset(int bound) {
+        if (bound > dist.length) {
+            int capacity = Math.max(bound, dist.length + (dist.length >> 1));
+            dist = Arrays.copyOf(dist, capacity);
+            stamp = Arrays.copyOf(stamp, capacity);
+            via = Arrays.copyOf(via, capacity);
+            queue.ensureCapacity(capacity);
+        }
+        queue.clear();
+        if (++generation == 0) {
+            Arrays.fill(stamp, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Gets the tentative distance of an id in the current search.
+     *
+     * @param id the id
+     * @return the distance, or Integer.MAX_VALUE if the id has not been reached
+     */
+    public int distance(int id) {
+        return id < stamp.length && stamp[id] == generation ? dist[id] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gets the id of the road an id was reached by in the current search.
+     *
+     * @param id the id
+     * @return the road id, or -1 for the source or an id that has not been reached
+     */
+    public int via(int id) {
+        return id < stamp.length && stamp[id] == generation ? via[id] : -1;
+    }
+
+    /**
+     * Records a shorter distance to an id and queues it.
+     *
+     * @param id the id
+     * @param distance the new distance
+     * @param road the id of the road it was reached by, or -1 for the source
+     */
+    public void reach(int id, int distance, int road) {
+        reach(id, distance, road, distance);
+    }
+
+    /**
+     * Records a shorter distance to an id and queues it by a key of its own,
+     * such as the distance plus a lower bound on the rest of the way in an
+     * A* search.
+     *
+     * @param id the id
+     * @param distance the new distance
+     * @param road the id of the road it was reached by, or -1 for the source
+     * @param key the key to order the queue by
+     */
+    public void reach(int id, int distance, int road, int key) {
+        stamp[id] = generation;
+        dist[id] = distance;
+        via[id] = road;
+        queue.offer(id, key);
+    }
+
+    /**
+     * Estimates the heap used by the arrays of this state.
+     *
+     * @return the size in bytes
+     */
+    public long footprint() {
+        return 6 * MemoryReport.array(dist.length, 4);
+    }
+
+    /**
+     * Checks if any id is still queued.
+     *
+     * @return true if the queue is empty
+     */
+    public boolean isQueueEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * Removes and returns the queued id with the smallest distance.
+     *
+     * @return the closest queued id
+     */
+    public int poll() {
+        return queue.poll();
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A shard served by a {@link ShardWorker} over a socket, usually in a worker
+ * process started with {@link #launch(String...)}. Requests on a client take
+ * turns on its one connection.
+ *
+ * @author Liam Ghershony
+ */
+public class ShardClient implements RoadShard {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Process process;
+
+    /**
+     * Connects to a worker that is already listening.
+     *
+     * @param address the worker's address
+     * @throws IOException if the worker cannot be reached
+     */
+    public ShardClient(InetSocketAddress address) throws IOException {
+        this(new Socket(address.getAddress(), address.getPort()), null);
+    }
+
+    private ShardClient(Socket socket, Process process) throws IOException {
+        this.socket = socket;
+        this.process = process;
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+    }
+
+    /**
+     * Starts a worker process on this machine, with this process's Java and
+     * class path, and connects to it. The worker's errors go to this
+     * process's standard error.
+     *
+     * @param jvmOptions options for the worker's JVM, e.g. -Xmx512m
+     * @return the client, which stops the worker when it is closed
+     * @throws IOException if the worker cannot be started or reached
+     */
+    public static ShardClient launch(String... jvmOptions) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(Arrays.asList(jvmOptions));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            BufferedReader lines = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+            String ready = lines.readLine();
+            if (ready == null || !ready.startsWith(ShardWorker.READY)) {
+                throw new IOException("Shard worker did not start: " + ready);
+            }
+            int port = Integer.parseInt(ready.substring(ShardWorker.READY.length()).trim());
+            return new ShardClient(new Socket(InetAddress.getLoopbackAddress(), port), process);
+        } catch (IOException | RuntimeException e) {
+            process.destroyForcibly();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized int addTowns(Collection<String> towns) throws IOException {
+        out.writeByte(ShardWorker.ADD_TOWNS);
+        writeNames(towns);
+        answer();
+        return in.readInt();
+    }
+
+    @Override
+    public synchronized int addRoads(Collection<RoadRecord> roads) throws IOException {
+        out.writeByte(ShardWorker.ADD_ROADS);
+        out.writeInt(roads.size());
+        for (RoadRecord road : roads) {
+            out.writeUTF(road.getTown1());
+            out.writeUTF(road.getTown2());
+            out.writeInt(road.getWeight());
+            out.writeUTF(road.getName());
+        }
+        answer();
+        return in.readInt();
+    }
+
+    @Override
+    public synchronized int[][] setBoundary(List<String> towns) throws IOException {
+        out.writeByte(ShardWorker.SET_BOUNDARY);
+        writeNames(towns);
+        answer();
+        int[][] matrix = new int[towns.size()][towns.size()];
+        for (int[] row : matrix) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = in.readInt();
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public synchronized long[] reach(String town, String other) throws IOException {
+        out.writeByte(ShardWorker.REACH);
+        out.writeUTF(town);
+        out.writeUTF(other);
+        answer();
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        long[] distances = new long[length];
+        for (int i = 0; i < length; i++) {
+            distances[i] = in.readLong();
+        }
+        return distances;
+    }
+
+    @Override
+    public synchronized ArrayList<String> getPath(String town1, String town2) throws IOException {
+        out.writeByte(ShardWorker.PATH);
+        out.writeUTF(town1);
+        out.writeUTF(town2);
+        answer();
+        int count = in.readInt();
+        ArrayList<String> steps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            steps.add(in.readUTF());
+        }
+        return steps;
+    }
+
+    @Override
+    public synchronized long heapUsed() throws IOException {
+        out.writeByte(ShardWorker.HEAP);
+        answer();
+        return in.readLong();
+    }
+
+    /**
+     * Asks the worker to quit and closes the connection. A worker process
+     * this client started is waited for briefly, then killed.
+     *
+     * @throws IOException if the connection cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.writeByte(ShardWorker.QUIT);
+            out.flush();
+        } catch (IOException e) {
+            //the worker is already gone
+        } finally {
+            socket.close();
+            if (process != null) {
+                try {
+                    if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void writeNames(Collection<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    /**
+     * Sends the request and reads the status of its answer.
+     */
+    private void answer() throws IOException {
+        out.flush();
+        int status = in.read();
+        if (status < 0) {
+            throw new IOException("Shard worker closed the connection.");
+        }
+        if (status != ShardWorker.OK) {
+            throw new IOException("Shard worker failed: " + in.readUTF());
+        }
+    }
+}
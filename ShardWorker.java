@@ -0,0 +1,232 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Holds one shard of a road network in a {@link TownGraphManager}. A worker
+ * can be used directly as the router's shard in the same process, or serve
+ * its shard over a socket to a {@link ShardClient}, normally as a process of
+ * its own started by {@link ShardClient#launch(String...)}.
+ *
+ * The socket protocol is binary, over Data streams: a request is an op code
+ * and its arguments, and the answer a status byte followed by the result,
+ * or by a message if the request failed. Requests on one connection are
+ * answered in order; connections are served side by side.
+ *
+ * Usage: java ShardWorker [port], which listens on the loopback address,
+ * on any free port by default, and prints the port once it is listening.
+ *
+ * @author Liam Ghershony
+ */
+public class ShardWorker implements RoadShard {
+
+    static final int QUIT = 0;
+    static final int ADD_TOWNS = 1;
+    static final int ADD_ROADS = 2;
+    static final int SET_BOUNDARY = 3;
+    static final int REACH = 4;
+    static final int PATH = 5;
+    static final int HEAP = 6;
+    static final int OK = 0;
+    static final int FAILED = 1;
+    //the line a worker process prints once it is listening, followed by its port
+    static final String READY = "Shard worker listening on port ";
+
+    private final TownGraphManager graph = new TownGraphManager();
+    private volatile List<String> boundary = Collections.emptyList();
+
+    @Override
+    public int addTowns(Collection<String> towns) {
+        return graph.addTowns(towns);
+    }
+
+    @Override
+    public int addRoads(Collection<RoadRecord> roads) {
+        return graph.addRoads(roads);
+    }
+
+    @Override
+    public int[][] setBoundary(List<String> towns) {
+        boundary = new ArrayList<>(towns);
+        long[][] distances = graph.getDistanceMatrix(towns, towns);
+        int[][] matrix = new int[distances.length][distances.length];
+        for (int i = 0; i < matrix.length; i++) {
+            for (int j = 0; j < matrix.length; j++) {
+                matrix[i][j] = (int) distances[i][j];
+            }
+        }
+        return matrix;
+    }
+
+    @Override
+    public long[] reach(String town, String other) {
+        if (!graph.containsTown(town)) {
+            return null;
+        }
+        List<String> targets = new ArrayList<>(boundary);
+        targets.add(other);
+        return graph.getDistanceMatrix(Collections.singletonList(town), targets)[0];
+    }
+
+    @Override
+    public ArrayList<String> getPath(String town1, String town2) {
+        return graph.getPath(town1, town2);
+    }
+
+    @Override
+    public long heapUsed() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Does nothing; a worker in the router's process holds no resources.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Serves the shard on a socket until a client sends {@link #QUIT}, then
+     * closes the socket. Each connection is served on a thread of its own.
+     *
+     * @param server the bound server socket
+     * @throws IOException if accepting a connection fails other than by the socket closing
+     */
+    public void serve(ServerSocket server) throws IOException {
+        try {
+            while (true) {
+                Socket socket = server.accept();
+                Thread connection = new Thread(() -> {
+                    try (Socket open = socket) {
+                        if (answer(open)) {
+                            server.close();
+                        }
+                    } catch (IOException e) {
+                        //the client went away; its connection is closed above
+                    }
+                }, "shard-connection");
+                connection.setDaemon(true);
+                connection.start();
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Answers the requests on one connection.
+     *
+     * @return true if the client asked the worker to quit
+     */
+    private boolean answer(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        for (int op; (op = in.read()) >= 0; ) {
+            if (op == QUIT) {
+                return true;
+            }
+            //arguments are read in full before any work, so a failure can still be answered in order
+            try {
+                switch (op) {
+                    case ADD_TOWNS: {
+                        List<String> towns = readNames(in);
+                        int added = addTowns(towns);
+                        out.writeByte(OK);
+                        out.writeInt(added);
+                        break;
+                    }
+                    case ADD_ROADS: {
+                        int count = in.readInt();
+                        ArrayList<RoadRecord> roads = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            roads.add(new RoadRecord(in.readUTF(), in.readUTF(), in.readInt(), in.readUTF()));
+                        }
+                        int added = addRoads(roads);
+                        out.writeByte(OK);
+                        out.writeInt(added);
+                        break;
+                    }
+                    case SET_BOUNDARY: {
+                        int[][] matrix = setBoundary(readNames(in));
+                        out.writeByte(OK);
+                        for (int[] row : matrix) {
+                            for (int distance : row) {
+                                out.writeInt(distance);
+                            }
+                        }
+                        break;
+                    }
+                    case REACH: {
+                        long[] distances = reach(in.readUTF(), in.readUTF());
+                        out.writeByte(OK);
+                        out.writeInt(distances == null ? -1 : distances.length);
+                        for (int i = 0; distances != null && i < distances.length; i++) {
+                            out.writeLong(distances[i]);
+                        }
+                        break;
+                    }
+                    case PATH: {
+                        ArrayList<String> steps = getPath(in.readUTF(), in.readUTF());
+                        out.writeByte(OK);
+                        out.writeInt(steps.size());
+                        for (String step : steps) {
+                            out.writeUTF(step);
+                        }
+                        break;
+                    }
+                    case HEAP:
+                        out.writeByte(OK);
+                        out.writeLong(heapUsed());
+                        break;
+                    default:
+                        throw new IOException("Unknown request " + op + ".");
+                }
+            } catch (RuntimeException e) {
+                String message = String.valueOf(e.getMessage());
+                out.writeByte(FAILED);
+                out.writeUTF(e.getClass().getSimpleName() + ": "
+                        + (message.length() > 1000 ? message.substring(0, 1000) : message));
+            }
+            out.flush();
+        }
+        return false;
+    }
+
+    private static List<String> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ArrayList<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            names.add(in.readUTF());
+        }
+        return names;
+    }
+
+    /**
+     * Starts an empty worker listening on the loopback address.
+     *
+     * @param args optionally the port, 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println(READY + server.getLocalPort());
+            System.out.flush();
+            new ShardWorker().serve(server);
+        }
+    }
+}
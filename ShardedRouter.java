@@ -0,0 +1,525 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Routes across a road network split into shards, each held by a
+ * {@link RoadShard} that may live in another process. The towns are
+ * partitioned with a {@link GraphPartition} and its cells packed into
+ * shards of about equal size, keeping neighbouring cells together so few
+ * roads cross between shards.
+ *
+ * The router keeps only the boundary towns, those with a road to another
+ * shard: the distances between the boundary towns of each shard, as the
+ * shard reports them, and the roads crossing between shards. A query asks
+ * every shard at once for the distances from its ends to the shard's
+ * boundary towns (shards not holding either end answer at once), then
+ * stitches the shortest route together over the boundary towns. A path is
+ * filled in with each shard's own path between the boundary towns it is
+ * routed through.
+ *
+ * @author Liam Ghershony
+ */
+public class ShardedRouter implements Closeable {
+
+    private static final int INFINITY = Integer.MAX_VALUE;
+
+    private final List<RoadShard> shards;
+    private final ExecutorService requests;
+    private final int[] boundaryStart;
+    private final String[] boundary;
+    private final int[] shardOf;
+    private final int[][] cliques;
+    private final int[] crossStart;
+    private final int[] crossTarget;
+    private final int[] crossWeight;
+    private final String[] crossName;
+
+    private ShardedRouter(List<RoadShard> shards, ExecutorService requests, int[] boundaryStart,
+            String[] boundary, int[][] cliques, int[] crossStart, int[] crossTarget, int[] crossWeight,
+            String[] crossName) {
+        this.shards = shards;
+        this.requests = requests;
+        this.boundaryStart = boundaryStart;
+        this.boundary = boundary;
+        this.cliques = cliques;
+        this.crossStart = crossStart;
+        this.crossTarget = crossTarget;
+        this.crossWeight = crossWeight;
+        this.crossName = crossName;
+        shardOf = new int[boundary.length];
+        for (int s = 0; s < shards.size(); s++) {
+            Arrays.fill(shardOf, boundaryStart[s], boundaryStart[s + 1], s);
+        }
+    }
+
+    /**
+     * Splits a graph across empty shards and builds the router over them.
+     * The graph is only read while the router is built.
+     *
+     * @param graph the graph to split
+     * @param shards the shards to fill, which the router closes when it is closed
+     * @return the router
+     * @throws IOException if a shard cannot be reached
+     * @throws IllegalArgumentException if there are no shards, or the graph has one-way roads
+     */
+    public static ShardedRouter build(TownGraphManager graph, List<? extends RoadShard> shards) throws IOException {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required.");
+        }
+        CompactGraph network = graph.snapshot();
+        if (network.isDirected()) {
+            //shards measure distances to their boundary one way only and reuse them for the other
+            throw new IllegalArgumentException("Sharding needs a graph without one-way roads.");
+        }
+        int n = network.vertexCount();
+        int k = shards.size();
+        int[] shardOfTown = assign(network, k);
+
+        List<List<String>> towns = new ArrayList<>();
+        List<List<RoadRecord>> roads = new ArrayList<>();
+        for (int s = 0; s < k; s++) {
+            towns.add(new ArrayList<>());
+            roads.add(new ArrayList<>());
+        }
+        for (int v = 0; v < n; v++) {
+            towns.get(shardOfTown[v]).add(network.town(v).getName());
+        }
+        //boundary towns are numbered shard by shard, in town order within a shard
+        int[] boundaryIndex = new int[n];
+        Arrays.fill(boundaryIndex, -1);
+        int[] boundaryStart = new int[k + 1];
+        int crossCount = 0;
+        for (int e = 0; e < network.edgeCount(); e++) {
+            int a = network.edgeSource(e);
+            int b = network.edgeTarget(e);
+            if (shardOfTown[a] == shardOfTown[b]) {
+                roads.get(shardOfTown[a]).add(new RoadRecord(network.town(a).getName(),
+                        network.town(b).getName(), network.edgeWeight(e), network.roadName(e)));
+            } else {
+                boundaryIndex[a] = 0;
+                boundaryIndex[b] = 0;
+                crossCount++;
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            if (boundaryIndex[v] == 0) {
+                boundaryStart[shardOfTown[v] + 1]++;
+            }
+        }
+        for (int s = 0; s < k; s++) {
+            boundaryStart[s + 1] += boundaryStart[s];
+        }
+        String[] boundary = new String[boundaryStart[k]];
+        int[] fill = Arrays.copyOf(boundaryStart, k);
+        for (int v = 0; v < n; v++) {
+            if (boundaryIndex[v] == 0) {
+                boundaryIndex[v] = fill[shardOfTown[v]]++;
+                boundary[boundaryIndex[v]] = network.town(v).getName();
+            }
+        }
+        int[] crossStart = new int[boundary.length + 1];
+        for (int e = 0; e < network.edgeCount(); e++) {
+            if (shardOfTown[network.edgeSource(e)] != shardOfTown[network.edgeTarget(e)]) {
+                crossStart[boundaryIndex[network.edgeSource(e)] + 1]++;
+                crossStart[boundaryIndex[network.edgeTarget(e)] + 1]++;
+            }
+        }
+        for (int i = 0; i < boundary.length; i++) {
+            crossStart[i + 1] += crossStart[i];
+        }
+        int[] crossTarget = new int[2 * crossCount];
+        int[] crossWeight = new int[2 * crossCount];
+        String[] crossName = new String[2 * crossCount];
+        fill = Arrays.copyOf(crossStart, boundary.length);
+        for (int e = 0; e < network.edgeCount(); e++) {
+            int a = boundaryIndex[network.edgeSource(e)];
+            int b = boundaryIndex[network.edgeTarget(e)];
+            if (shardOfTown[network.edgeSource(e)] != shardOfTown[network.edgeTarget(e)]) {
+                for (int end = 0; end < 2; end++) {
+                    int slot = fill[end == 0 ? a : b]++;
+                    crossTarget[slot] = end == 0 ? b : a;
+                    crossWeight[slot] = network.edgeWeight(e);
+                    crossName[slot] = network.roadName(e);
+                }
+            }
+        }
+
+        ExecutorService requests = Executors.newFixedThreadPool(Math.max(2, k), runnable -> {
+            Thread worker = new Thread(runnable, "shard-router");
+            worker.setDaemon(true);
+            return worker;
+        });
+        List<RoadShard> owned = new ArrayList<>(shards);
+        ArrayList<Callable<int[]>> loads = new ArrayList<>();
+        for (int s = 0; s < k; s++) {
+            RoadShard shard = owned.get(s);
+            List<String> shardTowns = towns.get(s);
+            List<RoadRecord> shardRoads = roads.get(s);
+            List<String> shardBoundary = Arrays.asList(boundary).subList(boundaryStart[s], boundaryStart[s + 1]);
+            loads.add(() -> {
+                shard.addTowns(shardTowns);
+                shard.addRoads(shardRoads);
+                int[][] matrix = shard.setBoundary(shardBoundary);
+                int[] clique = new int[matrix.length * matrix.length];
+                for (int i = 0; i < matrix.length; i++) {
+                    for (int j = 0; j < matrix.length; j++) {
+                        clique[i * matrix.length + j] = matrix[i][j] < 0 ? INFINITY : matrix[i][j];
+                    }
+                }
+                return clique;
+            });
+        }
+        try {
+            List<int[]> cliques = all(requests, loads);
+            return new ShardedRouter(owned, requests, boundaryStart, boundary, cliques.toArray(new int[0][]),
+                    crossStart, crossTarget, crossWeight, crossName);
+        } catch (IOException | RuntimeException | Error e) {
+            requests.shutdown();
+            throw e;
+        }
+    }
+
+    /**
+     * Assigns every town to a shard: the graph is partitioned into cells of
+     * about a quarter of a shard, and the cells are taken in breadth-first
+     * order over their roads and dealt out to the shards in runs of equal
+     * size.
+     */
+    private static int[] assign(CompactGraph network, int k) {
+        int n = network.vertexCount();
+        int[] shardOfTown = new int[n];
+        if (k == 1 || n == 0) {
+            return shardOfTown;
+        }
+        GraphPartition partition = GraphPartition.build(network, Math.max(1, n / (4 * k)));
+        int cells = partition.cellCount(0);
+        int[] cellSize = new int[cells];
+        int[] adjacentStart = new int[cells + 1];
+        for (int v = 0; v < n; v++) {
+            cellSize[partition.cell(0, v)]++;
+        }
+        for (int e = 0; e < network.edgeCount(); e++) {
+            int a = partition.cell(0, network.edgeSource(e));
+            int b = partition.cell(0, network.edgeTarget(e));
+            if (a != b) {
+                adjacentStart[a + 1]++;
+                adjacentStart[b + 1]++;
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            adjacentStart[c + 1] += adjacentStart[c];
+        }
+        int[] adjacent = new int[adjacentStart[cells]];
+        int[] fill = Arrays.copyOf(adjacentStart, cells);
+        for (int e = 0; e < network.edgeCount(); e++) {
+            int a = partition.cell(0, network.edgeSource(e));
+            int b = partition.cell(0, network.edgeTarget(e));
+            if (a != b) {
+                adjacent[fill[a]++] = b;
+                adjacent[fill[b]++] = a;
+            }
+        }
+        int[] shardOfCell = new int[cells];
+        Arrays.fill(shardOfCell, -1);
+        int[] queue = new int[cells];
+        long before = 0;
+        for (int root = 0; root < cells; root++) {
+            if (shardOfCell[root] >= 0) {
+                continue;
+            }
+            int head = 0, tail = 0;
+            queue[tail++] = root;
+            shardOfCell[root] = 0;
+            while (head < tail) {
+                int c = queue[head++];
+                //the shard holding the middle town of the cell, counting towns in the order dealt
+                shardOfCell[c] = (int) Math.min(k - 1, (2 * before + cellSize[c]) * k / (2L * n));
+                before += cellSize[c];
+                for (int i = adjacentStart[c]; i < adjacentStart[c + 1]; i++) {
+                    if (shardOfCell[adjacent[i]] < 0) {
+                        shardOfCell[adjacent[i]] = 0;
+                        queue[tail++] = adjacent[i];
+                    }
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            shardOfTown[v] = shardOfCell[partition.cell(0, v)];
+        }
+        return shardOfTown;
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * Gets the number of boundary towns, over all shards.
+     *
+     * @return the number of boundary towns
+     */
+    public int getBoundaryCount() {
+        return boundary.length;
+    }
+
+    /**
+     * Gets the number of roads between towns in different shards.
+     *
+     * @return the number of roads
+     */
+    public int getCrossingRoadCount() {
+        return crossTarget.length / 2;
+    }
+
+    /**
+     * Gets the heap in use by each shard's process.
+     *
+     * @return the heap in use by each shard, in bytes
+     * @throws IOException if a shard cannot be reached
+     */
+    public long[] heapUsed() throws IOException {
+        long[] used = new long[shards.size()];
+        for (int s = 0; s < used.length; s++) {
+            used[s] = shards.get(s).heapUsed();
+        }
+        return used;
+    }
+
+    /**
+     * Retrieves the length of the shortest path between two towns.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return the distance, or -1 if either town is unknown or no path exists
+     * @throws IOException if a shard cannot be reached
+     */
+    public long getDistance(String town1, String town2) throws IOException {
+        Route route = route(town1, town2);
+        return route == null ? -1 : route.distance;
+    }
+
+    /**
+     * Retrieves the shortest path between two towns.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return the steps of the shortest path, or an empty list if either town is unknown or no path exists
+     * @throws IOException if a shard cannot be reached
+     */
+    public ArrayList<String> getPath(String town1, String town2) throws IOException {
+        Route route = route(town1, town2);
+        ArrayList<String> steps = new ArrayList<>();
+        if (route == null) {
+            return steps;
+        }
+        if (route.last < 0) {
+            return shards.get(route.sourceShard).getPath(town1, town2);
+        }
+        //boundary towns from the destination's end back to the source's, then the legs between them in order
+        ArrayList<Integer> towns = new ArrayList<>();
+        for (int u = route.last; u >= 0; u = route.parent[u]) {
+            towns.add(u);
+        }
+        ArrayList<Callable<ArrayList<String>>> legs = new ArrayList<>();
+        int first = towns.get(towns.size() - 1);
+        legs.add(leg(route.sourceShard, town1, boundary[first]));
+        for (int i = towns.size() - 1; i > 0; i--) {
+            int u = towns.get(i);
+            int v = towns.get(i - 1);
+            int road = route.crossing[v];
+            if (road >= 0) {
+                ArrayList<String> step = new ArrayList<>();
+                step.add(String.format("%s via %s to %s %d mi", boundary[u], crossName[road], boundary[v],
+                        crossWeight[road]));
+                legs.add(() -> step);
+            } else {
+                legs.add(leg(shardOf[u], boundary[u], boundary[v]));
+            }
+        }
+        legs.add(leg(shardOf[route.last], boundary[route.last], town2));
+        for (ArrayList<String> leg : all(requests, legs)) {
+            steps.addAll(leg);
+        }
+        return steps;
+    }
+
+    private Callable<ArrayList<String>> leg(int shard, String town1, String town2) {
+        if (town1.equals(town2)) {
+            return ArrayList::new;
+        }
+        return () -> shards.get(shard).getPath(town1, town2);
+    }
+
+    /**
+     * The result of a search over the boundary towns.
+     */
+    private static class Route {
+        long distance;
+        int sourceShard;
+        //the boundary town the route leaves for the destination from, or -1 if it stays in the source's shard
+        int last = -1;
+        int[] parent;
+        int[] crossing;
+    }
+
+    /**
+     * Asks every shard for the distances from both towns to its boundary
+     * towns, then searches over the boundary towns.
+     *
+     * @return the route, or null if either town is unknown or no path exists
+     */
+    private Route route(String town1, String town2) throws IOException {
+        ArrayList<Callable<long[][]>> asks = new ArrayList<>();
+        for (RoadShard shard : shards) {
+            asks.add(() -> new long[][] {shard.reach(town1, town2), shard.reach(town2, town1)});
+        }
+        List<long[][]> answers = all(requests, asks);
+        int source = -1, destination = -1;
+        for (int s = 0; s < answers.size(); s++) {
+            if (answers.get(s)[0] != null) {
+                source = s;
+            }
+            if (answers.get(s)[1] != null) {
+                destination = s;
+            }
+        }
+        if (source < 0 || destination < 0) {
+            return null;
+        }
+        long[] fromSource = answers.get(source)[0];
+        long[] toDestination = answers.get(destination)[1];
+        Route route = new Route();
+        route.sourceShard = source;
+        long best = Long.MAX_VALUE;
+        if (source == destination && fromSource[fromSource.length - 1] >= 0) {
+            best = fromSource[fromSource.length - 1];
+        }
+
+        int b = boundary.length;
+        long[] dist = new long[b];
+        Arrays.fill(dist, Long.MAX_VALUE);
+        route.parent = new int[b];
+        route.crossing = new int[b];
+        IndexedMinHeap heap = new IndexedMinHeap(b);
+        //keys are kept as ints; distances in a shard are ints, so only the sum over many shards can exceed one
+        for (int i = 0; i < fromSource.length - 1; i++) {
+            if (fromSource[i] >= 0) {
+                int u = boundaryStart[source] + i;
+                dist[u] = fromSource[i];
+                route.parent[u] = -1;
+                route.crossing[u] = -1;
+                heap.offer(u, (int) Math.min(fromSource[i], INFINITY));
+            }
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            long d = dist[u];
+            if (d >= best) {
+                break;
+            }
+            int s = shardOf[u];
+            if (s == destination) {
+                long end = toDestination[u - boundaryStart[s]];
+                if (end >= 0 && d + end < best) {
+                    best = d + end;
+                    route.last = u;
+                }
+            }
+            int first = boundaryStart[s];
+            int k = boundaryStart[s + 1] - first;
+            int row = (u - first) * k;
+            for (int j = 0; j < k; j++) {
+                int across = cliques[s][row + j];
+                if (across != INFINITY && first + j != u) {
+                    relax(route, dist, heap, u, first + j, d + across, -1);
+                }
+            }
+            for (int arc = crossStart[u]; arc < crossStart[u + 1]; arc++) {
+                relax(route, dist, heap, u, crossTarget[arc], d + crossWeight[arc], arc);
+            }
+        }
+        if (best == Long.MAX_VALUE) {
+            return null;
+        }
+        route.distance = best;
+        return route;
+    }
+
+    private static void relax(Route route, long[] dist, IndexedMinHeap heap, int u, int v, long alt, int road) {
+        if (alt < dist[v]) {
+            dist[v] = alt;
+            route.parent[v] = u;
+            route.crossing[v] = road;
+            heap.offer(v, (int) Math.min(alt, INFINITY));
+        }
+    }
+
+    /**
+     * Runs requests on the router's threads and waits for all of them.
+     */
+    private static <T> List<T> all(ExecutorService requests, List<Callable<T>> tasks) throws IOException {
+        try {
+            ArrayList<T> results = new ArrayList<>(tasks.size());
+            Throwable failure = null;
+            for (Future<T> future : requests.invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new IOException(failure);
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a shard.");
+        }
+    }
+
+    /**
+     * Closes every shard, stopping worker processes, and the router's threads.
+     *
+     * @throws IOException if a shard cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        requests.shutdown();
+        IOException failure = null;
+        for (RoadShard shard : shards) {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardedRouterTest {
+    private CompactGraph network;
+    private TownGraphManager graph;
+
+    @Before
+    public void setUp() throws Exception {
+        network = RoutingBenchmark.randomNetwork(900, 1400, 5);
+        graph = new TownGraphManager();
+        ArrayList<String> towns = new ArrayList<>();
+        for (int v = 0; v < network.vertexCount(); v++) {
+            towns.add("Town_" + v);
+        }
+        ArrayList<RoadRecord> roads = new ArrayList<>();
+        for (int e = 0; e < network.edgeCount(); e++) {
+            roads.add(new RoadRecord("Town_" + network.edgeSource(e), "Town_" + network.edgeTarget(e),
+                    network.edgeWeight(e), "Road_" + e));
+        }
+        graph.addTowns(towns);
+        graph.addRoads(roads);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        network = null;
+        graph = null;
+    }
+
+    /**
+     * Checks distances against the unsharded graph, and that each path
+     * joins up from town to town and adds up to the distance.
+     */
+    private void assertMatchesGraph(ShardedRouter router, int queries) throws Exception {
+        Random random = new Random(3);
+        for (int i = 0; i < queries; i++) {
+            String from = "Town_" + random.nextInt(900);
+            String to = "Town_" + random.nextInt(900);
+            long distance = graph.getDistance(from, to);
+            assertEquals(from + " to " + to, distance, router.getDistance(from, to));
+            long total = 0;
+            String at = from;
+            for (String step : router.getPath(from, to)) {
+                String[] words = step.split(" ");
+                assertEquals(step, at, words[0]);
+                total += Integer.parseInt(words[5]);
+                at = words[4];
+            }
+            assertEquals(to, at);
+            assertEquals(distance, total);
+        }
+    }
+
+    @Test
+    public void testInProcessShards() throws Exception {
+        List<ShardWorker> shards = Arrays.asList(new ShardWorker(), new ShardWorker(), new ShardWorker());
+        try (ShardedRouter router = ShardedRouter.build(graph, shards)) {
+            assertEquals(3, router.getShardCount());
+            assertTrue(router.getCrossingRoadCount() > 0);
+            //a shard should be well under a third of the towns on its boundary
+            assertTrue(router.getBoundaryCount() < 300);
+            assertMatchesGraph(router, 150);
+        }
+    }
+
+    @Test
+    public void testUnknownAndSameTown() throws Exception {
+        try (ShardedRouter router = ShardedRouter.build(graph, Arrays.asList(new ShardWorker(), new ShardWorker()))) {
+            assertEquals(-1, router.getDistance("Town_1", "Nowhere"));
+            assertEquals(-1, router.getDistance("Nowhere", "Town_1"));
+            assertTrue(router.getPath("Nowhere", "Town_1").isEmpty());
+            assertEquals(0, router.getDistance("Town_7", "Town_7"));
+            assertTrue(router.getPath("Town_7", "Town_7").isEmpty());
+        }
+    }
+
+    @Test
+    public void testDisconnectedTown() throws Exception {
+        graph.addTown("Island");
+        try (ShardedRouter router = ShardedRouter.build(graph, Arrays.asList(new ShardWorker(), new ShardWorker()))) {
+            assertEquals(-1, router.getDistance("Town_1", "Island"));
+            assertTrue(router.getPath("Island", "Town_1").isEmpty());
+        }
+    }
+
+    @Test
+    public void testSocketShards() throws Exception {
+        ArrayList<ShardClient> shards = new ArrayList<>();
+        ArrayList<Thread> servers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread serving = new Thread(() -> {
+                try {
+                    new ShardWorker().serve(server);
+                } catch (Exception e) {
+                    //the test fails on the client side
+                }
+            });
+            serving.setDaemon(true);
+            serving.start();
+            servers.add(serving);
+            shards.add(new ShardClient(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort())));
+        }
+        try (ShardedRouter router = ShardedRouter.build(graph, shards)) {
+            assertMatchesGraph(router, 40);
+            assertTrue(router.heapUsed()[0] > 0);
+        }
+        for (Thread serving : servers) {
+            serving.join(5000);
+            assertFalse(serving.isAlive());
+        }
+    }
+}
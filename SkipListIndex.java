@@ -0,0 +1,341 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * A sorted multiset of names kept in an indexable skip list. Each key is
+ * stored once with the number of times it was added, and every forward link
+ * records how many occurrences it skips, so a key can be added or removed,
+ * and the occurrence at any position located, in O(log n) expected time.
+ * Listings by offset and limit or by prefix then cost O(log n + k) for k
+ * results rather than a copy and sort of the whole set.
+ *
+ * @author Liam Ghershony
+ */
+public class SkipListIndex {
+
+    private static final int MAX_LEVEL = 32;
+    private static final Comparator<String> ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private static final class Node {
+        final String key;
+        int count;
+        final Node[] next;
+        final int[] span;
+
+        Node(String key, int count, int level) {
+            this.key = key;
+            this.count = count;
+            this.next = new Node[level];
+            this.span = new int[level];
+        }
+    }
+
+    private final Node head = new Node(null, 0, MAX_LEVEL);
+    private final Random random = new Random(0x5EEDL);
+    private final Node[] update = new Node[MAX_LEVEL];
+    private final int[] rank = new int[MAX_LEVEL];
+    private int level = 1;
+    private int size;
+    private int distinct;
+
+    /**
+     * Adds one occurrence of a key.
+     *
+     * @param key the key
+     * @return true if the key was not in the index before
+     */
+    public boolean add(String key) {
+        Node found = locate(key);
+        if (found != null) {
+            found.count++;
+            adjustSpans(1);
+            size++;
+            return false;
+        }
+        int height = randomLevel();
+        if (height > level) {
+            for (int i = level; i < height; i++) {
+                rank[i] = 0;
+                update[i] = head;
+                head.span[i] = size;
+            }
+            level = height;
+        }
+        Node node = new Node(key, 1, height);
+        for (int i = 0; i < height; i++) {
+            node.next[i] = update[i].next[i];
+            update[i].next[i] = node;
+            node.span[i] = update[i].span[i] - (rank[0] - rank[i]);
+            update[i].span[i] = rank[0] - rank[i] + 1;
+        }
+        for (int i = height; i < level; i++) {
+            update[i].span[i]++;
+        }
+        size++;
+        distinct++;
+        return true;
+    }
+
+    /**
+     * Removes one occurrence of a key.
+     *
+     * @param key the key
+     * @return true if the key was in the index
+     */
+    public boolean remove(String key) {
+        Node found = locate(key);
+        if (found == null) {
+            return false;
+        }
+        size--;
+        if (--found.count > 0) {
+            adjustSpans(-1);
+            return true;
+        }
+        for (int i = 0; i < level; i++) {
+            if (update[i].next[i] == found) {
+                update[i].span[i] += found.span[i] - 1;
+                update[i].next[i] = found.next[i];
+            } else {
+                update[i].span[i]--;
+            }
+        }
+        while (level > 1 && head.next[level - 1] == null) {
+            level--;
+        }
+        distinct--;
+        return true;
+    }
+
+    /**
+     * Gets the number of occurrences of a key.
+     *
+     * @param key the key
+     * @return the count, or 0 if the key is not in the index
+     */
+    public int count(String key) {
+        Node found = find(key);
+        return found == null ? 0 : found.count;
+    }
+
+    /**
+     * Checks if a key is in the index.
+     *
+     * @param key the key
+     * @return true if the key has at least one occurrence
+     */
+    public boolean contains(String key) {
+        return find(key) != null;
+    }
+
+    /**
+     * Gets the number of occurrences of all keys together.
+     *
+     * @return the size of the index
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of distinct keys.
+     *
+     * @return the number of keys
+     */
+    public int distinctSize() {
+        return distinct;
+    }
+
+    /**
+     * Gets the key at a position in sorted order, counting repeats.
+     *
+     * @param index the position, from 0
+     * @return the key at that position
+     * @throws IndexOutOfBoundsException if the position is outside the index
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return nodeAt(index).key;
+    }
+
+    /**
+     * Gets the number of occurrences of keys that sort before a key, i.e. the
+     * position the key has or would have.
+     *
+     * @param key the key
+     * @return the rank of the key
+     */
+    public int rank(String key) {
+        Node node = head;
+        int traversed = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && ORDER.compare(node.next[i].key, key) < 0) {
+                traversed += node.span[i];
+                node = node.next[i];
+            }
+        }
+        return traversed;
+    }
+
+    /**
+     * Lists keys in sorted order starting at a position, each key repeated as
+     * many times as it occurs.
+     *
+     * @param offset the position of the first key, from 0
+     * @param limit the largest number of keys to return
+     * @return the keys, empty if the offset is past the end
+     */
+    public ArrayList<String> list(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit cannot be negative.");
+        }
+        ArrayList<String> keys = new ArrayList<>(Math.min(limit, Math.max(size - offset, 0)));
+        if (offset >= size) {
+            return keys;
+        }
+        Node node = head;
+        int traversed = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && traversed + node.span[i] <= offset) {
+                traversed += node.span[i];
+                node = node.next[i];
+            }
+        }
+        node = node.next[0];
+        int repeat = node.count - (offset - traversed);
+        while (node != null && keys.size() < limit) {
+            keys.add(node.key);
+            if (--repeat == 0) {
+                node = node.next[0];
+                repeat = node == null ? 0 : node.count;
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Lists the distinct keys that start with a prefix, in sorted order. A
+     * null key matches no prefix.
+     *
+     * @param prefix the prefix
+     * @param limit the largest number of keys to return
+     * @return the matching keys
+     */
+    public ArrayList<String> withPrefix(String prefix, int limit) {
+        if (prefix == null) {
+            throw new NullPointerException("Prefix cannot be null.");
+        }
+        ArrayList<String> keys = new ArrayList<>();
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && ORDER.compare(node.next[i].key, prefix) < 0) {
+                node = node.next[i];
+            }
+        }
+        for (node = node.next[0]; node != null && keys.size() < limit; node = node.next[0]) {
+            if (node.key == null) {
+                continue;
+            }
+            if (!node.key.startsWith(prefix)) {
+                break;
+            }
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
+    /**
+     * Lists the distinct keys in sorted order.
+     *
+     * @return the keys
+     */
+    public ArrayList<String> keys() {
+        ArrayList<String> keys = new ArrayList<>(distinct);
+        for (Node node = head.next[0]; node != null; node = node.next[0]) {
+            keys.add(node.key);
+        }
+        return keys;
+    }
+
+    /**
+     * Estimates the heap used by the nodes of the index, not counting the keys.
+     *
+     * @return the size in bytes
+     */
+    public long footprint() {
+        long bytes = 0;
+        for (Node node = head; node != null; node = node.next[0]) {
+            bytes += MemoryReport.object(3 * MemoryReport.REFERENCE + 4)
+                    + MemoryReport.array(node.next.length, MemoryReport.REFERENCE)
+                    + MemoryReport.array(node.span.length, 4);
+        }
+        return bytes;
+    }
+
+    /**
+     * Finds a key without touching the shared search arrays, so lookups are
+     * safe alongside other readers.
+     */
+    private Node find(String key) {
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && ORDER.compare(node.next[i].key, key) < 0) {
+                node = node.next[i];
+            }
+        }
+        Node candidate = node.next[0];
+        return candidate != null && ORDER.compare(candidate.key, key) == 0 ? candidate : null;
+    }
+
+    /**
+     * Finds a key, leaving its predecessor and their positions at every level
+     * in update and rank.
+     */
+    private Node locate(String key) {
+        Node node = head;
+        for (int i = level - 1; i >= 0; i--) {
+            rank[i] = i == level - 1 ? 0 : rank[i + 1];
+            while (node.next[i] != null && ORDER.compare(node.next[i].key, key) < 0) {
+                rank[i] += node.span[i];
+                node = node.next[i];
+            }
+            update[i] = node;
+        }
+        Node candidate = node.next[0];
+        return candidate != null && ORDER.compare(candidate.key, key) == 0 ? candidate : null;
+    }
+
+    /**
+     * Changes the count of the node just located. Every link that reaches
+     * past it, and the one reaching it, now spans a different number of
+     * occurrences.
+     */
+    private void adjustSpans(int delta) {
+        for (int i = 0; i < level; i++) {
+            update[i].span[i] += delta;
+        }
+    }
+
+    private Node nodeAt(int index) {
+        Node node = head;
+        int traversed = 0;
+        for (int i = level - 1; i >= 0; i--) {
+            while (node.next[i] != null && traversed + node.span[i] <= index) {
+                traversed += node.span[i];
+                node = node.next[i];
+            }
+        }
+        return node.next[0];
+    }
+
+    private int randomLevel() {
+        int height = 1;
+        while (height < MAX_LEVEL && (random.nextInt() & 3) == 0) {
+            height++;
+        }
+        return height;
+    }
+}
@@ -0,0 +1,100 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SkipListIndexTest {
+    private SkipListIndex index;
+
+    @Before
+    public void setUp() throws Exception {
+        index = new SkipListIndex();
+        for (int i = 1; i < 12; i++) {
+            index.add("Town_" + i);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index = null;
+    }
+
+    @Test
+    public void testList() {
+        assertEquals(11, index.size());
+        assertEquals(Arrays.asList("Town_1", "Town_10", "Town_11"), index.list(0, 3));
+        assertEquals(Arrays.asList("Town_8", "Town_9"), index.list(9, 5));
+        assertTrue(index.list(11, 5).isEmpty());
+        assertEquals("Town_2", index.get(3));
+        assertEquals(3, index.rank("Town_2"));
+    }
+
+    @Test
+    public void testWithPrefix() {
+        assertEquals(Arrays.asList("Town_1", "Town_10", "Town_11"), index.withPrefix("Town_1", 10));
+        assertEquals(Arrays.asList("Town_1"), index.withPrefix("Town_1", 1));
+        assertTrue(index.withPrefix("Village", 10).isEmpty());
+    }
+
+    @Test
+    public void testWithPrefixSkipsNull() {
+        assertTrue(index.add(null));
+        assertTrue(index.contains(null));
+        assertEquals(Arrays.asList("Town_1", "Town_10", "Town_11"), index.withPrefix("Town_1", 10));
+        assertEquals(index.distinctSize() - 1, index.withPrefix("", 20).size());
+        assertFalse(index.withPrefix("", 20).contains(null));
+    }
+
+    @Test
+    public void testMultiplicity() {
+        assertFalse(index.add("Town_2"));
+        assertTrue(index.add("Town_12"));
+        assertEquals(2, index.count("Town_2"));
+        assertEquals(13, index.size());
+        assertEquals(12, index.distinctSize());
+        assertEquals(Arrays.asList("Town_2", "Town_2", "Town_3"), index.list(4, 3));
+        assertTrue(index.remove("Town_2"));
+        assertEquals(Arrays.asList("Town_2", "Town_3"), index.list(4, 2));
+        assertTrue(index.remove("Town_2"));
+        assertFalse(index.contains("Town_2"));
+        assertFalse(index.remove("Town_2"));
+    }
+
+    @Test
+    public void testAgreesWithTreeMap() {
+        Random random = new Random(7);
+        TreeMap<String, Integer> expected = new TreeMap<>();
+        SkipListIndex names = new SkipListIndex();
+        for (int step = 0; step < 20000; step++) {
+            String key = "K" + random.nextInt(500);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.containsKey(key), names.remove(key));
+                expected.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+            } else {
+                names.add(key);
+                expected.merge(key, 1, Integer::sum);
+            }
+        }
+        ArrayList<String> all = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            for (int i = 0; i < entry.getValue(); i++) {
+                all.add(entry.getKey());
+            }
+        }
+        assertEquals(all.size(), names.size());
+        assertEquals(expected.size(), names.distinctSize());
+        assertEquals(all, names.list(0, all.size()));
+        for (int offset = 0; offset < all.size(); offset += 37) {
+            assertEquals(all.subList(offset, Math.min(all.size(), offset + 10)), names.list(offset, 10));
+            assertEquals(all.get(offset), names.get(offset));
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), names.keys());
+    }
+}
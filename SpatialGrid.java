@@ -0,0 +1,130 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A uniform grid over a set of points for answering "which points lie in
+ * this rectangle" in time proportional to the cells the rectangle covers and
+ * the points found, rather than to all points. Points are bucketed once into
+ * flat arrays sorted by cell, so the grid costs two ints per point and one per
+ * cell and never changes after it is built.
+ *
+ * @author Liam Ghershony
+ */
+public class SpatialGrid {
+
+    private final double[] x;
+    private final double[] y;
+    private final double originX, originY, cellSize;
+    private final int columns, rows;
+    private final int[] cellStart;
+    private final int[] items;
+
+    /**
+     * Buckets points into a grid. The arrays are kept, not copied.
+     *
+     * @param x the x coordinate of every point
+     * @param y the y coordinate of every point
+     * @param cellSize the width and height of a cell
+     */
+    public SpatialGrid(double[] x, double[] y, double cellSize) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("Coordinate arrays must have the same length.");
+        }
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("Cell size must be positive.");
+        }
+        this.x = x;
+        this.y = y;
+        this.cellSize = cellSize;
+        double minX = 0, minY = 0, maxX = 0, maxY = 0;
+        if (x.length > 0) {
+            minX = maxX = x[0];
+            minY = maxY = y[0];
+            for (int i = 1; i < x.length; i++) {
+                minX = Math.min(minX, x[i]);
+                maxX = Math.max(maxX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+        }
+        originX = minX;
+        originY = minY;
+        columns = (int) Math.min(1 << 15, (maxX - minX) / cellSize + 1);
+        rows = (int) Math.min(1 << 15, (maxY - minY) / cellSize + 1);
+        cellStart = new int[columns * rows + 1];
+        int[] cellOf = new int[x.length];
+        for (int i = 0; i < x.length; i++) {
+            cellOf[i] = row(y[i]) * columns + column(x[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        items = new int[x.length];
+        int[] fill = Arrays.copyOf(cellStart, columns * rows);
+        for (int i = 0; i < x.length; i++) {
+            items[fill[cellOf[i]]++] = i;
+        }
+    }
+
+    /**
+     * Visits every point inside a rectangle, edges included.
+     *
+     * @param minX the left edge
+     * @param minY the top edge
+     * @param maxX the right edge
+     * @param maxY the bottom edge
+     * @param visitor receives the index of each point found
+     */
+    public void query(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        if (items.length == 0 || maxX < minX || maxY < minY) {
+            return;
+        }
+        int firstColumn = column(minX), lastColumn = column(maxX);
+        int firstRow = row(minY), lastRow = row(maxY);
+        for (int r = firstRow; r <= lastRow; r++) {
+            for (int c = firstColumn; c <= lastColumn; c++) {
+                int cell = r * columns + c;
+                boolean inside = c > firstColumn && c < lastColumn && r > firstRow && r < lastRow;
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int i = items[k];
+                    if (inside || (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY)) {
+                        visitor.accept(i);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the points inside a rectangle, edges included.
+     *
+     * @param minX the left edge
+     * @param minY the top edge
+     * @param maxX the right edge
+     * @param maxY the bottom edge
+     * @return the number of points
+     */
+    public int count(double minX, double minY, double maxX, double maxY) {
+        int[] count = new int[1];
+        query(minX, minY, maxX, maxY, i -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Gets the number of points in the grid.
+     *
+     * @return the point count
+     */
+    public int size() {
+        return items.length;
+    }
+
+    private int column(double px) {
+        return (int) Math.max(0, Math.min(columns - 1, Math.floor((px - originX) / cellSize)));
+    }
+
+    private int row(double py) {
+        return (int) Math.max(0, Math.min(rows - 1, Math.floor((py - originY) / cellSize)));
+    }
+}
@@ -0,0 +1,48 @@
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SpatialGridTest {
+
+    @Test
+    public void testQueryMatchesScan() {
+        Random random = new Random(7);
+        int n = 5000;
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = random.nextDouble() * 1000 - 200;
+            y[i] = random.nextDouble() * 500;
+        }
+        SpatialGrid grid = new SpatialGrid(x, y, 25);
+        assertEquals(n, grid.size());
+        for (int round = 0; round < 50; round++) {
+            double minX = random.nextDouble() * 1200 - 300;
+            double minY = random.nextDouble() * 600 - 50;
+            double maxX = minX + random.nextDouble() * 300;
+            double maxY = minY + random.nextDouble() * 300;
+            ArrayList<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                    expected.add(i);
+                }
+            }
+            ArrayList<Integer> found = new ArrayList<>();
+            grid.query(minX, minY, maxX, maxY, found::add);
+            Collections.sort(found);
+            assertEquals(expected, found);
+            assertEquals(expected.size(), grid.count(minX, minY, maxX, maxY));
+        }
+    }
+
+    @Test
+    public void testEmptyGrid() {
+        SpatialGrid grid = new SpatialGrid(new double[0], new double[0], 1);
+        assertEquals(0, grid.size());
+        assertEquals(0, grid.count(-10, -10, 10, 10));
+    }
+}
@@ -1,6 +1,7 @@
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
@@ -55,6 +56,42 @@ public class StudentGraphTest {
         assertEquals(true, graph.containsEdge(town[3], town[5]));
     }
 
+    @Test
+    public void testAddEdgesInOneVersion() {
+        Graph concrete = (Graph) graph;
+        int version = concrete.getVersion();
+        ArrayList<RoadRecord> added = concrete.addEdges(Arrays.asList(
+                new RoadRecord("Town_3", "Town_5", 1, "Road_13"),
+                new RoadRecord("Town_5", "Town_3", 1, "Road_13"),
+                new RoadRecord("Town_11", "Town_2", 6, "Road_12"),
+                new RoadRecord("Town_4", "Town_6", 2, "Road_14")));
+        assertEquals(Arrays.asList(new RoadRecord("Town_3", "Town_5", 1, "Road_13"),
+                new RoadRecord("Town_4", "Town_6", 2, "Road_14")), added);
+        assertEquals(version + 1, concrete.getVersion());
+        assertEquals(14, graph.edgeSet().size());
+        assertTrue(graph.containsEdge(town[6], town[4]));
+        assertTrue(concrete.isConnected(town[4], town[9]));
+
+        ArrayList<RoadRecord> removed = concrete.removeEdges(Arrays.asList(
+                new RoadRecord("Town_4", "Town_6", 0, "Road_14"),
+                new RoadRecord("Town_1", "Town_2", 2, "Road_99")));
+        assertEquals(1, removed.size());
+        assertEquals(version + 2, concrete.getVersion());
+        assertFalse(graph.containsEdge(town[4], town[6]));
+    }
+
+    @Test
+    public void testAddEdgesRejectsUnknownTown() {
+        Graph concrete = (Graph) graph;
+        try {
+            concrete.addEdges(Arrays.asList(new RoadRecord("Town_3", "Town_5", 1, "Road_13"),
+                    new RoadRecord("Town_3", "Town_99", 1, "Road_14")));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertFalse(graph.containsEdge(town[3], town[5]));
+        }
+    }
+
     @Test
     public void testAddVertex() {
         Town newTown = new Town("Town_12");
@@ -116,6 +153,24 @@ public class StudentGraphTest {
         assertEquals(false, graph.containsVertex(town[2]));
     }
 
+    @Test
+    public void testIsConnected() {
+        Graph connectivity = (Graph) graph;
+        assertEquals(true, connectivity.isConnected(town[1], town[6]));
+        Town island = new Town("Town_12");
+        graph.addVertex(island);
+        assertEquals(false, connectivity.isConnected(town[1], island));
+        assertEquals(2, connectivity.componentCount());
+        graph.addEdge(town[4], island, 1, "Road_13");
+        assertEquals(true, connectivity.isConnected(town[1], island));
+        graph.removeEdge(town[8], town[10], 2, "Road_9");
+        graph.removeEdge(town[5], town[10], 5, "Road_10");
+        graph.removeEdge(town[2], town[11], 6, "Road_12");
+        assertEquals(false, connectivity.isConnected(town[1], town[6]));
+        assertEquals(true, connectivity.isConnected(town[4], town[1]));
+        assertEquals(0, graph.shortestPath(town[1], town[6]).size());
+    }
+
     @Test
     public void testVertexSet() {
         Set<Town> roads = graph.vertexSet();
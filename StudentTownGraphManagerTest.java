@@ -1,6 +1,17 @@
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -98,6 +109,18 @@ public class StudentTownGraphManagerTest {
         assertEquals("Road_9", roads.get(11));
     }
 
+    @Test
+    public void testRoadSegmentCount() {
+        TownGraphManager manager = (TownGraphManager) graph;
+        graph.addRoad(town[4], town[11], 1, "Road_1");
+        assertEquals(2, manager.getRoadSegmentCount("Road_1"));
+        assertEquals(0, manager.getRoadSegmentCount("Road_13"));
+        ArrayList<String> roads = graph.allRoads();
+        assertEquals(13, roads.size());
+        assertEquals("Road_1", roads.get(1));
+        assertEquals("Road_10", roads.get(2));
+    }
+
     @Test
     public void testDeleteRoadConnection() {
         assertEquals(true, graph.containsRoadConnection(town[2], town[11]));
@@ -122,6 +145,117 @@ public class StudentTownGraphManagerTest {
         assertEquals("Town_8", towns.get(9));
     }
 
+    @Test
+    public void testPagedTowns() {
+        TownGraphManager manager = (TownGraphManager) graph;
+        assertEquals(Arrays.asList("Town_11", "Town_2"), manager.allTowns(2, 2));
+        assertEquals(Arrays.asList("Town_1", "Town_10", "Town_11"), manager.townsWithPrefix("Town_1", 5));
+        graph.deleteTown(town[10]);
+        assertEquals(Arrays.asList("Town_1", "Town_11"), manager.townsWithPrefix("Town_1", 5));
+        assertEquals(10, manager.getTownCount());
+        assertEquals(Arrays.asList("Road_12", "Road_2"), manager.allRoads(1, 2));
+        assertEquals(Arrays.asList("Road_1", "Road_12"), manager.roadsWithPrefix("Road_1", 5));
+    }
+
+    @Test
+    public void testSuggestTowns() {
+        TownGraphManager manager = (TownGraphManager) graph;
+        assertEquals(Arrays.asList("Town_1", "Town_10"), manager.suggestTowns("Town_1", 2));
+        assertEquals(Arrays.asList("Town_2", "Town_1", "Town_3"), manager.suggestTowns("Town_2", 3));
+        graph.addTown("Towne_1");
+        graph.deleteTown(town[2]);
+        assertEquals(Arrays.asList("Towne_1", "Town_1"), manager.suggestTowns("Towne", 2));
+        assertEquals(Arrays.asList("Town_1", "Town_3", "Town_4"), manager.findTownsLike("Town_2", 1, 3));
+    }
+
+    @Test
+    public void testPopulateWithProgress() throws IOException {
+        File file = File.createTempFile("towns", ".txt");
+        file.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(file)) {
+            for (int i = 0; i < 10000; i++) {
+                out.println("Road_" + i + "," + (1 + i % 9) + ";Stop_" + i + ";Stop_" + (i + 1));
+            }
+            out.println("not a road");
+        }
+        TownGraphManager manager = new TownGraphManager();
+        long[] last = new long[5];
+        assertTrue(manager.populateTownGraph(file, (bytes, total, lines, towns, roads) -> {
+            last[0] = bytes;
+            last[1] = total;
+            last[2] = lines;
+            last[3] = towns;
+            last[4] = roads;
+            return true;
+        }));
+        assertEquals(file.length(), last[0]);
+        assertEquals(file.length(), last[1]);
+        assertEquals(10001, last[2]);
+        assertEquals(10001, last[3]);
+        assertEquals(10000, last[4]);
+
+        TownGraphManager cancelled = new TownGraphManager();
+        assertFalse(cancelled.populateTownGraph(file, (bytes, total, lines, towns, roads) -> lines < 4096));
+        assertTrue(cancelled.getTownCount() > 0);
+        assertTrue(cancelled.getTownCount() < 10001);
+    }
+
+    @Test
+    public void testPopulateShards() throws IOException {
+        File dir = Files.createTempDirectory("shards").toFile();
+        File plain = new File(dir, "roads-0.txt");
+        File gzipped = new File(dir, "roads-1.txt.gz");
+        try {
+            try (PrintWriter out = new PrintWriter(plain)) {
+                for (int i = 0; i < 5000; i++) {
+                    out.println("Road_" + i + "," + (1 + i % 9) + ";Stop_" + i + ";Stop_" + (i + 1));
+                }
+            }
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(new FileOutputStream(gzipped))))) {
+                for (int i = 5000; i < 10000; i++) {
+                    out.println("Road_" + i + "," + (1 + i % 9) + ";Stop_" + i + ";Stop_" + (i + 1));
+                }
+                //repeated from the other shard
+                out.println("Road_0,1;Stop_0;Stop_1");
+            }
+            TownGraphManager manager = new TownGraphManager();
+            long[] last = new long[3];
+            assertTrue(manager.populateTownGraph(dir, (bytes, total, lines, towns, roads) -> {
+                last[0] = bytes;
+                last[1] = total;
+                last[2] = lines;
+                return true;
+            }));
+            assertEquals(plain.length() + gzipped.length(), last[0]);
+            assertEquals(last[0], last[1]);
+            assertEquals(10001, last[2]);
+            assertEquals(10001, manager.getTownCount());
+            assertEquals(10000, manager.allRoads().size());
+            assertEquals("Road_5000", manager.getRoad("Stop_5000", "Stop_5001"));
+            assertEquals(46, manager.getDistance("Stop_0", "Stop_10"));
+        } finally {
+            plain.delete();
+            gzipped.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testPopulateRejectsZstd() throws IOException {
+        File file = File.createTempFile("towns", ".txt.zst");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[] {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 0, 0, 0, 0});
+        }
+        try {
+            new TownGraphManager().populateTownGraph(file);
+            fail("zstd input was not rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("zstd"));
+        }
+    }
+
     @Test
     public void testGetPath() {
         ArrayList<String> path = graph.getPath(town[1], town[11]);
@@ -131,6 +265,81 @@ public class StudentTownGraphManagerTest {
         assertEquals("Town_2 via Road_12 to Town_11 6 mi", path.get(1).trim());
     }
 
+    @Test
+    public void testGetPathTowns() {
+        TownGraphManager manager = (TownGraphManager) graph;
+        assertEquals(Arrays.asList("Town_1", "Town_2", "Town_11"), manager.getPathTowns(town[1], town[11]));
+        graph.addTown("Town_12");
+        assertTrue(manager.getPathTowns(town[1], "Town_12").isEmpty());
+    }
+
+    @Test
+    public void testBatchChanges() {
+        TownGraphManager manager = (TownGraphManager) graph;
+        assertEquals(2, manager.addTowns(Arrays.asList("Town_12", "Town_1", "Town_13", "Town_12")));
+        assertEquals(2, manager.addRoads(Arrays.asList(
+                new RoadRecord("Town_11", "Town_12", 1, "Road_13"),
+                new RoadRecord("Town_12", "Town_13", 1, "Road_14"),
+                new RoadRecord("Town_13", "Town_12", 1, "Road_14"))));
+        assertEquals("Road_14", graph.getRoad("Town_13", "Town_12"));
+        assertEquals(13, graph.allTowns().size());
+        assertEquals(14, graph.allRoads().size());
+
+        assertEquals(2, manager.deleteRoads(Arrays.asList(
+                new RoadRecord("Town_11", "Town_12", 1, "Road_13"),
+                new RoadRecord(town[2], town[11], 6, "Road_12"))));
+        assertFalse(graph.containsRoadConnection(town[2], town[11]));
+        assertEquals(12, graph.allRoads().size());
+    }
+
+    @Test
+    public void testAddRoadsRejectsUnknownTown() {
+        TownGraphManager manager = (TownGraphManager) graph;
+        try {
+            manager.addRoads(Arrays.asList(new RoadRecord(town[3], town[5], 1, "Road_13"),
+                    new RoadRecord(town[3], "Town_99", 1, "Road_14")));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertFalse(graph.containsRoadConnection(town[3], town[5]));
+        }
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            ArrayList<Future<Boolean>> readers = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                readers.add(pool.submit(() -> {
+                    for (int i = 0; i < 2000; i++) {
+                        ArrayList<String> path = graph.getPath(town[1], town[11]);
+                        if (!path.equals(Arrays.asList("Town_1 via Road_1 to Town_2 2 mi",
+                                "Town_2 via Road_12 to Town_11 6 mi"))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            Future<?> writer = pool.submit(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    graph.addTown("Extra_" + i);
+                    graph.addRoad(town[4], "Extra_" + i, 50, "Spur_" + i);
+                    if (i % 2 == 0) {
+                        graph.deleteTown("Extra_" + i);
+                    }
+                }
+            });
+            writer.get();
+            for (Future<Boolean> reader : readers) {
+                assertTrue(reader.get());
+            }
+            assertEquals(1011, graph.allTowns().size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testGetPathA() {
         ArrayList<String> path = graph.getPath(town[1], town[10]);
@@ -152,4 +361,53 @@ public class StudentTownGraphManagerTest {
         assertEquals("Town_10 via Road_8 to Town_9 4 mi", path.get(3).trim());
         assertEquals("Town_9 via Road_7 to Town_6 3 mi", path.get(4).trim());
     }
+
+    @Test
+    public void testSubnetworkPath() {
+        TownGraphManager manager = (TownGraphManager) graph;
+        manager.precomputeAllPairs(Arrays.asList(town[1], town[3], town[5], town[8], town[10]));
+        assertEquals(8, manager.getSubnetworkDistance(town[1], town[10]));
+        ArrayList<String> path = manager.getSubnetworkPath(town[1], town[10]);
+        assertEquals(3, path.size());
+        assertEquals("Town_1 via Road_2 to Town_3 4 mi", path.get(0).trim());
+        assertEquals("Town_8 via Road_9 to Town_10 2 mi", path.get(2).trim());
+        assertEquals(-1, manager.getSubnetworkDistance(town[1], town[11]));
+        graph.deleteRoadConnection(town[3], town[8], "Road_5");
+        assertEquals(11, manager.getSubnetworkDistance(town[10], town[1]));
+        assertEquals("Town_10 via Road_10 to Town_5 5 mi", manager.getSubnetworkPath(town[10], town[1]).get(0).trim());
+    }
+
+    @Test(timeout = 10000)
+    public void testSubnetworkZeroWeightRoads() {
+        TownGraphManager manager = new TownGraphManager();
+        ArrayList<String> towns = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            towns.add("T" + i);
+        }
+        manager.addTowns(towns);
+        //ties between zero-weight roads once sent the walk back and forth between T2 and T4
+        manager.addRoad("T0", "T5", 5, "R0");
+        manager.addRoad("T4", "T2", 0, "R1");
+        manager.addRoad("T3", "T4", 5, "R2");
+        manager.addRoad("T0", "T2", 5, "R3");
+        manager.addRoad("T1", "T4", 5, "R4");
+        manager.addRoad("T2", "T3", 0, "R5");
+        manager.addRoad("T1", "T5", 5, "R6");
+        manager.precomputeAllPairs(towns);
+        for (String source : towns) {
+            for (String destination : towns) {
+                ArrayList<String> path = manager.getSubnetworkPath(source, destination);
+                int distance = 0;
+                for (String step : path) {
+                    String[] words = step.trim().split(" ");
+                    distance += Integer.parseInt(words[words.length - 2]);
+                }
+                assertEquals(manager.getDistance(source, destination), distance);
+                assertEquals(distance, manager.getSubnetworkDistance(source, destination));
+            }
+        }
+        ArrayList<String> path = manager.getSubnetworkPath("T2", "T5");
+        assertTrue(path.get(0).trim().startsWith("T2 via "));
+        assertTrue(path.get(path.size() - 1).trim().endsWith(" to T5 5 mi"));
+    }
 }
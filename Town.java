@@ -10,6 +10,7 @@ public class Town implements Comparable<Town> {
 	
 	private String name;
 	private List<Town> adjacents;
+	int id = -1;
 	
 	
 	/**
@@ -19,7 +20,6 @@ public class Town implements Comparable<Town> {
 	 */
 	public Town(String name) {
 		this.name = name;
-		this.adjacents = new ArrayList<>();
 	}
 	
 	/**
@@ -66,6 +66,9 @@ public class Town implements Comparable<Town> {
 	 * @param town the town to add as adjacent
 	 */
 	public void addAdjacentTown(Town town) {
+		if (adjacents == null) {
+			adjacents = new ArrayList<>();
+		}
 		adjacents.add(town);
 	}
 	
@@ -75,7 +78,7 @@ public class Town implements Comparable<Town> {
 	 * @return the list of adjacent towns
 	 */
 	public List<Town> getAdjacentTowns(){
-		return new ArrayList<>(adjacents);
+		return adjacents == null ? new ArrayList<>() : new ArrayList<>(adjacents);
 	}
 	
 	/**
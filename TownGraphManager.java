@@ -1,21 +1,69 @@
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
 
 /**
  * Manages the graph and graph objects like roads and town.
  *
+ * The manager can be shared between threads, e.g. a UI thread and route
+ * workers: queries hold a read lock so they run side by side, and changes to
+ * the graph hold the write lock.
+ *
+ * Changes can be made durable with a {@link MutationLog}: once a log is open,
+ * every change that took effect is appended to it under the write lock, and
+ * the caller waits for the log's group commit after releasing the lock.
+ *
  * @author Liam Ghershony
  */
 
 public class TownGraphManager implements TownGraphManagerInterface{
 
 	private Graph graph = new Graph();
+	private Set<Town> allPairsTowns;
+	private AllPairsIndex allPairs;
+	private HubLabelIndex distanceIndex;
+	private int distanceIndexVersion;
+	private LandmarkIndex landmarks;
+	private MultiLevelOverlay multiLevel;
+	private int multiLevelVersion;
+	private NameTrie townTrie;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private static final int PROGRESS_INTERVAL = 4096;
+	//the first bytes of gzip and zstd streams, as read big-endian
+	private static final int GZIP_MAGIC = 0x1F8B;
+	private static final int ZSTD_MAGIC = 0x28B52FFD;
+	//records after which the mutation log is compacted into a snapshot
+	private static final int COMPACTION_RECORDS = 1 << 20;
+	private MutationLog mutationLog;
+	private final AtomicBoolean compacting = new AtomicBoolean();
 	
     /**
      * Adds a road between two towns with the given weight and name.
@@ -28,11 +76,48 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public boolean addRoad(String town1, String town2, int weight, String roadName) {
-		Town one = new Town(town1);
-		Town two = new Town(town2);
-		if (graph.containsVertex(two)) graph.addVertex(two);
-		if (graph.containsVertex(one)) graph.addVertex(one);
-		return graph.addEdge(one, two, weight, roadName) != null;
+		return addRoad(town1, town2, weight, roadName, false);
+	}
+
+    /**
+     * Adds a one-way road, which routes may only follow from the first town
+     * to the second. While the graph has one-way roads, the hub-label
+     * distance index and the multi-level overlay cannot be built.
+     *
+     * @param from the name of the town the road starts from
+     * @param to the name of the town the road leads to
+     * @param weight the weight of the road
+     * @param roadName the name of the road
+     * @return true if the road was successfully added, false otherwise
+     */
+	
+	public boolean addOneWayRoad(String from, String to, int weight, String roadName) {
+		return addRoad(from, to, weight, roadName, true);
+	}
+
+	private boolean addRoad(String town1, String town2, int weight, String roadName, boolean oneWay) {
+		MutationLog journal;
+		long logged = 0;
+		boolean added;
+		lock.writeLock().lock();
+		try {
+			Town one = town(town1);
+			Town two = town(town2);
+			if (graph.containsVertex(two)) graph.addVertex(two);
+			if (graph.containsVertex(one)) graph.addVertex(one);
+			added = graph.addEdge(one, two, weight, roadName, oneWay) != null;
+			journal = mutationLog;
+			if (added && journal != null) {
+				logged = oneWay ? journal.addOneWayRoad(town1, town2, weight, roadName)
+						: journal.addRoad(town1, town2, weight, roadName);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return added;
 	}
 
 	
@@ -46,16 +131,20 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public String getRoad(String town1, String town2) {
-		Town one = new Town(town1);
-		Town two = new Town(town2);
-		Road three = graph.getEdge(one, two);
-		if(three!=null) {
-			return three.getName();
+		lock.readLock().lock();
+		try {
+			Town one = town(town1);
+			Town two = town(town2);
+			Road three = graph.getEdge(one, two);
+			if(three!=null) {
+				return three.getName();
+				}
+			else {
+				return null;
 			}
-		else {
-			return null;
+		} finally {
+			lock.readLock().unlock();
 		}
-		
 	}
 
     /**
@@ -67,8 +156,27 @@ public class TownGraphManager implements TownGraphManagerInterface{
 	
 	
 	public boolean addTown(String v) {
-		Town town2add = new Town(v);
-		return graph.addVertex(town2add);
+		MutationLog journal;
+		long logged = 0;
+		boolean added;
+		lock.writeLock().lock();
+		try {
+			Town town2add = new Town(v);
+			added = graph.addVertex(town2add);
+			if (added && townTrie != null && v != null) {
+				townTrie.add(v);
+			}
+			journal = mutationLog;
+			if (added && journal != null) {
+				logged = journal.addTown(v);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return added;
 	}
 
 	
@@ -80,12 +188,12 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public Town getTown(String name) {
-		for(Town town: graph.vertexSet()) {
-			if(name.equals(town.getName())) {
-				return town;
-			}
+		lock.readLock().lock();
+		try {
+			return graph.getTown(name);
+		} finally {
+			lock.readLock().unlock();
 		}
-		return null;
 	}
 
 	
@@ -98,11 +206,12 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public boolean containsTown(String v) {
-		Town town = new Town(v);
-		if(graph.vertexSet().contains(town)) {
-			return true;
+		lock.readLock().lock();
+		try {
+			return graph.getTown(v) != null;
+		} finally {
+			lock.readLock().unlock();
 		}
-		return false;
 	}
 
 
@@ -115,27 +224,82 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public boolean containsRoadConnection(String town1, String town2) {
-		Town one = new Town(town1);
-		Town two = new Town(town2);
-		return graph.getEdge(one, two) != null;
+		lock.readLock().lock();
+		try {
+			Town one = town(town1);
+			Town two = town(town2);
+			return graph.getEdge(one, two) != null;
+		} finally {
+			lock.readLock().unlock();
+		}
 	}
 
 	
     /**
-     * Retrieves a list of all roads in the graph.
+     * Retrieves a list of all roads in the graph. Answered from the graph's
+     * road name dictionary, which keeps each name once in sorted order with
+     * the number of roads sharing it.
      *
      * @return an ArrayList containing the names of all roads
      */
 	
 	public ArrayList<String> allRoads() {
-		Set<Road> allRoads = graph.edgeSet();
-		ArrayList<String> roadStrings = new ArrayList<>();
-		for(Road road: allRoads) {
-			roadStrings.add(road.getName());
+		lock.readLock().lock();
+		try {
+			return graph.roadNames().occurrences();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the number of road segments sharing a name.
+     *
+     * @param roadName the name of the road
+     * @return the number of segments with that name, or 0 if none
+     */
+	
+	public int getRoadSegmentCount(String roadName) {
+		lock.readLock().lock();
+		try {
+			return graph.roadNames().count(roadName);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves a page of the list returned by {@link #allRoads()}.
+     *
+     * @param offset the position of the first road, from 0
+     * @param limit the largest number of roads to return
+     * @return an ArrayList containing the names of the roads on the page
+     */
+	
+	public ArrayList<String> allRoads(int offset, int limit) {
+		lock.readLock().lock();
+		try {
+			return graph.roadNames().occurrences(offset, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the distinct sorted road names that start with a prefix.
+     *
+     * @param prefix the start of the name
+     * @param limit the largest number of names to return
+     * @return an ArrayList containing the matching road names
+     */
+	
+	public ArrayList<String> roadsWithPrefix(String prefix, int limit) {
+		lock.readLock().lock();
+		try {
+			return graph.roadNames().withPrefix(prefix, limit);
+		} finally {
+			lock.readLock().unlock();
 		}
-		
-		Collections.sort(roadStrings);
-		return roadStrings;
 	}
 
     /**
@@ -148,11 +312,33 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public boolean deleteRoadConnection(String town1, String town2, String road) {
-		Town one = new Town(town1);
-		Town two = new Town(town2);		
+		MutationLog journal;
+		long logged = 0;
+		boolean removed;
+		lock.writeLock().lock();
+		try {
+			removed = removeRoad(town1, town2, road);
+			journal = mutationLog;
+			if (removed && journal != null) {
+				logged = journal.deleteRoad(town1, town2, road);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return removed;
+	}
+
+	//road names are compared by value; names read from a file or a log are never the same instance
+	private boolean removeRoad(String town1, String town2, String road) {
+		Town one = town(town1);
+		Town two = town(town2);		
 		Road threeR = graph.getEdge(one, two);
-		if(threeR != null && threeR.getName() == road) {
+		if(threeR != null && Objects.equals(threeR.getName(), road)) {
 			graph.removeEdge(one, two, threeR.getWeight(), road);
+			return true;
 		}
 		return false;
 	}
@@ -166,8 +352,27 @@ public class TownGraphManager implements TownGraphManagerInterface{
 	
 	
 	public boolean deleteTown(String v) {
-		Town town = new Town(v);
-		return graph.removeVertex(town);
+		MutationLog journal;
+		long logged = 0;
+		boolean removed;
+		lock.writeLock().lock();
+		try {
+			Town town = town(v);
+			removed = graph.removeVertex(town);
+			if (removed && townTrie != null && v != null) {
+				townTrie.remove(v);
+			}
+			journal = mutationLog;
+			if (removed && journal != null) {
+				logged = journal.deleteTown(v);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return removed;
 	}
 
 	
@@ -178,14 +383,127 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public ArrayList<String> allTowns() {
-		Set<Town> townSet = graph.vertexSet() ;
-		ArrayList<String> townArray = new ArrayList<>();
-		for(Town town: townSet) {
-			townArray.add(town.getName());
+		lock.readLock().lock();
+		try {
+			return graph.townNames().keys();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves a page of the sorted town names, e.g. for a list view over a
+     * very large graph.
+     *
+     * @param offset the position of the first town, from 0
+     * @param limit the largest number of towns to return
+     * @return an ArrayList containing the names of the towns on the page
+     */
+	
+	public ArrayList<String> allTowns(int offset, int limit) {
+		lock.readLock().lock();
+		try {
+			return graph.townNames().list(offset, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the sorted names of the towns that start with a prefix, e.g.
+     * for autocompletion.
+     *
+     * @param prefix the start of the name
+     * @param limit the largest number of towns to return
+     * @return an ArrayList containing the matching town names
+     */
+	
+	public ArrayList<String> townsWithPrefix(String prefix, int limit) {
+		lock.readLock().lock();
+		try {
+			return graph.townNames().withPrefix(prefix, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Suggests towns for text typed so far: first the towns whose names start
+     * with the text, in sorted order, then if there is room the towns whose
+     * names are within one or two edits of it, closest first. Meant to be
+     * called on every keystroke; the trie behind it is built on first use and
+     * kept up to date afterwards.
+     *
+     * @param text the text typed so far
+     * @param limit the largest number of towns to return
+     * @return an ArrayList containing the suggested town names
+     */
+	
+	public ArrayList<String> suggestTowns(String text, int limit) {
+		lock.readLock().lock();
+		try {
+			ArrayList<String> suggestions = townTrie().withPrefix(text, limit);
+			if (suggestions.size() < limit && !text.isEmpty()) {
+				int maxEdits = text.length() <= 4 ? 1 : 2;
+				for (String name : townTrie.closest(text, maxEdits, limit)) {
+					if (suggestions.size() == limit) {
+						break;
+					}
+					if (!name.startsWith(text)) {
+						suggestions.add(name);
+					}
+				}
+			}
+			return suggestions;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the towns whose names are closest to a query by edit distance,
+     * e.g. to recover from a misspelled town name.
+     *
+     * @param query the name to match
+     * @param maxEdits the largest number of single character edits to accept
+     * @param limit the largest number of towns to return
+     * @return an ArrayList containing the matching town names, closest first
+     */
+	
+	public ArrayList<String> findTownsLike(String query, int maxEdits, int limit) {
+		lock.readLock().lock();
+		try {
+			return townTrie().closest(query, maxEdits, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private synchronized NameTrie townTrie() {
+		if (townTrie == null) {
+			townTrie = new NameTrie();
+			for (String name : graph.townNames().keys()) {
+				if (name != null) {
+					townTrie.add(name);
+				}
+			}
+		}
+		return townTrie;
+	}
+
+    /**
+     * Retrieves the number of towns in the graph.
+     *
+     * @return the number of towns
+     */
+	
+	public int getTownCount() {
+		lock.readLock().lock();
+		try {
+			return graph.townNames().size();
+		} finally {
+			lock.readLock().unlock();
 		}
-		Collections.sort(townArray);
-		
-		return townArray;
 	}
 
 
@@ -198,10 +516,727 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public ArrayList<String> getPath(String town1, String town2) {
-		Town one = new Town(town1);
-		Town two = new Town(town2);	
-		graph.dijkstraShortestPath(one);
-		return graph.shortestPath(one, two);
+		return getRoute(town1, town2).getSteps();
+	}
+
+    /**
+     * Finds the shortest route between two towns with a single search,
+     * giving its steps, the towns along it and its length together, so that
+     * callers needing more than one of them do not search twice or see a
+     * change made in between. Interrupting the calling thread stops the search.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return the route; its steps and towns are empty and its distance -1 if no path exists
+     * @throws java.util.concurrent.CancellationException if the thread is interrupted during the search
+     */
+	
+	public LandmarkIndex.Route getRoute(String town1, String town2) {
+		lock.readLock().lock();
+		try {
+			Town one = town(town1);
+			Town two = town(town2);	
+			if (!graph.isConnected(one, two)) {
+				return new LandmarkIndex.Route(new ArrayList<>(), new ArrayList<>(), -1, 0);
+			}
+			if (multiLevel != null && multiLevelVersion == graph.getVersion()) {
+				return multiLevel.shortestPath(one, two);
+			}
+			if (landmarks != null && landmarks.getVersion() == graph.getVersion()) {
+				return landmarks.shortestPath(one, two);
+			}
+			//the search keeps its state per thread, so readers do not share it
+			return graph.route(one, two);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the towns along the shortest path between two towns, e.g. to
+     * highlight the route on a map.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return an ArrayList containing the town names from start to destination, or an empty list if no path exists
+     */
+	
+	public ArrayList<String> getPathTowns(String town1, String town2) {
+		lock.readLock().lock();
+		try {
+			ArrayList<String> names = new ArrayList<>();
+			for (Town town : graph.shortestPathTowns(town(town1), town(town2))) {
+				names.add(town.getName());
+			}
+			return names;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Takes an immutable snapshot of the graph that can be read without
+     * holding up changes, e.g. to lay out and draw a map on another thread.
+     *
+     * @return the snapshot
+     */
+	
+	public CompactGraph snapshot() {
+		lock.readLock().lock();
+		try {
+			return CompactGraph.of(graph);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Selects landmark towns and precomputes their distances so that
+     * {@link #getPath(String, String)} runs a goal-directed ALT search instead
+     * of a full Dijkstra. The landmarks are ignored once the graph changes
+     * until they are built again.
+     *
+     * @param count the number of landmarks, typically 8 to 16
+     * @param selection how to choose the landmarks
+     */
+	
+	public void buildLandmarks(int count, LandmarkIndex.Selection selection) {
+		lock.writeLock().lock();
+		try {
+			landmarks = LandmarkIndex.build(graph, count, selection);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+    /**
+     * Partitions the graph into nested cells and builds the multi-level
+     * overlay of distances across them, so that {@link #getPath(String, String)}
+     * and {@link #getDistance(String, String)} move across whole cells
+     * instead of searching every road. The overlay follows weight changes made
+     * through {@link #setRoadWeights(Collection)}, customizing only the cells
+     * they touch, and is ignored after any other change until it is built again.
+     *
+     * @param maxCellSizes the largest number of towns in a cell, per level from
+     * the smallest cells up, e.g. 256, 4096 and 65536
+     * @throws IllegalArgumentException if the graph has one-way roads
+     */
+	
+	public void buildMultiLevelOverlay(int... maxCellSizes) {
+		lock.writeLock().lock();
+		try {
+			CompactGraph snapshot = CompactGraph.of(graph);
+			multiLevel = MultiLevelOverlay.build(snapshot, GraphPartition.build(snapshot, maxCellSizes));
+			multiLevelVersion = graph.getVersion();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+    /**
+     * Checks if any road in the graph is one-way. The hub-label distance
+     * index and the multi-level overlay need every road to be two-way.
+     *
+     * @return true if the graph has a one-way road
+     */
+	
+	public boolean hasOneWayRoads() {
+		lock.readLock().lock();
+		try {
+			return graph.hasOneWayRoads();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Checks if a route can exist between two towns without running a search.
+     * With one-way roads, towns in the same component may still be out of
+     * reach, so a search is run for those.
+     *
+     * @param town1 the name of town 1
+     * @param town2 the name of town 2
+     * @return true if both towns exist and a route leads from town 1 to town 2
+     */
+	
+	public boolean isReachable(String town1, String town2) {
+		lock.readLock().lock();
+		try {
+			Town one = town(town1);
+			Town two = town(town2);
+			if (!graph.isConnected(one, two)) {
+				return false;
+			}
+			return !graph.hasOneWayRoads() || graph.distance(one, two) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Creates an empty what-if overlay for this manager's graph. Roads can be
+     * closed, towns banned and weights scaled on the overlay and then passed to
+     * {@link #getPath(String, String, RouteOverlay)} without changing the graph.
+     * The overlay reads the graph under this manager's read lock.
+     *
+     * @return a new, empty overlay
+     */
+	
+	public RouteOverlay createOverlay() {
+		return new RouteOverlay(graph, lock.readLock());
+	}
+
+    /**
+     * Retrieves the shortest path between two towns as seen through an overlay.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @param overlay the overlay created by {@link #createOverlay()}, or null for none
+     * @return an ArrayList containing the steps of the shortest path, or an empty list if no path exists
+     * @throws IllegalStateException if the graph has changed since the overlay was created or cleared
+     */
+	
+	public ArrayList<String> getPath(String town1, String town2, RouteOverlay overlay) {
+		lock.readLock().lock();
+		try {
+			return graph.shortestPath(town(town1), town(town2), overlay);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Selects a subnetwork of towns, such as a depot network, whose
+     * shortest paths are precomputed for constant-time distance lookups. The
+     * precomputation runs immediately and again on the first query after the
+     * graph changes.
+     *
+     * @param towns the names of the towns in the subnetwork
+     */
+	
+	public void precomputeAllPairs(Collection<String> towns) {
+		lock.writeLock().lock();
+		try {
+			allPairsTowns = new HashSet<>();
+			for (String name : towns) {
+				allPairsTowns.add(town(name));
+			}
+			allPairs = AllPairsIndex.build(graph, allPairsTowns);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the shortest distance between two towns of the precomputed
+     * subnetwork, using only roads inside the subnetwork.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return the distance, or -1 if no route exists within the subnetwork
+     * @throws IllegalStateException if no subnetwork was precomputed
+     */
+	
+	public int getSubnetworkDistance(String town1, String town2) {
+		lock.readLock().lock();
+		try {
+			return currentAllPairs().distance(town(town1), town(town2));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the shortest path between two towns of the precomputed
+     * subnetwork, using only roads inside the subnetwork.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return an ArrayList containing the steps of the path, or an empty list if no path exists
+     * @throws IllegalStateException if no subnetwork was precomputed
+     */
+	
+	public ArrayList<String> getSubnetworkPath(String town1, String town2) {
+		lock.readLock().lock();
+		try {
+			return currentAllPairs().path(town(town1), town(town2));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private synchronized AllPairsIndex currentAllPairs() {
+		if (allPairs == null) {
+			throw new IllegalStateException("No subnetwork has been precomputed.");
+		}
+		if (allPairs.getVersion() != graph.getVersion()) {
+			allPairs = AllPairsIndex.build(graph, allPairsTowns);
+		}
+		return allPairs;
+	}
+
+    /**
+     * Retrieves the length of the shortest path between two towns. Answered
+     * from the hub-label distance index when one is current, otherwise by a
+     * search, across the multi-level overlay when one is current.
+     *
+     * @param town1 the name of the starting town
+     * @param town2 the name of the destination town
+     * @return the distance, or -1 if no path exists
+     */
+	
+	public long getDistance(String town1, String town2) {
+		lock.readLock().lock();
+		try {
+			if (distanceIndex != null && distanceIndexVersion == graph.getVersion()) {
+				return distanceIndex.distance(town1, town2);
+			}
+			if (multiLevel != null && multiLevelVersion == graph.getVersion()) {
+				return multiLevel.distance(town(town1), town(town2));
+			}
+			return graph.distance(town(town1), town(town2));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Retrieves the lengths of the shortest paths between every source and
+     * every target. Answered from the hub-label distance index when one is
+     * current, otherwise by one search per source that stops once all the
+     * targets are reached.
+     *
+     * @param sources the names of the starting towns
+     * @param targets the names of the destination towns
+     * @return the distances, indexed by source then target, -1 where no path exists
+     */
+	
+	public long[][] getDistanceMatrix(List<String> sources, List<String> targets) {
+		lock.readLock().lock();
+		try {
+			long[][] matrix = new long[sources.size()][targets.size()];
+			if (distanceIndex != null && distanceIndexVersion == graph.getVersion()) {
+				for (int i = 0; i < matrix.length; i++) {
+					for (int j = 0; j < matrix[i].length; j++) {
+						matrix[i][j] = distanceIndex.distance(sources.get(i), targets.get(j));
+					}
+				}
+				return matrix;
+			}
+			ArrayList<Town> destinations = new ArrayList<>(targets.size());
+			for (String target : targets) {
+				destinations.add(town(target));
+			}
+			for (int i = 0; i < matrix.length; i++) {
+				int[] row = graph.distances(town(sources.get(i)), destinations);
+				for (int j = 0; j < row.length; j++) {
+					matrix[i][j] = row[j];
+				}
+			}
+			return matrix;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Builds the hub-label distance index used by {@link #getDistance(String, String)}.
+     * The index is ignored once the graph changes until it is built again.
+     *
+     * @throws IllegalArgumentException if the graph has one-way roads
+     */
+	
+	public void buildDistanceIndex() {
+		lock.writeLock().lock();
+		try {
+			distanceIndex = HubLabelIndex.build(graph);
+			distanceIndexVersion = graph.getVersion();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+    /**
+     * Saves the distance index to a file so it survives a restart.
+     *
+     * @param file the file to write
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalStateException if no distance index has been built
+     */
+	
+	public void saveDistanceIndex(File file) throws IOException {
+		lock.readLock().lock();
+		try {
+			if (distanceIndex == null) {
+				throw new IllegalStateException("No distance index has been built.");
+			}
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+				distanceIndex.write(out);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+    /**
+     * Loads a distance index saved by {@link #saveDistanceIndex(File)}. An
+     * index built from other towns or roads than the graph has now is
+     * rejected and the current index is kept.
+     *
+     * @param file the file to read
+     * @throws IOException if an I/O error occurs, the file is not an index,
+     * or the index does not match the graph
+     */
+	
+	public void loadDistanceIndex(File file) throws IOException {
+		lock.writeLock().lock();
+		try {
+			try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+				HubLabelIndex loaded = HubLabelIndex.read(in);
+				if (!loaded.matches(graph)) {
+					throw new IOException("The distance index was built for a different graph.");
+				}
+				distanceIndex = loaded;
+				distanceIndexVersion = graph.getVersion();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+    /**
+     * Opens a mutation log in a directory and logs every change from now on,
+     * waiting for each change to be on disk before returning from it. The
+     * towns and roads recorded in the log are restored first.
+     *
+     * @param dir the directory holding the log, created if missing
+     * @throws IOException if an I/O error occurs or the log is corrupt
+     */
+	
+	public void openMutationLog(File dir) throws IOException {
+		openMutationLog(dir, true);
+	}
+
+    /**
+     * Opens a mutation log in a directory and logs every change from now on.
+     * The towns and roads recorded in the log are restored first, by loading
+     * its latest snapshot and replaying only the changes logged after it. If
+     * the graph already had towns, they are written to a new snapshot so the
+     * log covers them too.
+     *
+     * @param dir the directory holding the log, created if missing
+     * @param waitForSync true to return from each change only once it is on
+     *        disk, false to return once it is buffered and let a crash lose the
+     *        changes of the last fsync interval
+     * @throws IOException if an I/O error occurs or the log is corrupt
+     * @throws IllegalStateException if a log is already open
+     */
+	
+	public void openMutationLog(File dir, boolean waitForSync) throws IOException {
+		MutationLog journal;
+		MutationLog.Snapshot snapshot = null;
+		int generation = 0;
+		lock.writeLock().lock();
+		try {
+			if (mutationLog != null) {
+				throw new IllegalStateException("A mutation log is already open.");
+			}
+			boolean hadTowns = graph.townNames().size() > 0;
+			journal = MutationLog.open(dir, waitForSync, new MutationLog.Target() {
+				@Override
+				public void addTown(String name) {
+					graph.addVertex(new Town(name));
+				}
+
+				@Override
+				public void addRoad(String town1, String town2, int weight, String roadName) {
+					graph.addEdge(town(town1), town(town2), weight, roadName);
+				}
+
+				@Override
+				public void addOneWayRoad(String from, String to, int weight, String roadName) {
+					graph.addEdge(town(from), town(to), weight, roadName, true);
+				}
+
+				@Override
+				public void deleteRoad(String town1, String town2, String roadName) {
+					removeRoad(town1, town2, roadName);
+				}
+
+				@Override
+				public void deleteTown(String name) {
+					graph.removeVertex(town(name));
+				}
+
+				@Override
+				public void setRoadWeight(String town1, String town2, String roadName, int weight) {
+					graph.setEdgeWeights(Collections.singletonList(new RoadRecord(town1, town2, weight, roadName)));
+				}
+			});
+			townTrie = null;
+			mutationLog = journal;
+			if (hadTowns) {
+				snapshot = MutationLog.capture(graph);
+				generation = journal.rotate();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (snapshot != null) {
+			journal.writeSnapshot(generation, snapshot);
+		}
+	}
+
+    /**
+     * Compacts the mutation log: starts a new log file and writes the graph as
+     * it is now to a snapshot, after which the older files are deleted. Only
+     * the copy of the graph holds up other changes; the snapshot is written
+     * after the lock is released. The log is also compacted automatically as
+     * it grows.
+     *
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalStateException if no log is open
+     */
+	
+	public void compactMutationLog() throws IOException {
+		MutationLog journal;
+		MutationLog.Snapshot snapshot;
+		int generation;
+		lock.writeLock().lock();
+		try {
+			journal = mutationLog;
+			if (journal == null) {
+				throw new IllegalStateException("No mutation log is open.");
+			}
+			snapshot = MutationLog.capture(graph);
+			generation = journal.rotate();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		journal.writeSnapshot(generation, snapshot);
+	}
+
+    /**
+     * Writes out the changes logged so far and closes the mutation log.
+     * Changes made afterwards are not logged.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+	
+	public void closeMutationLog() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (mutationLog != null) {
+				MutationLog journal = mutationLog;
+				mutationLog = null;
+				journal.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	//wait for a logged change to be on disk, then compact the log in the background if it has grown long
+	private void awaitLogged(MutationLog journal, long logged) {
+		if (logged == 0) {
+			return;
+		}
+		try {
+			journal.await(logged);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (journal.recordsSinceSnapshot() >= COMPACTION_RECORDS && compacting.compareAndSet(false, true)) {
+			Thread compactor = new Thread(() -> {
+				try {
+					compactMutationLog();
+				} catch (IOException | IllegalStateException e) {
+					//the log keeps growing and compaction is tried again later
+				} finally {
+					compacting.set(false);
+				}
+			}, "mutation-log-compactor");
+			compactor.setDaemon(true);
+			compactor.start();
+		}
+	}
+
+    /**
+     * Adds many towns in one pass under a single lock, skipping towns that
+     * are already in the graph.
+     *
+     * @param names the names of the towns to add
+     * @return the number of towns added
+     */
+	
+	public int addTowns(Collection<String> names) {
+		MutationLog journal;
+		long logged = 0;
+		ArrayList<Town> added;
+		ArrayList<Town> towns = new ArrayList<>(names.size());
+		for (String name : names) {
+			towns.add(new Town(name));
+		}
+		lock.writeLock().lock();
+		try {
+			added = graph.addVertices(towns);
+			journal = mutationLog;
+			for (Town town : added) {
+				if (townTrie != null && town.getName() != null) {
+					townTrie.add(town.getName());
+				}
+				if (journal != null) {
+					logged = journal.addTown(town.getName());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return added.size();
+	}
+
+    /**
+     * Adds many roads in one pass under a single lock. Every road is checked
+     * before any is added, and a road that repeats one already in the graph
+     * or earlier in the batch, with the same towns, weight and name, is
+     * skipped.
+     *
+     * @param roads the roads to add
+     * @return the number of roads added
+     * @throws IllegalArgumentException if a road names a town not in the graph, in which case no road is added
+     */
+	
+	public int addRoads(Collection<RoadRecord> roads) {
+		MutationLog journal;
+		long logged = 0;
+		ArrayList<RoadRecord> added;
+		lock.writeLock().lock();
+		try {
+			added = graph.addEdges(roads);
+			journal = mutationLog;
+			if (journal != null) {
+				for (RoadRecord road : added) {
+					logged = road.isOneWay()
+							? journal.addOneWayRoad(road.getTown1(), road.getTown2(), road.getWeight(), road.getName())
+							: journal.addRoad(road.getTown1(), road.getTown2(), road.getWeight(), road.getName());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return added.size();
+	}
+
+    /**
+     * Deletes many roads in one pass under a single lock. Each road is found
+     * by its towns and name, as in {@link #deleteRoadConnection(String, String, String)};
+     * roads that are not in the graph are skipped.
+     *
+     * @param roads the roads to delete
+     * @return the number of roads deleted
+     */
+	
+	public int deleteRoads(Collection<RoadRecord> roads) {
+		MutationLog journal;
+		long logged = 0;
+		ArrayList<RoadRecord> removed;
+		lock.writeLock().lock();
+		try {
+			removed = graph.removeEdges(roads);
+			journal = mutationLog;
+			if (journal != null) {
+				for (RoadRecord road : removed) {
+					logged = journal.deleteRoad(road.getTown1(), road.getTown2(), road.getName());
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return removed.size();
+	}
+
+    /**
+     * Changes the weight of a road, found by its towns and name.
+     *
+     * @param town1 the name of town 1
+     * @param town2 the name of town 2
+     * @param roadName the name of the road
+     * @param weight the new weight
+     * @return true if the road exists and its weight changed
+     */
+	
+	public boolean setRoadWeight(String town1, String town2, String roadName, int weight) {
+		return setRoadWeights(Collections.singletonList(new RoadRecord(town1, town2, weight, roadName))) == 1;
+	}
+
+    /**
+     * Changes the weights of many roads in one pass under a single lock, e.g.
+     * from a traffic feed. Each road is found by its towns and name; roads
+     * that are not in the graph are skipped. A current multi-level overlay is
+     * customized again for the new weights and stays in use. Each change is
+     * logged naming the road by its towns and name, as it was found here.
+     *
+     * @param roads the roads with their new weights
+     * @return the number of roads whose weight changed
+     * @throws IllegalArgumentException if a weight is negative, in which case nothing changes
+     */
+	
+	public int setRoadWeights(Collection<RoadRecord> roads) {
+		MutationLog journal;
+		long logged = 0;
+		ArrayList<Road> changed;
+		lock.writeLock().lock();
+		try {
+			boolean current = multiLevel != null && multiLevelVersion == graph.getVersion();
+			//checks every weight before changing any, so a bad record changes nothing
+			changed = graph.setEdgeWeights(roads);
+			journal = mutationLog;
+			if (journal != null) {
+				for (Road road : changed) {
+					logged = journal.setRoadWeight(((Town) road.getSource()).getName(),
+							((Town) road.getDestination()).getName(), road.getName(), road.getWeight());
+				}
+			}
+			if (current && !changed.isEmpty()) {
+				for (Road road : changed) {
+					int e = multiLevel.edgeOf(road);
+					if (e < 0) {
+						//left stale, and ignored until it is built again
+						current = false;
+						break;
+					}
+					multiLevel.setWeight(e, road.getWeight());
+				}
+				if (current) {
+					multiLevel.customize();
+					multiLevelVersion = graph.getVersion();
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+		awaitLogged(journal, logged);
+		return changed.size();
+	}
+
+	/**
+	 * Resolves a town name to the graph's own Town instance, so lookups inside
+	 * the graph compare ids instead of hashing names again.
+	 */
+	private Town town(String name) {
+		Town town = graph.getTown(name);
+		return town != null ? town : new Town(name);
 	}
 
     /**
@@ -213,18 +1248,273 @@ public class TownGraphManager implements TownGraphManagerInterface{
      */
 	
 	public void populateTownGraph(File selectedFile) throws FileNotFoundException, IOException {
+		populateTownGraph(selectedFile, null);
+	}
+
+    /**
+     * Populates the town graph with data from a file, reporting progress to a
+     * listener that may cancel the load. Meant to be run off the UI thread; a
+     * cancelled load keeps the towns and roads added before it stopped. The
+     * file may be gzip-compressed, and is decompressed as it is read; if it
+     * is a directory, the files in it are loaded as shards of one network.
+     *
+     * @param selectedFile the file or directory containing the data
+     * @param listener the listener to report to, or null for none
+     * @return true if the whole file was loaded, false if the listener cancelled it
+     * @throws FileNotFoundException if the file is not found
+     * @throws IOException if an I/O error occurs
+     */
+	
+	public boolean populateTownGraph(File selectedFile, LoadProgressListener listener) throws FileNotFoundException, IOException {
+
+		if (!selectedFile.isDirectory()) {
+			return populateTownGraph(Collections.singletonList(selectedFile), listener);
+		}
+		File[] shards = selectedFile.listFiles(file -> file.isFile() && !file.isHidden());
+		if (shards == null) {
+			throw new IOException("Cannot list " + selectedFile + ".");
+		}
+		Arrays.sort(shards);
+		return populateTownGraph(Arrays.asList(shards), listener);
+	}
+
+    /**
+     * Populates the town graph from several files, such as the shards of one
+     * export, loading them in parallel. Each file may be plain or
+     * gzip-compressed; zstd-compressed files are recognised but rejected, as
+     * the JDK cannot decode them. Progress is reported for all the files
+     * together, and cancelling stops every file.
+     *
+     * @param files the files containing the data
+     * @param listener the listener to report to, or null for none
+     * @return true if every file was loaded, false if the listener cancelled the load
+     * @throws FileNotFoundException if a file is not found
+     * @throws IOException if an I/O error occurs
+     */
+	
+	public boolean populateTownGraph(List<File> files, LoadProgressListener listener) throws FileNotFoundException, IOException {
+
+		long totalBytes = 0;
+		for (File file : files) {
+			if (!file.isFile()) {
+				throw new FileNotFoundException(file + " (No such file)");
+			}
+			totalBytes += file.length();
+		}
+		LoadTotals totals = new LoadTotals(listener, totalBytes);
+		if (files.size() <= 1) {
+			if (!files.isEmpty() && !loadShard(files.get(0), totals)) {
+				return false;
+			}
+			totals.finish();
+			return true;
+		}
+		//shards are read and decompressed in parallel; their batches take turns with the write lock
+		int threads = Math.min(files.size(), Runtime.getRuntime().availableProcessors());
+		ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread worker = new Thread(runnable, "road-file-loader");
+			worker.setDaemon(true);
+			return worker;
+		});
+		try {
+			ArrayList<Future<Boolean>> loads = new ArrayList<>();
+			for (File file : files) {
+				loads.add(pool.submit(() -> loadShard(file, totals)));
+			}
+			boolean complete = true;
+			Throwable failure = null;
+			for (Future<Boolean> load : loads) {
+				try {
+					complete &= load.get();
+				} catch (ExecutionException e) {
+					//stop the other shards, but wait for them so none is still adding roads after we return
+					totals.cancel();
+					if (failure == null) {
+						failure = e.getCause();
+					}
+				}
+			}
+			if (failure instanceof IOException) {
+				throw (IOException) failure;
+			} else if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			} else if (failure instanceof Error) {
+				throw (Error) failure;
+			} else if (failure != null) {
+				throw new IOException(failure);
+			}
+			if (!complete) {
+				return false;
+			}
+		} catch (InterruptedException e) {
+			totals.cancel();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while loading road files.");
+		} finally {
+			pool.shutdown();
+		}
+		totals.finish();
+		return true;
+	}
+
+    /**
+     * Loads one file, picking the parser by the file's first bytes.
+     */
+	
+	private boolean loadShard(File file, LoadTotals totals) throws IOException {
+
+		Charset charset = Charset.defaultCharset();
+		try (FileInputStream in = new FileInputStream(file)) {
+			boolean gzip = isGzipped(in, file);
+			if (!gzip && RoadFileParser.supports(charset)) {
+				BatchLoader loader = new BatchLoader(totals, null);
+				RoadFileParser parser = new RoadFileParser(charset, PROGRESS_INTERVAL, loader);
+				return parser.parse(in.getChannel()) && loader.finish(parser.lines(), file.length());
+			}
+			//progress is counted in bytes of the file, compressed or not
+			CountingInputStream counter = new CountingInputStream(in);
+			InputStream text = gzip ? new GZIPInputStream(counter, 1 << 16) : counter;
+			BatchLoader loader = new BatchLoader(totals, counter);
+			if (RoadFileParser.supports(charset)) {
+				RoadFileParser parser = new RoadFileParser(charset, PROGRESS_INTERVAL, loader);
+				return parser.parse(text) && loader.finish(parser.lines(), file.length());
+			}
+			return readTownGraph(text, loader, file.length());
+		}
+	}
+
+    /**
+     * Checks a file's first bytes for gzip, and rejects zstd, which the JDK
+     * cannot decode.
+     */
+	
+	private static boolean isGzipped(FileInputStream in, File file) throws IOException {
+
+		ByteBuffer magic = ByteBuffer.allocate(4);
+		in.getChannel().read(magic, 0);
+		if (magic.position() == 4 && magic.getInt(0) == ZSTD_MAGIC) {
+			throw new IOException(file + " is zstd-compressed, which cannot be read here; "
+					+ "decompress it with zstd -d or recompress it with gzip.");
+		}
+		return magic.position() >= 2 && (magic.getShort(0) & 0xFFFF) == GZIP_MAGIC;
+	}
+
+    /**
+     * Imports a road network from a DIMACS shortest-path graph ({@code .gr}),
+     * plain or gzipped, through the same batch path as
+     * {@link #populateTownGraph(File, LoadProgressListener)}. Towns are named
+     * by their vertex numbers and roads after the file, and the two arcs the
+     * format gives each road become one road.
+     *
+     * @param graphFile the graph file
+     * @param listener the listener to report to, or null for none
+     * @return true if the whole file was imported, false if the listener cancelled it
+     * @throws FileNotFoundException if the file is not found
+     * @throws IOException if an I/O error occurs or the file is malformed
+     */
+	
+	public boolean importDimacsGraph(File graphFile, LoadProgressListener listener) throws FileNotFoundException, IOException {
 
-	    try (BufferedReader br = new BufferedReader(new FileReader(selectedFile))) {
+		String roadName = baseName(graphFile);
+		return importFile(graphFile, listener,
+				(text, loader) -> RoadNetworkImporter.readDimacsGraph(text, roadName, PROGRESS_INTERVAL, loader));
+	}
+
+    /**
+     * Reads the town coordinates that go with a DIMACS graph ({@code .co}),
+     * plain or gzipped.
+     *
+     * @param coordinateFile the coordinate file
+     * @return the x and y of each town, by town name
+     * @throws FileNotFoundException if the file is not found
+     * @throws IOException if an I/O error occurs or the file is malformed
+     */
+	
+	public static Map<String, double[]> readDimacsCoordinates(File coordinateFile) throws FileNotFoundException, IOException {
+
+		try (FileInputStream in = new FileInputStream(coordinateFile)) {
+			InputStream text = isGzipped(in, coordinateFile) ? new GZIPInputStream(in, 1 << 16) : in;
+			return RoadNetworkImporter.readDimacsCoordinates(text);
+		}
+	}
+
+    /**
+     * Imports roads from a CSV edge list of {@code source,target,weight[,name]}
+     * lines, plain or gzipped, through the same batch path as
+     * {@link #populateTownGraph(File, LoadProgressListener)}. Roads without a
+     * name are named after the file.
+     *
+     * @param edgeFile the edge list
+     * @param listener the listener to report to, or null for none
+     * @return true if the whole file was imported, false if the listener cancelled it
+     * @throws FileNotFoundException if the file is not found
+     * @throws IOException if an I/O error occurs or the file is malformed
+     */
+	
+	public boolean importEdgeList(File edgeFile, LoadProgressListener listener) throws FileNotFoundException, IOException {
+
+		String roadName = baseName(edgeFile);
+		return importFile(edgeFile, listener,
+				(text, loader) -> RoadNetworkImporter.readEdgeList(text, roadName, PROGRESS_INTERVAL, loader));
+	}
+
+	/**
+	 * Reads one file of a format RoadNetworkImporter knows into a loader.
+	 */
+	private interface Importer {
+		int read(InputStream text, BatchLoader loader) throws IOException;
+	}
+
+	private boolean importFile(File file, LoadProgressListener listener, Importer importer) throws IOException {
+		LoadTotals totals = new LoadTotals(listener, file.length());
+		try (FileInputStream in = new FileInputStream(file)) {
+			CountingInputStream counter = new CountingInputStream(in);
+			InputStream text = isGzipped(in, file) ? new GZIPInputStream(counter, 1 << 16) : counter;
+			BatchLoader loader = new BatchLoader(totals, counter);
+			int lines = importer.read(text, loader);
+			if (lines < 0) {
+				return false;
+			}
+			loader.finish(lines, file.length());
+		}
+		totals.finish();
+		return true;
+	}
+
+	//the file name without its extension, or two for a gzipped file, to name roads a format leaves unnamed
+	private static String baseName(File file) {
+		String name = file.getName();
+		if (name.endsWith(".gz")) {
+			name = name.substring(0, name.length() - 3);
+		}
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+    /**
+     * Loads a file line by line through a reader, for default charsets the
+     * byte-level parser cannot scan.
+     */
+	
+	private boolean readTownGraph(InputStream text, BatchLoader loader, long length) throws IOException {
+
+		int lines = 0;
+	    try (BufferedReader br = new BufferedReader(new InputStreamReader(text, Charset.defaultCharset()))) {
 
 	    	String oneLine;
 	    	
 				while((oneLine = br.readLine())!= null) {
 					
+					if (++lines % PROGRESS_INTERVAL == 0 && !loader.progress(0, lines)) {
+						return false;
+					}
+					
 					String[] frags = oneLine.split(";");
 					if (frags.length!= 3) continue;
 					
 					String[] roads = frags[0].split(",");
-					if (roads.length != 2) continue;
+					boolean oneWay = roads.length == 3 && roads[2].trim().equalsIgnoreCase(RoadFileParser.ONE_WAY);
+					if (roads.length != 2 && !oneWay) continue;
 					
 					String nameRoad = roads[0].trim();
 					
@@ -239,22 +1529,116 @@ public class TownGraphManager implements TownGraphManagerInterface{
 					
 			String town1 = frags[1].trim();
 			String town2 = frags[2].trim();
-			
-			
-			if (!containsTown(town1)) {
-                addTown(town1);}
-			
-			if (!containsTown(town2)) {
-	             addTown(town2);
-	            }
-			
-	        addRoad(town1, town2, weight, nameRoad);
-			
+			loader.town(town1);
+			loader.town(town2);
+			loader.road(nameRoad, weight, town1, town2, oneWay);
 			
 			}
+				return loader.finish(lines, length);
 	    } 
-	    
-	    	
+	}
+
+	/**
+	 * Collects the roads read from one file and adds them a batch at a time,
+	 * so readers get the lock between batches.
+	 */
+	private final class BatchLoader implements RoadFileParser.Handler {
+		private final LoadTotals totals;
+		private final CountingInputStream counter;
+		private final ArrayList<String> townBatch = new ArrayList<>();
+		private final ArrayList<RoadRecord> roadBatch = new ArrayList<>();
+		private long reportedBytes;
+		private int reportedLines, towns, roads;
+
+		/**
+		 * @param counter the stream to take the position from, or null to
+		 * take the parser's
+		 */
+		BatchLoader(LoadTotals totals, CountingInputStream counter) {
+			this.totals = totals;
+			this.counter = counter;
+		}
+
+		@Override
+		public void town(String name) {
+			townBatch.add(name);
+		}
+
+		@Override
+		public void road(String roadName, int weight, String town1, String town2) {
+			roadBatch.add(new RoadRecord(town1, town2, weight, roadName));
+		}
+
+		@Override
+		public void road(String roadName, int weight, String town1, String town2, boolean oneWay) {
+			roadBatch.add(new RoadRecord(town1, town2, weight, roadName, oneWay));
+		}
+
+		@Override
+		public boolean progress(long bytesRead, int lines) {
+			flush();
+			return report(counter != null ? counter.getCount() : bytesRead, lines, true);
+		}
+
+		boolean finish(int lines, long length) {
+			flush();
+			report(length, lines, false);
+			return true;
+		}
+
+		private void flush() {
+			towns += addTowns(townBatch);
+			roads += addRoads(roadBatch);
+			townBatch.clear();
+			roadBatch.clear();
+		}
+
+		private boolean report(long bytesRead, int lines, boolean notify) {
+			boolean go = totals.add(bytesRead - reportedBytes, lines - reportedLines, towns, roads, notify);
+			reportedBytes = bytesRead;
+			reportedLines = lines;
+			towns = 0;
+			roads = 0;
+			return go;
+		}
+	}
+
+	/**
+	 * Progress summed over every file of a load, and whether it was cancelled.
+	 */
+	private static final class LoadTotals {
+		private final LoadProgressListener listener;
+		private final long totalBytes;
+		private long bytesRead;
+		private int lines, towns, roads;
+		private boolean cancelled;
+
+		LoadTotals(LoadProgressListener listener, long totalBytes) {
+			this.listener = listener;
+			this.totalBytes = totalBytes;
+		}
+
+		synchronized boolean add(long bytes, int lines, int towns, int roads, boolean notify) {
+			this.bytesRead += bytes;
+			this.lines += lines;
+			this.towns += towns;
+			this.roads += roads;
+			if (notify && !cancelled && listener != null
+					&& !listener.progress(bytesRead, totalBytes, this.lines, this.towns, this.roads)) {
+				cancelled = true;
+			}
+			return !cancelled;
+		}
+
+		synchronized void cancel() {
+			cancelled = true;
+		}
+
+		synchronized void finish() {
+			if (listener != null) {
+				listener.progress(totalBytes, totalBytes, lines, towns, roads);
+			}
+		}
 	}
 
 }
@@ -3,7 +3,11 @@
 
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
 
 import org.junit.After;
 import org.junit.Before;
@@ -161,4 +165,81 @@ public class TownGraphManagerTest {
 
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testGetRoute() {
+		TownGraphManager manager = (TownGraphManager) graph;
+		LandmarkIndex.Route route = manager.getRoute(town[1], town[6]);
+		assertEquals(manager.getPath(town[1], town[6]), route.getSteps());
+		assertEquals(manager.getPathTowns(town[1], town[6]), route.getTowns());
+		assertEquals(manager.getDistance(town[1], town[6]), route.getDistance());
+		manager.addTown("Island");
+		assertEquals(-1, manager.getRoute(town[1], "Island").getDistance());
+		assertTrue(manager.getRoute(town[1], "Island").getTowns().isEmpty());
+	}
+
+	@Test
+	public void testInterruptedSearch() {
+		TownGraphManager manager = new TownGraphManager();
+		ArrayList<String> chain = new ArrayList<>();
+		ArrayList<RoadRecord> roads = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			chain.add("Chain_" + i);
+			if (i > 0) {
+				roads.add(new RoadRecord("Chain_" + (i - 1), "Chain_" + i, 1, "Link_" + i));
+			}
+		}
+		manager.addTowns(chain);
+		manager.addRoads(roads);
+		Thread.currentThread().interrupt();
+		try {
+			manager.getPath("Chain_0", "Chain_4999");
+			fail("An interrupted search should stop");
+		} catch (CancellationException e) {
+			//expected
+		} finally {
+			Thread.interrupted();
+		}
+		assertEquals(4999, manager.getPath("Chain_0", "Chain_4999").size());
+	}
+
+	@Test
+	public void testOneWayRoads() throws Exception {
+		TownGraphManager manager = (TownGraphManager) graph;
+		assertFalse(manager.hasOneWayRoads());
+		assertTrue(manager.addOneWayRoad(town[1], town[6], 1, "Road_13"));
+		assertTrue(manager.hasOneWayRoads());
+		assertEquals(1, manager.getPath(town[1], town[6]).size());
+		ArrayList<String> back = manager.getPath(town[6], town[1]);
+		assertEquals(5, back.size());
+		assertEquals("Town_6 via Road_7 to Town_9 3 mi", back.get(0).trim());
+		assertEquals(15, manager.getDistance(town[6], town[1]));
+
+		manager.addTown("Town_12");
+		manager.addOneWayRoad("Town_12", town[1], 2, "Road_14");
+		assertTrue(manager.isReachable("Town_12", town[1]));
+		assertFalse(manager.isReachable(town[1], "Town_12"));
+		assertTrue(manager.getPath(town[1], "Town_12").isEmpty());
+		assertEquals(3, manager.getDistance("Town_12", town[6]));
+
+		File file = File.createTempFile("roads", ".txt");
+		try {
+			Files.write(file.toPath(), "Road_15,1,oneway;Town_7;Town_4\n".getBytes(Charset.defaultCharset()));
+			manager.populateTownGraph(file);
+		} finally {
+			file.delete();
+		}
+		assertEquals(1, manager.getPath(town[7], town[4]).size());
+		assertEquals(3, manager.getPath(town[4], town[7]).size());
+
+		manager.buildLandmarks(3, LandmarkIndex.Selection.FARTHEST);
+		assertEquals(back, manager.getPath(town[6], town[1]));
+		assertEquals(3, manager.getPath(town[4], town[7]).size());
+		try {
+			manager.buildDistanceIndex();
+			fail("Hub labels need two-way roads");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the towns of a graph to dense int ids. A town's name is hashed once
+ * when it enters or is looked up at the API boundary; inside the graph towns
+ * are referred to by id so search state can live in plain arrays. Ids of
+ * removed towns are reused. The names are also kept in a sorted
+ * {@link SkipListIndex} so towns can be listed in order a page at a time.
+ *
+ * @author Liam Ghershony
+ */
+public class TownRegistry {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final SkipListIndex names = new SkipListIndex();
+    private Town[] towns = new Town[16];
+    private int[] free = new int[16];
+    private int freeCount;
+    private int bound;
+
+    /**
+     * Interns a town, giving it the next free id.
+     *
+     * @param town the town
+     * @return the town's new id, or -1 if a town with that name is already registered
+     */
+    public int intern(Town town) {
+        if (ids.containsKey(town.getName())) {
+            return -1;
+        }
+        int id;
+        if (freeCount > 0) {
+            id = free[--freeCount];
+        } else {
+            if (bound == towns.length) {
+                towns = Arrays.copyOf(towns, bound * 2);
+            }
+            id = bound++;
+        }
+        towns[id] = town;
+        town.id = id;
+        ids.put(town.getName(), id);
+        names.add(town.getName());
+        return id;
+    }
+
+    /**
+     * Removes the town with an id and frees the id for reuse.
+     *
+     * @param id the town's id
+     */
+    public void remove(int id) {
+        Town town = towns[id];
+        ids.remove(town.getName());
+        names.remove(town.getName());
+        towns[id] = null;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = id;
+    }
+
+    /**
+     * Gets the id of a town. The registered instance is recognized by
+     * reference; an equal town is looked up by name.
+     *
+     * @param town the town
+     * @return the town's id, or -1 if it is not registered
+     */
+    public int idOf(Town town) {
+        if (town == null) {
+            return -1;
+        }
+        int id = town.id;
+        if (id >= 0 && id < bound && towns[id] == town) {
+            return id;
+        }
+        return idOf(town.getName());
+    }
+
+    /**
+     * Gets the id of the town with a name.
+     *
+     * @param name the town's name
+     * @return the town's id, or -1 if it is not registered
+     */
+    public int idOf(String name) {
+        Integer id = ids.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the registered town with an id.
+     *
+     * @param id the id
+     * @return the town, or null if the id is free
+     */
+    public Town town(int id) {
+        return towns[id];
+    }
+
+    /**
+     * Gets an upper bound on the ids in use, for sizing id-indexed arrays.
+     *
+     * @return one more than the largest id ever given out
+     */
+    public int bound() {
+        return bound;
+    }
+
+    /**
+     * Estimates the heap used by the registry itself, not counting the towns
+     * and their names.
+     *
+     * @return the size in bytes
+     */
+    public long footprint() {
+        return MemoryReport.hashMap(ids.size()) + (long) ids.size() * MemoryReport.object(4) + names.footprint()
+                + MemoryReport.array(towns.length, MemoryReport.REFERENCE) + MemoryReport.array(free.length, 4);
+    }
+
+    /**
+     * Gets the sorted index of the registered towns' names.
+     *
+     * @return the name index
+     */
+    public SkipListIndex names() {
+        return names;
+    }
+
+    /**
+     * Gets the number of registered towns.
+     *
+     * @return the number of towns
+     */
+    public int size() {
+        return ids.size();
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.Arrays;
+
+/**
+ * Disjoint-set forest over dense int elements using union by size and path
+ * halving, so every find and union runs in amortized inverse-Ackermann time. Elements are
+ * numbered from 0 and the structure grows on demand.
+ *
+ * @author Liam Ghershony
+ */
+public class UnionFind {
+
+    private int[] parent;
+    private int[] size;
+    private int count;
+    private int sets;
+
+    /**
+     * Creates an empty union-find.
+     */
+    public UnionFind() {
+        this(0);
+    }
+
+    /**
+     * Creates a union-find holding the given number of singleton elements.
+     *
+     * @param elements the number of elements to start with
+     */
+    public UnionFind(int elements) {
+        parent = new int[Math.max(elements, 16)];
+        size = new int[parent.length];
+        for (int i = 0; i < elements; i++) {
+            makeSet();
+        }
+    }
+
+    /**
+     * Adds a new singleton element.
+     *
+     * @return the new element
+     */
+    public int makeSet() {
+        if (count == parent.length) {
+            parent = Arrays.copyOf(parent, count * 2);
+            size = Arrays.copyOf(size, count * 2);
+        }
+        parent[count] = count;
+        size[count] = 1;
+        sets++;
+        return count++;
+    }
+
+    /**
+     * Finds the representative of an element's set.
+     *
+     * @param element the element
+     * @return the representative element of its set
+     */
+    public int find(int element) {
+        if (element < 0 || element >= count) {
+            throw new IndexOutOfBoundsException("No element " + element);
+        }
+        while (parent[element] != element) {
+            parent[element] = parent[parent[element]];
+            element = parent[element];
+        }
+        return element;
+    }
+
+    /**
+     * Merges the sets holding two elements.
+     *
+     * @param a the first element
+     * @param b the second element
+     * @return true if the elements were in different sets, false otherwise
+     */
+    public boolean union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return false;
+        }
+        if (size[rootA] < size[rootB]) {
+            int swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        parent[rootB] = rootA;
+        size[rootA] += size[rootB];
+        sets--;
+        return true;
+    }
+
+    /**
+     * Checks if two elements are in the same set.
+     *
+     * @param a the first element
+     * @param b the second element
+     * @return true if both elements are in the same set
+     */
+    public boolean connected(int a, int b) {
+        return find(a) == find(b);
+    }
+
+    /**
+     * Gets the number of elements in the set holding an element.
+     *
+     * @param element the element
+     * @return the size of its set
+     */
+    public int sizeOf(int element) {
+        return size[find(element)];
+    }
+
+    /**
+     * Gets the number of elements.
+     *
+     * @return the number of elements
+     */
+    public int elements() {
+        return count;
+    }
+
+    /**
+     * Gets the number of disjoint sets.
+     *
+     * @return the number of sets
+     */
+    public int sets() {
+        return sets;
+    }
+}